@@ -29,14 +29,32 @@
  */
 package org.openimaj.feature;
 
-import java.util.HashMap;
+import java.lang.reflect.Array;
 
 import org.openimaj.data.identity.Identifiable;
+import org.openimaj.util.cache.BoundedCache;
+import org.openimaj.util.cache.BoundedCache.Policy;
+import org.openimaj.util.cache.BoundedCache.Weigher;
+import org.openimaj.util.function.Function;
 
 /**
- * A simple wrapper for a feature extractor that caches the extracted feature to
- * a {@link HashMap}. If a feature has already been generated for a given
- * object, it will be re-read from the {@link HashMap}
+ * A simple wrapper for a feature extractor that caches the extracted features
+ * in memory. If a feature has already been generated for a given object, it
+ * will be re-read from the cache.
+ * <p>
+ * The features are held in a {@link BoundedCache}, so the extractor is
+ * thread-safe and can be used from (for example) a parallel loop over a
+ * dataset; if the feature for an object is being extracted when another
+ * thread requests the same object, the second thread waits for the first
+ * extraction rather than repeating it. By default the cache is unbounded, but
+ * it can be bounded by the number of features or by their estimated size in
+ * bytes (see {@link EstimatedSizeWeigher}), in which case the least valuable
+ * features are evicted and re-extracted if required.
+ * <p>
+ * The wrapped extractor can itself be a {@link DiskCachingFeatureExtractor},
+ * giving a two-level memory and disk cache; because concurrent requests for
+ * the same object share a single extraction, the disk cache is never asked to
+ * read and write the same feature at the same time.
  * 
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  * 
@@ -49,14 +67,56 @@ public class CachingFeatureExtractor<FEATURE, OBJECT extends Identifiable>
 		implements
 		FeatureExtractor<FEATURE, OBJECT>
 {
+	/**
+	 * A {@link Weigher} that estimates the size of a feature in bytes. The
+	 * size of an {@link ArrayFeatureVector} is computed from its array of
+	 * values; the size of any other {@link FeatureVector} is assumed to be 8
+	 * bytes per element. Other types of feature are assumed to have a size of
+	 * 1 byte.
+	 * 
+	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+	 * 
+	 * @param <FEATURE>
+	 *            Type of feature
+	 */
+	public static class EstimatedSizeWeigher<FEATURE> implements Weigher<String, FEATURE> {
+		private static final int OBJECT_OVERHEAD = 16;
+
+		@Override
+		public long weigh(String key, FEATURE value) {
+			long size = OBJECT_OVERHEAD + 2L * key.length();
+
+			if (value instanceof ArrayFeatureVector) {
+				final Object values = ((ArrayFeatureVector<?>) value).values;
+				size += OBJECT_OVERHEAD + (long) Array.getLength(values) * elementSize(values.getClass().getComponentType());
+			} else if (value instanceof FeatureVector) {
+				size += OBJECT_OVERHEAD + 8L * ((FeatureVector) value).length();
+			} else {
+				size += 1;
+			}
+
+			return size;
+		}
+
+		private static int elementSize(Class<?> type) {
+			if (type == byte.class || type == boolean.class)
+				return 1;
+			if (type == short.class || type == char.class)
+				return 2;
+			if (type == int.class || type == float.class)
+				return 4;
+			return 8;
+		}
+	}
+
 	private FeatureExtractor<FEATURE, OBJECT> extractor;
 	private boolean force;
 
-	private HashMap<String, FEATURE> cache;
+	private BoundedCache<String, FEATURE> cache;
 
 	/**
-	 * Construct the cache {@link HashMap}. The given extractor will be used to
-	 * generate the features.
+	 * Construct the cache with no bound on the number of features. The given
+	 * extractor will be used to generate the features.
 	 * 
 	 * @param extractor
 	 *            the feature extractor
@@ -66,8 +126,9 @@ public class CachingFeatureExtractor<FEATURE, OBJECT extends Identifiable>
 	}
 
 	/**
-	 * Construct the cache {@link HashMap} The given extractor will be used to
-	 * generate the features. Optionally, all features can be regenerated.
+	 * Construct the cache with no bound on the number of features. The given
+	 * extractor will be used to generate the features. Optionally, all
+	 * features can be regenerated.
 	 * 
 	 * @param extractor
 	 *            the feature extractor
@@ -76,26 +137,67 @@ public class CachingFeatureExtractor<FEATURE, OBJECT extends Identifiable>
 	 *            rather than being loaded.
 	 */
 	public CachingFeatureExtractor(FeatureExtractor<FEATURE, OBJECT> extractor, boolean force) {
-		this.cache = new HashMap<String, FEATURE>();
+		this(extractor, new BoundedCache<String, FEATURE>(Long.MAX_VALUE, Policy.LRU), force);
+	}
+
+	/**
+	 * Construct the cache such that it holds at most the given number of
+	 * features, evicting features with the Window-TinyLFU policy. The given
+	 * extractor will be used to generate the features.
+	 * 
+	 * @param extractor
+	 *            the feature extractor
+	 * @param maxFeatures
+	 *            the maximum number of features to cache
+	 */
+	public CachingFeatureExtractor(FeatureExtractor<FEATURE, OBJECT> extractor, long maxFeatures) {
+		this(extractor, new BoundedCache<String, FEATURE>(maxFeatures), false);
+	}
+
+	/**
+	 * Construct using the given cache. The given extractor will be used to
+	 * generate the features. Optionally, all features can be regenerated.
+	 * 
+	 * @param extractor
+	 *            the feature extractor
+	 * @param cache
+	 *            the cache of features keyed by the identifier of each object
+	 * @param force
+	 *            if true, then all features will be regenerated and saved,
+	 *            rather than being loaded.
+	 */
+	public CachingFeatureExtractor(FeatureExtractor<FEATURE, OBJECT> extractor, BoundedCache<String, FEATURE> cache,
+			boolean force)
+	{
+		this.cache = cache;
 		this.extractor = extractor;
 		this.force = force;
 	}
 
 	@Override
-	public FEATURE extractFeature(OBJECT object) {
-		final FEATURE cachedFeature = this.cache.get(object.getID());
-
-		FEATURE feature = null;
-		if (!force && cachedFeature != null) {
-			feature = cachedFeature;
-
+	public FEATURE extractFeature(final OBJECT object) {
+		if (force) {
+			final FEATURE feature = extractor.extractFeature(object);
 			if (feature != null)
-				return feature;
+				this.cache.put(object.getID(), feature);
+			return feature;
 		}
 
-		feature = extractor.extractFeature(object);
-		this.cache.put(object.getID(), feature);
-		return feature;
+		return this.cache.get(object.getID(), new Function<String, FEATURE>() {
+			@Override
+			public FEATURE apply(String id) {
+				return extractor.extractFeature(object);
+			}
+		});
+	}
+
+	/**
+	 * Get the underlying cache; for example to inspect its statistics.
+	 * 
+	 * @return the cache
+	 */
+	public BoundedCache<String, FEATURE> getCache() {
+		return cache;
 	}
 
 	@Override
@@ -43,6 +43,12 @@ import org.openimaj.io.WriteableBinary;
  * A simple wrapper for a feature extractor that caches the extracted feature to
  * disk. If a feature has already been generated for a given object, it will be
  * re-read from disk rather than being re-generated.
+ * <p>
+ * One file is written for each object; for large datasets a
+ * {@link PackedDiskCachingFeatureExtractor}, which packs the features into a
+ * small number of large files, is more efficient. Existing caches can be
+ * moved into a {@link PackedFeatureStore} with
+ * {@link PackedFeatureStore#importDiskCache(File)}.
  *
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  *
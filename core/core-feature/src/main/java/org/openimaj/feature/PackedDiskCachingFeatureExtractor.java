@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.feature;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openimaj.data.identity.Identifiable;
+
+/**
+ * A wrapper for a feature extractor that caches the extracted features in a
+ * {@link PackedFeatureStore}. If a feature has already been generated for a
+ * given object, it will be re-read from the store rather than being
+ * re-generated. Unlike the {@link DiskCachingFeatureExtractor}, which writes a
+ * file per object, all the features are packed into a small number of large
+ * files.
+ * <p>
+ * This extractor is thread-safe. If the same object might be requested by
+ * multiple threads at the same time, wrapping this extractor in a
+ * {@link CachingFeatureExtractor} ensures that the feature is only extracted
+ * once, and also gives a two-level memory and disk cache.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ * 
+ * @param <FEATURE>
+ *            Type of feature
+ * @param <OBJECT>
+ *            Type of object
+ */
+public class PackedDiskCachingFeatureExtractor<FEATURE, OBJECT extends Identifiable>
+		implements
+		FeatureExtractor<FEATURE, OBJECT>, Closeable
+{
+	private static Logger logger = LogManager.getLogger(PackedDiskCachingFeatureExtractor.class);
+
+	private PackedFeatureStore<FEATURE> store;
+	private FeatureExtractor<FEATURE, OBJECT> extractor;
+	private boolean force;
+
+	/**
+	 * Construct the cache in the given directory. The given extractor will be
+	 * used to generate the features.
+	 * 
+	 * @param cacheDir
+	 *            the location of the cache
+	 * @param extractor
+	 *            the feature extractor
+	 * @throws IOException
+	 *             if the store can't be opened
+	 */
+	public PackedDiskCachingFeatureExtractor(File cacheDir, FeatureExtractor<FEATURE, OBJECT> extractor)
+			throws IOException
+	{
+		this(new PackedFeatureStore<FEATURE>(cacheDir), extractor, false);
+	}
+
+	/**
+	 * Construct the cache using the given store. The given extractor will be
+	 * used to generate the features. Optionally, all features can be
+	 * regenerated.
+	 * 
+	 * @param store
+	 *            the feature store
+	 * @param extractor
+	 *            the feature extractor
+	 * @param force
+	 *            if true, then all features will be regenerated and saved,
+	 *            rather than being loaded.
+	 */
+	public PackedDiskCachingFeatureExtractor(PackedFeatureStore<FEATURE> store,
+			FeatureExtractor<FEATURE, OBJECT> extractor, boolean force)
+	{
+		this.store = store;
+		this.extractor = extractor;
+		this.force = force;
+	}
+
+	@Override
+	public FEATURE extractFeature(OBJECT object) {
+		final String id = object.getID();
+
+		if (!force) {
+			try {
+				final FEATURE feature = store.get(id);
+
+				if (feature != null)
+					return feature;
+			} catch (final IOException e) {
+				logger.warn("Error reading from cache. Feature will be regenerated.", e);
+			}
+		}
+
+		final FEATURE feature = extractor.extractFeature(object);
+
+		if (feature != null) {
+			try {
+				store.put(id, feature);
+			} catch (final IOException e) {
+				logger.warn("Caching of the feature for the " + id + " object failed", e);
+			}
+		}
+
+		return feature;
+	}
+
+	/**
+	 * Get the underlying store; for example to use the cached features as a
+	 * dataset with {@link PackedFeatureStore#asDataset()}.
+	 * 
+	 * @return the store
+	 */
+	public PackedFeatureStore<FEATURE> getStore() {
+		return store;
+	}
+
+	/**
+	 * Close the underlying store
+	 */
+	@Override
+	public void close() throws IOException {
+		store.close();
+	}
+
+	@Override
+	public String toString() {
+		return this.extractor.toString();
+	}
+}
@@ -0,0 +1,835 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.feature;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openimaj.data.dataset.ListDataset;
+import org.openimaj.io.IOUtils;
+import org.openimaj.io.ReadableBinary;
+import org.openimaj.io.WriteableBinary;
+
+/**
+ * A persistent store of features keyed by identifier, held in a small number of
+ * large append-only segment files in a directory rather than in one file per
+ * feature (as the {@link DiskCachingFeatureExtractor} does).
+ * <p>
+ * Each record in a segment holds the identifier, the serialised feature and a
+ * checksum. Features that implement both {@link WriteableBinary} and
+ * {@link ReadableBinary} are serialised in the same way as
+ * {@link IOUtils#writeBinaryFull(File, WriteableBinary)}; other features are
+ * serialised with {@link IOUtils#write(Object, java.io.DataOutput)}. Writing a
+ * feature with an identifier that already exists supersedes the existing
+ * record; the space used by superseded and removed records is reclaimed by
+ * {@link #compact()}.
+ * <p>
+ * An in-memory index maps each identifier to the location of its latest
+ * record. The index is checkpointed to the directory when the store is
+ * flushed or closed, so re-opening a store only needs to read the checkpoint
+ * and scan any records appended after it. If the store wasn't closed cleanly
+ * the segments are scanned, and any partially written record at the end of
+ * the last segment is discarded.
+ * <p>
+ * Segments other than the one currently being appended to are memory-mapped
+ * for reading. All the methods of this class are thread-safe; features can be
+ * read and written concurrently from many threads. Only one process can open a
+ * store at a time.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ * 
+ * @param <FEATURE>
+ *            Type of feature
+ */
+public class PackedFeatureStore<FEATURE> implements Closeable {
+	private static final Logger logger = LogManager.getLogger(PackedFeatureStore.class);
+
+	/**
+	 * The default maximum size of each segment file (1GB)
+	 */
+	public static final long DEFAULT_SEGMENT_SIZE = 1L << 30;
+
+	private static final int RECORD_MAGIC = 0x50465352; // "PFSR"
+	private static final int INDEX_MAGIC = 0x50465349; // "PFSI"
+	private static final int HEADER_LENGTH = 17;
+
+	private static final byte TOMBSTONE = 0;
+	private static final byte BINARY = 1;
+	private static final byte OBJECT = 2;
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".dat";
+	private static final String INDEX_FILE = "index.dat";
+	private static final String LOCK_FILE = ".lock";
+
+	/**
+	 * Location of the latest record for an identifier
+	 */
+	private static final class Entry {
+		final int segment;
+		final long offset;
+		final int length;
+		final byte type;
+
+		Entry(int segment, long offset, int length, byte type) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.type = type;
+		}
+	}
+
+	private static final class Segment {
+		final int id;
+		final File file;
+		final RandomAccessFile raf;
+		final FileChannel channel;
+		long length;
+
+		// read without locking, so must be safely published
+		volatile MappedByteBuffer mapped;
+
+		Segment(int id, File file) throws IOException {
+			this.id = id;
+			this.file = file;
+			this.raf = new RandomAccessFile(file, "rw");
+			this.channel = raf.getChannel();
+			this.length = channel.size();
+		}
+
+		void seal() throws IOException {
+			if (mapped == null && length > 0)
+				mapped = channel.map(MapMode.READ_ONLY, 0, length);
+		}
+
+		void read(long offset, byte[] out) throws IOException {
+			final MappedByteBuffer m = mapped;
+
+			if (m != null) {
+				final ByteBuffer buf = m.duplicate();
+				buf.position((int) offset);
+				buf.get(out);
+			} else {
+				final ByteBuffer buf = ByteBuffer.wrap(out);
+				while (buf.hasRemaining()) {
+					if (channel.read(buf, offset + buf.position()) < 0)
+						throw new EOFException();
+				}
+			}
+		}
+
+		void close() throws IOException {
+			mapped = null;
+			raf.close();
+		}
+	}
+
+	private final File directory;
+	private final long maxSegmentSize;
+	private final RandomAccessFile lockFile;
+	private final FileLock lock;
+
+	private final ConcurrentHashMap<String, Entry> index = new ConcurrentHashMap<String, Entry>();
+	private final Map<Integer, Segment> segments = new ConcurrentHashMap<Integer, Segment>();
+	private final ReentrantReadWriteLock storeLock = new ReentrantReadWriteLock();
+	private final Object appendLock = new Object();
+	private Segment active;
+	private boolean closed;
+
+	/**
+	 * Open (or create) the store in the given directory, using the default
+	 * maximum segment size.
+	 * 
+	 * @param directory
+	 *            the directory
+	 * @throws IOException
+	 *             if the store can't be opened, or is already open in another
+	 *             process
+	 */
+	public PackedFeatureStore(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Open (or create) the store in the given directory. New segment files
+	 * are started once the current one exceeds the given size.
+	 * 
+	 * @param directory
+	 *            the directory
+	 * @param maxSegmentSize
+	 *            the maximum size of a segment in bytes (at most
+	 *            {@link Integer#MAX_VALUE})
+	 * @throws IOException
+	 *             if the store can't be opened, or is already open in another
+	 *             process
+	 */
+	public PackedFeatureStore(File directory, long maxSegmentSize) throws IOException {
+		if (maxSegmentSize <= 0 || maxSegmentSize > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Segment size must be between 1 and Integer.MAX_VALUE");
+
+		this.directory = directory;
+		this.maxSegmentSize = maxSegmentSize;
+
+		directory.mkdirs();
+		if (!directory.isDirectory())
+			throw new IOException("Unable to create directory " + directory);
+
+		lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+		FileLock l = null;
+		try {
+			l = lockFile.getChannel().tryLock();
+		} catch (final OverlappingFileLockException e) {
+			l = null;
+		}
+		if (l == null) {
+			lockFile.close();
+			throw new IOException("The feature store in " + directory + " is already open");
+		}
+		lock = l;
+
+		try {
+			open();
+		} catch (final IOException e) {
+			closeSegments();
+			lock.release();
+			lockFile.close();
+			throw e;
+		}
+	}
+
+	private void open() throws IOException {
+		final TreeMap<Integer, File> files = new TreeMap<Integer, File>();
+		final File[] listing = directory.listFiles();
+		if (listing != null) {
+			for (final File f : listing) {
+				final String name = f.getName();
+				if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+					try {
+						files.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+								name.length() - SEGMENT_SUFFIX.length())), f);
+					} catch (final NumberFormatException e) {
+						// not a segment
+					}
+				}
+			}
+		}
+
+		for (final Map.Entry<Integer, File> e : files.entrySet())
+			segments.put(e.getKey(), new Segment(e.getKey(), e.getValue()));
+
+		final Map<Integer, Long> checkpointed = readCheckpoint();
+
+		for (final Segment s : sortedSegments()) {
+			final Long start = checkpointed == null ? null : checkpointed.get(s.id);
+			scan(s, start == null ? 0 : start, s.id == files.lastKey());
+		}
+
+		if (files.isEmpty())
+			active = newSegment(0);
+		else
+			active = segments.get(files.lastKey());
+
+		for (final Segment s : segments.values())
+			if (s != active)
+				s.seal();
+	}
+
+	/**
+	 * Read the index checkpoint if it is consistent with the segments
+	 * 
+	 * @return the length of each segment covered by the checkpoint, or null
+	 *         if the checkpoint can't be used
+	 */
+	private Map<Integer, Long> readCheckpoint() {
+		final File indexFile = new File(directory, INDEX_FILE);
+		if (!indexFile.exists())
+			return null;
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+
+			if (in.readInt() != INDEX_MAGIC)
+				return null;
+
+			final Map<Integer, Long> lengths = new TreeMap<Integer, Long>();
+			final int nsegments = in.readInt();
+			for (int i = 0; i < nsegments; i++) {
+				final int id = in.readInt();
+				final long length = in.readLong();
+				final Segment s = segments.get(id);
+
+				if (s == null || s.length < length)
+					return null;
+
+				lengths.put(id, length);
+			}
+
+			final int nentries = in.readInt();
+			final Map<String, Entry> entries = new TreeMap<String, Entry>();
+			for (int i = 0; i < nentries; i++) {
+				final String key = in.readUTF();
+				final int segment = in.readInt();
+				final long offset = in.readLong();
+				final int length = in.readInt();
+				final byte type = in.readByte();
+				entries.put(key, new Entry(segment, offset, length, type));
+			}
+
+			index.putAll(entries);
+			return lengths;
+		} catch (final IOException e) {
+			logger.warn("Unable to read the index of the feature store in " + directory + "; it will be rebuilt");
+			index.clear();
+			return null;
+		} finally {
+			if (in != null)
+				try {
+					in.close();
+				} catch (final IOException e) {
+				}
+		}
+	}
+
+	/**
+	 * Scan the records of a segment from the given offset, updating the index.
+	 * A damaged record at the end of the last segment is truncated.
+	 */
+	private void scan(Segment s, long start, boolean last) throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(s.file)));
+		long offset = start;
+
+		try {
+			long skipped = 0;
+			while (skipped < start)
+				skipped += in.skip(start - skipped);
+
+			final CRC32 crc = new CRC32();
+			while (offset < s.length) {
+				if (s.length - offset < HEADER_LENGTH)
+					break;
+
+				final int magic = in.readInt();
+				final int keyLength = in.readInt();
+				final int dataLength = in.readInt();
+				final byte type = in.readByte();
+				final int checksum = in.readInt();
+
+				if (magic != RECORD_MAGIC || keyLength < 0 || dataLength < 0
+						|| offset + HEADER_LENGTH + keyLength + dataLength > s.length)
+					break;
+
+				final byte[] key = new byte[keyLength];
+				final byte[] data = new byte[dataLength];
+				in.readFully(key);
+				in.readFully(data);
+
+				crc.reset();
+				crc.update(key);
+				crc.update(data);
+				if ((int) crc.getValue() != checksum)
+					break;
+
+				final String id = new String(key, "UTF-8");
+				final long dataOffset = offset + HEADER_LENGTH + keyLength;
+				if (type == TOMBSTONE)
+					index.remove(id);
+				else
+					index.put(id, new Entry(s.id, dataOffset, dataLength, type));
+
+				offset = dataOffset + dataLength;
+			}
+		} finally {
+			in.close();
+		}
+
+		if (offset < s.length) {
+			if (last) {
+				logger.warn("Discarding " + (s.length - offset) + " bytes of damaged data at the end of " + s.file);
+				s.channel.truncate(offset);
+				s.length = offset;
+			} else {
+				throw new IOException("The feature store segment " + s.file + " is damaged at offset " + offset);
+			}
+		}
+	}
+
+	private List<Segment> sortedSegments() {
+		final List<Segment> list = new ArrayList<Segment>(segments.values());
+		Collections.sort(list, new Comparator<Segment>() {
+			@Override
+			public int compare(Segment o1, Segment o2) {
+				return o1.id < o2.id ? -1 : (o1.id == o2.id ? 0 : 1);
+			}
+		});
+		return list;
+	}
+
+	private Segment newSegment(int id) throws IOException {
+		final Segment s = new Segment(id, new File(directory, String.format("%s%06d%s", SEGMENT_PREFIX, id,
+				SEGMENT_SUFFIX)));
+		segments.put(id, s);
+		return s;
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed)
+			throw new IOException("The feature store has been closed");
+	}
+
+	/**
+	 * Test whether the store contains a feature for the given identifier
+	 * 
+	 * @param id
+	 *            the identifier
+	 * @return true if there is a feature for the identifier; false otherwise
+	 */
+	public boolean contains(String id) {
+		return index.containsKey(id);
+	}
+
+	/**
+	 * @return the number of features in the store
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	/**
+	 * Get the feature with the given identifier
+	 * 
+	 * @param id
+	 *            the identifier
+	 * @return the feature, or null if there is no feature with the identifier
+	 * @throws IOException
+	 *             if an error occurs reading the feature
+	 */
+	public FEATURE get(String id) throws IOException {
+		storeLock.readLock().lock();
+		try {
+			ensureOpen();
+
+			final Entry e = index.get(id);
+			if (e == null)
+				return null;
+
+			final byte[] data = new byte[e.length];
+			segments.get(e.segment).read(e.offset, data);
+
+			return decode(e.type, data);
+		} finally {
+			storeLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Add a feature to the store, replacing any existing feature with the
+	 * same identifier.
+	 * 
+	 * @param id
+	 *            the identifier
+	 * @param feature
+	 *            the feature
+	 * @throws IOException
+	 *             if an error occurs writing the feature
+	 */
+	public void put(String id, FEATURE feature) throws IOException {
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final DataOutputStream dos = new DataOutputStream(bos);
+		final byte type;
+
+		if (feature instanceof WriteableBinary && feature instanceof ReadableBinary) {
+			type = BINARY;
+			dos.writeUTF(feature.getClass().getName());
+			((WriteableBinary) feature).writeBinary(dos);
+		} else {
+			type = OBJECT;
+			IOUtils.write(feature, dos);
+		}
+		dos.flush();
+
+		append(id, type, bos.toByteArray());
+	}
+
+	/**
+	 * Remove the feature with the given identifier from the store.
+	 * 
+	 * @param id
+	 *            the identifier
+	 * @throws IOException
+	 *             if an error occurs writing to the store
+	 */
+	public void remove(String id) throws IOException {
+		if (index.containsKey(id))
+			append(id, TOMBSTONE, new byte[0]);
+	}
+
+	private void append(String id, byte type, byte[] data) throws IOException {
+		final byte[] key = id.getBytes("UTF-8");
+		final CRC32 crc = new CRC32();
+		crc.update(key);
+		crc.update(data);
+
+		final ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + key.length + data.length);
+		record.putInt(RECORD_MAGIC);
+		record.putInt(key.length);
+		record.putInt(data.length);
+		record.put(type);
+		record.putInt((int) crc.getValue());
+		record.put(key);
+		record.put(data);
+		record.flip();
+
+		storeLock.readLock().lock();
+		try {
+			ensureOpen();
+
+			synchronized (appendLock) {
+				if (active.length > 0 && active.length + record.remaining() > maxSegmentSize) {
+					active.seal();
+					active = newSegment(active.id + 1);
+				}
+
+				final long offset = active.length;
+				while (record.hasRemaining())
+					active.channel.write(record, offset + record.position());
+				active.length += record.limit();
+
+				if (type == TOMBSTONE)
+					index.remove(id);
+				else
+					index.put(id, new Entry(active.id, offset + HEADER_LENGTH + key.length, data.length, type));
+			}
+		} finally {
+			storeLock.readLock().unlock();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private FEATURE decode(byte type, byte[] data) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+		if (type == BINARY) {
+			final ReadableBinary object = IOUtils.newInstance(in.readUTF());
+			object.readBinary(in);
+			return (FEATURE) object;
+		}
+
+		return (FEATURE) IOUtils.read(in);
+	}
+
+	/**
+	 * Write all the data to the disk, and checkpoint the index so that the
+	 * store can be re-opened quickly.
+	 * 
+	 * @throws IOException
+	 *             if an error occurs
+	 */
+	public void flush() throws IOException {
+		storeLock.writeLock().lock();
+		try {
+			ensureOpen();
+			writeCheckpoint();
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+	}
+
+	private void writeCheckpoint() throws IOException {
+		active.channel.force(false);
+
+		final File tmp = new File(directory, INDEX_FILE + ".tmp");
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(INDEX_MAGIC);
+
+			final List<Segment> sorted = sortedSegments();
+			out.writeInt(sorted.size());
+			for (final Segment s : sorted) {
+				out.writeInt(s.id);
+				out.writeLong(s.length);
+			}
+
+			out.writeInt(index.size());
+			for (final Map.Entry<String, Entry> e : index.entrySet()) {
+				out.writeUTF(e.getKey());
+				out.writeInt(e.getValue().segment);
+				out.writeLong(e.getValue().offset);
+				out.writeInt(e.getValue().length);
+				out.writeByte(e.getValue().type);
+			}
+		} finally {
+			out.close();
+		}
+
+		final File indexFile = new File(directory, INDEX_FILE);
+		if (indexFile.exists() && !indexFile.delete())
+			throw new IOException("Unable to replace " + indexFile);
+		if (!tmp.renameTo(indexFile))
+			throw new IOException("Unable to rename " + tmp + " to " + indexFile);
+	}
+
+	/**
+	 * Rewrite the store so that it only contains the latest record for each
+	 * feature, reclaiming the space used by superseded and removed features.
+	 * Reads and writes block whilst the store is being compacted.
+	 * 
+	 * @throws IOException
+	 *             if an error occurs
+	 */
+	public void compact() throws IOException {
+		storeLock.writeLock().lock();
+		try {
+			ensureOpen();
+
+			final List<Segment> old = sortedSegments();
+			final List<Map.Entry<String, Entry>> live = sortedEntries();
+
+			// the checkpoint refers to the old segments, so must be removed
+			// in case compaction fails part-way through
+			final File indexFile = new File(directory, INDEX_FILE);
+			if (indexFile.exists() && !indexFile.delete())
+				throw new IOException("Unable to remove " + indexFile);
+
+			active.seal();
+			active = newSegment(active.id + 1);
+
+			for (final Map.Entry<String, Entry> e : live) {
+				final Entry entry = e.getValue();
+				final byte[] data = new byte[entry.length];
+				segments.get(entry.segment).read(entry.offset, data);
+
+				append(e.getKey(), entry.type, data);
+			}
+
+			for (final Segment s : old) {
+				segments.remove(s.id);
+				s.close();
+				if (!s.file.delete())
+					logger.warn("Unable to delete old feature store segment " + s.file);
+			}
+
+			writeCheckpoint();
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+	}
+
+	private List<Map.Entry<String, Entry>> sortedEntries() {
+		final List<Map.Entry<String, Entry>> entries = new ArrayList<Map.Entry<String, Entry>>(index.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, Entry>>() {
+			@Override
+			public int compare(Map.Entry<String, Entry> o1, Map.Entry<String, Entry> o2) {
+				final Entry e1 = o1.getValue();
+				final Entry e2 = o2.getValue();
+
+				if (e1.segment != e2.segment)
+					return e1.segment < e2.segment ? -1 : 1;
+				return e1.offset < e2.offset ? -1 : (e1.offset == e2.offset ? 0 : 1);
+			}
+		});
+		return entries;
+	}
+
+	/**
+	 * Get the identifiers of the features in the store, in the order in which
+	 * the features were written.
+	 * 
+	 * @return the identifiers
+	 */
+	public List<String> getIdentifiers() {
+		final List<Map.Entry<String, Entry>> entries = sortedEntries();
+		final List<String> ids = new ArrayList<String>(entries.size());
+		for (final Map.Entry<String, Entry> e : entries)
+			ids.add(e.getKey());
+		return ids;
+	}
+
+	/**
+	 * Get a {@link ListDataset} view of the features currently in the store,
+	 * in the order in which they were written. The features are read from the
+	 * store (and deserialised) each time they are accessed. Features added to
+	 * the store after the dataset is created are not included.
+	 * 
+	 * @return a dataset of the features
+	 */
+	public ListDataset<FEATURE> asDataset() {
+		final List<String> ids = getIdentifiers();
+
+		return new FeatureStoreDataset(ids);
+	}
+
+	private class FeatureStoreDataset extends AbstractList<FEATURE> implements ListDataset<FEATURE> {
+		private final List<String> ids;
+
+		FeatureStoreDataset(List<String> ids) {
+			this.ids = ids;
+		}
+
+		@Override
+		public FEATURE getRandomInstance() {
+			return getInstance((int) (Math.random() * ids.size()));
+		}
+
+		@Override
+		public int numInstances() {
+			return ids.size();
+		}
+
+		@Override
+		public FEATURE getInstance(int index) {
+			try {
+				return PackedFeatureStore.this.get(ids.get(index));
+			} catch (final IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public FEATURE get(int index) {
+			return getInstance(index);
+		}
+
+		@Override
+		public int size() {
+			return ids.size();
+		}
+	}
+
+	/**
+	 * Import the features from the cache directory of a
+	 * {@link DiskCachingFeatureExtractor}. The identifier of each feature is
+	 * the path of its file relative to the cache directory, without the
+	 * <code>.dat</code> extension. Files that can't be read are skipped.
+	 * 
+	 * @param cacheDir
+	 *            the cache directory
+	 * @return the number of features imported
+	 * @throws IOException
+	 *             if an error occurs writing to the store
+	 */
+	public int importDiskCache(File cacheDir) throws IOException {
+		return importDiskCache(cacheDir, "");
+	}
+
+	@SuppressWarnings("unchecked")
+	private int importDiskCache(File dir, String prefix) throws IOException {
+		final File[] files = dir.listFiles();
+		if (files == null)
+			return 0;
+
+		Arrays.sort(files);
+
+		int count = 0;
+		for (final File f : files) {
+			if (f.isDirectory()) {
+				count += importDiskCache(f, prefix + f.getName() + "/");
+			} else if (f.getName().endsWith(".dat")) {
+				FEATURE feature = null;
+				try {
+					feature = (FEATURE) IOUtils.read(f);
+				} catch (final Exception e) {
+					try {
+						feature = (FEATURE) IOUtils.readFromFile(f);
+					} catch (final IOException e1) {
+						logger.warn("Unable to read cached feature " + f);
+					}
+				}
+
+				if (feature != null) {
+					final String name = f.getName();
+					put(prefix + name.substring(0, name.length() - 4), feature);
+					count++;
+				}
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Flush and close the store. The store can't be used after it has been
+	 * closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		storeLock.writeLock().lock();
+		try {
+			if (closed)
+				return;
+
+			try {
+				writeCheckpoint();
+			} finally {
+				closed = true;
+				closeSegments();
+				lock.release();
+				lockFile.close();
+			}
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+	}
+
+	private void closeSegments() throws IOException {
+		for (final Segment s : segments.values())
+			s.close();
+	}
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.feature;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openimaj.data.dataset.ListDataset;
+
+/**
+ * Tests for the {@link PackedFeatureStore}
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class PackedFeatureStoreTest {
+	/**
+	 * Temporary folder for the stores
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static DoubleFV feature(int i) {
+		return new DoubleFV(new double[] { i, i * 0.5, -i });
+	}
+
+	private static long directorySize(File dir) {
+		long size = 0;
+		for (final File f : dir.listFiles())
+			if (f.getName().startsWith("segment-"))
+				size += f.length();
+		return size;
+	}
+
+	/**
+	 * Test writing, overwriting, removing and re-opening, with features spread
+	 * over several segments
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testReadWrite() throws IOException {
+		final File dir = folder.newFolder("store");
+
+		PackedFeatureStore<DoubleFV> store = new PackedFeatureStore<DoubleFV>(dir, 200);
+		for (int i = 0; i < 50; i++)
+			store.put("id" + i, feature(i));
+		store.put("id3", feature(300));
+		store.remove("id4");
+
+		assertEquals(49, store.size());
+		assertArrayEquals(feature(7).values, store.get("id7").values, 0);
+		assertArrayEquals(feature(300).values, store.get("id3").values, 0);
+		assertNull(store.get("id4"));
+		assertTrue(dir.listFiles().length > 3);
+		store.close();
+
+		store = new PackedFeatureStore<DoubleFV>(dir, 200);
+		assertEquals(49, store.size());
+		assertArrayEquals(feature(49).values, store.get("id49").values, 0);
+		assertArrayEquals(feature(300).values, store.get("id3").values, 0);
+		assertFalse(store.contains("id4"));
+
+		// the dataset is in the order of writing
+		final ListDataset<DoubleFV> dataset = store.asDataset();
+		assertEquals(49, dataset.numInstances());
+		assertArrayEquals(feature(0).values, dataset.getInstance(0).values, 0);
+		assertArrayEquals(feature(300).values, dataset.getInstance(dataset.size() - 1).values, 0);
+		store.close();
+	}
+
+	/**
+	 * Test that a store with a damaged tail and no index can be recovered
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testRecovery() throws IOException {
+		final File dir = folder.newFolder("store");
+
+		final PackedFeatureStore<DoubleFV> store = new PackedFeatureStore<DoubleFV>(dir);
+		for (int i = 0; i < 10; i++)
+			store.put("id" + i, feature(i));
+		store.close();
+
+		assertTrue(new File(dir, "index.dat").delete());
+		final File segment = new File(dir, "segment-000000.dat");
+		final long length = segment.length();
+		final FileOutputStream fos = new FileOutputStream(segment, true);
+		fos.write(new byte[] { 0x50, 0x46, 0x53, 0x52, 0, 0 });
+		fos.close();
+
+		final PackedFeatureStore<DoubleFV> recovered = new PackedFeatureStore<DoubleFV>(dir);
+		assertEquals(10, recovered.size());
+		assertEquals(length, segment.length());
+		assertArrayEquals(feature(9).values, recovered.get("id9").values, 0);
+
+		recovered.put("id10", feature(10));
+		assertArrayEquals(feature(10).values, recovered.get("id10").values, 0);
+		recovered.close();
+	}
+
+	/**
+	 * Test that compaction reclaims space and preserves the latest features
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testCompact() throws IOException {
+		final File dir = folder.newFolder("store");
+
+		PackedFeatureStore<DoubleFV> store = new PackedFeatureStore<DoubleFV>(dir, 500);
+		for (int r = 0; r < 5; r++)
+			for (int i = 0; i < 20; i++)
+				store.put("id" + i, feature(r * 100 + i));
+		store.remove("id0");
+
+		final long before = directorySize(dir);
+		store.compact();
+		assertTrue(directorySize(dir) < before / 4);
+
+		assertEquals(19, store.size());
+		for (int i = 1; i < 20; i++)
+			assertArrayEquals(feature(400 + i).values, store.get("id" + i).values, 0);
+		store.close();
+
+		store = new PackedFeatureStore<DoubleFV>(dir, 500);
+		assertEquals(19, store.size());
+		assertArrayEquals(feature(405).values, store.get("id5").values, 0);
+		store.close();
+	}
+
+	/**
+	 * Test that a store can't be opened twice
+	 * 
+	 * @throws IOException
+	 */
+	@Test(expected = IOException.class)
+	public void testLock() throws IOException {
+		final File dir = folder.newFolder("store");
+
+		final PackedFeatureStore<DoubleFV> store = new PackedFeatureStore<DoubleFV>(dir);
+		try {
+			new PackedFeatureStore<DoubleFV>(dir);
+		} finally {
+			store.close();
+		}
+	}
+}
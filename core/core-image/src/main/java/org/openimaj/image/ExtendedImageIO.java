@@ -47,6 +47,7 @@ import javax.imageio.stream.ImageInputStream;
 import javax.media.jai.JAI;
 
 import org.apache.commons.imaging.*;
+import org.openimaj.math.geometry.shape.Rectangle;
 
 import com.sun.media.jai.codec.SeekableStream;
 
@@ -235,6 +236,237 @@ class ExtendedImageIO {
 		return read(istream);
 	}
 
+	/**
+	 * The result of a reduced-resolution or region-of-interest read. The
+	 * decoded {@link #image} might not have had the requested region and
+	 * subsampling applied by the decoder (for example if the image had to be
+	 * read by a fallback decoder); in that case the region (in the
+	 * coordinates of {@link #image}) and the subsampling step that remain to
+	 * be applied when the pixels are extracted are recorded here.
+	 */
+	static class Decoded {
+		final BufferedImage image;
+		final int x;
+		final int y;
+		final int width;
+		final int height;
+		final int step;
+
+		Decoded(BufferedImage image, java.awt.Rectangle region, int step) {
+			this.image = image;
+			this.x = region.x;
+			this.y = region.y;
+			this.width = region.width;
+			this.height = region.height;
+			this.step = step;
+		}
+
+		Decoded(BufferedImage image) {
+			this(image, new java.awt.Rectangle(0, 0, image.getWidth(), image.getHeight()), 1);
+		}
+
+		/**
+		 * @return the width of the image after the region and subsampling have
+		 *         been applied
+		 */
+		int getOutputWidth() {
+			return (width + step - 1) / step;
+		}
+
+		/**
+		 * @return the height of the image after the region and subsampling
+		 *         have been applied
+		 */
+		int getOutputHeight() {
+			return (height + step - 1) / step;
+		}
+	}
+
+	/**
+	 * Read the given region of an image from a file, letting the decoder skip
+	 * pixels so that the longest side of the decoded region is no smaller than
+	 * <code>targetSize</code>. If no registered {@link ImageReader} can apply
+	 * the region and subsampling itself, the image is read in full with
+	 * {@link #read(File)} and the region and subsampling are recorded in the
+	 * returned object instead.
+	 *
+	 * @param input
+	 *            the file to read from
+	 * @param roi
+	 *            the region of interest in the coordinates of the full image,
+	 *            or null for the whole image
+	 * @param targetSize
+	 *            the minimum size of the longest side of the result; zero or
+	 *            less disables subsampling
+	 * @return the decoded image
+	 * @throws IOException
+	 *             if an error occurs during reading.
+	 */
+	static Decoded read(File input, Rectangle roi, int targetSize) throws IOException {
+		if (input == null) {
+			throw new IllegalArgumentException("input == null!");
+		}
+		if (!input.canRead()) {
+			throw new IIOException("Can't read input file!");
+		}
+
+		final ImageInputStream stream = ImageIO.createImageInputStream(input);
+		if (stream != null) {
+			try {
+				final Decoded decoded = readReduced(stream, roi, targetSize);
+				if (decoded != null)
+					return decoded;
+			} finally {
+				stream.close();
+			}
+		}
+
+		return reduce(read(input), roi, targetSize);
+	}
+
+	/**
+	 * Read the given region of an image from a stream, letting the decoder skip
+	 * pixels so that the longest side of the decoded region is no smaller than
+	 * <code>targetSize</code>. If no registered {@link ImageReader} can apply
+	 * the region and subsampling itself, the image is read in full with
+	 * {@link #read(InputStream)} and the region and subsampling are recorded in
+	 * the returned object instead.
+	 * <p>
+	 * This method <em>does not</em> close the provided <code>InputStream</code>
+	 * after the read operation has completed.
+	 *
+	 * @param input
+	 *            the stream to read from
+	 * @param roi
+	 *            the region of interest in the coordinates of the full image,
+	 *            or null for the whole image
+	 * @param targetSize
+	 *            the minimum size of the longest side of the result; zero or
+	 *            less disables subsampling
+	 * @return the decoded image
+	 * @throws IOException
+	 *             if an error occurs during reading.
+	 */
+	static Decoded read(InputStream input, Rectangle roi, int targetSize) throws IOException {
+		if (input == null) {
+			throw new IllegalArgumentException("input == null!");
+		}
+
+		final NonClosableInputStream buffer = new NonClosableInputStream(input);
+		buffer.mark(100 * 1024 * 1024);
+
+		try {
+			final ImageInputStream stream = ImageIO.createImageInputStream(buffer);
+			if (stream != null) {
+				try {
+					final Decoded decoded = readReduced(stream, roi, targetSize);
+					if (decoded != null)
+						return decoded;
+				} finally {
+					stream.close();
+				}
+			}
+		} catch (final IOException e) {
+			// fall back to the full decode below
+		}
+
+		buffer.reset();
+		return reduce(read(buffer), roi, targetSize);
+	}
+
+	/**
+	 * Try each of the registered readers for the stream in turn, asking them to
+	 * decode only the region of interest at the coarsest subsampling that
+	 * satisfies the target size.
+	 *
+	 * @return the decoded image, or null if none of the readers succeeded
+	 */
+	private static Decoded readReduced(ImageInputStream stream, Rectangle roi, int targetSize) throws IOException {
+		final Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+
+		while (readers.hasNext()) {
+			final ImageReader reader = readers.next();
+
+			try {
+				stream.seek(0);
+				reader.setInput(stream, true, true);
+
+				final java.awt.Rectangle region = clip(roi, reader.getWidth(0), reader.getHeight(0));
+				final int step = computeSubsampling(region, targetSize);
+
+				final ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceRegion(region);
+				param.setSourceSubsampling(step, step, 0, 0);
+
+				final BufferedImage image = reader.read(0, param);
+				if (image != null)
+					return new Decoded(image);
+			} catch (final Exception e) {
+				// try the next reader
+			} finally {
+				reader.dispose();
+			}
+		}
+
+		return null;
+	}
+
+	private static Decoded reduce(BufferedImage image, Rectangle roi, int targetSize) throws IOException {
+		if (image == null)
+			throw new IIOException("Unable to decode image");
+
+		final java.awt.Rectangle region = clip(roi, image.getWidth(), image.getHeight());
+
+		return new Decoded(image, region, computeSubsampling(region, targetSize));
+	}
+
+	/**
+	 * Convert the region of interest to integer pixel bounds and clip it to an
+	 * image of the given size.
+	 *
+	 * @param roi
+	 *            the region of interest; null for the whole image
+	 * @param width
+	 *            the image width
+	 * @param height
+	 *            the image height
+	 * @return the clipped region
+	 * @throws IllegalArgumentException
+	 *             if the region doesn't intersect the image
+	 */
+	static java.awt.Rectangle clip(Rectangle roi, int width, int height) {
+		if (roi == null)
+			return new java.awt.Rectangle(0, 0, width, height);
+
+		final int x0 = Math.max(0, (int) Math.floor(roi.x));
+		final int y0 = Math.max(0, (int) Math.floor(roi.y));
+		final int x1 = Math.min(width, (int) Math.ceil(roi.x + roi.width));
+		final int y1 = Math.min(height, (int) Math.ceil(roi.y + roi.height));
+
+		if (x1 <= x0 || y1 <= y0)
+			throw new IllegalArgumentException("The region of interest " + roi + " does not intersect the " + width
+					+ "x" + height + " image");
+
+		return new java.awt.Rectangle(x0, y0, x1 - x0, y1 - y0);
+	}
+
+	/**
+	 * Compute the coarsest integer subsampling step that keeps the longest
+	 * side of the region at least <code>targetSize</code> pixels.
+	 *
+	 * @param region
+	 *            the region
+	 * @param targetSize
+	 *            the target size; zero or less disables subsampling
+	 * @return the subsampling step
+	 */
+	static int computeSubsampling(java.awt.Rectangle region, int targetSize) {
+		if (targetSize <= 0)
+			return 1;
+
+		return Math.max(1, Math.max(region.width, region.height) / targetSize);
+	}
+
 	/**
 	 * Returns a <code>BufferedImage</code> as the result of decoding a supplied
 	 * <code>ImageInputStream</code> with an <code>ImageReader</code> chosen
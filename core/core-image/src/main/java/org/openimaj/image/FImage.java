@@ -161,6 +161,19 @@ public class FImage extends SingleBandImage<Float, FImage>
 		this.width = array[0].length;
 	}
 
+	/**
+	 * Create an {@link FImage} by copying the pixels of the given
+	 * {@link FlatFImage}.
+	 *
+	 * @param image
+	 *            the image to copy
+	 */
+	public FImage(final FlatFImage image)
+	{
+		this(image.width, image.height);
+		image.copyTo(this);
+	}
+
 	/**
 	 * Create an empty {@link FImage} of the given size.
 	 *
@@ -780,6 +793,17 @@ public class FImage extends SingleBandImage<Float, FImage>
 		return img;
 	}
 
+	/**
+	 * Returns a copy of this image backed by a single contiguous array.
+	 *
+	 * @see FlatFImage
+	 * @return a {@link FlatFImage} containing the pixels of this image
+	 */
+	public FlatFImage toFlatImage()
+	{
+		return new FlatFImage(this);
+	}
+
 	/**
 	 * Returns the pixels of the image as a vector (array) of floats.
 	 *
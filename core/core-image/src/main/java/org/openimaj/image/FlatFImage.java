@@ -0,0 +1,364 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image;
+
+import org.openimaj.image.Image.Field;
+import org.openimaj.math.geometry.shape.Rectangle;
+
+/**
+ * A single-band floating-point image whose pixels are held in a single flat
+ * <code>float[]</code> array, addressed through an offset and a row stride.
+ * <p>
+ * Unlike {@link FImage}, which stores one array per row, all the pixels of a
+ * {@link FlatFImage} are contiguous in memory, which gives much better locality
+ * for algorithms that sweep over the image (convolution, resampling, integral
+ * images, etc.). Because the pixel at (x, y) lives at
+ * <code>data[offset + y * stride + x]</code>, rectangular regions of interest
+ * and interlaced fields can be created as zero-copy views that share the
+ * underlying array with their parent.
+ * <p>
+ * Conversion to and from {@link FImage} is provided by
+ * {@link #FlatFImage(FImage)}, {@link #copyTo(FImage)} and {@link #toFImage()},
+ * so that processing code that still reads <code>pixels[y][x]</code> can be
+ * migrated one algorithm at a time.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class FlatFImage {
+	/** The underlying pixel data */
+	public final float[] data;
+
+	/** The index of the pixel at (0, 0) in the data array */
+	public final int offset;
+
+	/** The number of elements between vertically adjacent pixels */
+	public final int stride;
+
+	/** The width of the image */
+	public final int width;
+
+	/** The height of the image */
+	public final int height;
+
+	/**
+	 * Create an empty {@link FlatFImage} of the given size. The pixels will be
+	 * densely packed (i.e. the stride will equal the width).
+	 *
+	 * @param width
+	 *            image width (number of columns)
+	 * @param height
+	 *            image height (number of rows)
+	 */
+	public FlatFImage(int width, int height) {
+		this(new float[width * height], 0, width, width, height);
+	}
+
+	/**
+	 * Create a {@link FlatFImage} that wraps the given data. No copy is made.
+	 *
+	 * @param data
+	 *            the pixel data
+	 * @param offset
+	 *            the index of the pixel at (0, 0)
+	 * @param stride
+	 *            the number of elements between the start of consecutive rows
+	 * @param width
+	 *            image width (number of columns)
+	 * @param height
+	 *            image height (number of rows)
+	 */
+	public FlatFImage(float[] data, int offset, int stride, int width, int height) {
+		if (width < 0 || height < 0)
+			throw new IllegalArgumentException("Width and height must be non-negative");
+		if (stride < width)
+			throw new IllegalArgumentException("Stride must be at least as big as the width");
+		if (offset < 0 || (height > 0 && offset + (height - 1) * stride + width > data.length))
+			throw new IllegalArgumentException("Data array is too small for the given geometry");
+
+		this.data = data;
+		this.offset = offset;
+		this.stride = stride;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Create a densely packed {@link FlatFImage} by copying the pixels of the
+	 * given {@link FImage}.
+	 *
+	 * @param image
+	 *            the image to copy
+	 */
+	public FlatFImage(FImage image) {
+		this(image.width, image.height);
+		copyFrom(image);
+	}
+
+	/**
+	 * Get the index in {@link #data} of the pixel at the given position.
+	 *
+	 * @param x
+	 *            the x-ordinate
+	 * @param y
+	 *            the y-ordinate
+	 * @return the index of the pixel
+	 */
+	public final int index(int x, int y) {
+		return offset + y * stride + x;
+	}
+
+	/**
+	 * Get the value of the pixel at the given position.
+	 *
+	 * @param x
+	 *            the x-ordinate
+	 * @param y
+	 *            the y-ordinate
+	 * @return the pixel value
+	 */
+	public final float get(int x, int y) {
+		return data[offset + y * stride + x];
+	}
+
+	/**
+	 * Set the value of the pixel at the given position.
+	 *
+	 * @param x
+	 *            the x-ordinate
+	 * @param y
+	 *            the y-ordinate
+	 * @param value
+	 *            the new value
+	 */
+	public final void set(int x, int y, float value) {
+		data[offset + y * stride + x] = value;
+	}
+
+	/**
+	 * Test whether the rows of this image directly follow each other in the
+	 * underlying array (i.e. there is no padding between rows).
+	 *
+	 * @return true if the pixels occupy a single contiguous block
+	 */
+	public boolean isContiguous() {
+		return stride == width || height <= 1;
+	}
+
+	/**
+	 * Create a zero-copy view of a rectangular region of this image. Changes to
+	 * the view will be reflected in this image and vice-versa.
+	 *
+	 * @param x
+	 *            the x-ordinate of the top-left of the region
+	 * @param y
+	 *            the y-ordinate of the top-left of the region
+	 * @param w
+	 *            the width of the region
+	 * @param h
+	 *            the height of the region
+	 * @return the view
+	 * @throws IllegalArgumentException
+	 *             if the region is not completely within the image
+	 */
+	public FlatFImage extractROI(int x, int y, int w, int h) {
+		if (x < 0 || y < 0 || w < 0 || h < 0 || x + w > width || y + h > height)
+			throw new IllegalArgumentException("Region is not within the bounds of the image");
+
+		return new FlatFImage(data, offset + y * stride + x, stride, w, h);
+	}
+
+	/**
+	 * Create a zero-copy view of a rectangular region of this image. The
+	 * rectangle is rounded to the nearest integer coordinates.
+	 *
+	 * @see #extractROI(int, int, int, int)
+	 *
+	 * @param r
+	 *            the region
+	 * @return the view
+	 */
+	public FlatFImage extractROI(Rectangle r) {
+		return extractROI(Math.round(r.x), Math.round(r.y), Math.round(r.width), Math.round(r.height));
+	}
+
+	/**
+	 * Create a zero-copy view of one of the interlaced fields of this image.
+	 * The view has the same width and half the height of this image.
+	 *
+	 * @param f
+	 *            the field
+	 * @return the view
+	 */
+	public FlatFImage getField(Field f) {
+		final int init = f.equals(Field.ODD) ? 1 : 0;
+
+		return new FlatFImage(data, offset + init * stride, stride * 2, width, height / 2);
+	}
+
+	/**
+	 * Copy a row of pixels into the given buffer.
+	 *
+	 * @param y
+	 *            the row
+	 * @param buffer
+	 *            the buffer to fill; if null or too small a new buffer is
+	 *            created
+	 * @return the buffer
+	 */
+	public float[] getRow(int y, float[] buffer) {
+		if (buffer == null || buffer.length < width)
+			buffer = new float[width];
+
+		System.arraycopy(data, offset + y * stride, buffer, 0, width);
+
+		return buffer;
+	}
+
+	/**
+	 * Set the pixel values of a row from the given buffer.
+	 *
+	 * @param y
+	 *            the row
+	 * @param buffer
+	 *            the new values
+	 */
+	public void setRow(int y, float[] buffer) {
+		System.arraycopy(buffer, 0, data, offset + y * stride, width);
+	}
+
+	/**
+	 * Copy the pixels of the given {@link FImage} into this image. The images
+	 * must be the same size.
+	 *
+	 * @param image
+	 *            the image to copy from
+	 * @return this image
+	 */
+	public FlatFImage copyFrom(FImage image) {
+		checkSize(image);
+
+		for (int y = 0, i = offset; y < height; y++, i += stride)
+			System.arraycopy(image.pixels[y], 0, data, i, width);
+
+		return this;
+	}
+
+	/**
+	 * Copy the pixels of this image into the given {@link FImage}. The images
+	 * must be the same size.
+	 *
+	 * @param image
+	 *            the image to copy into
+	 * @return the image
+	 */
+	public FImage copyTo(FImage image) {
+		checkSize(image);
+
+		for (int y = 0, i = offset; y < height; y++, i += stride)
+			System.arraycopy(data, i, image.pixels[y], 0, width);
+
+		return image;
+	}
+
+	/**
+	 * Create a new {@link FImage} with a copy of the pixels of this image.
+	 *
+	 * @return the new image
+	 */
+	public FImage toFImage() {
+		return copyTo(new FImage(width, height));
+	}
+
+	/**
+	 * Create a densely packed copy of this image. The copy does not share data
+	 * with this image.
+	 *
+	 * @return the copy
+	 */
+	@Override
+	public FlatFImage clone() {
+		final FlatFImage out = new FlatFImage(width, height);
+
+		if (isContiguous()) {
+			System.arraycopy(data, offset, out.data, 0, width * height);
+		} else {
+			for (int y = 0, i = offset, j = 0; y < height; y++, i += stride, j += width)
+				System.arraycopy(data, i, out.data, j, width);
+		}
+
+		return out;
+	}
+
+	/**
+	 * Fill the image with the given value.
+	 *
+	 * @param value
+	 *            the value
+	 * @return this image
+	 */
+	public FlatFImage fill(float value) {
+		for (int y = 0, i = offset; y < height; y++, i += stride) {
+			final int end = i + width;
+			for (int j = i; j < end; j++)
+				data[j] = value;
+		}
+
+		return this;
+	}
+
+	/**
+	 * Find the maximum pixel value. As with {@link FImage#max()}, the result
+	 * is never less than {@link Float#MIN_VALUE}.
+	 *
+	 * @return the maximum value
+	 */
+	public float max() {
+		float max = Float.MIN_VALUE;
+
+		for (int y = 0, i = offset; y < height; y++, i += stride) {
+			final int end = i + width;
+			for (int j = i; j < end; j++)
+				if (max < data[j])
+					max = data[j];
+		}
+
+		return max;
+	}
+
+	private void checkSize(FImage image) {
+		if (image.width != width || image.height != height)
+			throw new IllegalArgumentException("Images must be the same size");
+	}
+
+	@Override
+	public String toString() {
+		return String.format("FlatFImage[width=%d, height=%d, offset=%d, stride=%d]", width, height, offset, stride);
+	}
+}
@@ -33,6 +33,7 @@ import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ComponentSampleModel;
 import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
@@ -59,6 +60,7 @@ import org.apache.commons.imaging.common.bytesource.ByteSource;
 import org.apache.commons.imaging.common.bytesource.ByteSourceInputStream;
 import org.openimaj.image.colour.ColourSpace;
 import org.openimaj.io.InputStreamObjectReader;
+import org.openimaj.math.geometry.shape.Rectangle;
 
 /**
  * A static utility class with methods for dealing with images.
@@ -342,6 +344,232 @@ public class ImageUtilities {
 		return ImageUtilities.createFImage(ExtendedImageIO.read(input));
 	}
 
+	/**
+	 * Reads an {@link FImage} from the given file, decoding it at reduced
+	 * resolution. The decoder skips pixels (with the coarsest integer
+	 * subsampling) such that the longest side of the result is no smaller than
+	 * <code>targetSize</code>; this is much cheaper than decoding the full
+	 * image and then shrinking it. If an exact size is required, follow with
+	 * a properly filtered resize (i.e. with the <code>ResizeProcessor</code>).
+	 * 
+	 * @param input
+	 *            The file to read the {@link FImage} from.
+	 * @param targetSize
+	 *            the minimum size of the longest side of the decoded image
+	 * @return An {@link FImage}
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static FImage readF(final File input, final int targetSize) throws IOException {
+		return ImageUtilities.readF(input, targetSize, null, null);
+	}
+
+	/**
+	 * Reads a region of interest of an {@link FImage} from the given file at
+	 * reduced resolution, decoding into the given image if it is not null. The
+	 * region is given in the coordinates of the full-resolution image and is
+	 * clipped to the image bounds. Only the pixels within the region are
+	 * decoded when the underlying decoder supports it, and the decoder skips
+	 * pixels such that the longest side of the result is no smaller than
+	 * <code>targetSize</code>.
+	 * <p>
+	 * If <code>dest</code> has the same size as the decoded image its pixel
+	 * buffer is reused; this allows a loop over many images to avoid
+	 * allocating new images for each one.
+	 * 
+	 * @param input
+	 *            The file to read the {@link FImage} from.
+	 * @param targetSize
+	 *            the minimum size of the longest side of the decoded image;
+	 *            zero or less to decode at full resolution
+	 * @param roi
+	 *            the region of interest, or null for the whole image
+	 * @param dest
+	 *            the image to decode into, or null to create a new image
+	 * @return the decoded image (<code>dest</code> if it was not null)
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static FImage readF(final File input, final int targetSize, final Rectangle roi, final FImage dest)
+			throws IOException
+	{
+		return ImageUtilities.assign(ExtendedImageIO.read(input, roi, targetSize), dest);
+	}
+
+	/**
+	 * Reads a region of interest of an {@link FImage} from the given input
+	 * stream at reduced resolution, decoding into the given image if it is not
+	 * null. See {@link #readF(File, int, Rectangle, FImage)} for details.
+	 * 
+	 * @param input
+	 *            The input stream to read the {@link FImage} from.
+	 * @param targetSize
+	 *            the minimum size of the longest side of the decoded image;
+	 *            zero or less to decode at full resolution
+	 * @param roi
+	 *            the region of interest, or null for the whole image
+	 * @param dest
+	 *            the image to decode into, or null to create a new image
+	 * @return the decoded image (<code>dest</code> if it was not null)
+	 * @throws IOException
+	 *             if the stream cannot be read
+	 */
+	public static FImage readF(final InputStream input, final int targetSize, final Rectangle roi, final FImage dest)
+			throws IOException
+	{
+		return ImageUtilities.assign(ExtendedImageIO.read(input, roi, targetSize), dest);
+	}
+
+	/**
+	 * Reads an {@link MBFImage} from the given file, decoding it at reduced
+	 * resolution. See {@link #readF(File, int)} for details.
+	 * 
+	 * @param input
+	 *            The file to read the {@link MBFImage} from.
+	 * @param targetSize
+	 *            the minimum size of the longest side of the decoded image
+	 * @return An {@link MBFImage}
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static MBFImage readMBF(final File input, final int targetSize) throws IOException {
+		return ImageUtilities.readMBF(input, targetSize, null, null);
+	}
+
+	/**
+	 * Reads a region of interest of an {@link MBFImage} from the given file at
+	 * reduced resolution, decoding into the given image if it is not null. If
+	 * <code>dest</code> is null, an RGB image is created; otherwise the image
+	 * is decoded into the bands of <code>dest</code> (which must be RGB or
+	 * RGBA), reusing them if their size matches. See
+	 * {@link #readF(File, int, Rectangle, FImage)} for details of the region
+	 * and target size.
+	 * 
+	 * @param input
+	 *            The file to read the {@link MBFImage} from.
+	 * @param targetSize
+	 *            the minimum size of the longest side of the decoded image;
+	 *            zero or less to decode at full resolution
+	 * @param roi
+	 *            the region of interest, or null for the whole image
+	 * @param dest
+	 *            the image to decode into, or null to create a new image
+	 * @return the decoded image (<code>dest</code> if it was not null)
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static MBFImage readMBF(final File input, final int targetSize, final Rectangle roi, final MBFImage dest)
+			throws IOException
+	{
+		return ImageUtilities.assign(ExtendedImageIO.read(input, roi, targetSize), dest);
+	}
+
+	/**
+	 * Reads a region of interest of an {@link MBFImage} from the given input
+	 * stream at reduced resolution, decoding into the given image if it is not
+	 * null. See {@link #readMBF(File, int, Rectangle, MBFImage)} for details.
+	 * 
+	 * @param input
+	 *            The input stream to read the {@link MBFImage} from.
+	 * @param targetSize
+	 *            the minimum size of the longest side of the decoded image;
+	 *            zero or less to decode at full resolution
+	 * @param roi
+	 *            the region of interest, or null for the whole image
+	 * @param dest
+	 *            the image to decode into, or null to create a new image
+	 * @return the decoded image (<code>dest</code> if it was not null)
+	 * @throws IOException
+	 *             if the stream cannot be read
+	 */
+	public static MBFImage readMBF(final InputStream input, final int targetSize, final Rectangle roi,
+			final MBFImage dest) throws IOException
+	{
+		return ImageUtilities.assign(ExtendedImageIO.read(input, roi, targetSize), dest);
+	}
+
+	private static FImage assign(final ExtendedImageIO.Decoded decoded, final FImage dest) {
+		final int w = decoded.getOutputWidth();
+		final int h = decoded.getOutputHeight();
+		final int[] data = ImageUtilities.getPackedARGB(decoded);
+
+		if (dest == null)
+			return new FImage(data, w, h);
+		return dest.internalAssign(data, w, h);
+	}
+
+	private static MBFImage assign(final ExtendedImageIO.Decoded decoded, final MBFImage dest) {
+		final int w = decoded.getOutputWidth();
+		final int h = decoded.getOutputHeight();
+		final int[] data = ImageUtilities.getPackedARGB(decoded);
+
+		if (dest == null)
+			return new MBFImage(data, w, h, false);
+		return dest.internalAssign(data, w, h);
+	}
+
+	/**
+	 * Extract the (subsampled) region of a decoded image as packed ARGB
+	 * integers. For the common 8-bit RGB(A) layouts produced by the decoders
+	 * the samples are read straight from the raster, avoiding the full-size
+	 * ARGB copy made by {@link #createWorkingImage(BufferedImage)}; other
+	 * layouts go through the working image as before so that colour
+	 * conversion is unchanged.
+	 */
+	private static int[] getPackedARGB(final ExtendedImageIO.Decoded decoded) {
+		final BufferedImage bimg = decoded.image;
+		final int step = decoded.step;
+		final int ow = decoded.getOutputWidth();
+		final int oh = decoded.getOutputHeight();
+		final int[] data = new int[ow * oh];
+
+		final boolean alpha;
+		switch (bimg.getType()) {
+		case BufferedImage.TYPE_INT_RGB:
+		case BufferedImage.TYPE_INT_BGR:
+		case BufferedImage.TYPE_3BYTE_BGR:
+			alpha = false;
+			break;
+		case BufferedImage.TYPE_INT_ARGB:
+		case BufferedImage.TYPE_4BYTE_ABGR:
+			alpha = true;
+			break;
+		default:
+			final BufferedImage working = ImageUtilities.createWorkingImage(
+					bimg.getSubimage(decoded.x, decoded.y, decoded.width, decoded.height));
+			final int[] full = working.getRGB(0, 0, decoded.width, decoded.height, null, 0, decoded.width);
+
+			if (step == 1)
+				return full;
+
+			for (int y = 0, i = 0; y < oh; y++)
+				for (int x = 0, j = y * step * decoded.width; x < ow; x++, j += step)
+					data[i++] = full[j];
+
+			return data;
+		}
+
+		// the raster bands are in R, G, B(, A) order for all of the above
+		final Raster raster = bimg.getRaster();
+		final int nb = alpha ? 4 : 3;
+		final int[] row = new int[decoded.width * nb];
+		final int inc = step * nb;
+
+		for (int y = 0, i = 0; y < oh; y++) {
+			raster.getPixels(decoded.x, decoded.y + y * step, decoded.width, 1, row);
+
+			if (alpha) {
+				for (int x = 0, j = 0; x < ow; x++, j += inc)
+					data[i++] = (row[j + 3] << 24) | (row[j] << 16) | (row[j + 1] << 8) | row[j + 2];
+			} else {
+				for (int x = 0, j = 0; x < ow; x++, j += inc)
+					data[i++] = 0xff000000 | (row[j] << 16) | (row[j + 1] << 8) | row[j + 2];
+			}
+		}
+
+		return data;
+	}
+
 	/**
 	 * Reads an {@link MBFImage} from the given file.
 	 * 
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openimaj.image.Image.Field;
+
+/**
+ * Tests for {@link FlatFImage}
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class FlatFImageTest {
+	private FImage image;
+
+	/**
+	 * Setup
+	 */
+	@Before
+	public void setup() {
+		image = new FImage(7, 5);
+		for (int y = 0; y < image.height; y++)
+			for (int x = 0; x < image.width; x++)
+				image.pixels[y][x] = y * 10 + x;
+	}
+
+	/**
+	 * Test conversion to and from {@link FImage}
+	 */
+	@Test
+	public void testRoundTrip() {
+		final FlatFImage flat = image.toFlatImage();
+
+		assertTrue(flat.isContiguous());
+		assertEquals(image.width, flat.width);
+		assertEquals(image.height, flat.height);
+
+		for (int y = 0; y < image.height; y++)
+			for (int x = 0; x < image.width; x++)
+				assertEquals(image.pixels[y][x], flat.get(x, y), 0);
+
+		final FImage back = flat.toFImage();
+		for (int y = 0; y < image.height; y++)
+			for (int x = 0; x < image.width; x++)
+				assertEquals(image.pixels[y][x], back.pixels[y][x], 0);
+	}
+
+	/**
+	 * Test that ROIs share data with their parent
+	 */
+	@Test
+	public void testROIView() {
+		final FlatFImage flat = image.toFlatImage();
+		final FlatFImage roi = flat.extractROI(2, 1, 3, 2);
+
+		assertFalse(roi.isContiguous());
+		assertEquals(12, roi.get(0, 0), 0);
+		assertEquals(24, roi.get(2, 1), 0);
+
+		roi.set(1, 1, -1);
+		assertEquals(-1, flat.get(3, 2), 0);
+
+		final FImage roiCopy = roi.toFImage();
+		assertEquals(12, roiCopy.pixels[0][0], 0);
+		assertEquals(-1, roiCopy.pixels[1][1], 0);
+
+		final FlatFImage dense = roi.clone();
+		assertTrue(dense.isContiguous());
+		dense.set(0, 0, 100);
+		assertEquals(12, flat.get(2, 1), 0);
+	}
+
+	/**
+	 * Test that fields share data with their parent
+	 */
+	@Test
+	public void testFieldView() {
+		final FlatFImage flat = image.toFlatImage();
+		final FlatFImage even = flat.getField(Field.EVEN);
+		final FlatFImage odd = flat.getField(Field.ODD);
+
+		assertEquals(2, even.height);
+		assertEquals(2, odd.height);
+
+		final FImage evenCopy = image.getField(Field.EVEN);
+		final FImage oddCopy = image.getField(Field.ODD);
+		for (int y = 0; y < 2; y++) {
+			for (int x = 0; x < image.width; x++) {
+				assertEquals(evenCopy.pixels[y][x], even.get(x, y), 0);
+				assertEquals(oddCopy.pixels[y][x], odd.get(x, y), 0);
+			}
+		}
+
+		odd.fill(0);
+		assertEquals(0, flat.get(4, 3), 0);
+		assertEquals(24, flat.get(4, 2), 0);
+	}
+
+	/**
+	 * Test invalid regions are rejected
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadROI() {
+		image.toFlatImage().extractROI(5, 0, 3, 1);
+	}
+}
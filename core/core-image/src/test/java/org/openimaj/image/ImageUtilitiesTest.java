@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openimaj.math.geometry.shape.Rectangle;
+
+/**
+ * Tests for the reduced-resolution and region-of-interest reading methods of
+ * {@link ImageUtilities}.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class ImageUtilitiesTest {
+	/**
+	 * Temporary folder for test images
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+
+	/**
+	 * Write a random test image
+	 * 
+	 * @throws IOException
+	 */
+	@Before
+	public void setup() throws IOException {
+		final Random rng = new Random(42);
+		final BufferedImage bimg = new BufferedImage(517, 389, BufferedImage.TYPE_3BYTE_BGR);
+		final Graphics2D g = bimg.createGraphics();
+		for (int i = 0; i < 200; i++) {
+			g.setColor(new Color(rng.nextInt(256), rng.nextInt(256), rng.nextInt(256)));
+			g.fillOval(rng.nextInt(517), rng.nextInt(389), rng.nextInt(80), rng.nextInt(80));
+		}
+		g.dispose();
+
+		file = folder.newFile("test.png");
+		ImageIO.write(bimg, "png", file);
+	}
+
+	/**
+	 * Reading without a region or target size should be the same as a normal
+	 * read
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testFullResolution() throws IOException {
+		final FImage expected = ImageUtilities.readF(file);
+		final FImage actual = ImageUtilities.readF(file, 0, null, null);
+
+		assertEquals(expected.width, actual.width);
+		assertEquals(expected.height, actual.height);
+		for (int y = 0; y < expected.height; y++)
+			assertArrayEquals(expected.pixels[y], actual.pixels[y], 0f);
+	}
+
+	/**
+	 * The reduced read of a region should pick the same pixels as subsampling
+	 * the full image
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testRegionSubsampling() throws IOException {
+		final MBFImage full = ImageUtilities.readMBF(file);
+		final Rectangle roi = new Rectangle(33.5f, 20, 301, 250.2f);
+
+		final InputStream is = new FileInputStream(file);
+		final MBFImage reduced;
+		try {
+			reduced = ImageUtilities.readMBF(is, 100, roi, null);
+		} finally {
+			is.close();
+		}
+
+		// region is [33, 335) x [20, 271); step is 302 / 100 = 3
+		assertEquals(101, reduced.getWidth());
+		assertEquals(84, reduced.getHeight());
+
+		for (int b = 0; b < 3; b++) {
+			final float[][] fp = full.getBand(b).pixels;
+			final float[][] rp = reduced.getBand(b).pixels;
+
+			for (int y = 0; y < reduced.getHeight(); y++)
+				for (int x = 0; x < reduced.getWidth(); x++)
+					assertEquals(fp[20 + y * 3][33 + x * 3], rp[y][x], 0f);
+		}
+	}
+
+	/**
+	 * The destination buffer should be reused if it is the right size
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testReuse() throws IOException {
+		final FImage dest = ImageUtilities.readF(file, 200);
+		final float[][] pixels = dest.pixels;
+
+		assertSame(dest, ImageUtilities.readF(file, 200, null, dest));
+		assertSame(pixels, dest.pixels);
+
+		final MBFImage mbfdest = ImageUtilities.readMBF(file, 200);
+		final float[][] red = mbfdest.getBand(0).pixels;
+
+		assertSame(mbfdest, ImageUtilities.readMBF(file, 200, null, mbfdest));
+		assertSame(red, mbfdest.getBand(0).pixels);
+	}
+
+	/**
+	 * A region outside the image is an error
+	 * 
+	 * @throws IOException
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadRegion() throws IOException {
+		ImageUtilities.readF(file, 0, new Rectangle(600, 0, 10, 10), null);
+	}
+}
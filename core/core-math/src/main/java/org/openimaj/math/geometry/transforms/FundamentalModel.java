@@ -34,6 +34,7 @@ import java.util.List;
 import org.openimaj.math.geometry.point.Point2d;
 import org.openimaj.math.model.EstimatableModel;
 import org.openimaj.math.model.fit.residuals.AbstractResidualCalculator;
+import org.openimaj.math.model.fit.residuals.PackedResidualCalculator;
 import org.openimaj.math.model.fit.residuals.ResidualCalculator;
 import org.openimaj.util.pair.IndependentPair;
 import org.openimaj.util.pair.Pair;
@@ -55,7 +56,10 @@ public class FundamentalModel implements EstimatableModel<Point2d, Point2d> {
 	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
 	 *
 	 */
-	public static class Fundamental8PtResidual extends AbstractResidualCalculator<Point2d, Point2d, FundamentalModel> {
+	public static class Fundamental8PtResidual extends AbstractResidualCalculator<Point2d, Point2d, FundamentalModel>
+			implements
+			PackedResidualCalculator<Point2d, Point2d, FundamentalModel>
+	{
 		@Override
 		public double computeResidual(IndependentPair<Point2d, Point2d> data) {
 			final Matrix F = model.fundamental;
@@ -81,6 +85,41 @@ public class FundamentalModel implements EstimatableModel<Point2d, Point2d> {
 
 			return res * res;
 		}
+
+		@Override
+		public int getPackedLength() {
+			return 4;
+		}
+
+		@Override
+		public void pack(IndependentPair<Point2d, Point2d> data, double[] packed, int offset) {
+			final Point2d p1 = data.firstObject();
+			final Point2d p2 = data.secondObject();
+
+			packed[offset] = p1.getX();
+			packed[offset + 1] = p1.getY();
+			packed[offset + 2] = p2.getX();
+			packed[offset + 3] = p2.getY();
+		}
+
+		@Override
+		public double[] getModelParameters(FundamentalModel model) {
+			return model.fundamental.getRowPackedCopy();
+		}
+
+		@Override
+		public double computeResidual(double[] F, double[] packed, int offset) {
+			final double x1_1 = packed[offset]; // u
+			final double x1_2 = packed[offset + 1]; // v
+			final double x2_1 = packed[offset + 2]; // u'
+			final double x2_2 = packed[offset + 3]; // v'
+
+			final double res = F[0] * x2_1 * x1_1 + F[1] * x2_1 * x1_2 + F[2] * x2_1 +
+					F[3] * x2_2 * x1_1 + F[4] * x2_2 * x1_2 + F[5] * x2_2 +
+					F[6] * x1_1 + F[7] * x1_2 + F[8];
+
+			return res * res;
+		}
 	}
 
 	/**
@@ -106,7 +106,7 @@ public class HomographyModel implements EstimatableModel<Point2d, Point2d>, Matr
 
 	@Override
 	public HomographyModel clone() {
-		final HomographyModel hm = new HomographyModel(normalise);
+		final HomographyModel hm = new HomographyModel(normalise, modelCheck);
 		hm.homography = homography.copy();
 		return hm;
 	}
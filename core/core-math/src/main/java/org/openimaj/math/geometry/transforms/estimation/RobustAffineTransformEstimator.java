@@ -127,6 +127,17 @@ public class RobustAffineTransformEstimator implements RobustModelFitting<Point2
 				new BucketingSampler2d());
 	}
 
+	/**
+	 * Construct using a pre-configured robust fitter, for example a
+	 * {@link org.openimaj.math.model.fit.PreemptiveRANSAC}.
+	 *
+	 * @param robustFitter
+	 *            the robust fitter
+	 */
+	public RobustAffineTransformEstimator(RobustModelFitting<Point2d, Point2d, AffineTransformModel> robustFitter) {
+		this.robustFitter = robustFitter;
+	}
+
 	@Override
 	public boolean fitData(List<? extends IndependentPair<Point2d, Point2d>> data) {
 		// Use a robust fitting technique to find the inliers and estimate a
@@ -30,7 +30,9 @@
 package org.openimaj.math.geometry.transforms.estimation;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.openimaj.math.geometry.point.Point2d;
 import org.openimaj.math.geometry.transforms.HomographyModel;
@@ -162,6 +164,24 @@ public class RobustHomographyEstimator implements RobustModelFitting<Point2d, Po
 		this.refinement = refinement;
 	}
 
+	/**
+	 * Construct using a pre-configured robust fitter, for example a
+	 * {@link org.openimaj.math.model.fit.PreemptiveRANSAC}. The fitter is
+	 * applied to normalised data, so its model should be constructed without
+	 * its own normalisation.
+	 *
+	 * @param robustFitter
+	 *            the robust fitter
+	 * @param refinement
+	 *            the refinement technique
+	 */
+	public RobustHomographyEstimator(RobustModelFitting<Point2d, Point2d, HomographyModel> robustFitter,
+			HomographyRefinement refinement)
+	{
+		this.robustFitter = robustFitter;
+		this.refinement = refinement;
+	}
+
 	@Override
 	public boolean fitData(List<? extends IndependentPair<Point2d, Point2d>> data) {
 		final Pair<Matrix> norms = TransformUtilities.getNormalisations(data);
@@ -179,13 +199,17 @@ public class RobustHomographyEstimator implements RobustModelFitting<Point2d, Po
 
 		// remap the inliers and outliers from the normalised ones to the
 		// original space
+		final Map<IndependentPair<Point2d, Point2d>, Integer> indices = new IdentityHashMap<IndependentPair<Point2d, Point2d>, Integer>();
+		for (int i = 0; i < normData.size(); i++)
+			indices.put(normData.get(i), i);
+
 		inliers.clear();
 		for (final IndependentPair<Point2d, Point2d> pair : robustFitter.getInliers()) {
-			inliers.add(data.get(normData.indexOf(pair)));
+			inliers.add(data.get(indices.get(pair)));
 		}
 		outliers.clear();
 		for (final IndependentPair<Point2d, Point2d> pair : robustFitter.getOutliers()) {
-			outliers.add(data.get(normData.indexOf(pair)));
+			outliers.add(data.get(indices.get(pair)));
 		}
 
 		// denormalise the estimated matrix before the non-linear step
@@ -34,7 +34,7 @@ import java.util.List;
 import org.openimaj.math.geometry.point.Point2d;
 import org.openimaj.math.geometry.transforms.MatrixTransformProvider;
 import org.openimaj.math.model.Model;
-import org.openimaj.math.model.fit.residuals.ResidualCalculator;
+import org.openimaj.math.model.fit.residuals.PackedResidualCalculator;
 import org.openimaj.util.pair.IndependentPair;
 
 import Jama.Matrix;
@@ -44,6 +44,9 @@ import Jama.Matrix;
  * transform (i.e. a 3x3 transform matrix). This is equivalent to the residuals
  * minimised when using the Direct Linear Transform method (i.e. minimising
  * |Ah|) used for estimating the transform.
+ * <p>
+ * The packed form of the data is the four values (x1, y1, x2, y2) and the
+ * packed model parameters are the transform in row-major order.
  * 
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  * 
@@ -51,7 +54,7 @@ import Jama.Matrix;
  */
 public class AlgebraicResidual2d<M extends Model<Point2d, Point2d> & MatrixTransformProvider>
 		implements
-		ResidualCalculator<Point2d, Point2d, M>
+		PackedResidualCalculator<Point2d, Point2d, M>
 {
 	private Matrix transform;
 
@@ -95,4 +98,37 @@ public class AlgebraicResidual2d<M extends Model<Point2d, Point2d> & MatrixTrans
 			residuals[i] = computeResidual(data.get(i));
 		}
 	}
+
+	@Override
+	public int getPackedLength() {
+		return 4;
+	}
+
+	@Override
+	public void pack(IndependentPair<Point2d, Point2d> data, double[] packed, int offset) {
+		SymmetricTransferResidual2d.packPoints(data, packed, offset);
+	}
+
+	@Override
+	public double[] getModelParameters(M model) {
+		final Matrix t = model.getTransform();
+
+		if (t.getRowDimension() != 3 || t.getColumnDimension() != 3)
+			throw new IllegalArgumentException("Transform matrix must be 3x3");
+
+		return t.getRowPackedCopy();
+	}
+
+	@Override
+	public double computeResidual(double[] h, double[] packed, int offset) {
+		final double x = packed[offset];
+		final double y = packed[offset + 1];
+		final double X = packed[offset + 2];
+		final double Y = packed[offset + 3];
+
+		final double s1 = x * h[0] + y * h[1] + h[2] - x * X * h[6] - y * X * h[7] - X * h[8];
+		final double s2 = x * h[3] + y * h[4] + h[5] - x * Y * h[6] - y * Y * h[7] - Y * h[8];
+
+		return s1 * s1 + s2 * s2;
+	}
 }
@@ -32,14 +32,20 @@ package org.openimaj.math.geometry.transforms.residuals;
 import java.util.List;
 
 import org.openimaj.math.geometry.point.Point2d;
+import org.openimaj.math.geometry.transforms.MatrixTransformProvider;
 import org.openimaj.math.model.Model;
-import org.openimaj.math.model.fit.residuals.ResidualCalculator;
+import org.openimaj.math.model.fit.residuals.PackedResidualCalculator;
 import org.openimaj.util.pair.IndependentPair;
 
+import Jama.Matrix;
+
 /**
  * Compute the 2d geometric Single Image Transfer residual. This is the squared
  * distance between the second point in the pair and the first point one the
  * transform has been applied.
+ * <p>
+ * The packed residual computations are only supported for models that are
+ * {@link MatrixTransformProvider}s with either 3x3 or 2x3 transform matrices.
  * 
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  * @param <M>
@@ -47,7 +53,7 @@ import org.openimaj.util.pair.IndependentPair;
  */
 public class SingleImageTransferResidual2d<M extends Model<Point2d, Point2d>>
 		implements
-		ResidualCalculator<Point2d, Point2d, M>
+		PackedResidualCalculator<Point2d, Point2d, M>
 {
 	M model;
 
@@ -78,4 +84,43 @@ public class SingleImageTransferResidual2d<M extends Model<Point2d, Point2d>>
 			errors[i] = (dx * dx + dy * dy);
 		}
 	}
+
+	@Override
+	public int getPackedLength() {
+		return 4;
+	}
+
+	@Override
+	public void pack(IndependentPair<Point2d, Point2d> data, double[] packed, int offset) {
+		SymmetricTransferResidual2d.packPoints(data, packed, offset);
+	}
+
+	@Override
+	public double[] getModelParameters(M model) {
+		if (!(model instanceof MatrixTransformProvider))
+			throw new IllegalArgumentException("Packed residuals require a model that is a MatrixTransformProvider");
+
+		final Matrix t = ((MatrixTransformProvider) model).getTransform();
+		if (t.getColumnDimension() != 3 || (t.getRowDimension() != 3 && t.getRowDimension() != 2))
+			throw new IllegalArgumentException("Transform matrix must be 3x3 or 2x3");
+
+		final double[] params = new double[] { 0, 0, 0, 0, 0, 0, 0, 0, 1 };
+		for (int r = 0, k = 0; r < t.getRowDimension(); r++)
+			for (int c = 0; c < 3; c++, k++)
+				params[k] = t.get(r, c);
+
+		return params;
+	}
+
+	@Override
+	public double computeResidual(double[] h, double[] packed, int offset) {
+		final double x = packed[offset];
+		final double y = packed[offset + 1];
+
+		final double z = h[6] * x + h[7] * y + h[8];
+		final double dx = packed[offset + 2] - (h[0] * x + h[1] * y + h[2]) / z;
+		final double dy = packed[offset + 3] - (h[3] * x + h[4] * y + h[5]) / z;
+
+		return dx * dx + dy * dy;
+	}
 }
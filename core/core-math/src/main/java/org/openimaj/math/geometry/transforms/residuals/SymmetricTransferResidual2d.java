@@ -34,7 +34,7 @@ import java.util.List;
 import org.openimaj.math.geometry.point.Point2d;
 import org.openimaj.math.geometry.transforms.MatrixTransformProvider;
 import org.openimaj.math.model.Model;
-import org.openimaj.math.model.fit.residuals.ResidualCalculator;
+import org.openimaj.math.model.fit.residuals.PackedResidualCalculator;
 import org.openimaj.util.pair.IndependentPair;
 
 import Jama.Matrix;
@@ -45,6 +45,10 @@ import Jama.Matrix;
  * projected by the inverse homography to produce estimates of the first.
  * Residuals are computed from both point sets and summed to produce the final
  * geometric residual value.
+ * <p>
+ * The packed form of the data is the four values (x1, y1, x2, y2) and the
+ * packed model parameters are the transform followed by its inverse, both in
+ * row-major order.
  * 
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  * 
@@ -52,7 +56,7 @@ import Jama.Matrix;
  */
 public class SymmetricTransferResidual2d<M extends Model<Point2d, Point2d> & MatrixTransformProvider>
 		implements
-		ResidualCalculator<Point2d, Point2d, M>
+		PackedResidualCalculator<Point2d, Point2d, M>
 {
 	private Matrix transform;
 	private Matrix transformInv;
@@ -98,4 +102,108 @@ public class SymmetricTransferResidual2d<M extends Model<Point2d, Point2d> & Mat
 			residuals[i] = computeResidual(data.get(i));
 		}
 	}
+
+	@Override
+	public int getPackedLength() {
+		return 4;
+	}
+
+	@Override
+	public void pack(IndependentPair<Point2d, Point2d> data, double[] packed, int offset) {
+		packPoints(data, packed, offset);
+	}
+
+	@Override
+	public double[] getModelParameters(M model) {
+		final Matrix t = model.getTransform();
+
+		if (t.getRowDimension() != 3 || t.getColumnDimension() != 3)
+			throw new IllegalArgumentException("Transform matrix must be 3x3");
+
+		final double[] params = new double[18];
+		for (int r = 0, k = 0; r < 3; r++)
+			for (int c = 0; c < 3; c++, k++)
+				params[k] = t.get(r, c);
+
+		if (!invert3x3(params, 0, params, 9))
+			return null;
+
+		return params;
+	}
+
+	@Override
+	public double computeResidual(double[] h, double[] packed, int offset) {
+		final double p1x = packed[offset];
+		final double p1y = packed[offset + 1];
+		final double p2x = packed[offset + 2];
+		final double p2y = packed[offset + 3];
+
+		final double z1t = h[6] * p1x + h[7] * p1y + h[8];
+		final double p1tx = (h[0] * p1x + h[1] * p1y + h[2]) / z1t;
+		final double p1ty = (h[3] * p1x + h[4] * p1y + h[5]) / z1t;
+
+		final double z2t = h[15] * p2x + h[16] * p2y + h[17];
+		final double p2tx = (h[9] * p2x + h[10] * p2y + h[11]) / z2t;
+		final double p2ty = (h[12] * p2x + h[13] * p2y + h[14]) / z2t;
+
+		final double dx12t = (p1x - p2tx);
+		final double dy12t = (p1y - p2ty);
+		final double dx1t2 = (p1tx - p2x);
+		final double dy1t2 = (p1ty - p2y);
+
+		return dx12t * dx12t + dy12t * dy12t + dx1t2 * dx1t2 + dy1t2 * dy1t2;
+	}
+
+	/**
+	 * Pack a pair of points into the form (x1, y1, x2, y2)
+	 * 
+	 * @param data
+	 *            the pair of points
+	 * @param packed
+	 *            the array to write to
+	 * @param offset
+	 *            the offset to start writing at
+	 */
+	static void packPoints(IndependentPair<Point2d, Point2d> data, double[] packed, int offset) {
+		final Point2d p1 = data.getFirstObject();
+		final Point2d p2 = data.getSecondObject();
+
+		packed[offset] = p1.getX();
+		packed[offset + 1] = p1.getY();
+		packed[offset + 2] = p2.getX();
+		packed[offset + 3] = p2.getY();
+	}
+
+	/**
+	 * Invert the row-major 3x3 matrix stored at the given offset of the input
+	 * using the adjugate.
+	 * 
+	 * @return false if the matrix is singular
+	 */
+	private static boolean invert3x3(double[] m, int mo, double[] out, int oo) {
+		final double a = m[mo], b = m[mo + 1], c = m[mo + 2];
+		final double d = m[mo + 3], e = m[mo + 4], f = m[mo + 5];
+		final double g = m[mo + 6], h = m[mo + 7], i = m[mo + 8];
+
+		final double A = e * i - f * h;
+		final double B = f * g - d * i;
+		final double C = d * h - e * g;
+		final double det = a * A + b * B + c * C;
+
+		if (det == 0 || Double.isNaN(det) || Double.isInfinite(det))
+			return false;
+
+		final double s = 1.0 / det;
+		out[oo] = A * s;
+		out[oo + 1] = (c * h - b * i) * s;
+		out[oo + 2] = (b * f - c * e) * s;
+		out[oo + 3] = B * s;
+		out[oo + 4] = (a * i - c * g) * s;
+		out[oo + 5] = (c * d - a * f) * s;
+		out[oo + 6] = C * s;
+		out[oo + 7] = (b * g - a * h) * s;
+		out[oo + 8] = (a * e - b * d) * s;
+
+		return true;
+	}
 }
@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.math.matrix.algorithm.pca;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.openimaj.data.DataSource;
+import org.openimaj.math.statistics.IncrementalMeanAndCovariance;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+
+/**
+ * Principal Component Analysis computed from the covariance matrix, where the
+ * mean and covariance are accumulated incrementally from the data rather than
+ * from a data matrix held in memory. The data can be provided as a
+ * {@link DataSource} or an {@link Iterable} (such as a
+ * {@link org.openimaj.util.stream.Stream}); partitions of the data are
+ * accumulated in parallel and merged (see {@link IncrementalMeanAndCovariance}
+ * ). Only a single pass over the data is required.
+ * <p>
+ * The memory required is proportional to the square of the dimensionality of
+ * the data, but independent of the number of data items. For very high
+ * dimensional data where only a few components are required, consider the
+ * {@link RandomisedPrincipalComponentAnalysis} instead.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class IncrementalPrincipalComponentAnalysis extends PrincipalComponentAnalysis {
+	int ndims;
+
+	/**
+	 * Construct an {@link IncrementalPrincipalComponentAnalysis} that will
+	 * extract all the eigenvectors.
+	 */
+	public IncrementalPrincipalComponentAnalysis() {
+		this(-1);
+	}
+
+	/**
+	 * Construct an {@link IncrementalPrincipalComponentAnalysis} that will
+	 * extract the n best eigenvectors.
+	 * 
+	 * @param ndims
+	 *            the number of eigenvectors to select.
+	 */
+	public IncrementalPrincipalComponentAnalysis(int ndims) {
+		this.ndims = ndims;
+	}
+
+	/**
+	 * Learn the principal components of the data in the given
+	 * {@link DataSource}. The data source must support concurrent reads.
+	 * 
+	 * @param data
+	 *            the data
+	 */
+	public void learnBasis(DataSource<double[]> data) {
+		learnBasis(reducer(data.numDimensions()).reduce(data));
+	}
+
+	/**
+	 * Learn the principal components of the given data. The data is only
+	 * iterated over once.
+	 * 
+	 * @param data
+	 *            the data
+	 */
+	public void learnBasis(Iterable<double[]> data) {
+		final Iterator<double[]> it = data.iterator();
+		if (!it.hasNext())
+			throw new IllegalArgumentException("No data");
+
+		// peek at the first item to determine the dimensionality
+		final double[] first = it.next();
+		final IncrementalMeanAndCovariance stats = reducer(first.length).reduce(new Iterable<double[]>() {
+			@Override
+			public Iterator<double[]> iterator() {
+				return new Iterator<double[]>() {
+					boolean consumedFirst = false;
+
+					@Override
+					public boolean hasNext() {
+						return !consumedFirst || it.hasNext();
+					}
+
+					@Override
+					public double[] next() {
+						if (!consumedFirst) {
+							consumedFirst = true;
+							return first;
+						}
+						return it.next();
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		});
+
+		learnBasis(stats);
+	}
+
+	@Override
+	public void learnBasis(List<double[]> data) {
+		learnBasis((Iterable<double[]>) data);
+	}
+
+	@Override
+	public void learnBasis(double[][] data) {
+		learnBasis(Arrays.asList(data));
+	}
+
+	/**
+	 * Learn the principal components from previously accumulated statistics.
+	 * This allows the statistics to be gathered in whatever way is most
+	 * appropriate for the data (for example, in a distributed fashion with the
+	 * partial results combined using
+	 * {@link IncrementalMeanAndCovariance#merge(IncrementalMeanAndCovariance)}
+	 * ).
+	 * 
+	 * @param stats
+	 *            the accumulated mean and covariance
+	 */
+	public void learnBasis(IncrementalMeanAndCovariance stats) {
+		mean = stats.getMean();
+		learnBasisFromCovariance(stats.getCovariance());
+	}
+
+	@Override
+	protected void learnBasisNorm(Matrix norm) {
+		final IncrementalMeanAndCovariance stats = new IncrementalMeanAndCovariance(norm.getColumnDimension());
+		for (final double[] row : norm.getArray())
+			stats.add(row);
+
+		learnBasisFromCovariance(stats.getCovariance());
+	}
+
+	private void learnBasisFromCovariance(Matrix covar) {
+		final EigenvalueDecomposition eig = covar.eig();
+		final double[] evals = eig.getRealEigenvalues();
+		final Matrix evecs = eig.getV();
+
+		final int[] order = sortDescending(evals);
+		final int n = ndims > 0 ? Math.min(ndims, evals.length) : evals.length;
+
+		basis = new Matrix(evecs.getRowDimension(), n);
+		eigenvalues = new double[n];
+
+		final double[][] src = evecs.getArray();
+		final double[][] dst = basis.getArray();
+		for (int c = 0; c < n; c++) {
+			eigenvalues[c] = evals[order[c]];
+
+			for (int r = 0; r < dst.length; r++)
+				dst[r][c] = src[r][order[c]];
+		}
+	}
+
+	/**
+	 * Get the indices that would sort the given values into descending order
+	 */
+	static int[] sortDescending(final double[] values) {
+		final Integer[] idx = new Integer[values.length];
+		for (int i = 0; i < idx.length; i++)
+			idx[i] = i;
+
+		Arrays.sort(idx, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return Double.compare(values[o2], values[o1]);
+			}
+		});
+
+		final int[] out = new int[idx.length];
+		for (int i = 0; i < idx.length; i++)
+			out[i] = idx[i];
+
+		return out;
+	}
+
+	private static RowReducer<IncrementalMeanAndCovariance> reducer(final int ndims) {
+		return new RowReducer<IncrementalMeanAndCovariance>() {
+			@Override
+			IncrementalMeanAndCovariance create() {
+				return new IncrementalMeanAndCovariance(ndims);
+			}
+
+			@Override
+			void add(IncrementalMeanAndCovariance acc, double[] row) {
+				acc.add(row);
+			}
+
+			@Override
+			void merge(IncrementalMeanAndCovariance into, IncrementalMeanAndCovariance from) {
+				into.merge(from);
+			}
+		};
+	}
+}
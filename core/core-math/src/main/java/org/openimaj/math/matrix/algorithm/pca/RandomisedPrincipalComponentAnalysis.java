@@ -0,0 +1,336 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.math.matrix.algorithm.pca;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.openimaj.citation.annotation.Reference;
+import org.openimaj.citation.annotation.ReferenceType;
+import org.openimaj.data.DataSource;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+import Jama.QRDecomposition;
+
+/**
+ * Principal Component Analysis using a randomised range finder on the
+ * covariance matrix. The covariance matrix is never formed explicitly; instead
+ * it is applied to a small set of probe vectors by streaming over the data,
+ * accumulating partitions of the data in parallel. The data is read
+ * <code>2 + q</code> times, where <code>q</code> is the number of power
+ * iterations, and the memory required is proportional to the dimensionality
+ * of the data multiplied by the number of components (plus oversampling).
+ * <p>
+ * This is much cheaper than the full decomposition when only a few components
+ * of high dimensional data are required, and the leading components are
+ * accurately recovered provided the spectrum of the data decays reasonably
+ * quickly (increasing the number of power iterations improves the accuracy
+ * when it doesn't).
+ * <p>
+ * Because several passes are made, the data must be re-readable; for
+ * single-pass {@link org.openimaj.util.stream.Stream}s use
+ * {@link IncrementalPrincipalComponentAnalysis}.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+@Reference(
+		type = ReferenceType.Article,
+		author = { "Halko, N.", "Martinsson, P. G.", "Tropp, J. A." },
+		title = "Finding Structure with Randomness: Probabilistic Algorithms for Constructing Approximate Matrix Decompositions",
+		year = "2011",
+		journal = "SIAM Review",
+		pages = { "217", "288" },
+		volume = "53",
+		number = "2")
+public class RandomisedPrincipalComponentAnalysis extends PrincipalComponentAnalysis {
+	/**
+	 * The default number of additional probe vectors
+	 */
+	public static final int DEFAULT_OVERSAMPLING = 10;
+
+	/**
+	 * The default number of power iterations
+	 */
+	public static final int DEFAULT_POWER_ITERATIONS = 2;
+
+	int ndims;
+	int oversampling;
+	int powerIterations;
+	Random rng;
+
+	/**
+	 * Construct a {@link RandomisedPrincipalComponentAnalysis} that will
+	 * extract the n best eigenvectors using the default oversampling and power
+	 * iterations.
+	 * 
+	 * @param ndims
+	 *            the number of eigenvectors to select.
+	 */
+	public RandomisedPrincipalComponentAnalysis(int ndims) {
+		this(ndims, DEFAULT_OVERSAMPLING, DEFAULT_POWER_ITERATIONS, new Random());
+	}
+
+	/**
+	 * Construct a {@link RandomisedPrincipalComponentAnalysis} that will
+	 * extract the n best eigenvectors.
+	 * 
+	 * @param ndims
+	 *            the number of eigenvectors to select.
+	 * @param oversampling
+	 *            the number of additional probe vectors used to improve the
+	 *            approximation
+	 * @param powerIterations
+	 *            the number of power iterations (each requires an additional
+	 *            pass over the data)
+	 * @param rng
+	 *            the source of randomness for the probe vectors
+	 */
+	public RandomisedPrincipalComponentAnalysis(int ndims, int oversampling, int powerIterations, Random rng) {
+		if (ndims <= 0)
+			throw new IllegalArgumentException("The number of dimensions must be positive");
+		if (oversampling < 0 || powerIterations < 0)
+			throw new IllegalArgumentException("The oversampling and number of power iterations must not be negative");
+
+		this.ndims = ndims;
+		this.oversampling = oversampling;
+		this.powerIterations = powerIterations;
+		this.rng = rng;
+	}
+
+	/**
+	 * Learn the principal components of the data in the given
+	 * {@link DataSource}. The data source must support concurrent reads.
+	 * 
+	 * @param data
+	 *            the data
+	 */
+	public void learnBasis(final DataSource<double[]> data) {
+		learnBasis(data.numDimensions(), new Pass() {
+			@Override
+			public Projection apply(RowReducer<Projection> reducer) {
+				return reducer.reduce(data);
+			}
+		});
+	}
+
+	/**
+	 * Learn the principal components of the given data. The data will be
+	 * iterated over several times, so the {@link Iterable} must return a fresh
+	 * iterator over the same data each time it is asked.
+	 * 
+	 * @param data
+	 *            the data
+	 */
+	public void learnBasis(final Iterable<double[]> data) {
+		final int dims = data.iterator().next().length;
+
+		learnBasis(dims, new Pass() {
+			@Override
+			public Projection apply(RowReducer<Projection> reducer) {
+				return reducer.reduce(data);
+			}
+		});
+	}
+
+	@Override
+	protected void learnBasisNorm(Matrix norm) {
+		final Iterable<double[]> rows = Arrays.asList(norm.getArray());
+
+		learnBasis(norm.getColumnDimension(), new Pass() {
+			@Override
+			public Projection apply(RowReducer<Projection> reducer) {
+				return reducer.reduce(rows);
+			}
+		});
+	}
+
+	private interface Pass {
+		Projection apply(RowReducer<Projection> reducer);
+	}
+
+	private void learnBasis(int dims, Pass pass) {
+		final int k = Math.min(dims, ndims + oversampling);
+
+		final Matrix omega = new Matrix(dims, k);
+		final double[][] o = omega.getArray();
+		for (int r = 0; r < dims; r++)
+			for (int c = 0; c < k; c++)
+				o[r][c] = rng.nextGaussian();
+
+		// range finding, with power iterations
+		Projection proj = pass.apply(reducer(omega));
+		Matrix q = orthonormalise(proj.covarianceTimes());
+		for (int i = 0; i < powerIterations; i++) {
+			proj = pass.apply(reducer(q));
+			q = orthonormalise(proj.covarianceTimes());
+		}
+
+		// project the covariance into the subspace and decompose it there
+		proj = pass.apply(reducer(q));
+		final Matrix small = q.transpose().times(proj.covarianceTimes());
+		final Matrix sym = small.plus(small.transpose()).timesEquals(0.5);
+
+		final EigenvalueDecomposition eig = sym.eig();
+		final double[] evals = eig.getRealEigenvalues();
+		final Matrix u = q.times(eig.getV());
+
+		final int[] order = IncrementalPrincipalComponentAnalysis.sortDescending(evals);
+		final int n = Math.min(ndims, k);
+
+		mean = proj.getMean();
+		basis = new Matrix(dims, n);
+		eigenvalues = new double[n];
+
+		final double[][] src = u.getArray();
+		final double[][] dst = basis.getArray();
+		for (int c = 0; c < n; c++) {
+			eigenvalues[c] = evals[order[c]];
+
+			for (int r = 0; r < dims; r++)
+				dst[r][c] = src[r][order[c]];
+		}
+	}
+
+	private static Matrix orthonormalise(Matrix y) {
+		return new QRDecomposition(y).getQ();
+	}
+
+	/**
+	 * Accumulator for the product of the data with a set of probe vectors,
+	 * together with the sum of the data needed to centre the result
+	 */
+	static class Projection {
+		final double[][] probes;
+		long count;
+		final double[] sum;
+		final double[][] product;
+
+		Projection(double[][] probes) {
+			this.probes = probes;
+			this.sum = new double[probes.length];
+			this.product = new double[probes.length][probes[0].length];
+		}
+
+		void add(double[] row) {
+			final int k = product[0].length;
+			final double[] p = new double[k];
+
+			for (int i = 0; i < row.length; i++) {
+				final double v = row[i];
+				if (v == 0)
+					continue;
+
+				final double[] pr = probes[i];
+				for (int j = 0; j < k; j++)
+					p[j] += v * pr[j];
+			}
+
+			for (int i = 0; i < row.length; i++) {
+				final double v = row[i];
+				sum[i] += v;
+
+				if (v == 0)
+					continue;
+
+				final double[] out = product[i];
+				for (int j = 0; j < k; j++)
+					out[j] += v * p[j];
+			}
+
+			count++;
+		}
+
+		void merge(Projection other) {
+			count += other.count;
+
+			for (int i = 0; i < sum.length; i++) {
+				sum[i] += other.sum[i];
+
+				for (int j = 0; j < product[i].length; j++)
+					product[i][j] += other.product[i][j];
+			}
+		}
+
+		double[] getMean() {
+			final double[] mean = new double[sum.length];
+			for (int i = 0; i < mean.length; i++)
+				mean[i] = sum[i] / count;
+			return mean;
+		}
+
+		/**
+		 * Compute the product of the (unbiased) covariance matrix with the
+		 * probe vectors:
+		 * <code>(sum(x x^T) P - n mu mu^T P) / (n - 1)</code>
+		 */
+		Matrix covarianceTimes() {
+			if (count < 2)
+				throw new IllegalArgumentException("At least two data items are required");
+
+			final int k = product[0].length;
+			final double[] mean = getMean();
+
+			final double[] mp = new double[k];
+			for (int i = 0; i < mean.length; i++)
+				for (int j = 0; j < k; j++)
+					mp[j] += mean[i] * probes[i][j];
+
+			final Matrix out = new Matrix(mean.length, k);
+			final double[][] o = out.getArray();
+			for (int i = 0; i < mean.length; i++)
+				for (int j = 0; j < k; j++)
+					o[i][j] = (product[i][j] - count * mean[i] * mp[j]) / (count - 1);
+
+			return out;
+		}
+	}
+
+	private static RowReducer<Projection> reducer(Matrix probes) {
+		final double[][] p = probes.getArray();
+
+		return new RowReducer<Projection>() {
+			@Override
+			Projection create() {
+				return new Projection(p);
+			}
+
+			@Override
+			void add(Projection acc, double[] row) {
+				acc.add(row);
+			}
+
+			@Override
+			void merge(Projection into, Projection from) {
+				into.merge(from);
+			}
+		};
+	}
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.math.matrix.algorithm.pca;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.openimaj.data.DataSource;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.Parallel;
+import org.openimaj.util.parallel.Parallel.IntRange;
+import org.openimaj.util.parallel.partition.FixedSizeChunkPartitioner;
+
+/**
+ * Helper for the streaming PCA implementations that performs a parallel
+ * reduction over the rows of a {@link DataSource} or {@link Iterable}. The
+ * partitions of the data are reduced into accumulators that are shared
+ * through a free-list for the duration of the call, so there is one
+ * accumulator per concurrently running worker rather than one per partition.
+ * The accumulators are merged once all the partitions are complete.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ * 
+ * @param <A>
+ *            type of accumulator
+ */
+abstract class RowReducer<A> {
+	/**
+	 * Number of rows read from a {@link DataSource}, or taken from an
+	 * {@link Iterable} at a time
+	 */
+	static final int CHUNK_SIZE = 1024;
+
+	/**
+	 * @return a new empty accumulator
+	 */
+	abstract A create();
+
+	/**
+	 * Accumulate a row
+	 * 
+	 * @param acc
+	 *            the accumulator
+	 * @param row
+	 *            the row
+	 */
+	abstract void add(A acc, double[] row);
+
+	/**
+	 * Merge one accumulator into another
+	 * 
+	 * @param into
+	 *            the accumulator to merge into
+	 * @param from
+	 *            the accumulator to merge from
+	 */
+	abstract void merge(A into, A from);
+
+	/**
+	 * Reduce all the rows of a {@link DataSource}. The data source must support
+	 * concurrent calls to {@link DataSource#getData(int, int, Object[])}.
+	 * 
+	 * @param data
+	 *            the data
+	 * @return the accumulated result
+	 */
+	A reduce(final DataSource<double[]> data) {
+		final Queue<A> free = new ConcurrentLinkedQueue<A>();
+
+		Parallel.forRange(0, data.size(), 1, new Operation<IntRange>() {
+			@Override
+			public void perform(IntRange range) {
+				final A acc = acquire(free);
+				final double[][] buffer = data.createTemporaryArray(CHUNK_SIZE);
+
+				for (int start = range.start; start < range.stop; start += CHUNK_SIZE) {
+					final int stop = Math.min(range.stop, start + CHUNK_SIZE);
+					data.getData(start, stop, buffer);
+
+					for (int i = 0; i < stop - start; i++)
+						add(acc, buffer[i]);
+				}
+
+				free.offer(acc);
+			}
+		});
+
+		return mergeAll(free);
+	}
+
+	/**
+	 * Reduce all the rows of an {@link Iterable}
+	 * 
+	 * @param data
+	 *            the data
+	 * @return the accumulated result
+	 */
+	A reduce(Iterable<double[]> data) {
+		final Queue<A> free = new ConcurrentLinkedQueue<A>();
+
+		Parallel.forEachPartitioned(new FixedSizeChunkPartitioner<double[]>(data, CHUNK_SIZE),
+				new Operation<Iterator<double[]>>() {
+					@Override
+					public void perform(Iterator<double[]> it) {
+						final A acc = acquire(free);
+
+						while (it.hasNext())
+							add(acc, it.next());
+
+						free.offer(acc);
+					}
+				});
+
+		return mergeAll(free);
+	}
+
+	private A acquire(Queue<A> free) {
+		final A acc = free.poll();
+		return acc != null ? acc : create();
+	}
+
+	private A mergeAll(Queue<A> accumulators) {
+		final A result = accumulators.poll();
+		if (result == null)
+			return create();
+
+		A acc;
+		while ((acc = accumulators.poll()) != null)
+			merge(result, acc);
+
+		return result;
+	}
+}
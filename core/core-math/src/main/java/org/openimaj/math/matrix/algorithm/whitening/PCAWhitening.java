@@ -31,6 +31,9 @@ package org.openimaj.math.matrix.algorithm.whitening;
 
 import org.openimaj.citation.annotation.Reference;
 import org.openimaj.citation.annotation.ReferenceType;
+import org.openimaj.math.matrix.algorithm.pca.IncrementalPrincipalComponentAnalysis;
+import org.openimaj.math.matrix.algorithm.pca.PrincipalComponentAnalysis;
+import org.openimaj.math.matrix.algorithm.pca.RandomisedPrincipalComponentAnalysis;
 import org.openimaj.math.matrix.algorithm.pca.SvdPrincipalComponentAnalysis;
 import org.openimaj.math.statistics.normalisation.Normaliser;
 import org.openimaj.math.statistics.normalisation.TrainableNormaliser;
@@ -118,15 +121,39 @@ public class PCAWhitening extends WhiteningTransform {
 
 		final SvdPrincipalComponentAnalysis pca = new SvdPrincipalComponentAnalysis(ndims);
 		pca.learnBasisNorm(new Matrix(normData));
-		transform = pca.getBasis();
-		final double[] weight = pca.getEigenValues();
+
+		train(pca);
+	}
+
+	/**
+	 * Train the whitening transform from a {@link PrincipalComponentAnalysis}
+	 * that has already been learned. This allows the principal components to
+	 * be computed in whatever way is most appropriate for the data; for
+	 * example with an {@link IncrementalPrincipalComponentAnalysis} or
+	 * {@link RandomisedPrincipalComponentAnalysis} streaming over data that
+	 * would not fit in memory.
+	 * <p>
+	 * The PCA must have been learned from data that was normalised with the
+	 * {@link Normaliser} of this whitening transform (which must itself have
+	 * already been trained if it is a {@link TrainableNormaliser}).
+	 *
+	 * @param pca
+	 *            the learned PCA
+	 */
+	public void train(PrincipalComponentAnalysis pca) {
+		final Matrix basis = pca.getBasis();
+		final double[] evals = pca.getEigenValues();
+		final int n = ndims > 0 ? Math.min(ndims, evals.length) : evals.length;
+
+		transform = basis.getMatrix(0, basis.getRowDimension() - 1, 0, n - 1);
 		final double[][] td = transform.getArray();
 
-		for (int c = 0; c < weight.length; c++)
-			weight[c] = 1 / Math.sqrt(weight[c] + eps);
+		final double[] weight = new double[n];
+		for (int c = 0; c < n; c++)
+			weight[c] = 1 / Math.sqrt(evals[c] + eps);
 
 		for (int r = 0; r < td.length; r++)
-			for (int c = 0; c < td[0].length; c++)
+			for (int c = 0; c < n; c++)
 				td[r][c] = td[r][c] * weight[c];
 	}
 
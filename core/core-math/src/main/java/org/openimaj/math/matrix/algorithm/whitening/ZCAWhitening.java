@@ -31,6 +31,7 @@ package org.openimaj.math.matrix.algorithm.whitening;
 
 import org.openimaj.citation.annotation.Reference;
 import org.openimaj.citation.annotation.ReferenceType;
+import org.openimaj.math.matrix.algorithm.pca.PrincipalComponentAnalysis;
 import org.openimaj.math.matrix.algorithm.pca.SvdPrincipalComponentAnalysis;
 import org.openimaj.math.statistics.normalisation.Normaliser;
 
@@ -75,17 +76,16 @@ public class ZCAWhitening extends PCAWhitening {
 
 		final SvdPrincipalComponentAnalysis pca = new SvdPrincipalComponentAnalysis();
 		pca.learnBasisNorm(new Matrix(normData));
-		transform = pca.getBasis().copy();
-		final double[] weight = pca.getEigenValues();
-		final double[][] td = transform.getArray();
 
-		for (int c = 0; c < weight.length; c++)
-			weight[c] = 1 / Math.sqrt(weight[c] + eps);
+		train(pca);
+	}
 
-		for (int r = 0; r < td.length; r++)
-			for (int c = 0; c < td[0].length; c++)
-				td[r][c] = td[r][c] * weight[c];
+	@Override
+	public void train(PrincipalComponentAnalysis pca) {
+		super.train(pca);
 
-		transform = transform.times(pca.getBasis().transpose());
+		final Matrix basis = pca.getBasis();
+		final Matrix used = basis.getMatrix(0, basis.getRowDimension() - 1, 0, transform.getColumnDimension() - 1);
+		transform = transform.times(used.transpose());
 	}
 }
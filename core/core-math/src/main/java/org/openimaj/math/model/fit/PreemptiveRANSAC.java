@@ -0,0 +1,639 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.math.model.fit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openimaj.citation.annotation.Reference;
+import org.openimaj.citation.annotation.ReferenceType;
+import org.openimaj.citation.annotation.References;
+import org.openimaj.math.model.EstimatableModel;
+import org.openimaj.math.model.fit.residuals.PackedResidualCalculator;
+import org.openimaj.math.util.distance.DistanceCheck;
+import org.openimaj.math.util.distance.ThresholdDistanceCheck;
+import org.openimaj.util.CollectionSampler;
+import org.openimaj.util.UniformSampler;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.pair.IndependentPair;
+import org.openimaj.util.parallel.GlobalExecutorPool;
+import org.openimaj.util.parallel.Parallel;
+
+/**
+ * A variant of {@link RANSAC} that evaluates batches of model hypotheses in
+ * parallel, and which can preemptively abandon the verification of
+ * hypotheses that are unlikely to be better than the best one found so far.
+ * <p>
+ * Each iteration of the algorithm draws a batch of samples (serially, from the
+ * {@link CollectionSampler}), and then estimates and verifies a model for each
+ * sample concurrently. Verification uses a {@link PackedResidualCalculator}
+ * with the data packed into a primitive array once per call to
+ * {@link #fitData(List)}. The results of the batch are then processed in order
+ * exactly as {@link RANSAC} would process them, so the
+ * {@link RANSAC.StoppingCondition}s behave in the same way (the only
+ * difference being that a whole batch is always evaluated).
+ * <p>
+ * The verification strategy can be one of:
+ * <ul>
+ * <li>{@link Verification#FULL}: every hypothesis is tested against all the
+ * data (apart from the ones that provably cannot beat the best hypothesis at
+ * the start of the batch).</li>
+ * <li>{@link Verification#TDD}: the T(d,d) pre-test; a hypothesis is only
+ * fully tested if d randomly selected data items are all consistent with it.</li>
+ * <li>{@link Verification#SPRT}: Wald's sequential probability ratio test; the
+ * verification is abandoned as soon as there is enough evidence that the
+ * hypothesis is bad. The parameters of the test are adapted from the data as
+ * the fitting progresses.</li>
+ * </ul>
+ * Hypotheses that are rejected by the pre-tests are reported to the stopping
+ * condition with the number of consistent items found before rejection.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ * 
+ * @param <I>
+ *            type of independent data
+ * @param <D>
+ *            type of dependent data
+ * @param <M>
+ *            concrete type of model learned
+ */
+@References(references = {
+		@Reference(
+				type = ReferenceType.Inproceedings,
+				author = { "Matas, J.", "Chum, O." },
+				title = "Randomized RANSAC with T(d,d) test",
+				year = "2002",
+				booktitle = "Proceedings of the British Machine Vision Conference",
+				pages = { "448", "", "457" }
+		),
+		@Reference(
+				type = ReferenceType.Inproceedings,
+				author = { "Matas, J.", "Chum, O." },
+				title = "Randomized RANSAC with Sequential Probability Ratio Test",
+				year = "2005",
+				booktitle = "Proceedings of the Tenth IEEE International Conference on Computer Vision",
+				pages = { "1727", "", "1732" }
+		)
+})
+public class PreemptiveRANSAC<I, D, M extends EstimatableModel<I, D>> extends RANSAC<I, D, M> {
+	/**
+	 * Strategies for verifying hypotheses
+	 */
+	public static enum Verification {
+		/**
+		 * Test each hypothesis against all the data
+		 */
+		FULL,
+		/**
+		 * Perform the T(d,d) pre-test before testing against all the data
+		 */
+		TDD,
+		/**
+		 * Test each hypothesis with an adaptive sequential probability ratio
+		 * test
+		 */
+		SPRT
+	}
+
+	/**
+	 * The default number of hypotheses evaluated in parallel
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 64;
+
+	/**
+	 * Initial estimate of the probability that a data item is consistent with
+	 * a good model
+	 */
+	private static final double SPRT_INITIAL_EPSILON = 0.1;
+
+	/**
+	 * Initial estimate of the probability that a data item is consistent with
+	 * a bad model
+	 */
+	private static final double SPRT_INITIAL_DELTA = 0.05;
+
+	/**
+	 * Time taken to estimate a model relative to the time taken to verify a
+	 * single data item
+	 */
+	private static final double SPRT_MODEL_ESTIMATION_TIME = 200;
+
+	/**
+	 * Average number of models estimated per sample
+	 */
+	private static final double SPRT_MODELS_PER_SAMPLE = 1;
+
+	private static final int STATUS_INVALID = 0;
+	private static final int STATUS_REJECTED = 1;
+	private static final int STATUS_SPRT_REJECTED = 2;
+	private static final int STATUS_VERIFIED = 3;
+
+	private PackedResidualCalculator<I, D, M> packedErrorModel;
+	private Verification verification = Verification.SPRT;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int tddSize = 1;
+	private ThreadPoolExecutor pool;
+	private Random random = new Random();
+
+	/**
+	 * Create a {@link PreemptiveRANSAC} object with uniform random sampling
+	 * for creating the subsets, SPRT verification and the global thread pool
+	 * 
+	 * @param model
+	 *            Model object with which to fit data
+	 * @param errorModel
+	 *            object to compute the error of the model
+	 * @param errorThreshold
+	 *            the threshold below which error is deemed acceptable for a fit
+	 * @param nIterations
+	 *            Maximum number of allowed iterations (L)
+	 * @param stoppingCondition
+	 *            the stopping condition
+	 * @param impEst
+	 *            True if we want to perform a final fitting of the model with
+	 *            all inliers, false otherwise
+	 */
+	public PreemptiveRANSAC(M model, PackedResidualCalculator<I, D, M> errorModel,
+			double errorThreshold, int nIterations,
+			StoppingCondition stoppingCondition, boolean impEst)
+	{
+		this(model, errorModel, new ThresholdDistanceCheck(errorThreshold), nIterations, stoppingCondition, impEst);
+	}
+
+	/**
+	 * Create a {@link PreemptiveRANSAC} object with uniform random sampling
+	 * for creating the subsets, SPRT verification and the global thread pool
+	 * 
+	 * @param model
+	 *            Model object with which to fit data
+	 * @param errorModel
+	 *            object to compute the error of the model
+	 * @param dc
+	 *            the distance check that tests whether a point with given error
+	 *            from the error model should be considered an inlier
+	 * @param nIterations
+	 *            Maximum number of allowed iterations (L)
+	 * @param stoppingCondition
+	 *            the stopping condition
+	 * @param impEst
+	 *            True if we want to perform a final fitting of the model with
+	 *            all inliers, false otherwise
+	 */
+	public PreemptiveRANSAC(M model, PackedResidualCalculator<I, D, M> errorModel,
+			DistanceCheck dc, int nIterations,
+			StoppingCondition stoppingCondition, boolean impEst)
+	{
+		this(model, errorModel, dc, nIterations, stoppingCondition, impEst,
+				new UniformSampler<IndependentPair<I, D>>());
+	}
+
+	/**
+	 * Create a {@link PreemptiveRANSAC} object with SPRT verification and the
+	 * global thread pool
+	 * 
+	 * @param model
+	 *            Model object with which to fit data
+	 * @param errorModel
+	 *            object to compute the error of the model
+	 * @param dc
+	 *            the distance check that tests whether a point with given error
+	 *            from the error model should be considered an inlier
+	 * @param nIterations
+	 *            Maximum number of allowed iterations (L)
+	 * @param stoppingCondition
+	 *            the stopping condition
+	 * @param impEst
+	 *            True if we want to perform a final fitting of the model with
+	 *            all inliers, false otherwise
+	 * @param sampler
+	 *            the sampling algorithm for selecting random subsets
+	 */
+	public PreemptiveRANSAC(M model, PackedResidualCalculator<I, D, M> errorModel,
+			DistanceCheck dc, int nIterations,
+			StoppingCondition stoppingCondition, boolean impEst, CollectionSampler<IndependentPair<I, D>> sampler)
+	{
+		this(model, errorModel, dc, nIterations, stoppingCondition, impEst, sampler, Verification.SPRT,
+				GlobalExecutorPool.getPool());
+	}
+
+	/**
+	 * Create a {@link PreemptiveRANSAC} object
+	 * 
+	 * @param model
+	 *            Model object with which to fit data
+	 * @param errorModel
+	 *            object to compute the error of the model
+	 * @param dc
+	 *            the distance check that tests whether a point with given error
+	 *            from the error model should be considered an inlier
+	 * @param nIterations
+	 *            Maximum number of allowed iterations (L)
+	 * @param stoppingCondition
+	 *            the stopping condition
+	 * @param impEst
+	 *            True if we want to perform a final fitting of the model with
+	 *            all inliers, false otherwise
+	 * @param sampler
+	 *            the sampling algorithm for selecting random subsets
+	 * @param verification
+	 *            the verification strategy
+	 * @param pool
+	 *            the thread pool used to evaluate hypotheses
+	 */
+	public PreemptiveRANSAC(M model, PackedResidualCalculator<I, D, M> errorModel,
+			DistanceCheck dc, int nIterations,
+			StoppingCondition stoppingCondition, boolean impEst, CollectionSampler<IndependentPair<I, D>> sampler,
+			Verification verification, ThreadPoolExecutor pool)
+	{
+		super(model, errorModel, dc, nIterations, stoppingCondition, impEst, sampler);
+
+		this.packedErrorModel = errorModel;
+		this.verification = verification;
+		this.pool = pool;
+	}
+
+	/**
+	 * Holds the state of a hypothesis being evaluated
+	 */
+	private static class Hypothesis<I, D> {
+		List<? extends IndependentPair<I, D>> sample;
+		int status;
+		int consistent;
+		int tested;
+	}
+
+	/**
+	 * Parameters of the SPRT that remain fixed while a batch is evaluated
+	 */
+	private static class SPRTState {
+		double epsilon = SPRT_INITIAL_EPSILON;
+		double delta = SPRT_INITIAL_DELTA;
+		double logAcceptConsistent;
+		double logAcceptInconsistent;
+		double logThreshold;
+		boolean enabled;
+
+		long rejectedConsistent;
+		long rejectedTested;
+
+		/**
+		 * Recompute the decision threshold from the current estimates of
+		 * epsilon and delta
+		 */
+		void update() {
+			if (rejectedTested > 0)
+				delta = Math.min(0.99, Math.max(1e-4, (double) rejectedConsistent / rejectedTested));
+
+			enabled = epsilon > delta && epsilon < 1;
+			if (!enabled)
+				return;
+
+			logAcceptConsistent = Math.log(delta / epsilon);
+			logAcceptInconsistent = Math.log((1 - delta) / (1 - epsilon));
+
+			final double C = (1 - delta) * logAcceptInconsistent + delta * Math.log(delta / epsilon);
+			final double A0 = SPRT_MODEL_ESTIMATION_TIME * C / SPRT_MODELS_PER_SAMPLE + 1;
+
+			double A = A0;
+			for (int i = 0; i < 100; i++) {
+				final double An = A0 + Math.log(A);
+				if (Math.abs(An - A) < 1e-6) {
+					A = An;
+					break;
+				}
+				A = An;
+			}
+
+			logThreshold = Math.log(A);
+		}
+	}
+
+	@Override
+	public boolean fitData(final List<? extends IndependentPair<I, D>> data) {
+		final int M = model.numItemsToEstimate();
+		final int n = data.size();
+
+		bestModelInliers = null;
+		bestModelOutliers = null;
+
+		if (n < M || !stoppingCondition.init(data, model)) {
+			return false; // there are not enough points to create a model, or
+			// init failed
+		}
+
+		sampler.setCollection(data);
+
+		final int stride = packedErrorModel.getPackedLength();
+		final double[] packed = new double[n * stride];
+		for (int i = 0; i < n; i++)
+			packedErrorModel.pack(data.get(i), packed, i * stride);
+
+		// the order in which the data is verified; each hypothesis starts at a
+		// random offset
+		final int[] order = new int[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		for (int i = n - 1; i > 0; i--) {
+			final int j = random.nextInt(i + 1);
+			final int tmp = order[i];
+			order[i] = order[j];
+			order[j] = tmp;
+		}
+
+		final SPRTState sprt = new SPRTState();
+		List<? extends IndependentPair<I, D>> bestSample = null;
+		int bestK = -1;
+
+		final int bs = Math.max(1, batchSize);
+		@SuppressWarnings("unchecked")
+		final Hypothesis<I, D>[] batch = new Hypothesis[bs];
+		final int[] offsets = new int[bs];
+		for (int i = 0; i < bs; i++)
+			batch[i] = new Hypothesis<I, D>();
+
+		boolean stopped = false;
+		for (int l = 0; l < nIter && !stopped;) {
+			final int b = Math.min(bs, nIter - l);
+
+			for (int i = 0; i < b; i++) {
+				batch[i].sample = sampler.sample(M);
+				offsets[i] = random.nextInt(n);
+			}
+
+			if (verification == Verification.SPRT)
+				sprt.update();
+
+			final int bestKAtStart = bestK;
+			final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+			final Operation<Integer> op = new Operation<Integer>() {
+				@Override
+				public void perform(Integer i) {
+					// a task that throws would never complete the loop on a
+					// custom pool, so failures are passed back to the caller
+					// once the batch has finished
+					try {
+						evaluate(batch[i], packed, stride, order, offsets[i], bestKAtStart, sprt);
+					} catch (final Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+				}
+			};
+
+			if (b == 1 || pool == null) {
+				for (int i = 0; i < b; i++)
+					op.perform(i);
+			} else {
+				Parallel.forIndex(0, b, 1, op, pool);
+			}
+
+			final Throwable t = failure.get();
+			if (t instanceof RuntimeException)
+				throw (RuntimeException) t;
+			if (t instanceof Error)
+				throw (Error) t;
+
+			for (int i = 0; i < b; i++, l++) {
+				final Hypothesis<I, D> h = batch[i];
+
+				if (h.status == STATUS_INVALID)
+					continue; // bad estimate
+
+				if (h.status == STATUS_SPRT_REJECTED) {
+					sprt.rejectedConsistent += h.consistent;
+					sprt.rejectedTested += h.tested;
+				}
+
+				if (h.status == STATUS_VERIFIED && h.consistent >= bestK) {
+					bestK = h.consistent;
+					bestSample = h.sample;
+
+					if (verification == Verification.SPRT)
+						sprt.epsilon = Math.max(sprt.epsilon, (double) bestK / n);
+				}
+
+				if (stoppingCondition.shouldStopIterations(h.consistent)) {
+					stopped = true;
+					break;
+				}
+			}
+		}
+
+		for (int i = 0; i < bs; i++)
+			batch[i].sample = null;
+
+		inliers = new ArrayList<IndependentPair<I, D>>();
+		outliers = new ArrayList<IndependentPair<I, D>>();
+
+		if (bestSample == null || !model.estimate(bestSample)) {
+			bestModelInliers = inliers;
+			bestModelOutliers = outliers;
+			return stoppingCondition.finalFitCondition(0);
+		}
+
+		this.setModelConstructionData(bestSample);
+
+		final double[] params = packedErrorModel.getModelParameters(model);
+		for (int i = 0; i < n; i++) {
+			if (params != null && dc.check(packedErrorModel.computeResidual(params, packed, i * stride))) {
+				inliers.add(data.get(i));
+			} else {
+				outliers.add(data.get(i));
+			}
+		}
+
+		bestModelInliers = inliers;
+		bestModelOutliers = outliers;
+
+		if (!stopped || improveEstimate) {
+			if (inliers.size() >= M)
+				if (!model.estimate(inliers))
+					return false;
+		}
+
+		return stoppingCondition.finalFitCondition(inliers.size());
+	}
+
+	/**
+	 * Estimate and verify a single hypothesis. This is called concurrently,
+	 * so must not modify any shared state.
+	 */
+	@SuppressWarnings("unchecked")
+	private void evaluate(Hypothesis<I, D> h, double[] packed, int stride, int[] order, int start, int bestK,
+			SPRTState sprt)
+	{
+		h.status = STATUS_INVALID;
+		h.consistent = 0;
+		h.tested = 0;
+
+		final M m = (M) model.clone();
+		if (!m.estimate(h.sample))
+			return;
+
+		final double[] params = packedErrorModel.getModelParameters(m);
+		if (params == null)
+			return;
+
+		final int n = order.length;
+
+		if (verification == Verification.TDD) {
+			final int d = Math.min(tddSize, n);
+			for (int j = 0; j < d; j++) {
+				final int idx = order[(start + j) % n] * stride;
+				if (!dc.check(packedErrorModel.computeResidual(params, packed, idx))) {
+					h.status = STATUS_REJECTED;
+					return;
+				}
+			}
+			start += d;
+		}
+
+		final boolean useSPRT = verification == Verification.SPRT && sprt.enabled;
+		double logLambda = 0;
+		int consistent = 0;
+
+		for (int j = 0; j < n; j++) {
+			final int idx = order[(start + j) % n] * stride;
+
+			if (dc.check(packedErrorModel.computeResidual(params, packed, idx))) {
+				consistent++;
+
+				if (useSPRT)
+					logLambda += sprt.logAcceptConsistent;
+			} else {
+				if (consistent + (n - j - 1) < bestK) {
+					h.status = STATUS_REJECTED;
+					h.consistent = consistent;
+					h.tested = j + 1;
+					return;
+				}
+
+				if (useSPRT)
+					logLambda += sprt.logAcceptInconsistent;
+			}
+
+			if (useSPRT && logLambda > sprt.logThreshold) {
+				h.status = STATUS_SPRT_REJECTED;
+				h.consistent = consistent;
+				h.tested = j + 1;
+				return;
+			}
+		}
+
+		h.status = STATUS_VERIFIED;
+		h.consistent = consistent;
+		h.tested = n;
+	}
+
+	/**
+	 * @return the verification strategy
+	 */
+	public Verification getVerification() {
+		return verification;
+	}
+
+	/**
+	 * Set the verification strategy
+	 * 
+	 * @param verification
+	 *            the verification strategy
+	 */
+	public void setVerification(Verification verification) {
+		this.verification = verification;
+	}
+
+	/**
+	 * @return the number of hypotheses evaluated in parallel
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Set the number of hypotheses evaluated in parallel. Larger batches give
+	 * more parallelism, but the stopping condition is only able to stop the
+	 * iterations at the end of a batch.
+	 * 
+	 * @param batchSize
+	 *            the batch size
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @return the number of items, d, used in the T(d,d) test
+	 */
+	public int getTddSize() {
+		return tddSize;
+	}
+
+	/**
+	 * Set the number of items, d, used in the T(d,d) test
+	 * 
+	 * @param tddSize
+	 *            the number of items
+	 */
+	public void setTddSize(int tddSize) {
+		this.tddSize = tddSize;
+	}
+
+	/**
+	 * @return the thread pool used to evaluate hypotheses
+	 */
+	public ThreadPoolExecutor getPool() {
+		return pool;
+	}
+
+	/**
+	 * Set the thread pool used to evaluate hypotheses. If the pool is
+	 * <code>null</code> the hypotheses will be evaluated in the calling
+	 * thread.
+	 * 
+	 * @param pool
+	 *            the thread pool
+	 */
+	public void setPool(ThreadPoolExecutor pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Set the source of randomness used to select the order in which the data
+	 * is verified
+	 * 
+	 * @param random
+	 *            the random number generator
+	 */
+	public void setRandom(Random random) {
+		this.random = random;
+	}
+}
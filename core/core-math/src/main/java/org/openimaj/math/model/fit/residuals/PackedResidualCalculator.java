@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.math.model.fit.residuals;
+
+import org.openimaj.math.model.Model;
+import org.openimaj.util.pair.IndependentPair;
+
+/**
+ * A {@link ResidualCalculator} that can also compute residuals from data that
+ * has been packed into a primitive array, using model parameters that have
+ * been extracted into a primitive array. This avoids the cost of accessing
+ * boxed data items (and of any per-item object creation) when the residuals
+ * of many model hypotheses have to be computed, as in
+ * {@link org.openimaj.math.model.fit.PreemptiveRANSAC}.
+ * <p>
+ * The packed methods must not use or modify any state of the calculator, so
+ * that they can be called concurrently for different models.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ * 
+ * @param <I>
+ *            type of independent data
+ * @param <D>
+ *            type of dependent data
+ * @param <M>
+ *            concrete type of model
+ */
+public interface PackedResidualCalculator<I, D, M extends Model<I, D>> extends ResidualCalculator<I, D, M> {
+	/**
+	 * @return the number of values used to represent a packed data item
+	 */
+	public int getPackedLength();
+
+	/**
+	 * Pack a data item into the given array
+	 * 
+	 * @param data
+	 *            the data item
+	 * @param packed
+	 *            the array to pack into
+	 * @param offset
+	 *            the offset in the array at which to write the
+	 *            {@link #getPackedLength()} values
+	 */
+	public void pack(IndependentPair<I, D> data, double[] packed, int offset);
+
+	/**
+	 * Extract the parameters needed to compute residuals for the given model
+	 * 
+	 * @param model
+	 *            the model
+	 * @return the parameters, or null if the model is degenerate (i.e. a
+	 *         matrix that needs to be inverted is singular)
+	 */
+	public double[] getModelParameters(M model);
+
+	/**
+	 * Compute the residual of a packed data item
+	 * 
+	 * @param parameters
+	 *            the model parameters from {@link #getModelParameters(Model)}
+	 * @param packed
+	 *            the packed data
+	 * @param offset
+	 *            the offset of the data item in the packed data
+	 * @return the residual
+	 */
+	public double computeResidual(double[] parameters, double[] packed, int offset);
+}
@@ -0,0 +1,282 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.math.statistics;
+
+import java.util.Arrays;
+
+import Jama.Matrix;
+
+/**
+ * Incrementally accumulate the mean and covariance of a stream of vectors
+ * without storing the vectors. Vectors are buffered into small batches; the
+ * scatter matrix of each batch is computed about the batch mean and then
+ * merged into the running totals using the pairwise update of Chan, Golub and
+ * LeVeque. Accumulators built over separate partitions of the data can be
+ * combined with {@link #merge(IncrementalMeanAndCovariance)}, so the
+ * computation is easily parallelised.
+ * <p>
+ * Instances are not thread-safe; use one accumulator per thread and merge the
+ * results.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class IncrementalMeanAndCovariance {
+	private static final int DEFAULT_BATCH_SIZE = 64;
+
+	private final int ndims;
+	private final double[] mean;
+	private final double[] scatter;
+	private long count;
+
+	private final double[] batch;
+	private final int batchSize;
+	private int batchCount;
+
+	// scratch space reused by every flush and merge
+	private final double[] bmean;
+	private final double[] bscatter;
+	private final double[] delta;
+
+	/**
+	 * Construct with the given dimensionality
+	 * 
+	 * @param ndims
+	 *            the number of dimensions of the data
+	 */
+	public IncrementalMeanAndCovariance(int ndims) {
+		this(ndims, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Construct with the given dimensionality and number of vectors to buffer
+	 * before updating the scatter matrix
+	 * 
+	 * @param ndims
+	 *            the number of dimensions of the data
+	 * @param batchSize
+	 *            the batch size
+	 */
+	public IncrementalMeanAndCovariance(int ndims, int batchSize) {
+		this.ndims = ndims;
+		this.batchSize = Math.max(1, batchSize);
+		this.mean = new double[ndims];
+		this.scatter = new double[ndims * ndims];
+		this.batch = new double[this.batchSize * ndims];
+		this.bmean = new double[ndims];
+		this.bscatter = new double[ndims * ndims];
+		this.delta = new double[ndims];
+	}
+
+	/**
+	 * Add a vector
+	 * 
+	 * @param vector
+	 *            the vector
+	 */
+	public void add(double[] vector) {
+		checkLength(vector.length);
+
+		System.arraycopy(vector, 0, batch, batchCount * ndims, ndims);
+		if (++batchCount == batchSize)
+			flush();
+	}
+
+	/**
+	 * Add a vector
+	 * 
+	 * @param vector
+	 *            the vector
+	 */
+	public void add(float[] vector) {
+		checkLength(vector.length);
+
+		final int off = batchCount * ndims;
+		for (int i = 0; i < ndims; i++)
+			batch[off + i] = vector[i];
+
+		if (++batchCount == batchSize)
+			flush();
+	}
+
+	private void checkLength(int length) {
+		if (length != ndims)
+			throw new IllegalArgumentException("Expected a vector of length " + ndims + " but got " + length);
+	}
+
+	/**
+	 * Merge the statistics accumulated by another instance into this one. The
+	 * other instance is flushed, but otherwise unchanged.
+	 * 
+	 * @param other
+	 *            the other accumulator
+	 */
+	public void merge(IncrementalMeanAndCovariance other) {
+		if (other.ndims != ndims)
+			throw new IllegalArgumentException("Dimensionality of the accumulators differs");
+
+		flush();
+		other.flush();
+
+		merge(other.count, other.mean, other.scatter);
+	}
+
+	/**
+	 * Merge the mean and (upper triangular) scatter of a set of nb vectors
+	 * into the running totals
+	 */
+	private void merge(long nb, double[] meanb, double[] scatterb) {
+		if (nb == 0)
+			return;
+
+		if (count == 0) {
+			count = nb;
+			System.arraycopy(meanb, 0, mean, 0, ndims);
+			System.arraycopy(scatterb, 0, scatter, 0, scatter.length);
+			return;
+		}
+
+		final double n = count + nb;
+		final double f = (double) count * nb / n;
+
+		for (int i = 0; i < ndims; i++)
+			delta[i] = meanb[i] - mean[i];
+
+		for (int i = 0; i < ndims; i++) {
+			final double di = delta[i] * f;
+			final int row = i * ndims;
+
+			for (int j = i; j < ndims; j++)
+				scatter[row + j] += scatterb[row + j] + di * delta[j];
+		}
+
+		for (int i = 0; i < ndims; i++)
+			mean[i] += delta[i] * nb / n;
+
+		count += nb;
+	}
+
+	/**
+	 * Fold the buffered vectors into the running totals
+	 */
+	private void flush() {
+		if (batchCount == 0)
+			return;
+
+		final int nb = batchCount;
+		Arrays.fill(bmean, 0);
+
+		for (int r = 0; r < nb; r++)
+			for (int i = 0, off = r * ndims; i < ndims; i++)
+				bmean[i] += batch[off + i];
+
+		for (int i = 0; i < ndims; i++)
+			bmean[i] /= nb;
+
+		for (int r = 0; r < nb; r++)
+			for (int i = 0, off = r * ndims; i < ndims; i++)
+				batch[off + i] -= bmean[i];
+
+		Arrays.fill(bscatter, 0);
+		for (int r = 0; r < nb; r++) {
+			final int off = r * ndims;
+
+			for (int i = 0; i < ndims; i++) {
+				final double xi = batch[off + i];
+				if (xi == 0)
+					continue;
+
+				final int row = i * ndims;
+				for (int j = i; j < ndims; j++)
+					bscatter[row + j] += xi * batch[off + j];
+			}
+		}
+
+		batchCount = 0;
+		merge(nb, bmean, bscatter);
+	}
+
+	/**
+	 * @return the number of dimensions
+	 */
+	public int numDimensions() {
+		return ndims;
+	}
+
+	/**
+	 * @return the number of vectors that have been added
+	 */
+	public long getCount() {
+		return count + batchCount;
+	}
+
+	/**
+	 * @return a copy of the mean vector
+	 */
+	public double[] getMean() {
+		flush();
+		return Arrays.copyOf(mean, ndims);
+	}
+
+	/**
+	 * Get the scatter matrix (the sum of the outer products of the centred
+	 * vectors)
+	 * 
+	 * @return the scatter matrix
+	 */
+	public Matrix getScatter() {
+		flush();
+
+		final Matrix m = new Matrix(ndims, ndims);
+		final double[][] md = m.getArray();
+
+		for (int i = 0; i < ndims; i++) {
+			for (int j = i; j < ndims; j++) {
+				md[i][j] = scatter[i * ndims + j];
+				md[j][i] = md[i][j];
+			}
+		}
+
+		return m;
+	}
+
+	/**
+	 * Get the (unbiased) sample covariance matrix
+	 * 
+	 * @return the covariance matrix
+	 */
+	public Matrix getCovariance() {
+		final Matrix m = getScatter();
+
+		if (count > 1)
+			m.timesEquals(1.0 / (count - 1));
+
+		return m;
+	}
+}
@@ -30,29 +30,15 @@
 package org.openimaj.math.util.distance;
 
 /**
- * Utilities for hamming distance calculations. All hamming distance
- * calculations between native types are decomposed into the summation over all
- * bytes in the native type. The hamming distance of byte types is computed
- * through a lookup table.
+ * Utilities for hamming distance calculations. Hamming distances between
+ * native types are computed with {@link Long#bitCount(long)} and
+ * {@link Integer#bitCount(int)}, which the JIT compiles to a single hardware
+ * population count instruction where the processor supports one.
  * 
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  * 
  */
 public class HammingUtils {
-	private static int[] BYTE_BIT_COUNTS;
-	static {
-		BYTE_BIT_COUNTS = new int[256];
-
-		for (int i = 0; i < 256; i++) {
-			BYTE_BIT_COUNTS[i] = (i & 1) + BYTE_BIT_COUNTS[i / 2];
-		}
-	}
-
-	private final static int LONG_BYTES = Long.SIZE / Byte.SIZE;
-	private final static int INT_BYTES = Integer.SIZE / Byte.SIZE;
-	private final static int SHORT_BYTES = Short.SIZE / Byte.SIZE;
-	private final static int CHAR_BYTES = Character.SIZE / Byte.SIZE;
-
 	/**
 	 * Bitwise (assuming packed bit strings) hamming distance
 	 * 
@@ -95,17 +81,7 @@ public class HammingUtils {
 	 * @return the hamming distance
 	 */
 	public static int packedHamming(long i1, long i2) {
-		int h = 0;
-		for (int i = 0; i < LONG_BYTES; i++) {
-			final byte b1 = (byte) (i1 & 0xff);
-			i1 >>= 8;
-
-			final byte b2 = (byte) (i2 & 0xff);
-			i2 >>= 8;
-
-			h += packedHamming(b1, b2);
-		}
-		return h;
+		return Long.bitCount(i1 ^ i2);
 	}
 
 	/**
@@ -118,17 +94,7 @@ public class HammingUtils {
 	 * @return the hamming distance
 	 */
 	public static int packedHamming(int i1, int i2) {
-		int h = 0;
-		for (int i = 0; i < INT_BYTES; i++) {
-			final byte b1 = (byte) (i1 & 0xff);
-			i1 >>= 8;
-
-			final byte b2 = (byte) (i2 & 0xff);
-			i2 >>= 8;
-
-			h += packedHamming(b1, b2);
-		}
-		return h;
+		return Integer.bitCount(i1 ^ i2);
 	}
 
 	/**
@@ -141,7 +107,7 @@ public class HammingUtils {
 	 * @return the hamming distance
 	 */
 	public static int packedHamming(byte i1, byte i2) {
-		return BYTE_BIT_COUNTS[(i1 ^ i2) & 0xFF];
+		return Integer.bitCount((i1 ^ i2) & 0xFF);
 	}
 
 	/**
@@ -154,17 +120,7 @@ public class HammingUtils {
 	 * @return the hamming distance
 	 */
 	public static int packedHamming(char i1, char i2) {
-		int h = 0;
-		for (int i = 0; i < CHAR_BYTES; i++) {
-			final byte b1 = (byte) (i1 & 0xff);
-			i1 >>= 8;
-
-			final byte b2 = (byte) (i2 & 0xff);
-			i2 >>= 8;
-
-			h += packedHamming(b1, b2);
-		}
-		return h;
+		return Integer.bitCount(i1 ^ i2);
 	}
 
 	/**
@@ -177,16 +133,23 @@ public class HammingUtils {
 	 * @return the hamming distance
 	 */
 	public static int packedHamming(short i1, short i2) {
-		int h = 0;
-		for (int i = 0; i < SHORT_BYTES; i++) {
-			final byte b1 = (byte) (i1 & 0xff);
-			i1 >>= 8;
-
-			final byte b2 = (byte) (i2 & 0xff);
-			i2 >>= 8;
+		return Integer.bitCount((i1 ^ i2) & 0xFFFF);
+	}
 
-			h += packedHamming(b1, b2);
-		}
+	/**
+	 * Bitwise hamming distance between two bit strings packed into arrays of
+	 * longs. The arrays must have the same length.
+	 * 
+	 * @param i1
+	 *            first bit string
+	 * @param i2
+	 *            second bit string
+	 * @return the hamming distance
+	 */
+	public static int packedHamming(long[] i1, long[] i2) {
+		int h = 0;
+		for (int i = 0; i < i1.length; i++)
+			h += Long.bitCount(i1[i] ^ i2[i]);
 		return h;
 	}
 
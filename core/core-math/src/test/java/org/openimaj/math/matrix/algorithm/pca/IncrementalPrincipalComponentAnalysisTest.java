@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.math.matrix.algorithm.pca;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.openimaj.data.DoubleArrayBackedDataSource;
+
+import Jama.Matrix;
+
+/**
+ * Tests for {@link IncrementalPrincipalComponentAnalysis}
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ * 
+ */
+public class IncrementalPrincipalComponentAnalysisTest extends PrincipalComponentAnalysisTest {
+	@Override
+	protected PrincipalComponentAnalysis createPCA() {
+		return new IncrementalPrincipalComponentAnalysis();
+	}
+
+	static double[][] makeData(int n, int d, long seed) {
+		final Random rng = new Random(seed);
+
+		// data with a decaying spectrum and a non-zero mean
+		final double[][] data = new double[n][d];
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < d; j++)
+				data[i][j] = 5 + rng.nextGaussian() * (d - j) * (d - j);
+
+		// mix the dimensions so the components are not axis aligned
+		final double[][] mixed = new double[n][d];
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < d; j++)
+				mixed[i][j] = data[i][j] + 0.5 * data[i][(j + 1) % d];
+
+		return mixed;
+	}
+
+	static void assertSameBasis(PrincipalComponentAnalysis expected, PrincipalComponentAnalysis actual, int n,
+			double tol)
+	{
+		final Matrix eb = expected.getBasis();
+		final Matrix ab = actual.getBasis();
+
+		for (int c = 0; c < n; c++) {
+			assertEquals(1, expected.getEigenValue(c) / actual.getEigenValue(c), tol);
+
+			// components are only defined up to sign
+			double dot = 0;
+			for (int r = 0; r < eb.getRowDimension(); r++)
+				dot += eb.get(r, c) * ab.get(r, c);
+
+			assertEquals(1, Math.abs(dot), tol);
+		}
+
+		for (int i = 0; i < expected.getMean().length; i++)
+			assertEquals(expected.getMean()[i], actual.getMean()[i], 1e-8);
+	}
+
+	/**
+	 * The streaming variants should produce the same result as the in-memory
+	 * covariance PCA
+	 */
+	@Test
+	public void testDataSourceAndIterable() {
+		final double[][] data = makeData(5000, 10, 1);
+
+		final CovarPrincipalComponentAnalysis expected = new CovarPrincipalComponentAnalysis();
+		expected.learnBasis(data);
+
+		final IncrementalPrincipalComponentAnalysis fromSource = new IncrementalPrincipalComponentAnalysis();
+		fromSource.learnBasis(new DoubleArrayBackedDataSource(data));
+		assertSameBasis(expected, fromSource, 10, 1e-6);
+
+		final IncrementalPrincipalComponentAnalysis fromIterable = new IncrementalPrincipalComponentAnalysis(4);
+		fromIterable.learnBasis((Iterable<double[]>) Arrays.asList(data));
+		assertEquals(4, fromIterable.getEigenValues().length);
+		assertSameBasis(expected, fromIterable, 4, 1e-6);
+	}
+
+	/**
+	 * The randomised PCA should recover the leading components
+	 */
+	@Test
+	public void testRandomised() {
+		final double[][] data = makeData(5000, 50, 2);
+
+		final IncrementalPrincipalComponentAnalysis expected = new IncrementalPrincipalComponentAnalysis();
+		expected.learnBasis(new DoubleArrayBackedDataSource(data));
+
+		final RandomisedPrincipalComponentAnalysis rpca = new RandomisedPrincipalComponentAnalysis(5,
+				RandomisedPrincipalComponentAnalysis.DEFAULT_OVERSAMPLING,
+				RandomisedPrincipalComponentAnalysis.DEFAULT_POWER_ITERATIONS, new Random(3));
+		rpca.learnBasis(new DoubleArrayBackedDataSource(data));
+
+		assertEquals(5, rpca.getEigenValues().length);
+		assertSameBasis(expected, rpca, 5, 1e-3);
+	}
+}
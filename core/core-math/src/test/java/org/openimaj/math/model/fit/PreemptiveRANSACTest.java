@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.math.model.fit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openimaj.math.geometry.point.Point2d;
+import org.openimaj.math.geometry.point.Point2dImpl;
+import org.openimaj.math.geometry.transforms.HomographyModel;
+import org.openimaj.math.geometry.transforms.residuals.AlgebraicResidual2d;
+import org.openimaj.math.geometry.transforms.residuals.SingleImageTransferResidual2d;
+import org.openimaj.math.geometry.transforms.residuals.SymmetricTransferResidual2d;
+import org.openimaj.math.model.fit.PreemptiveRANSAC.Verification;
+import org.openimaj.math.model.fit.residuals.PackedResidualCalculator;
+import org.openimaj.util.pair.IndependentPair;
+
+import Jama.Matrix;
+
+/**
+ * Tests for {@link PreemptiveRANSAC} and the {@link PackedResidualCalculator}s
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ * 
+ */
+public class PreemptiveRANSACTest {
+	private static final Matrix H = new Matrix(new double[][] {
+			{ 1.2, 0.1, 20 },
+			{ -0.15, 0.9, 35 },
+			{ 0.0005, -0.0003, 1 } });
+
+	private List<IndependentPair<Point2d, Point2d>> data;
+	private Map<IndependentPair<Point2d, Point2d>, Boolean> isInlier;
+
+	/**
+	 * Create the test data; 40% of the matches are correct (with a small
+	 * amount of noise) and the remainder are random.
+	 */
+	@Before
+	public void setup() {
+		final Random rng = new Random(0);
+
+		data = new ArrayList<IndependentPair<Point2d, Point2d>>();
+		isInlier = new IdentityHashMap<IndependentPair<Point2d, Point2d>, Boolean>();
+
+		for (int i = 0; i < 500; i++) {
+			final Point2dImpl p1 = new Point2dImpl(rng.nextFloat() * 400, rng.nextFloat() * 400);
+			final Point2dImpl p2;
+			final boolean inlier = i < 200;
+
+			if (inlier) {
+				p2 = p1.transform(H);
+				p2.x += rng.nextGaussian() * 0.2;
+				p2.y += rng.nextGaussian() * 0.2;
+			} else {
+				p2 = new Point2dImpl(rng.nextFloat() * 400, rng.nextFloat() * 400);
+			}
+
+			final IndependentPair<Point2d, Point2d> pair = new IndependentPair<Point2d, Point2d>(p1, p2);
+			data.add(pair);
+			isInlier.put(pair, inlier);
+		}
+
+		Collections.shuffle(data, rng);
+	}
+
+	/**
+	 * Test that the packed residuals are the same as the unpacked ones
+	 */
+	@Test
+	public void testPackedResiduals() {
+		final HomographyModel model = new HomographyModel(false);
+		model.setTransform(H);
+
+		checkPacked(new SymmetricTransferResidual2d<HomographyModel>(), model);
+		checkPacked(new AlgebraicResidual2d<HomographyModel>(), model);
+		checkPacked(new SingleImageTransferResidual2d<HomographyModel>(), model);
+	}
+
+	private void checkPacked(PackedResidualCalculator<Point2d, Point2d, HomographyModel> calc, HomographyModel model) {
+		final int len = calc.getPackedLength();
+		final double[] packed = new double[data.size() * len];
+		for (int i = 0; i < data.size(); i++)
+			calc.pack(data.get(i), packed, i * len);
+
+		calc.setModel(model);
+		final double[] params = calc.getModelParameters(model);
+
+		for (int i = 0; i < data.size(); i++) {
+			final double expected = calc.computeResidual(data.get(i));
+			final double actual = calc.computeResidual(params, packed, i * len);
+
+			assertEquals(expected, actual, 1e-3 * Math.max(1, expected));
+		}
+	}
+
+	/**
+	 * Test that a singular transform is reported as degenerate
+	 */
+	@Test
+	public void testDegenerate() {
+		final HomographyModel model = new HomographyModel(false);
+		model.setTransform(new Matrix(3, 3));
+
+		assertEquals(null, new SymmetricTransferResidual2d<HomographyModel>().getModelParameters(model));
+	}
+
+	/**
+	 * Test that each of the verification strategies finds the inliers
+	 */
+	@Test
+	public void testFit() {
+		for (final Verification v : Verification.values()) {
+			final PreemptiveRANSAC<Point2d, Point2d, HomographyModel> ransac = new PreemptiveRANSAC<Point2d, Point2d, HomographyModel>(
+					new HomographyModel(), new SymmetricTransferResidual2d<HomographyModel>(), 4, 1000,
+					new RANSAC.BestFitStoppingCondition(), true);
+			ransac.setVerification(v);
+			ransac.setRandom(new Random(1));
+
+			assertTrue(ransac.fitData(data));
+
+			int correct = 0;
+			for (final IndependentPair<Point2d, Point2d> pair : ransac.getInliers())
+				if (isInlier.get(pair))
+					correct++;
+
+			assertTrue(correct >= 190);
+			assertTrue(ransac.getInliers().size() - correct < 10);
+			assertEquals(data.size(), ransac.getInliers().size() + ransac.getOutliers().size());
+		}
+	}
+
+	/**
+	 * Test that a failure whilst evaluating a hypothesis is passed to the
+	 * caller rather than just rejecting the hypothesis, both when evaluating
+	 * in the calling thread and on a thread pool
+	 */
+	@Test
+	public void testFailurePropagates() {
+		final ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(2);
+
+		try {
+			for (final ThreadPoolExecutor p : Arrays.asList(null, pool)) {
+				final PreemptiveRANSAC<Point2d, Point2d, HomographyModel> ransac = new PreemptiveRANSAC<Point2d, Point2d, HomographyModel>(
+						new HomographyModel(), new SymmetricTransferResidual2d<HomographyModel>() {
+							@Override
+							public double computeResidual(double[] h, double[] packed, int offset) {
+								throw new IllegalStateException();
+							}
+						}, 4, 100, new RANSAC.BestFitStoppingCondition(), true);
+				ransac.setRandom(new Random(1));
+				ransac.setPool(p);
+
+				try {
+					ransac.fitData(data);
+					fail("expected the residual failure to be rethrown");
+				} catch (final IllegalStateException e) {
+					// expected
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
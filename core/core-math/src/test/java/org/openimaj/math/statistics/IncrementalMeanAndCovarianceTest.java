@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.math.statistics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import Jama.Matrix;
+
+/**
+ * Tests for {@link IncrementalMeanAndCovariance}
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ * 
+ */
+public class IncrementalMeanAndCovarianceTest {
+	/**
+	 * Accumulating in pieces and merging should give the same result as
+	 * computing directly
+	 */
+	@Test
+	public void testMerge() {
+		final Random rng = new Random(0);
+		final int n = 1000;
+		final int d = 5;
+
+		final double[][] data = new double[n][d];
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < d; j++)
+				data[i][j] = 100 + rng.nextGaussian() * (j + 1);
+
+		final double[] mean = new double[d];
+		for (final double[] row : data)
+			for (int j = 0; j < d; j++)
+				mean[j] += row[j] / n;
+
+		final double[][] covar = new double[d][d];
+		for (final double[] row : data)
+			for (int i = 0; i < d; i++)
+				for (int j = 0; j < d; j++)
+					covar[i][j] += (row[i] - mean[i]) * (row[j] - mean[j]) / (n - 1);
+
+		final IncrementalMeanAndCovariance a = new IncrementalMeanAndCovariance(d, 7);
+		final IncrementalMeanAndCovariance b = new IncrementalMeanAndCovariance(d);
+		for (int i = 0; i < n; i++) {
+			if (i < 333)
+				a.add(data[i]);
+			else
+				b.add(data[i]);
+		}
+		a.merge(b);
+
+		assertEquals(n, a.getCount());
+
+		final double[] m = a.getMean();
+		final Matrix c = a.getCovariance();
+		for (int i = 0; i < d; i++) {
+			assertEquals(mean[i], m[i], 1e-10);
+
+			for (int j = 0; j < d; j++)
+				assertEquals(covar[i][j], c.get(i, j), 1e-10);
+		}
+	}
+}
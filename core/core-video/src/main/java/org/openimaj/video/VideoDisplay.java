@@ -105,6 +105,10 @@ import org.openimaj.video.timecode.HrsMinSecFrameTimecode;
  * </code>
  * </pre>
  * <p>
+ * The display processes, draws and reads frames one after the other in a
+ * single thread. For analysing video as fast as possible (rather than at its
+ * playback rate), {@link org.openimaj.video.pipeline.VideoPipeline} runs these
+ * as concurrent stages.
  *
  * @author Sina Samangooei (ss@ecs.soton.ac.uk)
  * @author David Dupplaw (dpd@ecs.soton.ac.uk)
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video.pipeline;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.Semaphore;
+
+import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+
+import org.openimaj.image.DisplayUtilities;
+import org.openimaj.image.DisplayUtilities.ImageComponent;
+import org.openimaj.image.Image;
+import org.openimaj.image.ImageUtilities;
+import org.openimaj.util.function.Operation;
+
+/**
+ * A {@link VideoPipeline} sink that draws the frames into an
+ * {@link ImageComponent}. Frames are converted into one of two
+ * {@link BufferedImage}s on the calling thread, and the component is updated
+ * on the Swing event dispatch thread. A buffer is only drawn into again once
+ * the component has been switched to the other one, so the image being
+ * painted is never modified.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ *
+ * @param <T>
+ *            the image type of the frames
+ */
+public class DisplaySink<T extends Image<?, T>> implements Operation<T> {
+	private final ImageComponent screen;
+	private final BufferedImage[] buffers = new BufferedImage[2];
+	private final Semaphore shown = new Semaphore(1);
+	private int next;
+
+	/**
+	 * Construct a sink that draws into the given component
+	 *
+	 * @param screen
+	 *            the component
+	 */
+	public DisplaySink(ImageComponent screen) {
+		this.screen = screen;
+	}
+
+	/**
+	 * Construct a sink that draws into a new window with the given title and
+	 * size.
+	 *
+	 * @param title
+	 *            the window title
+	 * @param width
+	 *            the width of the video
+	 * @param height
+	 *            the height of the video
+	 */
+	public DisplaySink(String title, int width, int height) {
+		final JFrame frame = DisplayUtilities.makeFrame(title);
+
+		screen = new ImageComponent();
+		screen.setSize(width, height);
+		screen.setPreferredSize(new Dimension(width, height));
+		screen.setAllowZoom(false);
+		screen.setAllowPanning(false);
+		screen.setTransparencyGrid(false);
+		screen.setShowPixelColours(false);
+		screen.setShowXYPosition(false);
+
+		frame.getContentPane().add(screen);
+		frame.pack();
+		frame.setVisible(true);
+	}
+
+	@Override
+	public void perform(T frame) {
+		if (SwingUtilities.isEventDispatchThread()) {
+			screen.setImage(buffers[0] = ImageUtilities.createBufferedImageForDisplay(frame, buffers[0]));
+			return;
+		}
+
+		// wait until the previous frame is on screen; the buffer before it is
+		// then no longer in use
+		shown.acquireUninterruptibly();
+
+		final BufferedImage bimg = buffers[next] = ImageUtilities.createBufferedImageForDisplay(frame, buffers[next]);
+		next = 1 - next;
+
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					screen.setImage(bimg);
+				} finally {
+					shown.release();
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return the component the frames are drawn into
+	 */
+	public ImageComponent getScreen() {
+		return screen;
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video.pipeline;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openimaj.image.Image;
+
+/**
+ * A pool of reusable frame buffers. Frames are copied into a buffer from the
+ * pool with {@link #copyOf(Image)}, and the buffer is returned to the pool
+ * with {@link #release(Image)} once it is no longer needed. Buffers are only
+ * allocated when the pool has no free buffer of the right size, so in the
+ * steady state no new images are created per frame.
+ * <p>
+ * The pool doesn't limit how many buffers are in use; the number allocated
+ * is the largest number that the caller has in use at once, so callers
+ * should bound that themselves (as {@link VideoPipeline} does).
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ *
+ * @param <T>
+ *            the image type of the frames
+ */
+public class FramePool<T extends Image<?, T>> {
+	private final ConcurrentLinkedQueue<T> free = new ConcurrentLinkedQueue<T>();
+	private final AtomicInteger allocated = new AtomicInteger();
+
+	/**
+	 * Copy the given frame into a free buffer from the pool, allocating a new
+	 * buffer if there are no free buffers of the right size.
+	 *
+	 * @param frame
+	 *            the frame to copy
+	 * @return the buffer holding a copy of the frame
+	 */
+	public T copyOf(T frame) {
+		T buffer;
+		while ((buffer = free.poll()) != null) {
+			if (buffer.getWidth() == frame.getWidth() && buffer.getHeight() == frame.getHeight())
+				return buffer.internalCopy(frame);
+
+			// the frame size has changed; discard the old buffer
+			allocated.decrementAndGet();
+		}
+
+		allocated.incrementAndGet();
+		return frame.clone();
+	}
+
+	/**
+	 * Return a buffer obtained from {@link #copyOf(Image)} to the pool. The
+	 * buffer must not be used after it has been released.
+	 *
+	 * @param buffer
+	 *            the buffer
+	 */
+	public void release(T buffer) {
+		free.add(buffer);
+	}
+
+	/**
+	 * Get the number of buffers that have been allocated by this pool and are
+	 * either in use or free for reuse.
+	 *
+	 * @return the number of allocated buffers
+	 */
+	public int getAllocatedCount() {
+		return allocated.get();
+	}
+}
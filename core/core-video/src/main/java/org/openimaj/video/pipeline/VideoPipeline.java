@@ -0,0 +1,485 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video.pipeline;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openimaj.image.Image;
+import org.openimaj.image.processor.ImageProcessor;
+import org.openimaj.util.function.Operation;
+import org.openimaj.video.Video;
+import org.openimaj.video.VideoDisplay;
+import org.openimaj.video.processor.VideoProcessor;
+
+/**
+ * A multi-threaded video processing engine that runs decoding, processing
+ * and output as separate pipeline stages connected by bounded queues. Whilst
+ * frame <em>n</em> is being output, frame <em>n+1</em> can be processed and
+ * later frames decoded, so the throughput is limited by the slowest stage
+ * rather than the sum of all of them. This makes it suited to offline
+ * analysis of video, where frames should be handled as fast as possible; for
+ * real-time playback use {@link VideoDisplay}.
+ * <p>
+ * The stages are:
+ * <ol>
+ * <li><b>decode</b>: a thread reads frames from the {@link Video} and copies
+ * them into buffers from a {@link FramePool}, so that the decoder is free to
+ * reuse its own buffer and no new image is allocated per frame.</li>
+ * <li><b>process</b>: the {@link VideoProcessor}s (and in-place
+ * {@link ImageProcessor}s) are applied to each frame in the order they were
+ * added. By default a single thread does this, so stateful processors (such
+ * as shot detectors) see the frames in order. More threads can be used with
+ * {@link #setProcessingThreads(int)} if the processors are thread-safe.</li>
+ * <li><b>output</b>: the thread calling {@link #run()} passes the processed
+ * frames, in their original order, to each of the sinks and then returns the
+ * buffers to the pool.</li>
+ * </ol>
+ * The number of frames that have been decoded but not yet output is bounded
+ * (see {@link #getMaxFramesInFlight()}), so the memory used doesn't depend
+ * on how far the decoder gets ahead of the other stages.
+ * <p>
+ * The pipeline doesn't use Swing unless a {@link DisplaySink} is added as a
+ * sink, so it can be used on headless machines.
+ * <p>
+ * The frames passed to the processors and sinks are only valid until the
+ * sinks return; anything that needs to keep a frame must copy it.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ *
+ * @param <T>
+ *            the image type of the frames
+ */
+public class VideoPipeline<T extends Image<?, T>> implements Runnable {
+	/**
+	 * The default size of the queues between the stages
+	 */
+	public static final int DEFAULT_QUEUE_SIZE = 8;
+
+	private static final long POLL_MILLIS = 100;
+
+	private static class Frame<T> {
+		final long sequence;
+		final long timestamp;
+		final T buffer;
+		T image;
+
+		Frame(long sequence, long timestamp, T buffer) {
+			this.sequence = sequence;
+			this.timestamp = timestamp;
+			this.buffer = buffer;
+		}
+	}
+
+	private final Video<T> video;
+	private final List<VideoProcessor<T>> processors = new ArrayList<VideoProcessor<T>>();
+	private final List<Operation<T>> sinks = new ArrayList<Operation<T>>();
+	private final Frame<T> end = new Frame<T>(-1, -1, null);
+	private int queueSize = DEFAULT_QUEUE_SIZE;
+	private int processingThreads = 1;
+
+	private volatile boolean stopped;
+	private volatile Throwable failure;
+	private final AtomicLong frameCount = new AtomicLong();
+	private final AtomicLong decodeNanos = new AtomicLong();
+	private final AtomicLong processNanos = new AtomicLong();
+	private final AtomicLong outputNanos = new AtomicLong();
+	private volatile long currentTimestamp = -1;
+
+	/**
+	 * Construct a pipeline for the given video
+	 *
+	 * @param video
+	 *            the video
+	 */
+	public VideoPipeline(Video<T> video) {
+		this.video = video;
+	}
+
+	/**
+	 * Add a processor to the processing stage. Processors are applied in the
+	 * order they are added, each to the result of the previous one. If a
+	 * processor returns <code>null</code> the frame is not passed to the
+	 * sinks.
+	 *
+	 * @param processor
+	 *            the processor
+	 * @return this pipeline
+	 */
+	public VideoPipeline<T> addProcessor(VideoProcessor<T> processor) {
+		processors.add(processor);
+		return this;
+	}
+
+	/**
+	 * Add an {@link ImageProcessor} to the processing stage. The processor is
+	 * applied in-place to the frames.
+	 *
+	 * @param processor
+	 *            the processor
+	 * @return this pipeline
+	 */
+	public VideoPipeline<T> addProcessor(final ImageProcessor<T> processor) {
+		return addProcessor(new VideoProcessor<T>() {
+			@Override
+			public T processFrame(T frame) {
+				return frame.processInplace(processor);
+			}
+		});
+	}
+
+	/**
+	 * Add a sink to the output stage. Sinks are given the processed frames in
+	 * order.
+	 *
+	 * @see DisplaySink
+	 *
+	 * @param sink
+	 *            the sink
+	 * @return this pipeline
+	 */
+	public VideoPipeline<T> addSink(Operation<T> sink) {
+		sinks.add(sink);
+		return this;
+	}
+
+	/**
+	 * Set the size of the queues between the stages. Larger queues absorb more
+	 * variation in the time each stage takes per frame, at the cost of memory
+	 * for the extra frames.
+	 *
+	 * @param queueSize
+	 *            the queue size
+	 * @return this pipeline
+	 */
+	public VideoPipeline<T> setQueueSize(int queueSize) {
+		if (queueSize < 1)
+			throw new IllegalArgumentException("queueSize must be at least 1");
+
+		this.queueSize = queueSize;
+		return this;
+	}
+
+	/**
+	 * Set the number of threads in the processing stage. Using more than one
+	 * thread is only safe if all the processors are thread-safe and don't
+	 * depend on seeing the frames in order; the output stage always receives
+	 * the frames in order.
+	 *
+	 * @param processingThreads
+	 *            the number of processing threads
+	 * @return this pipeline
+	 */
+	public VideoPipeline<T> setProcessingThreads(int processingThreads) {
+		if (processingThreads < 1)
+			throw new IllegalArgumentException("processingThreads must be at least 1");
+
+		this.processingThreads = processingThreads;
+		return this;
+	}
+
+	/**
+	 * Get the maximum number of frames that can have been decoded but not yet
+	 * output at any one time. This is enough for both queues to be full, each
+	 * processing thread to hold a frame, and the decoder and output stage to
+	 * each hold one. It is also the most frame buffers that will be allocated.
+	 *
+	 * @return the maximum number of frames in flight
+	 */
+	public int getMaxFramesInFlight() {
+		return 2 * queueSize + processingThreads + 2;
+	}
+
+	/**
+	 * Stop the pipeline. Frames that have not yet been output are discarded,
+	 * and {@link #run()} returns shortly afterwards.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Process the video until the end is reached or the pipeline is stopped.
+	 * The decode and processing stages run in their own threads, and the
+	 * output stage runs in the calling thread. Once all frames have been
+	 * output, {@link VideoProcessor#processingComplete()} is called on each
+	 * processor.
+	 *
+	 * @throws RuntimeException
+	 *             if any of the stages fails (the cause is the original
+	 *             exception)
+	 */
+	@Override
+	public void run() {
+		final Semaphore inFlight = new Semaphore(getMaxFramesInFlight());
+		final FramePool<T> pool = new FramePool<T>();
+		final BlockingQueue<Frame<T>> decoded = new ArrayBlockingQueue<Frame<T>>(queueSize);
+		final BlockingQueue<Frame<T>> processed = new ArrayBlockingQueue<Frame<T>>(queueSize);
+		final List<Thread> threads = new ArrayList<Thread>();
+
+		stopped = false;
+		failure = null;
+
+		threads.add(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				decode(inFlight, pool, decoded);
+			}
+		}, "VideoPipeline-decode"));
+
+		for (int i = 0; i < processingThreads; i++) {
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					process(decoded, processed);
+				}
+			}, "VideoPipeline-process-" + i));
+		}
+
+		for (final Thread t : threads) {
+			t.setDaemon(true);
+			t.start();
+		}
+
+		try {
+			output(inFlight, pool, processed);
+		} catch (final Throwable t) {
+			fail(t);
+		} finally {
+			final boolean completed = !stopped;
+			stopped = true;
+
+			for (final Thread t : threads) {
+				t.interrupt();
+				try {
+					t.join();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			if (failure != null) {
+				if (failure instanceof Error)
+					throw (Error) failure;
+				throw new RuntimeException(failure);
+			}
+
+			if (completed) {
+				for (final VideoProcessor<T> p : processors)
+					p.processingComplete();
+			}
+		}
+	}
+
+	private void decode(Semaphore inFlight, FramePool<T> pool, BlockingQueue<Frame<T>> decoded) {
+		try {
+			long sequence = 0;
+
+			while (!stopped && video.hasNextFrame()) {
+				if (!acquire(inFlight))
+					return;
+
+				final long t0 = System.nanoTime();
+				final T frame = video.getNextFrame();
+				if (frame == null)
+					break;
+
+				final long timestamp = video.getTimeStamp();
+				final T buffer = pool.copyOf(frame);
+				decodeNanos.addAndGet(System.nanoTime() - t0);
+
+				if (!put(decoded, new Frame<T>(sequence++, timestamp, buffer)))
+					return;
+			}
+
+			for (int i = 0; i < processingThreads; i++)
+				put(decoded, end);
+		} catch (final Throwable t) {
+			fail(t);
+		}
+	}
+
+	private void process(BlockingQueue<Frame<T>> decoded, BlockingQueue<Frame<T>> processed) {
+		try {
+			Frame<T> f;
+
+			while ((f = take(decoded)) != null) {
+				if (f == end) {
+					put(processed, end);
+					return;
+				}
+
+				final long t0 = System.nanoTime();
+				T image = f.buffer;
+				for (int i = 0; i < processors.size() && image != null; i++)
+					image = processors.get(i).processFrame(image);
+				f.image = image;
+				processNanos.addAndGet(System.nanoTime() - t0);
+
+				if (!put(processed, f))
+					return;
+			}
+		} catch (final Throwable t) {
+			fail(t);
+		}
+	}
+
+	private void output(Semaphore inFlight, FramePool<T> pool, BlockingQueue<Frame<T>> processed) {
+		final PriorityQueue<Frame<T>> reorder = new PriorityQueue<Frame<T>>(processingThreads + 1,
+				new Comparator<Frame<T>>() {
+					@Override
+					public int compare(Frame<T> o1, Frame<T> o2) {
+						return o1.sequence < o2.sequence ? -1 : (o1.sequence == o2.sequence ? 0 : 1);
+					}
+				});
+
+		long next = 0;
+		int ended = 0;
+		Frame<T> f;
+
+		while (ended < processingThreads && (f = take(processed)) != null) {
+			if (f == end) {
+				ended++;
+				continue;
+			}
+
+			reorder.add(f);
+
+			while (!reorder.isEmpty() && reorder.peek().sequence == next) {
+				final Frame<T> out = reorder.poll();
+				final long t0 = System.nanoTime();
+
+				currentTimestamp = out.timestamp;
+				if (out.image != null) {
+					for (final Operation<T> sink : sinks)
+						sink.perform(out.image);
+				}
+
+				pool.release(out.buffer);
+				inFlight.release();
+				outputNanos.addAndGet(System.nanoTime() - t0);
+				frameCount.incrementAndGet();
+				next++;
+			}
+		}
+	}
+
+	private boolean acquire(Semaphore permits) throws InterruptedException {
+		while (!stopped) {
+			if (permits.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS))
+				return true;
+		}
+		return false;
+	}
+
+	private boolean put(BlockingQueue<Frame<T>> queue, Frame<T> f) throws InterruptedException {
+		while (!stopped) {
+			if (queue.offer(f, POLL_MILLIS, TimeUnit.MILLISECONDS))
+				return true;
+		}
+		return false;
+	}
+
+	private Frame<T> take(BlockingQueue<Frame<T>> queue) {
+		try {
+			while (!stopped) {
+				final Frame<T> f = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (f != null)
+					return f;
+			}
+		} catch (final InterruptedException e) {
+			// stopping
+		}
+		return null;
+	}
+
+	private void fail(Throwable t) {
+		// errors caused by interrupting the stages whilst stopping are ignored
+		if (!stopped && failure == null)
+			failure = t;
+		stopped = true;
+	}
+
+	/**
+	 * Get the number of frames that have been output
+	 *
+	 * @return the number of frames output
+	 */
+	public long getFrameCount() {
+		return frameCount.get();
+	}
+
+	/**
+	 * Get the timestamp (as given by {@link Video#getTimeStamp()}) of the
+	 * frame most recently passed to the sinks.
+	 *
+	 * @return the timestamp of the current output frame, or -1 if no frame
+	 *         has been output.
+	 */
+	public long getCurrentTimestamp() {
+		return currentTimestamp;
+	}
+
+	/**
+	 * Get the total time spent decoding frames (including copying them into
+	 * pooled buffers)
+	 *
+	 * @return the decoding time in milliseconds
+	 */
+	public long getDecodeTime() {
+		return TimeUnit.NANOSECONDS.toMillis(decodeNanos.get());
+	}
+
+	/**
+	 * Get the total time spent processing frames, summed over all the
+	 * processing threads
+	 *
+	 * @return the processing time in milliseconds
+	 */
+	public long getProcessingTime() {
+		return TimeUnit.NANOSECONDS.toMillis(processNanos.get());
+	}
+
+	/**
+	 * Get the total time spent in the sinks
+	 *
+	 * @return the output time in milliseconds
+	 */
+	public long getOutputTime() {
+		return TimeUnit.NANOSECONDS.toMillis(outputNanos.get());
+	}
+}
@@ -0,0 +1,361 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openimaj.image.FImage;
+import org.openimaj.util.function.Operation;
+import org.openimaj.video.ArrayBackedVideo;
+import org.openimaj.video.processor.VideoProcessor;
+
+/**
+ * Tests for {@link VideoPipeline}, using a synthetic in-memory video in which
+ * every pixel of the i-th frame has the value i.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ *
+ */
+public class VideoPipelineTest {
+	private static final int NUM_FRAMES = 200;
+
+	/**
+	 * A video that loops over its frames until the given number have been
+	 * decoded, counting how many have been decoded so far
+	 */
+	private static class CountingVideo extends ArrayBackedVideo<FImage> {
+		final AtomicInteger decoded = new AtomicInteger();
+		final int length;
+
+		CountingVideo(FImage[] frames, int length) {
+			super(frames, 25, true);
+			this.length = length;
+		}
+
+		@Override
+		public synchronized FImage getNextFrame() {
+			decoded.incrementAndGet();
+			return super.getNextFrame();
+		}
+
+		@Override
+		public synchronized boolean hasNextFrame() {
+			return decoded.get() < length;
+		}
+	}
+
+	/**
+	 * A processor that records the frame indices it completes and can be made
+	 * to sleep or fail on a given frame
+	 */
+	private static class TestProcessor extends VideoProcessor<FImage> {
+		final List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+		final AtomicInteger completeCalls = new AtomicInteger();
+		final Random rng = new Random(0);
+		int maxJitter = 0;
+		int slowFrame = -1;
+		long slowMillis = 0;
+		int failFrame = -1;
+
+		@Override
+		public FImage processFrame(FImage frame) {
+			final int idx = index(frame);
+
+			if (idx == failFrame)
+				throw new IllegalStateException("frame " + idx);
+
+			long sleep = idx == slowFrame ? slowMillis : 0;
+			if (maxJitter > 0) {
+				synchronized (rng) {
+					sleep += rng.nextInt(maxJitter);
+				}
+			}
+			sleep(sleep);
+
+			completed.add(idx);
+			return frame;
+		}
+
+		@Override
+		public void processingComplete() {
+			completeCalls.incrementAndGet();
+		}
+	}
+
+	/**
+	 * A sink that records the frame indices it receives
+	 */
+	private static class RecordingSink implements Operation<FImage> {
+		final List<Integer> received = new ArrayList<Integer>();
+
+		@Override
+		public void perform(FImage frame) {
+			received.add(index(frame));
+		}
+	}
+
+	private static FImage[] frames(int n) {
+		final FImage[] frames = new FImage[n];
+		for (int i = 0; i < n; i++)
+			frames[i] = new FImage(4, 4).fill(i);
+		return frames;
+	}
+
+	private static int index(FImage frame) {
+		return (int) frame.pixels[0][0];
+	}
+
+	private static void sleep(long millis) {
+		if (millis <= 0)
+			return;
+
+		try {
+			Thread.sleep(millis);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void assertInOrder(List<Integer> received, int n) {
+		assertEquals(n, received.size());
+		for (int i = 0; i < n; i++)
+			assertEquals(i, (int) received.get(i));
+	}
+
+	private static boolean pipelineThreadsAlive() {
+		for (final Thread t : Thread.getAllStackTraces().keySet()) {
+			if (t.isAlive() && t.getName().startsWith("VideoPipeline-"))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Frames processed by several threads must be output in decode order
+	 */
+	@Test
+	public void testOrderWithParallelProcessing() {
+		final TestProcessor proc = new TestProcessor();
+		proc.maxJitter = 3;
+		final RecordingSink sink = new RecordingSink();
+
+		final CountingVideo video = new CountingVideo(frames(NUM_FRAMES), NUM_FRAMES);
+		final VideoPipeline<FImage> pipeline = new VideoPipeline<FImage>(video)
+				.setProcessingThreads(4).addProcessor(proc).addSink(sink);
+		pipeline.run();
+
+		assertInOrder(sink.received, NUM_FRAMES);
+		assertEquals(NUM_FRAMES, pipeline.getFrameCount());
+		assertEquals(1, proc.completeCalls.get());
+		assertFalse(pipelineThreadsAlive());
+	}
+
+	/**
+	 * A frame that finishes processing after its successors must still be
+	 * output before them
+	 */
+	@Test
+	public void testReordering() {
+		final TestProcessor proc = new TestProcessor();
+		proc.slowFrame = 0;
+		proc.slowMillis = 200;
+		final RecordingSink sink = new RecordingSink();
+
+		new VideoPipeline<FImage>(new CountingVideo(frames(20), 20))
+				.setProcessingThreads(4).addProcessor(proc).addSink(sink).run();
+
+		// check that the frames really did complete out of order
+		assertTrue(proc.completed.indexOf(0) > 0);
+		assertInOrder(sink.received, 20);
+	}
+
+	/**
+	 * A failure in a processing thread is rethrown by {@link VideoPipeline#run()}
+	 */
+	@Test
+	public void testProcessorFailure() {
+		final TestProcessor proc = new TestProcessor();
+		proc.failFrame = 5;
+
+		final CountingVideo video = new CountingVideo(frames(NUM_FRAMES), Integer.MAX_VALUE);
+		final VideoPipeline<FImage> pipeline = new VideoPipeline<FImage>(video)
+				.setProcessingThreads(4).addProcessor(proc);
+
+		try {
+			pipeline.run();
+			fail("expected the processor failure to be rethrown");
+		} catch (final RuntimeException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+			assertEquals("frame 5", e.getCause().getMessage());
+		}
+
+		assertEquals(0, proc.completeCalls.get());
+		assertFalse(pipelineThreadsAlive());
+	}
+
+	/**
+	 * A failure in a sink is rethrown by {@link VideoPipeline#run()}
+	 */
+	@Test
+	public void testSinkFailure() {
+		final IllegalStateException failure = new IllegalStateException();
+		final TestProcessor proc = new TestProcessor();
+
+		final CountingVideo video = new CountingVideo(frames(NUM_FRAMES), Integer.MAX_VALUE);
+		final VideoPipeline<FImage> pipeline = new VideoPipeline<FImage>(video)
+				.setProcessingThreads(4).addProcessor(proc).addSink(new Operation<FImage>() {
+					@Override
+					public void perform(FImage frame) {
+						if (index(frame) == 10)
+							throw failure;
+					}
+				});
+
+		try {
+			pipeline.run();
+			fail("expected the sink failure to be rethrown");
+		} catch (final RuntimeException e) {
+			assertSame(failure, e.getCause());
+		}
+
+		assertEquals(10, pipeline.getFrameCount());
+		assertEquals(0, proc.completeCalls.get());
+		assertFalse(pipelineThreadsAlive());
+	}
+
+	/**
+	 * Stopping the pipeline from a sink makes {@link VideoPipeline#run()}
+	 * return without completing the processors, even for an endless video
+	 */
+	@Test(timeout = 10000)
+	public void testStop() {
+		final TestProcessor proc = new TestProcessor();
+		final AtomicBoolean stopCalled = new AtomicBoolean();
+
+		final CountingVideo video = new CountingVideo(frames(10), Integer.MAX_VALUE);
+		final VideoPipeline<FImage> pipeline = new VideoPipeline<FImage>(video)
+				.setProcessingThreads(4).addProcessor(proc);
+		pipeline.addSink(new Operation<FImage>() {
+			int count;
+
+			@Override
+			public void perform(FImage frame) {
+				if (++count == 50) {
+					pipeline.stop();
+					stopCalled.set(true);
+				}
+			}
+		});
+		pipeline.run();
+
+		assertTrue(stopCalled.get());
+		assertTrue(pipeline.getFrameCount() >= 50);
+		assertEquals(0, proc.completeCalls.get());
+		assertFalse(pipelineThreadsAlive());
+	}
+
+	/**
+	 * The frames should be copied into recycled buffers rather than a new
+	 * image being allocated for each one
+	 */
+	@Test
+	public void testBuffersRecycled() {
+		final Set<FImage> buffers = Collections.newSetFromMap(new IdentityHashMap<FImage, Boolean>());
+		final RecordingSink sink = new RecordingSink();
+
+		final VideoPipeline<FImage> pipeline = new VideoPipeline<FImage>(new CountingVideo(frames(NUM_FRAMES), NUM_FRAMES))
+				.setProcessingThreads(4).addProcessor(new TestProcessor()).addSink(sink);
+		pipeline.addSink(new Operation<FImage>() {
+			@Override
+			public void perform(FImage frame) {
+				buffers.add(frame);
+			}
+		});
+		pipeline.run();
+
+		assertInOrder(sink.received, NUM_FRAMES);
+		assertTrue(buffers.size() <= pipeline.getMaxFramesInFlight());
+	}
+
+	/**
+	 * The number of frames decoded but not yet output must never exceed
+	 * {@link VideoPipeline#getMaxFramesInFlight()}, even when a slow frame
+	 * holds up the output
+	 */
+	@Test
+	public void testFramesInFlightBounded() {
+		final CountingVideo video = new CountingVideo(frames(NUM_FRAMES), NUM_FRAMES);
+		final AtomicInteger output = new AtomicInteger();
+		final AtomicInteger maxInFlight = new AtomicInteger();
+
+		final TestProcessor proc = new TestProcessor();
+		proc.slowFrame = 0;
+		proc.slowMillis = 300;
+
+		final VideoPipeline<FImage> pipeline = new VideoPipeline<FImage>(video)
+				.setQueueSize(2).setProcessingThreads(4).addProcessor(proc);
+		pipeline.addProcessor(new VideoProcessor<FImage>() {
+			@Override
+			public FImage processFrame(FImage frame) {
+				final int inFlight = video.decoded.get() - output.get();
+				synchronized (maxInFlight) {
+					if (inFlight > maxInFlight.get())
+						maxInFlight.set(inFlight);
+				}
+				return frame;
+			}
+		});
+		pipeline.addSink(new Operation<FImage>() {
+			@Override
+			public void perform(FImage frame) {
+				output.incrementAndGet();
+			}
+		});
+		pipeline.run();
+
+		assertEquals(NUM_FRAMES, output.get());
+		// the slow frame must have let the decoder run ahead up to the bound
+		assertEquals(pipeline.getMaxFramesInFlight(), maxInFlight.get());
+	}
+}
@@ -0,0 +1,451 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * A read-only view of a (potentially very large) region of a file that is
+ * memory-mapped into the address space of the process. As a single
+ * {@link MappedByteBuffer} can only address {@link Integer#MAX_VALUE} bytes,
+ * the region is mapped as a sequence of chunks. The chunks are aligned to a
+ * fixed record size so that records (i.e. rows of a matrix, or the codes of a
+ * product quantised vector) never straddle a chunk boundary; this allows
+ * records to be read directly from the chunk buffers with no copying.
+ * <p>
+ * The data is not read onto the heap; the operating system pages it in from
+ * the file as it is accessed, and can share the pages between processes
+ * mapping the same file. Opening a mapped file is therefore very fast,
+ * irrespective of the size of the data. Multi-byte values are read in
+ * big-endian order (as written by a {@link java.io.DataOutput}).
+ * <p>
+ * Instances are thread-safe; all reads use absolute positions and do not
+ * modify the state of the underlying buffers. Note that there is no way to
+ * explicitly unmap a file; the mapping is released when the object is garbage
+ * collected.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class LargeMappedFile {
+	private final MappedByteBuffer[] chunks;
+	private final long chunkSize;
+	private final long length;
+	private final int recordSize;
+
+	/**
+	 * Map the given region of a file.
+	 *
+	 * @param file
+	 *            the file
+	 * @param offset
+	 *            the offset in the file at which the region starts
+	 * @param length
+	 *            the length of the region in bytes, or a negative number to
+	 *            map until the end of the file
+	 * @param recordSize
+	 *            the size of each record in bytes; records will not be split
+	 *            across chunks
+	 * @throws IOException
+	 *             if an error occurs mapping the file
+	 */
+	public LargeMappedFile(File file, long offset, long length, int recordSize) throws IOException {
+		this(file, offset, length, recordSize, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Map the given region of a file using chunks of at most the given size.
+	 * Smaller chunks are only really useful for testing.
+	 *
+	 * @param file
+	 *            the file
+	 * @param offset
+	 *            the offset in the file at which the region starts
+	 * @param length
+	 *            the length of the region in bytes, or a negative number to
+	 *            map until the end of the file
+	 * @param recordSize
+	 *            the size of each record in bytes; records will not be split
+	 *            across chunks
+	 * @param maxChunkSize
+	 *            the maximum size of each chunk in bytes
+	 * @throws IOException
+	 *             if an error occurs mapping the file
+	 */
+	public LargeMappedFile(File file, long offset, long length, int recordSize, int maxChunkSize) throws IOException {
+		if (recordSize <= 0 || recordSize > maxChunkSize)
+			throw new IllegalArgumentException("Invalid record size: " + recordSize);
+
+		this.recordSize = recordSize;
+		this.chunkSize = ((long) (maxChunkSize / recordSize)) * recordSize;
+
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = raf.getChannel();
+
+			if (length < 0)
+				length = channel.size() - offset;
+
+			if (offset < 0 || offset + length > channel.size())
+				throw new IOException("The region to map lies outside of the file");
+
+			this.length = length;
+
+			final int nchunks = (int) ((length + chunkSize - 1) / chunkSize);
+			this.chunks = new MappedByteBuffer[nchunks];
+			for (int i = 0; i < nchunks; i++) {
+				final long start = i * chunkSize;
+				final long size = Math.min(chunkSize, length - start);
+
+				chunks[i] = channel.map(MapMode.READ_ONLY, offset + start, size);
+			}
+		} finally {
+			// the mappings remain valid after the channel is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return the length of the mapped region in bytes
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * @return the size of each record in bytes
+	 */
+	public int recordSize() {
+		return recordSize;
+	}
+
+	/**
+	 * @return the number of complete records in the mapped region
+	 */
+	public long numRecords() {
+		return length / recordSize;
+	}
+
+	/**
+	 * @return the number of chunks the region is mapped with
+	 */
+	public int numChunks() {
+		return chunks.length;
+	}
+
+	/**
+	 * @return the number of records in each chunk (except possibly the last)
+	 */
+	public int recordsPerChunk() {
+		return (int) (chunkSize / recordSize);
+	}
+
+	/**
+	 * Get the buffer for the given chunk. The returned buffer is a
+	 * duplicate, so its position and limit can be manipulated freely; its
+	 * content starts at byte <code>chunk * recordsPerChunk() * recordSize()</code>
+	 * of the region.
+	 *
+	 * @param chunk
+	 *            the chunk index
+	 * @return the buffer
+	 */
+	public ByteBuffer getChunk(int chunk) {
+		return chunks[chunk].duplicate();
+	}
+
+	/**
+	 * Ask the operating system to load the whole of the mapped region into
+	 * physical memory. This is only a hint, and can be used to warm up an
+	 * index before it is searched.
+	 */
+	public void load() {
+		for (final MappedByteBuffer b : chunks)
+			b.load();
+	}
+
+	private int chunk(long position) {
+		return (int) (position / chunkSize);
+	}
+
+	private int offset(long position, int chunk) {
+		return (int) (position - chunk * chunkSize);
+	}
+
+	private long getSlow(long position, int nbytes) {
+		long v = 0;
+		for (int i = 0; i < nbytes; i++)
+			v = (v << 8) | (getByte(position + i) & 0xff);
+		return v;
+	}
+
+	/**
+	 * Read a byte
+	 *
+	 * @param position
+	 *            the position in the mapped region
+	 * @return the value
+	 */
+	public byte getByte(long position) {
+		final int c = chunk(position);
+		return chunks[c].get(offset(position, c));
+	}
+
+	/**
+	 * Read a short
+	 *
+	 * @param position
+	 *            the position in the mapped region
+	 * @return the value
+	 */
+	public short getShort(long position) {
+		final int c = chunk(position);
+		final int o = offset(position, c);
+
+		if (o + 2 <= chunks[c].limit())
+			return chunks[c].getShort(o);
+		return (short) getSlow(position, 2);
+	}
+
+	/**
+	 * Read an int
+	 *
+	 * @param position
+	 *            the position in the mapped region
+	 * @return the value
+	 */
+	public int getInt(long position) {
+		final int c = chunk(position);
+		final int o = offset(position, c);
+
+		if (o + 4 <= chunks[c].limit())
+			return chunks[c].getInt(o);
+		return (int) getSlow(position, 4);
+	}
+
+	/**
+	 * Read a long
+	 *
+	 * @param position
+	 *            the position in the mapped region
+	 * @return the value
+	 */
+	public long getLong(long position) {
+		final int c = chunk(position);
+		final int o = offset(position, c);
+
+		if (o + 8 <= chunks[c].limit())
+			return chunks[c].getLong(o);
+		return getSlow(position, 8);
+	}
+
+	/**
+	 * Read a float
+	 *
+	 * @param position
+	 *            the position in the mapped region
+	 * @return the value
+	 */
+	public float getFloat(long position) {
+		return Float.intBitsToFloat(getInt(position));
+	}
+
+	/**
+	 * Read a double
+	 *
+	 * @param position
+	 *            the position in the mapped region
+	 * @return the value
+	 */
+	public double getDouble(long position) {
+		return Double.longBitsToDouble(getLong(position));
+	}
+
+	/**
+	 * Get a view of the given range of the region. If the range lies within a
+	 * single chunk (which is always the case for ranges within a record) the
+	 * view shares the mapped memory; otherwise <code>null</code> is returned.
+	 */
+	private ByteBuffer view(long position, int nbytes) {
+		final int c = chunk(position);
+		final int o = offset(position, c);
+
+		if (o + nbytes > chunks[c].limit())
+			return null;
+
+		final ByteBuffer b = chunks[c].duplicate();
+		b.position(o);
+		b.limit(o + nbytes);
+		return b;
+	}
+
+	/**
+	 * Read bytes into the given array
+	 *
+	 * @param position
+	 *            the position in the mapped region
+	 * @param dst
+	 *            the destination array
+	 * @param offset
+	 *            the offset in the array
+	 * @param length
+	 *            the number of values to read
+	 */
+	public void get(long position, byte[] dst, int offset, int length) {
+		final ByteBuffer b = view(position, length);
+
+		if (b != null) {
+			b.get(dst, offset, length);
+		} else {
+			for (int i = 0; i < length; i++)
+				dst[offset + i] = getByte(position + i);
+		}
+	}
+
+	/**
+	 * Read shorts into the given array
+	 *
+	 * @param position
+	 *            the position in the mapped region
+	 * @param dst
+	 *            the destination array
+	 * @param offset
+	 *            the offset in the array
+	 * @param length
+	 *            the number of values to read
+	 */
+	public void get(long position, short[] dst, int offset, int length) {
+		final ByteBuffer b = view(position, length * 2);
+
+		if (b != null) {
+			b.asShortBuffer().get(dst, offset, length);
+		} else {
+			for (int i = 0; i < length; i++)
+				dst[offset + i] = getShort(position + 2L * i);
+		}
+	}
+
+	/**
+	 * Read ints into the given array
+	 *
+	 * @param position
+	 *            the position in the mapped region
+	 * @param dst
+	 *            the destination array
+	 * @param offset
+	 *            the offset in the array
+	 * @param length
+	 *            the number of values to read
+	 */
+	public void get(long position, int[] dst, int offset, int length) {
+		final ByteBuffer b = view(position, length * 4);
+
+		if (b != null) {
+			b.asIntBuffer().get(dst, offset, length);
+		} else {
+			for (int i = 0; i < length; i++)
+				dst[offset + i] = getInt(position + 4L * i);
+		}
+	}
+
+	/**
+	 * Read longs into the given array
+	 *
+	 * @param position
+	 *            the position in the mapped region
+	 * @param dst
+	 *            the destination array
+	 * @param offset
+	 *            the offset in the array
+	 * @param length
+	 *            the number of values to read
+	 */
+	public void get(long position, long[] dst, int offset, int length) {
+		final ByteBuffer b = view(position, length * 8);
+
+		if (b != null) {
+			b.asLongBuffer().get(dst, offset, length);
+		} else {
+			for (int i = 0; i < length; i++)
+				dst[offset + i] = getLong(position + 8L * i);
+		}
+	}
+
+	/**
+	 * Read floats into the given array
+	 *
+	 * @param position
+	 *            the position in the mapped region
+	 * @param dst
+	 *            the destination array
+	 * @param offset
+	 *            the offset in the array
+	 * @param length
+	 *            the number of values to read
+	 */
+	public void get(long position, float[] dst, int offset, int length) {
+		final ByteBuffer b = view(position, length * 4);
+
+		if (b != null) {
+			b.asFloatBuffer().get(dst, offset, length);
+		} else {
+			for (int i = 0; i < length; i++)
+				dst[offset + i] = getFloat(position + 4L * i);
+		}
+	}
+
+	/**
+	 * Read doubles into the given array
+	 *
+	 * @param position
+	 *            the position in the mapped region
+	 * @param dst
+	 *            the destination array
+	 * @param offset
+	 *            the offset in the array
+	 * @param length
+	 *            the number of values to read
+	 */
+	public void get(long position, double[] dst, int offset, int length) {
+		final ByteBuffer b = view(position, length * 8);
+
+		if (b != null) {
+			b.asDoubleBuffer().get(dst, offset, length);
+		} else {
+			for (int i = 0; i < length; i++)
+				dst[offset + i] = getDouble(position + 8L * i);
+		}
+	}
+}
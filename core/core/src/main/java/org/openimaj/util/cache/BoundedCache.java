@@ -0,0 +1,710 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.openimaj.citation.annotation.Reference;
+import org.openimaj.citation.annotation.ReferenceType;
+import org.openimaj.util.function.Function;
+
+/**
+ * A thread-safe cache that holds a bounded number of entries (or a bounded
+ * total weight of entries), evicting entries when the bound is exceeded.
+ * Entries are evicted according to one of two {@link Policy}s: plain
+ * least-recently-used, or Window-TinyLFU, which guards the bulk of the cache
+ * against one-off accesses (for example a single scan over a large dataset)
+ * by only admitting a new entry if it has been used more often than the entry
+ * it would replace.
+ * <p>
+ * Values are normally obtained through {@link #get(Object, Function)}; if a
+ * value is being loaded for a key when another thread requests the same key,
+ * the second thread waits for the first load to complete rather than loading
+ * the value again. Counts of hits, misses, loads and evictions are available
+ * through {@link #stats()}.
+ * <p>
+ * Reads are lock-free; updating the recency of an entry on a read is skipped
+ * if another thread is modifying the cache at the same time, so under heavy
+ * contention the eviction order is approximate.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ * 
+ * @param <K>
+ *            Type of key
+ * @param <V>
+ *            Type of value
+ */
+@Reference(
+		type = ReferenceType.Article,
+		author = { "Einziger, Gil", "Friedman, Roy", "Manes, Ben" },
+		title = "TinyLFU: A Highly Efficient Cache Admission Policy",
+		year = "2017",
+		journal = "ACM Transactions on Storage",
+		volume = "13",
+		number = "4",
+		pages = { "35:1", "35:31" })
+public class BoundedCache<K, V> {
+	/**
+	 * Eviction policies
+	 * 
+	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+	 */
+	public enum Policy {
+		/**
+		 * Evict the least recently used entry
+		 */
+		LRU,
+		/**
+		 * Window-TinyLFU: new entries enter a small LRU window (1% of the
+		 * capacity). Entries leaving the window are only admitted to the main
+		 * segmented-LRU region if they have been used more frequently than
+		 * the entry that would be evicted to make room for them.
+		 */
+		WINDOW_TINY_LFU
+	}
+
+	/**
+	 * Interface for objects that compute the weight of a cache entry (i.e. an
+	 * estimate of its size in bytes).
+	 * 
+	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+	 * 
+	 * @param <K>
+	 *            Type of key
+	 * @param <V>
+	 *            Type of value
+	 */
+	public interface Weigher<K, V> {
+		/**
+		 * Compute the weight of an entry
+		 * 
+		 * @param key
+		 *            the key
+		 * @param value
+		 *            the value
+		 * @return the weight; must be non-negative
+		 */
+		long weigh(K key, V value);
+	}
+
+	/**
+	 * A snapshot of the statistics of a {@link BoundedCache}.
+	 * 
+	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+	 */
+	public static final class Stats {
+		private final long hits;
+		private final long misses;
+		private final long loads;
+		private final long loadFailures;
+		private final long evictions;
+		private final long evictionWeight;
+
+		Stats(long hits, long misses, long loads, long loadFailures, long evictions, long evictionWeight) {
+			this.hits = hits;
+			this.misses = misses;
+			this.loads = loads;
+			this.loadFailures = loadFailures;
+			this.evictions = evictions;
+			this.evictionWeight = evictionWeight;
+		}
+
+		/**
+		 * @return the number of requests that found a value in the cache
+		 */
+		public long getHitCount() {
+			return hits;
+		}
+
+		/**
+		 * @return the number of requests that didn't find a value in the cache
+		 *         (including those that waited for another thread's load)
+		 */
+		public long getMissCount() {
+			return misses;
+		}
+
+		/**
+		 * @return the number of values that were successfully loaded
+		 */
+		public long getLoadCount() {
+			return loads;
+		}
+
+		/**
+		 * @return the number of loads that threw an exception
+		 */
+		public long getLoadFailureCount() {
+			return loadFailures;
+		}
+
+		/**
+		 * @return the number of entries that have been evicted
+		 */
+		public long getEvictionCount() {
+			return evictions;
+		}
+
+		/**
+		 * @return the total weight of the entries that have been evicted
+		 */
+		public long getEvictionWeight() {
+			return evictionWeight;
+		}
+
+		/**
+		 * @return the proportion of requests that were hits
+		 */
+		public double getHitRate() {
+			final long requests = hits + misses;
+			return requests == 0 ? 1 : (double) hits / requests;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Stats[hits=%d, misses=%d, loads=%d, loadFailures=%d, evictions=%d, evictionWeight=%d]",
+					hits, misses, loads, loadFailures, evictions, evictionWeight);
+		}
+	}
+
+	private static final int NONE = -1;
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+
+	private static final class Node<K, V> {
+		final K key;
+		final V value;
+		final long weight;
+		final int hash;
+		int queue = NONE;
+		Node<K, V> prev;
+		Node<K, V> next;
+
+		Node(K key, V value, long weight) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+			this.hash = key.hashCode();
+		}
+	}
+
+	/**
+	 * Doubly-linked list of nodes in access order (least recent at the head)
+	 */
+	private static final class AccessQueue<K, V> {
+		final int id;
+		Node<K, V> head;
+		Node<K, V> tail;
+		long weight;
+
+		AccessQueue(int id) {
+			this.id = id;
+		}
+
+		void add(Node<K, V> node) {
+			node.queue = id;
+			node.prev = tail;
+			node.next = null;
+			if (tail == null)
+				head = node;
+			else
+				tail.next = node;
+			tail = node;
+			weight += node.weight;
+		}
+
+		void remove(Node<K, V> node) {
+			if (node.prev == null)
+				head = node.next;
+			else
+				node.prev.next = node.next;
+			if (node.next == null)
+				tail = node.prev;
+			else
+				node.next.prev = node.prev;
+
+			node.prev = node.next = null;
+			node.queue = NONE;
+			weight -= node.weight;
+		}
+
+		void moveToTail(Node<K, V> node) {
+			if (node != tail) {
+				remove(node);
+				add(node);
+			}
+		}
+
+		void clear() {
+			for (Node<K, V> n = head; n != null;) {
+				final Node<K, V> next = n.next;
+				n.prev = n.next = null;
+				n.queue = NONE;
+				n = next;
+			}
+			head = tail = null;
+			weight = 0;
+		}
+	}
+
+	private static final class PendingLoad<V> {
+		final CountDownLatch latch = new CountDownLatch(1);
+		V value;
+		Throwable error;
+
+		V await() {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					latch.await();
+					break;
+				} catch (final InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+
+			if (error instanceof RuntimeException)
+				throw (RuntimeException) error;
+			if (error instanceof Error)
+				throw (Error) error;
+			return value;
+		}
+	}
+
+	private static final Weigher<Object, Object> SINGLETON_WEIGHER = new Weigher<Object, Object>() {
+		@Override
+		public long weigh(Object key, Object value) {
+			return 1;
+		}
+	};
+
+	private final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<K, Node<K, V>>();
+	private final ConcurrentHashMap<K, PendingLoad<V>> loading = new ConcurrentHashMap<K, PendingLoad<V>>();
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Policy policy;
+	private final Weigher<? super K, ? super V> weigher;
+	private final long maxWeight;
+	private final long windowMax;
+	private final long mainMax;
+	private final long protectedMax;
+	private final FrequencySketch sketch;
+
+	private final AccessQueue<K, V> window = new AccessQueue<K, V>(WINDOW);
+	private final AccessQueue<K, V> probation = new AccessQueue<K, V>(PROBATION);
+	private final AccessQueue<K, V> protect = new AccessQueue<K, V>(PROTECTED);
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong loads = new AtomicLong();
+	private final AtomicLong loadFailures = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong evictionWeight = new AtomicLong();
+
+	/**
+	 * Construct a Window-TinyLFU cache that holds at most the given number of
+	 * entries.
+	 * 
+	 * @param maxEntries
+	 *            the maximum number of entries
+	 */
+	public BoundedCache(long maxEntries) {
+		this(maxEntries, null, Policy.WINDOW_TINY_LFU);
+	}
+
+	/**
+	 * Construct a cache that holds at most the given number of entries and
+	 * uses the given eviction policy.
+	 * 
+	 * @param maxEntries
+	 *            the maximum number of entries
+	 * @param policy
+	 *            the eviction policy
+	 */
+	public BoundedCache(long maxEntries, Policy policy) {
+		this(maxEntries, null, policy);
+	}
+
+	/**
+	 * Construct a cache in which the total weight of the entries is at most
+	 * the given maximum. Entries that are heavier than the maximum are never
+	 * cached.
+	 * 
+	 * @param maxWeight
+	 *            the maximum total weight
+	 * @param weigher
+	 *            the object used to compute the weight of each entry; if null
+	 *            each entry has a weight of 1
+	 * @param policy
+	 *            the eviction policy
+	 */
+	public BoundedCache(long maxWeight, Weigher<? super K, ? super V> weigher, Policy policy) {
+		if (maxWeight < 0)
+			throw new IllegalArgumentException("The maximum weight must not be negative");
+
+		this.maxWeight = maxWeight;
+		if (weigher == null)
+			this.weigher = SINGLETON_WEIGHER;
+		else
+			this.weigher = weigher;
+		this.policy = policy;
+
+		if (policy == Policy.WINDOW_TINY_LFU) {
+			this.windowMax = Math.max(1, maxWeight / 100);
+			this.mainMax = Math.max(0, maxWeight - windowMax);
+			this.protectedMax = mainMax - mainMax / 5;
+			this.sketch = new FrequencySketch(weigher == null ? (int) Math.min(maxWeight, 1 << 20) : 16);
+		} else {
+			this.windowMax = 0;
+			this.mainMax = maxWeight;
+			this.protectedMax = 0;
+			this.sketch = null;
+		}
+	}
+
+	/**
+	 * Get the value for the given key, loading it with the given function if
+	 * it is not in the cache. If another thread is already loading the value
+	 * for the key, this method waits for that load to complete and returns
+	 * its result. Exceptions thrown by the function are propagated to all
+	 * waiting threads. Null values are returned but not cached.
+	 * 
+	 * @param key
+	 *            the key
+	 * @param loader
+	 *            the function to load the value for the key
+	 * @return the value
+	 */
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		Node<K, V> node = map.get(key);
+		if (node != null) {
+			hits.incrementAndGet();
+			afterRead(node);
+			return node.value;
+		}
+
+		misses.incrementAndGet();
+
+		final PendingLoad<V> pending = new PendingLoad<V>();
+		final PendingLoad<V> existing = loading.putIfAbsent(key, pending);
+		if (existing != null)
+			return existing.await();
+
+		try {
+			// another thread might have completed a load between the lookup
+			// and the registration of this load
+			node = map.get(key);
+			if (node != null) {
+				pending.value = node.value;
+				return node.value;
+			}
+
+			try {
+				pending.value = loader.apply(key);
+				loads.incrementAndGet();
+			} catch (final RuntimeException e) {
+				pending.error = e;
+				loadFailures.incrementAndGet();
+				throw e;
+			} catch (final Error e) {
+				pending.error = e;
+				loadFailures.incrementAndGet();
+				throw e;
+			}
+
+			if (pending.value != null)
+				put(key, pending.value);
+
+			return pending.value;
+		} finally {
+			loading.remove(key, pending);
+			pending.latch.countDown();
+		}
+	}
+
+	/**
+	 * Get the value for the given key if it is in the cache.
+	 * 
+	 * @param key
+	 *            the key
+	 * @return the value, or null if it is not in the cache
+	 */
+	public V getIfPresent(K key) {
+		final Node<K, V> node = map.get(key);
+
+		if (node == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		hits.incrementAndGet();
+		afterRead(node);
+		return node.value;
+	}
+
+	/**
+	 * Add a value to the cache, replacing any existing value for the key and
+	 * evicting other entries if necessary.
+	 * 
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value
+	 */
+	public void put(K key, V value) {
+		final long weight = weigher.weigh(key, value);
+		if (weight < 0)
+			throw new IllegalArgumentException("Weights must not be negative");
+
+		final Node<K, V> node = new Node<K, V>(key, value, weight);
+
+		lock.lock();
+		try {
+			final Node<K, V> old = weight > maxWeight ? map.remove(key) : map.put(key, node);
+			if (old != null)
+				unlink(old);
+
+			if (weight > maxWeight)
+				return;
+
+			if (sketch != null) {
+				sketch.ensureCapacity(map.size());
+				sketch.increment(node.hash);
+				window.add(node);
+			} else {
+				probation.add(node);
+			}
+
+			evict();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Remove the entry for the given key from the cache
+	 * 
+	 * @param key
+	 *            the key
+	 */
+	public void invalidate(K key) {
+		lock.lock();
+		try {
+			final Node<K, V> node = map.remove(key);
+			if (node != null)
+				unlink(node);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Remove all entries from the cache
+	 */
+	public void invalidateAll() {
+		lock.lock();
+		try {
+			map.clear();
+			window.clear();
+			probation.clear();
+			protect.clear();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of entries in the cache
+	 */
+	public int size() {
+		return map.size();
+	}
+
+	/**
+	 * @return the total weight of the entries in the cache
+	 */
+	public long weight() {
+		lock.lock();
+		try {
+			return totalWeight();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the maximum total weight of the entries in the cache
+	 */
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * @return the eviction policy
+	 */
+	public Policy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * @return a snapshot of the statistics of this cache
+	 */
+	public Stats stats() {
+		return new Stats(hits.get(), misses.get(), loads.get(), loadFailures.get(), evictions.get(),
+				evictionWeight.get());
+	}
+
+	private long totalWeight() {
+		return window.weight + probation.weight + protect.weight;
+	}
+
+	private AccessQueue<K, V> queue(int id) {
+		switch (id) {
+		case WINDOW:
+			return window;
+		case PROBATION:
+			return probation;
+		case PROTECTED:
+			return protect;
+		default:
+			return null;
+		}
+	}
+
+	private void unlink(Node<K, V> node) {
+		final AccessQueue<K, V> q = queue(node.queue);
+		if (q != null)
+			q.remove(node);
+	}
+
+	private void afterRead(Node<K, V> node) {
+		if (!lock.tryLock())
+			return;
+
+		try {
+			if (node.queue == NONE)
+				return;
+
+			if (sketch == null) {
+				probation.moveToTail(node);
+				return;
+			}
+
+			sketch.increment(node.hash);
+
+			switch (node.queue) {
+			case WINDOW:
+				window.moveToTail(node);
+				break;
+			case PROBATION:
+				probation.remove(node);
+				protect.add(node);
+
+				while (protect.weight > protectedMax && protect.head != node) {
+					final Node<K, V> demoted = protect.head;
+					protect.remove(demoted);
+					probation.add(demoted);
+				}
+				break;
+			case PROTECTED:
+				protect.moveToTail(node);
+				break;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void evict() {
+		if (sketch != null) {
+			// move entries from the window into the main region if they are
+			// more popular than the entries they would replace
+			while (window.weight > windowMax) {
+				final Node<K, V> candidate = window.head;
+				window.remove(candidate);
+
+				// decide on admission before evicting anything; the candidate
+				// must be more popular than every entry it would displace
+				final int frequency = sketch.frequency(candidate.hash);
+				final long excess = probation.weight + protect.weight + candidate.weight - mainMax;
+				boolean admit = true;
+				long freed = 0;
+				Node<K, V> victim = probation.head != null ? probation.head : protect.head;
+				while (victim != null && freed < excess) {
+					if (frequency <= sketch.frequency(victim.hash)) {
+						admit = false;
+						break;
+					}
+
+					freed += victim.weight;
+					victim = victim.next != null || victim.queue == PROTECTED ? victim.next : protect.head;
+				}
+
+				if (!admit) {
+					evicted(candidate);
+					continue;
+				}
+
+				while (probation.weight + protect.weight + candidate.weight > mainMax) {
+					victim = probation.head != null ? probation.head : protect.head;
+					if (victim == null)
+						break;
+
+					unlink(victim);
+					evicted(victim);
+				}
+				probation.add(candidate);
+			}
+		}
+
+		while (totalWeight() > maxWeight) {
+			Node<K, V> victim = probation.head;
+			if (victim == null)
+				victim = protect.head;
+			if (victim == null)
+				victim = window.head;
+
+			unlink(victim);
+			evicted(victim);
+		}
+	}
+
+	private void evicted(Node<K, V> node) {
+		map.remove(node.key, node);
+		evictions.incrementAndGet();
+		evictionWeight.addAndGet(node.weight);
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.cache;
+
+/**
+ * A compact, approximate frequency counter used by the W-TinyLFU policy of
+ * the {@link BoundedCache} to decide whether a new entry is more valuable than
+ * the entry it would replace. The sketch is a count-min sketch with four
+ * 4-bit counters per item, packed sixteen to a <code>long</code>. The counters
+ * are periodically halved so that the sketch tracks recent, rather than
+ * all-time, popularity.
+ * <p>
+ * This class is not thread-safe.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+class FrequencySketch {
+	private static final long[] SEEDS = {
+			0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final int MAX_COUNT = 15;
+
+	private long[] table;
+	private int tableMask;
+	private int sampleSize;
+	private int size;
+
+	/**
+	 * Construct a sketch suitable for the given number of items
+	 * 
+	 * @param capacity
+	 *            the expected number of items
+	 */
+	FrequencySketch(int capacity) {
+		ensureCapacity(capacity);
+	}
+
+	/**
+	 * Grow the sketch (discarding all counts) if it is too small for the given
+	 * number of items
+	 * 
+	 * @param capacity
+	 *            the expected number of items
+	 */
+	void ensureCapacity(int capacity) {
+		final int length = tableLength(capacity);
+		if (table != null && table.length >= length)
+			return;
+
+		table = new long[length];
+		tableMask = length - 1;
+		sampleSize = 10 * length;
+		size = 0;
+	}
+
+	private static int tableLength(int capacity) {
+		final int c = Math.max(16, Math.min(capacity, 1 << 30));
+		return Integer.highestOneBit(c - 1) << 1;
+	}
+
+	/**
+	 * Get the estimated number of occurrences of the item with the given hash
+	 * code (at most 15)
+	 * 
+	 * @param hash
+	 *            the hash code of the item
+	 * @return the estimated frequency
+	 */
+	int frequency(int hash) {
+		final int h = spread(hash);
+		final int start = (h & 3) << 2;
+
+		int frequency = MAX_COUNT;
+		for (int i = 0; i < 4; i++) {
+			final int index = indexOf(h, i);
+			final int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+
+		return frequency;
+	}
+
+	/**
+	 * Record an occurrence of the item with the given hash code
+	 * 
+	 * @param hash
+	 *            the hash code of the item
+	 */
+	void increment(int hash) {
+		final int h = spread(hash);
+		final int start = (h & 3) << 2;
+
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			final int index = indexOf(h, i);
+			final int offset = (start + i) << 2;
+			final long mask = 0xfL << offset;
+
+			if ((table[index] & mask) != mask) {
+				table[index] += 1L << offset;
+				added = true;
+			}
+		}
+
+		if (added && ++size == sampleSize)
+			reset();
+	}
+
+	/**
+	 * Halve all the counters
+	 */
+	private void reset() {
+		int odd = 0;
+		for (int i = 0; i < table.length; i++) {
+			odd += Long.bitCount(table[i] & 0x1111111111111111L);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+
+		size = (size - (odd >>> 2)) >>> 1;
+	}
+
+	private int indexOf(int h, int i) {
+		long hash = (h + SEEDS[i]) * SEEDS[i];
+		hash += hash >>> 32;
+		return ((int) hash) & tableMask;
+	}
+
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+}
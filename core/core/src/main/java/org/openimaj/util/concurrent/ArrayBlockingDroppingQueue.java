@@ -68,6 +68,11 @@ import java.util.concurrent.locks.ReentrantLock;
  * This class and its iterator implement all of the <em>optional</em> methods of
  * the {@link Collection} and {@link Iterator} interfaces.
  *
+ * <p>
+ * All operations are guarded by a single lock. For queues with many
+ * concurrent producers and consumers (or high insertion rates), the lock-free
+ * {@link RingBufferDroppingQueue} is likely to perform better.
+ *
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  * @param <E>
  *            the type of elements held in this collection
@@ -0,0 +1,461 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free {@linkplain BlockingDroppingQueue blocking dropping
+ * queue} backed by a ring buffer. Any number of threads may insert and remove
+ * elements concurrently.
+ * <p>
+ * Elements are ordered FIFO. Each slot of the ring buffer carries a sequence
+ * number that tells producers when the slot is free and consumers when it has
+ * been filled (the scheme described by Dmitry Vyukov for bounded MPMC
+ * queues), so the only contended operations are single compare-and-set
+ * operations on the head and tail counters. Attempts to <tt>put</tt> an
+ * element into a full queue remove the oldest element to make room; attempts
+ * to <tt>take</tt> an element from an empty queue wait according to the
+ * {@link WaitStrategy} given at construction.
+ * <p>
+ * {@link #drainTo(Collection, int)} claims a run of available elements with a
+ * single compare-and-set, which makes it much cheaper than repeated polling
+ * for consumers that process elements in batches. The {@link #insertCount()}
+ * and {@link #dropCount()} statistics are read without any locking.
+ * <p>
+ * The iterator is weakly consistent: it returns a snapshot of (some of) the
+ * elements present at the time it was created and never throws
+ * {@link java.util.ConcurrentModificationException}. Removal of arbitrary
+ * elements (through {@link #remove(Object)} or the iterator) is not
+ * supported.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ * @param <E>
+ *            the type of elements held in this collection
+ */
+public class RingBufferDroppingQueue<E> extends AbstractQueue<E> implements BlockingDroppingQueue<E> {
+	/**
+	 * Strategies for waiting for an element to become available in
+	 * {@link RingBufferDroppingQueue#take()} and
+	 * {@link RingBufferDroppingQueue#poll(long, TimeUnit)}.
+	 * 
+	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+	 */
+	public static enum WaitStrategy {
+		/**
+		 * Busy-wait. Gives the lowest latency, but occupies a processor for the
+		 * whole time the consumer is waiting.
+		 */
+		SPIN,
+		/**
+		 * Yield the processor between attempts. Lower latency than parking,
+		 * but still keeps the consumer runnable whilst waiting.
+		 */
+		YIELD,
+		/**
+		 * Park the waiting thread until a producer inserts an element. Has the
+		 * highest latency, but uses no processor time whilst waiting.
+		 */
+		PARK
+	}
+
+	private final int capacity;
+	private final int mask;
+	private final Object[] items;
+	private final AtomicLongArray sequences;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong dropCount = new AtomicLong();
+	private final WaitStrategy waitStrategy;
+	private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+
+	/**
+	 * Creates a <tt>RingBufferDroppingQueue</tt> with the given (fixed)
+	 * capacity that parks waiting consumers.
+	 * 
+	 * @param capacity
+	 *            the capacity of this queue
+	 * @throws IllegalArgumentException
+	 *             if <tt>capacity</tt> is less than 1
+	 */
+	public RingBufferDroppingQueue(int capacity) {
+		this(capacity, WaitStrategy.PARK);
+	}
+
+	/**
+	 * Creates a <tt>RingBufferDroppingQueue</tt> with the given (fixed)
+	 * capacity and wait strategy.
+	 * 
+	 * @param capacity
+	 *            the capacity of this queue
+	 * @param waitStrategy
+	 *            how consumers wait for elements
+	 * @throws IllegalArgumentException
+	 *             if <tt>capacity</tt> is less than 1
+	 */
+	public RingBufferDroppingQueue(int capacity, WaitStrategy waitStrategy) {
+		if (capacity <= 0 || capacity > (1 << 30))
+			throw new IllegalArgumentException();
+
+		this.capacity = capacity;
+		this.waitStrategy = waitStrategy;
+
+		// the ring needs at least two slots for the sequence numbers to
+		// distinguish a full slot from an empty one; the logical capacity is
+		// enforced separately
+		int size = 2;
+		while (size < capacity)
+			size <<= 1;
+
+		this.mask = size - 1;
+		this.items = new Object[size];
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++)
+			sequences.set(i, i);
+	}
+
+	/**
+	 * Creates a <tt>RingBufferDroppingQueue</tt> with the given (fixed)
+	 * capacity and wait strategy, initially containing the elements of the
+	 * given collection, added in traversal order of the collection's iterator.
+	 * 
+	 * @param capacity
+	 *            the capacity of this queue
+	 * @param waitStrategy
+	 *            how consumers wait for elements
+	 * @param c
+	 *            the collection of elements to initially contain
+	 * @throws IllegalArgumentException
+	 *             if <tt>capacity</tt> is less than <tt>c.size()</tt>, or less
+	 *             than 1.
+	 * @throws NullPointerException
+	 *             if the specified collection or any of its elements are null
+	 */
+	public RingBufferDroppingQueue(int capacity, WaitStrategy waitStrategy, Collection<? extends E> c) {
+		this(capacity, waitStrategy);
+		if (capacity < c.size())
+			throw new IllegalArgumentException();
+
+		for (final E e : c)
+			add(e);
+	}
+
+	/**
+	 * Get the wait strategy used by consumers of this queue.
+	 * 
+	 * @return the wait strategy
+	 */
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	@Override
+	public boolean offer(E e) {
+		if (e == null)
+			throw new NullPointerException();
+
+		for (;;) {
+			final long t = tail.get();
+
+			if (t - head.get() >= capacity)
+				return false;
+
+			final int idx = (int) t & mask;
+			final long seq = sequences.get(idx);
+
+			// if the sequence is behind, a consumer has claimed the slot but
+			// not yet released it; if it is ahead, another producer has
+			// claimed it. Either way, try again.
+			if (seq == t && tail.compareAndSet(t, t + 1)) {
+				items[idx] = e;
+
+				// a parked consumer registers itself and then re-reads the
+				// sequence, so the sequence must be published with a full
+				// fence before signal() looks for waiters, or the wakeup can
+				// be lost
+				if (waitStrategy == WaitStrategy.PARK)
+					sequences.set(idx, t + 1);
+				else
+					sequences.lazySet(idx, t + 1);
+				signal();
+				return true;
+			}
+		}
+	}
+
+	@Override
+	public E put(E e) throws InterruptedException {
+		E dropped = null;
+
+		while (!offer(e)) {
+			final E d = poll();
+
+			if (d != null) {
+				dropped = d;
+				dropCount.incrementAndGet();
+			}
+		}
+
+		return dropped;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		for (;;) {
+			final long h = head.get();
+			final int idx = (int) h & mask;
+			final long seq = sequences.get(idx);
+
+			if (seq == h + 1) {
+				if (head.compareAndSet(h, h + 1)) {
+					final E e = (E) items[idx];
+					items[idx] = null;
+					sequences.lazySet(idx, h + items.length);
+					return e;
+				}
+			} else if (seq < h + 1) {
+				// empty, or the producer of the head element is still
+				// writing it
+				return null;
+			}
+		}
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		final E e = poll();
+		if (e != null)
+			return e;
+
+		return await(false, 0);
+	}
+
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		final E e = poll();
+		if (e != null)
+			return e;
+
+		return await(true, unit.toNanos(timeout));
+	}
+
+	private E await(boolean timed, long nanos) throws InterruptedException {
+		final long deadline = timed ? System.nanoTime() + nanos : 0;
+		final Thread current = Thread.currentThread();
+		boolean registered = false;
+
+		try {
+			for (;;) {
+				if (Thread.interrupted())
+					throw new InterruptedException();
+
+				final E e = poll();
+				if (e != null)
+					return e;
+
+				long remaining = 0;
+				if (timed) {
+					remaining = deadline - System.nanoTime();
+					if (remaining <= 0)
+						return null;
+				}
+
+				switch (waitStrategy) {
+				case SPIN:
+					break;
+				case YIELD:
+					Thread.yield();
+					break;
+				case PARK:
+					if (!registered) {
+						// register, then poll again before parking so that
+						// an insertion can't be missed
+						waiters.add(current);
+						registered = true;
+					} else if (timed) {
+						LockSupport.parkNanos(this, remaining);
+					} else {
+						LockSupport.park(this);
+					}
+					break;
+				}
+			}
+		} finally {
+			if (registered)
+				waiters.remove(current);
+		}
+	}
+
+	private void signal() {
+		if (waitStrategy == WaitStrategy.PARK && !waiters.isEmpty()) {
+			for (final Thread t : waiters)
+				LockSupport.unpark(t);
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E peek() {
+		for (;;) {
+			final long h = head.get();
+			final int idx = (int) h & mask;
+			final long seq = sequences.get(idx);
+
+			if (seq == h + 1) {
+				final E e = (E) items[idx];
+
+				if (e != null && head.get() == h)
+					return e;
+			} else if (seq < h + 1) {
+				return null;
+			}
+		}
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public int drainTo(Collection<? super E> c, int maxElements) {
+		if (c == null)
+			throw new NullPointerException();
+		if (c == this)
+			throw new IllegalArgumentException();
+		if (maxElements <= 0)
+			return 0;
+
+		final Object[] batch = new Object[Math.min(maxElements, capacity)];
+		int n = 0;
+
+		while (n < maxElements) {
+			final long h = head.get();
+
+			// count the run of filled slots at the head
+			final int max = Math.min(maxElements - n, capacity);
+			int k = 0;
+			while (k < max && sequences.get((int) (h + k) & mask) == h + k + 1)
+				k++;
+
+			if (k == 0) {
+				if (head.get() == h)
+					break;
+				continue;
+			}
+
+			if (!head.compareAndSet(h, h + k))
+				continue;
+
+			// release all the claimed slots before handing the elements over,
+			// in case the collection throws
+			for (int i = 0; i < k; i++) {
+				final int idx = (int) (h + i) & mask;
+				batch[i] = items[idx];
+				items[idx] = null;
+				sequences.lazySet(idx, h + i + items.length);
+			}
+
+			for (int i = 0; i < k; i++) {
+				c.add((E) batch[i]);
+				batch[i] = null;
+			}
+
+			n += k;
+		}
+
+		return n;
+	}
+
+	@Override
+	public int size() {
+		final long h = head.get();
+		final long t = tail.get();
+
+		return (int) Math.min(capacity, Math.max(0, t - h));
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return capacity - size();
+	}
+
+	/**
+	 * Not supported.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public boolean remove(Object o) {
+		throw new UnsupportedOperationException("Removal of arbitrary elements is not supported");
+	}
+
+	@Override
+	public long insertCount() {
+		return tail.get();
+	}
+
+	@Override
+	public long dropCount() {
+		return dropCount.get();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Iterator<E> iterator() {
+		final List<E> snapshot = new ArrayList<E>();
+		final long t = tail.get();
+
+		for (long p = head.get(); p < t; p++) {
+			final int idx = (int) p & mask;
+			final long seq = sequences.get(idx);
+			final Object e = items[idx];
+
+			// only keep the element if the slot still holds position p
+			if (seq == p + 1 && e != null && sequences.get(idx) == seq)
+				snapshot.add((E) e);
+		}
+
+		return Collections.unmodifiableList(snapshot).iterator();
+	}
+}
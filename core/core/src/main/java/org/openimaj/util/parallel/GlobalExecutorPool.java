@@ -30,6 +30,7 @@
 package org.openimaj.util.parallel;
 
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 
@@ -39,6 +40,10 @@ import java.util.concurrent.ThreadPoolExecutor;
  * {@link Runtime#availableProcessors()}. 
  * 
  * To avoid the need to shutdown the threadpool, the threads are all daemons.
+ * <p>
+ * A global {@link ForkJoinPool} with the same parallelism is also available;
+ * this is used by the {@link Parallel} loops, as fork-join tasks can be nested
+ * safely and idle threads steal work from busy ones.
  * 
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  *
@@ -60,6 +65,8 @@ public class GlobalExecutorPool {
 	
 	private static ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory());
 	
+	private static ForkJoinPool forkJoinPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
 	/**
 	 * Get the pool.
 	 * @return the pool.
@@ -67,4 +74,13 @@ public class GlobalExecutorPool {
 	public static ThreadPoolExecutor getPool() {
 		return pool;
 	}
+
+	/**
+	 * Get the fork-join pool. The worker threads of a {@link ForkJoinPool} are
+	 * daemons.
+	 * @return the fork-join pool.
+	 */
+	public static ForkJoinPool getForkJoinPool() {
+		return forkJoinPool;
+	}
 }
@@ -31,10 +31,18 @@ package org.openimaj.util.parallel;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ManagedBlocker;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.openimaj.util.function.Operation;
 import org.openimaj.util.parallel.partition.FixedSizeChunkPartitioner;
@@ -50,10 +58,42 @@ import org.openimaj.util.stream.Stream;
  * is partitioned using inspiration from <a href=
  * "http://reedcopsey.com/2010/01/26/parallelism-in-net-part-5-partitioning-of-work/"
  * >Reed Copsey's blog</a>.
+ * <p>
+ * Loops that don't specify a thread pool (or that specify the
+ * {@link GlobalExecutorPool#getPool() global pool}) are executed on the global
+ * {@link ForkJoinPool}. Integer loops split their range adaptively: a task only
+ * gives away half of its remaining work when there are idle threads to steal
+ * it, so uneven workloads are balanced without the cost of creating lots of
+ * small tasks up-front. Loops over {@link Iterator}s and {@link Partitioner}s
+ * are fed by the calling thread, with the number of items in flight bounded by
+ * the parallelism of the loop. Because the calling thread participates in the
+ * work (or, for the fed loops, blocks in a way the fork-join pool can
+ * compensate for), these loops can be safely nested inside each other; for
+ * example a parallel loop can be run from within an operation of another
+ * parallel loop without risk of deadlock.
+ * <p>
+ * Loops that are given any other {@link ThreadPoolExecutor} use the pool
+ * directly; such loops are not safe to nest if the inner loop uses the same
+ * pool as the outer one.
+ * <p>
+ * Unless otherwise stated, exceptions thrown by an operation stop the loop as
+ * soon as possible and are re-thrown to the caller.
  *
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  */
 public class Parallel {
+	/**
+	 * The number of pieces per thread an integer range is divided into. Ranges
+	 * are never split below this granularity.
+	 */
+	private static final int GRAIN_FACTOR = 8;
+
+	/**
+	 * A task only splits if fewer than this many of its own forked tasks are
+	 * still waiting to be stolen.
+	 */
+	private static final int MAX_SURPLUS = 2;
+
 	private static class Task<T> implements Runnable {
 		private Iterator<T> iterator;
 		private Operation<T> op;
@@ -86,6 +126,135 @@ public class Parallel {
 		}
 	}
 
+	/**
+	 * Shared state of a range loop: the number of tasks currently working on
+	 * the loop and a flag to stop the loop early on failure.
+	 */
+	private static class RangeState {
+		final int start;
+		final int stop;
+		final int incr;
+		final int grain;
+		final int parallelism;
+		final Operation<IntRange> op;
+		final AtomicInteger active = new AtomicInteger(1);
+		volatile boolean failed;
+
+		RangeState(int start, int stop, int incr, int iterations, int parallelism, Operation<IntRange> op) {
+			this.start = start;
+			this.stop = stop;
+			this.incr = incr;
+			this.parallelism = parallelism;
+			this.op = op;
+			this.grain = Math.max(1, iterations / (parallelism * GRAIN_FACTOR));
+		}
+
+		boolean tryActivate() {
+			for (;;) {
+				final int a = active.get();
+				if (a >= parallelism)
+					return false;
+				if (active.compareAndSet(a, a + 1))
+					return true;
+			}
+		}
+	}
+
+	/**
+	 * Task that processes the iterations [lo, hi) of a range loop in pieces of
+	 * the grain size, forking off the upper half of the remaining iterations
+	 * whenever there is likely to be a thread available to steal them.
+	 */
+	@SuppressWarnings("serial")
+	private static class RangeTask extends RecursiveAction {
+		private final RangeState state;
+		private final boolean root;
+		private int lo;
+		private int hi;
+		private RangeTask next;
+
+		RangeTask(RangeState state, int lo, int hi, boolean root) {
+			this.state = state;
+			this.lo = lo;
+			this.hi = hi;
+			this.root = root;
+		}
+
+		@Override
+		protected void compute() {
+			RangeTask forked = null;
+
+			try {
+				while (lo < hi && !state.failed) {
+					if (hi - lo > state.grain && getSurplusQueuedTaskCount() < MAX_SURPLUS && state.tryActivate()) {
+						final int mid = (lo + hi) >>> 1;
+						final RangeTask right = new RangeTask(state, mid, hi, false);
+						right.next = forked;
+						forked = right;
+						right.fork();
+						hi = mid;
+					} else {
+						final int end = Math.min(hi, lo + state.grain);
+						final int first = state.start + lo * state.incr;
+						final int last = (int) Math.min((long) state.start + (long) end * state.incr, state.stop);
+
+						state.op.perform(new IntRange(first, last, state.incr));
+						lo = end;
+					}
+				}
+			} catch (final RuntimeException e) {
+				state.failed = true;
+				throw e;
+			} catch (final Error e) {
+				state.failed = true;
+				throw e;
+			} finally {
+				// wait for the forked pieces even if this one failed, so that
+				// none are still running when the loop returns
+				for (RangeTask t = forked; t != null; t = t.next)
+					t.quietlyJoin();
+
+				if (!root)
+					state.active.decrementAndGet();
+			}
+
+			// rethrow the first failure of a forked piece
+			for (RangeTask t = forked; t != null; t = t.next)
+				t.join();
+		}
+	}
+
+	/**
+	 * Task that applies an operation to a single item of a fed loop, recording
+	 * the first failure and releasing its permit when done.
+	 */
+	@SuppressWarnings("serial")
+	private static class FedTask<T> extends RecursiveAction {
+		private final T item;
+		private final Operation<T> op;
+		private final Semaphore permits;
+		private final AtomicReference<Throwable> failure;
+
+		FedTask(T item, Operation<T> op, Semaphore permits, AtomicReference<Throwable> failure) {
+			this.item = item;
+			this.op = op;
+			this.permits = permits;
+			this.failure = failure;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				if (failure.get() == null)
+					op.perform(item);
+			} catch (final Throwable t) {
+				failure.compareAndSet(null, t);
+			} finally {
+				permits.release();
+			}
+		}
+	}
+
 	/**
 	 * An integer range with a step size.
 	 *
@@ -114,8 +283,90 @@ public class Parallel {
 		}
 	}
 
+	private static int defaultParallelism() {
+		return GlobalExecutorPool.getForkJoinPool().getParallelism();
+	}
+
+	private static void invoke(ForkJoinTask<?> task) {
+		if (ForkJoinTask.inForkJoinPool())
+			task.invoke();
+		else
+			GlobalExecutorPool.getForkJoinPool().invoke(task);
+	}
+
+	private static void rethrow(Throwable t) {
+		if (t instanceof Error)
+			throw (Error) t;
+		if (t instanceof RuntimeException)
+			throw (RuntimeException) t;
+		throw new RuntimeException(t);
+	}
+
+	/**
+	 * Acquire permits from a semaphore. If the current thread is a fork-join
+	 * worker, the pool is informed of the blocking so that it can activate a
+	 * spare thread to keep the parallelism level up.
+	 */
+	private static void acquire(final Semaphore semaphore, final int permits) {
+		try {
+			ForkJoinPool.managedBlock(new ManagedBlocker() {
+				@Override
+				public boolean block() {
+					semaphore.acquireUninterruptibly(permits);
+					return true;
+				}
+
+				@Override
+				public boolean isReleasable() {
+					return semaphore.tryAcquire(permits);
+				}
+			});
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Apply an operation to each item of an iterator. Items are pulled by the
+	 * calling thread and handed to the fork-join pool, with at most
+	 * parallelism items in flight at once.
+	 */
+	private static <T> void feed(final Iterator<T> items, final Operation<T> op, final int parallelism) {
+		final Semaphore permits = new Semaphore(parallelism);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final boolean inPool = ForkJoinTask.inForkJoinPool();
+
+		while (failure.get() == null && items.hasNext()) {
+			final T item = items.next();
+
+			acquire(permits, 1);
+
+			final FedTask<T> task = new FedTask<T>(item, op, permits, failure);
+			if (inPool)
+				task.fork();
+			else
+				GlobalExecutorPool.getForkJoinPool().execute(task);
+		}
+
+		// wait for the remaining items to complete
+		acquire(permits, parallelism);
+
+		if (failure.get() != null)
+			rethrow(failure.get());
+	}
+
+	private static void checkParallelism(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("parallelism must be at least 1");
+	}
+
 	/**
 	 * Parallel integer for loop.
+	 * <p>
+	 * If the pool is the {@link GlobalExecutorPool#getPool() global pool}, the
+	 * loop is run on the global fork-join pool with a parallelism equal to the
+	 * pool's maximum size (see
+	 * {@link #forIndex(int, int, int, Operation, int)}).
 	 *
 	 * @param start
 	 *            starting value
@@ -131,6 +382,11 @@ public class Parallel {
 	public static void forIndex(final int start, final int stop, final int incr, final Operation<Integer> op,
 			final ThreadPoolExecutor pool)
 	{
+		if (pool == GlobalExecutorPool.getPool()) {
+			forIndex(start, stop, incr, op, pool.getMaximumPoolSize());
+			return;
+		}
+
 		int loops = pool.getMaximumPoolSize();
 		final int ops = (stop - start) / incr;
 
@@ -172,9 +428,9 @@ public class Parallel {
 	}
 
 	/**
-	 * Parallel integer for loop. Uses the default global thread pool.
+	 * Parallel integer for loop. Uses the global fork-join pool.
 	 *
-	 * @see GlobalExecutorPool#getPool()
+	 * @see GlobalExecutorPool#getForkJoinPool()
 	 *
 	 * @param start
 	 *            starting value
@@ -186,7 +442,37 @@ public class Parallel {
 	 *            operation to perform
 	 */
 	public static void forIndex(final int start, final int stop, final int incr, final Operation<Integer> op) {
-		forIndex(start, stop, incr, op, GlobalExecutorPool.getPool());
+		forIndex(start, stop, incr, op, defaultParallelism());
+	}
+
+	/**
+	 * Parallel integer for loop that uses at most the given number of threads
+	 * (including the calling thread). Uses the global fork-join pool, and is
+	 * safe to nest.
+	 *
+	 * @see GlobalExecutorPool#getForkJoinPool()
+	 *
+	 * @param start
+	 *            starting value
+	 * @param stop
+	 *            stopping value
+	 * @param incr
+	 *            increment amount
+	 * @param op
+	 *            operation to perform
+	 * @param parallelism
+	 *            the maximum number of threads working on the loop
+	 */
+	public static void forIndex(final int start, final int stop, final int incr, final Operation<Integer> op,
+			final int parallelism)
+	{
+		forRange(start, stop, incr, new Operation<IntRange>() {
+			@Override
+			public void perform(IntRange range) {
+				for (int i = range.start; i < range.stop; i += range.incr)
+					op.perform(i);
+			}
+		}, parallelism);
 	}
 
 	/**
@@ -194,7 +480,9 @@ public class Parallel {
 	 * {@link #forIndex(int, int, int, Operation)}, but potentially slightly
 	 * faster as it avoids auto-boxing/unboxing and results in fewer method
 	 * calls. The downside is that users have to write an extra loop to iterate
-	 * over the {@link IntRange} object. Uses the default global thread pool.
+	 * over the {@link IntRange} object. Uses the global fork-join pool.
+	 *
+	 * @see GlobalExecutorPool#getForkJoinPool()
 	 *
 	 * @param start
 	 *            starting value
@@ -206,7 +494,53 @@ public class Parallel {
 	 *            operation to perform
 	 */
 	public static void forRange(final int start, final int stop, final int incr, final Operation<IntRange> op) {
-		forRange(start, stop, incr, op, GlobalExecutorPool.getPool());
+		forRange(start, stop, incr, op, defaultParallelism());
+	}
+
+	/**
+	 * Parallel integer for loop that uses at most the given number of threads
+	 * (including the calling thread). Fundamentally this is the same as
+	 * {@link #forIndex(int, int, int, Operation, int)}, but potentially
+	 * slightly faster as it avoids auto-boxing/unboxing and results in fewer
+	 * method calls. The downside is that users have to write an extra loop to
+	 * iterate over the {@link IntRange} object. Uses the global fork-join pool,
+	 * and is safe to nest.
+	 * <p>
+	 * The range is split adaptively; the operation will be called with
+	 * sub-ranges of varying sizes.
+	 *
+	 * @see GlobalExecutorPool#getForkJoinPool()
+	 *
+	 * @param start
+	 *            starting value
+	 * @param stop
+	 *            stopping value
+	 * @param incr
+	 *            increment amount
+	 * @param op
+	 *            operation to perform
+	 * @param parallelism
+	 *            the maximum number of threads working on the loop
+	 */
+	public static void forRange(final int start, final int stop, final int incr, final Operation<IntRange> op,
+			final int parallelism)
+	{
+		checkParallelism(parallelism);
+		if (incr <= 0)
+			throw new IllegalArgumentException("increment must be positive");
+
+		if (stop <= start)
+			return;
+
+		final int iterations = (int) (((long) stop - start + incr - 1) / incr);
+		final RangeState state = new RangeState(start, stop, incr, iterations, parallelism, op);
+
+		if (parallelism == 1 || iterations == 1) {
+			op.perform(new IntRange(start, stop, incr));
+			return;
+		}
+
+		invoke(new RangeTask(state, 0, iterations, true));
 	}
 
 	/**
@@ -215,6 +549,11 @@ public class Parallel {
 	 * potentially slightly faster as it avoids auto-boxing/unboxing and results
 	 * in fewer method calls. The downside is that users have to write an extra
 	 * loop to iterate over the {@link IntRange} object.
+	 * <p>
+	 * If the pool is the {@link GlobalExecutorPool#getPool() global pool}, the
+	 * loop is run on the global fork-join pool with a parallelism equal to the
+	 * pool's maximum size (see
+	 * {@link #forRange(int, int, int, Operation, int)}).
 	 *
 	 * @param start
 	 *            starting value
@@ -230,6 +569,11 @@ public class Parallel {
 	public static void forRange(final int start, final int stop, final int incr, final Operation<IntRange> op,
 			final ThreadPoolExecutor pool)
 	{
+		if (pool == GlobalExecutorPool.getPool()) {
+			forRange(start, stop, incr, op, pool.getMaximumPoolSize());
+			return;
+		}
+
 		int loops = pool.getMaximumPoolSize();
 		final int ops = (stop - start) / incr;
 
@@ -287,6 +631,10 @@ public class Parallel {
 	 * automatically partitioned; if the data is a {@link List}, then a
 	 * {@link RangePartitioner} is used, otherwise a
 	 * {@link GrowingChunkPartitioner} is used.
+	 * <p>
+	 * If the pool is the {@link GlobalExecutorPool#getPool() global pool}, the
+	 * loop is run on the global fork-join pool with a parallelism equal to the
+	 * pool's maximum size (see {@link #forEach(Iterable, Operation, int)}).
 	 *
 	 * @see GlobalExecutorPool#getPool()
 	 *
@@ -300,6 +648,11 @@ public class Parallel {
 	 *            the thread pool.
 	 */
 	public static <T> void forEach(final Iterable<T> objects, final Operation<T> op, final ThreadPoolExecutor pool) {
+		if (pool == GlobalExecutorPool.getPool()) {
+			forEach(objects, op, pool.getMaximumPoolSize());
+			return;
+		}
+
 		Partitioner<T> partitioner;
 		if (objects instanceof List) {
 			partitioner = new RangePartitioner<T>((List<T>) objects, pool.getMaximumPoolSize());
@@ -310,12 +663,12 @@ public class Parallel {
 	}
 
 	/**
-	 * Parallel ForEach loop over {@link Iterable} data. Uses the default global
-	 * thread pool. The data is automatically partitioned; if the data is a
-	 * {@link List}, then a {@link RangePartitioner} is used, otherwise a
-	 * {@link GrowingChunkPartitioner} is used.
+	 * Parallel ForEach loop over {@link Iterable} data. Uses the global
+	 * fork-join pool. Random access {@link List}s are processed with an
+	 * adaptively split range over the indices, otherwise the data is
+	 * partitioned with a {@link GrowingChunkPartitioner}.
 	 *
-	 * @see GlobalExecutorPool#getPool()
+	 * @see GlobalExecutorPool#getForkJoinPool()
 	 *
 	 * @param <T>
 	 *            type of the data items
@@ -325,14 +678,48 @@ public class Parallel {
 	 *            the operation to apply
 	 */
 	public static <T> void forEach(final Iterable<T> objects, final Operation<T> op) {
-		forEach(objects, op, GlobalExecutorPool.getPool());
+		forEach(objects, op, defaultParallelism());
 	}
 
 	/**
-	 * Parallel ForEach loop over partitioned data. Uses the default global
-	 * thread pool.
+	 * Parallel ForEach loop over {@link Iterable} data that uses at most the
+	 * given number of threads. Uses the global fork-join pool, and is safe to
+	 * nest. Random access {@link List}s are processed with an adaptively split
+	 * range over the indices, otherwise the data is partitioned with a
+	 * {@link GrowingChunkPartitioner}.
 	 *
-	 * @see GlobalExecutorPool#getPool()
+	 * @see GlobalExecutorPool#getForkJoinPool()
+	 *
+	 * @param <T>
+	 *            type of the data items
+	 * @param objects
+	 *            the data
+	 * @param op
+	 *            the operation to apply
+	 * @param parallelism
+	 *            the maximum number of threads working on the loop
+	 */
+	public static <T> void forEach(final Iterable<T> objects, final Operation<T> op, final int parallelism) {
+		if (objects instanceof List && objects instanceof RandomAccess) {
+			final List<T> list = (List<T>) objects;
+
+			forRange(0, list.size(), 1, new Operation<IntRange>() {
+				@Override
+				public void perform(IntRange range) {
+					for (int i = range.start; i < range.stop; i++)
+						op.perform(list.get(i));
+				}
+			}, parallelism);
+		} else {
+			forEach(new GrowingChunkPartitioner<T>(objects), op, parallelism);
+		}
+	}
+
+	/**
+	 * Parallel ForEach loop over partitioned data. Uses the global fork-join
+	 * pool.
+	 *
+	 * @see GlobalExecutorPool#getForkJoinPool()
 	 *
 	 * @param <T>
 	 *            type of the data items
@@ -342,7 +729,36 @@ public class Parallel {
 	 *            the operation to apply
 	 */
 	public static <T> void forEach(final Partitioner<T> partitioner, final Operation<T> op) {
-		forEach(partitioner, op, GlobalExecutorPool.getPool());
+		forEach(partitioner, op, defaultParallelism());
+	}
+
+	/**
+	 * Parallel ForEach loop over partitioned data that processes at most the
+	 * given number of partitions at once. Partitions are taken from the
+	 * partitioner by the calling thread and processed by the global fork-join
+	 * pool. Safe to nest.
+	 *
+	 * @see GlobalExecutorPool#getForkJoinPool()
+	 *
+	 * @param <T>
+	 *            type of the data items
+	 * @param partitioner
+	 *            the partitioner applied to the data
+	 * @param op
+	 *            the operation to apply
+	 * @param parallelism
+	 *            the maximum number of partitions in flight
+	 */
+	public static <T> void forEach(final Partitioner<T> partitioner, final Operation<T> op, final int parallelism) {
+		checkParallelism(parallelism);
+
+		feed(partitioner.getPartitions(), new Operation<Iterator<T>>() {
+			@Override
+			public void perform(Iterator<T> partition) {
+				while (partition.hasNext())
+					op.perform(partition.next());
+			}
+		}, parallelism);
 	}
 
 	/**
@@ -352,6 +768,12 @@ public class Parallel {
 	 * nprocs partitions 3.) while there are still partitions to process 3.1) on
 	 * completion of a partition schedule the next one 4.) wait for completion
 	 * of remaining partitions
+	 * <p>
+	 * If the pool is the {@link GlobalExecutorPool#getPool() global pool}, the
+	 * loop is run on the global fork-join pool with a parallelism equal to the
+	 * pool's maximum size (see {@link #forEach(Partitioner, Operation, int)}).
+	 * Otherwise, exceptions thrown by the operation are printed and the loop
+	 * continues.
 	 *
 	 * @param <T>
 	 *            type of the data items
@@ -366,6 +788,11 @@ public class Parallel {
 	void
 	forEach(final Partitioner<T> partitioner, final Operation<T> op, final ThreadPoolExecutor pool)
 	{
+		if (pool == GlobalExecutorPool.getPool()) {
+			forEach(partitioner, op, pool.getMaximumPoolSize());
+			return;
+		}
+
 		final ExecutorCompletionService<Boolean> completion = new ExecutorCompletionService<Boolean>(pool);
 		final Iterator<Iterator<T>> partitions = partitioner.getPartitions();
 		long submitted = 0;
@@ -409,10 +836,10 @@ public class Parallel {
 	 * not have to first be populated. The unpartitioned for-each loop is
 	 * particularly useful for processing temporal {@link Stream}s of data.
 	 * <p>
-	 * Implementation details: 1.) create partitions enumerator 2.) schedule
-	 * nprocs partitions 3.) while there are still partitions to process 3.1) on
-	 * completion of a partition schedule the next one 4.) wait for completion
-	 * of remaining partitions
+	 * Items are taken from the iterator by the calling thread and processed by
+	 * the global fork-join pool.
+	 *
+	 * @see GlobalExecutorPool#getForkJoinPool()
 	 *
 	 * @param <T>
 	 *            type of the data items
@@ -425,7 +852,32 @@ public class Parallel {
 	void
 	forEachUnpartitioned(final Iterator<T> data, final Operation<T> op)
 	{
-		forEachUnpartitioned(data, op, GlobalExecutorPool.getPool());
+		forEachUnpartitioned(data, op, defaultParallelism());
+	}
+
+	/**
+	 * Parallel ForEach loop over unpartitioned data that processes at most the
+	 * given number of items at once. Items are taken from the iterator by the
+	 * calling thread and processed by the global fork-join pool. Safe to nest.
+	 *
+	 * @see #forEachUnpartitioned(Iterator, Operation)
+	 * @see GlobalExecutorPool#getForkJoinPool()
+	 *
+	 * @param <T>
+	 *            type of the data items
+	 * @param data
+	 *            the iterator of data items
+	 * @param op
+	 *            the operation to apply
+	 * @param parallelism
+	 *            the maximum number of items in flight
+	 */
+	public static <T>
+	void
+	forEachUnpartitioned(final Iterator<T> data, final Operation<T> op, final int parallelism)
+	{
+		checkParallelism(parallelism);
+		feed(data, op, parallelism);
 	}
 
 	/**
@@ -441,6 +893,12 @@ public class Parallel {
 	 * nprocs partitions 3.) while there are still partitions to process 3.1) on
 	 * completion of a partition schedule the next one 4.) wait for completion
 	 * of remaining partitions
+	 * <p>
+	 * If the pool is the {@link GlobalExecutorPool#getPool() global pool}, the
+	 * loop is run on the global fork-join pool with a parallelism equal to the
+	 * pool's maximum size (see
+	 * {@link #forEachUnpartitioned(Iterator, Operation, int)}). Otherwise,
+	 * exceptions thrown by the operation are printed and the loop continues.
 	 *
 	 * @param <T>
 	 *            type of the data items
@@ -455,6 +913,11 @@ public class Parallel {
 	void
 	forEachUnpartitioned(final Iterator<T> data, final Operation<T> op, final ThreadPoolExecutor pool)
 	{
+		if (pool == GlobalExecutorPool.getPool()) {
+			forEachUnpartitioned(data, op, pool.getMaximumPoolSize());
+			return;
+		}
+
 		final ExecutorCompletionService<Boolean> completion = new ExecutorCompletionService<Boolean>(pool);
 		long submitted = 0;
 
@@ -509,6 +972,12 @@ public class Parallel {
 	 * nprocs partitions 3.) while there are still partitions to process 3.1) on
 	 * completion of a partition schedule the next one 4.) wait for completion
 	 * of remaining partitions
+	 * <p>
+	 * If the pool is the {@link GlobalExecutorPool#getPool() global pool}, the
+	 * loop is run on the global fork-join pool with a parallelism equal to the
+	 * pool's maximum size (see
+	 * {@link #forEachPartitioned(Partitioner, Operation, int)}). Otherwise,
+	 * exceptions thrown by the operation are printed and the loop continues.
 	 *
 	 * @param <T>
 	 *            type of the data items
@@ -524,6 +993,11 @@ public class Parallel {
 	forEachPartitioned(final Partitioner<T> partitioner, final Operation<Iterator<T>> op,
 			final ThreadPoolExecutor pool)
 	{
+		if (pool == GlobalExecutorPool.getPool()) {
+			forEachPartitioned(partitioner, op, pool.getMaximumPoolSize());
+			return;
+		}
+
 		final ExecutorCompletionService<Boolean> completion = new ExecutorCompletionService<Boolean>(pool);
 		final Iterator<Iterator<T>> partitions = partitioner.getPartitions();
 		long submitted = 0;
@@ -559,10 +1033,10 @@ public class Parallel {
 	}
 
 	/**
-	 * Parallel ForEach loop over batched partitioned data. Uses the default
-	 * global thread pool.
+	 * Parallel ForEach loop over batched partitioned data. Uses the global
+	 * fork-join pool.
 	 *
-	 * @see GlobalExecutorPool#getPool()
+	 * @see GlobalExecutorPool#getForkJoinPool()
 	 *
 	 * @param <T>
 	 *            type of the data items
@@ -572,6 +1046,30 @@ public class Parallel {
 	 *            the operation to apply
 	 */
 	public static <T> void forEachPartitioned(final Partitioner<T> partitioner, final Operation<Iterator<T>> op) {
-		forEachPartitioned(partitioner, op, GlobalExecutorPool.getPool());
+		forEachPartitioned(partitioner, op, defaultParallelism());
+	}
+
+	/**
+	 * Parallel ForEach loop over batched partitioned data that processes at
+	 * most the given number of partitions at once. Partitions are taken from
+	 * the partitioner by the calling thread and processed by the global
+	 * fork-join pool. Safe to nest.
+	 *
+	 * @see GlobalExecutorPool#getForkJoinPool()
+	 *
+	 * @param <T>
+	 *            type of the data items
+	 * @param partitioner
+	 *            the partitioner applied to the data
+	 * @param op
+	 *            the operation to apply
+	 * @param parallelism
+	 *            the maximum number of partitions in flight
+	 */
+	public static <T> void forEachPartitioned(final Partitioner<T> partitioner, final Operation<Iterator<T>> op,
+			final int parallelism)
+	{
+		checkParallelism(parallelism);
+		feed(partitioner.getPartitions(), op, parallelism);
 	}
 }
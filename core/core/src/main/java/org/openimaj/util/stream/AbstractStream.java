@@ -29,15 +29,22 @@
  */
 package org.openimaj.util.stream;
 
+import java.util.ArrayDeque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ManagedBlocker;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.openimaj.util.function.Function;
 import org.openimaj.util.function.MultiFunction;
 import org.openimaj.util.function.Operation;
 import org.openimaj.util.function.Predicate;
+import org.openimaj.util.parallel.GlobalExecutorPool;
 import org.openimaj.util.parallel.Parallel;
 
 /**
@@ -190,6 +197,153 @@ public abstract class AbstractStream<T> implements Stream<T> {
 		};
 	}
 
+	/**
+	 * An item of a {@link ParallelMapStream} that has been read from the
+	 * underlying stream, together with its transformed result once available.
+	 */
+	private static class Slot<I, O> {
+		final I input;
+		final CountDownLatch done = new CountDownLatch(1);
+		O result;
+		Throwable error;
+
+		Slot(I input) {
+			this.input = input;
+		}
+	}
+
+	/**
+	 * Stream that applies a function to the items of this stream on the
+	 * global fork-join pool, returning the results in order. The consuming
+	 * thread reads ahead into a window of at most maxInFlight items; pending
+	 * items are drained by at most parallelism worker tasks.
+	 */
+	class ParallelMapStream<R> extends AbstractStream<R> implements Runnable {
+		final Function<T, R> mapper;
+		final int parallelism;
+		final int maxInFlight;
+		final ArrayDeque<Slot<T, R>> window = new ArrayDeque<Slot<T, R>>();
+		final ConcurrentLinkedQueue<Slot<T, R>> pending = new ConcurrentLinkedQueue<Slot<T, R>>();
+		final AtomicInteger workers = new AtomicInteger();
+
+		ParallelMapStream(Function<T, R> mapper, int parallelism, int maxInFlight) {
+			if (parallelism < 1 || maxInFlight < 1)
+				throw new IllegalArgumentException("parallelism and maxInFlight must be at least 1");
+
+			this.mapper = mapper;
+			this.parallelism = parallelism;
+			this.maxInFlight = maxInFlight;
+		}
+
+		private boolean tryAddWorker() {
+			for (;;) {
+				final int w = workers.get();
+				if (w >= parallelism)
+					return false;
+				if (workers.compareAndSet(w, w + 1))
+					return true;
+			}
+		}
+
+		@Override
+		public void run() {
+			for (;;) {
+				final Slot<T, R> slot = pending.poll();
+
+				if (slot == null) {
+					workers.decrementAndGet();
+
+					// an item might have been added after the poll, but
+					// before the decrement allowed a new worker to start
+					if (pending.isEmpty() || !tryAddWorker())
+						return;
+
+					continue;
+				}
+
+				try {
+					slot.result = mapper.apply(slot.input);
+				} catch (final Throwable t) {
+					slot.error = t;
+				} finally {
+					slot.done.countDown();
+				}
+			}
+		}
+
+		private void fill() {
+			while (window.size() < maxInFlight && AbstractStream.this.hasNext()) {
+				final Slot<T, R> slot = new Slot<T, R>(AbstractStream.this.next());
+				window.add(slot);
+				pending.add(slot);
+
+				if (tryAddWorker())
+					GlobalExecutorPool.getForkJoinPool().execute(this);
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !window.isEmpty() || AbstractStream.this.hasNext();
+		}
+
+		@Override
+		public R next() {
+			fill();
+
+			final Slot<T, R> slot = window.poll();
+			if (slot == null)
+				throw new NoSuchElementException("iteration has no more elements");
+
+			await(slot.done);
+
+			if (slot.error instanceof Error)
+				throw (Error) slot.error;
+			if (slot.error instanceof RuntimeException)
+				throw (RuntimeException) slot.error;
+			if (slot.error != null)
+				throw new RuntimeException(slot.error);
+
+			return slot.result;
+		}
+	}
+
+	/**
+	 * Wait for a latch. If the current thread is a fork-join worker, the pool
+	 * is informed of the blocking so that it can activate a spare thread.
+	 */
+	private static void await(final CountDownLatch latch) {
+		try {
+			ForkJoinPool.managedBlock(new ManagedBlocker() {
+				@Override
+				public boolean block() throws InterruptedException {
+					latch.await();
+					return true;
+				}
+
+				@Override
+				public boolean isReleasable() {
+					return latch.getCount() == 0;
+				}
+			});
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public <R> Stream<R> parallelMap(Function<T, R> mapper) {
+		final int parallelism = GlobalExecutorPool.getForkJoinPool().getParallelism();
+
+		return parallelMap(mapper, parallelism, 2 * parallelism);
+	}
+
+	@Override
+	public <R> Stream<R> parallelMap(Function<T, R> mapper, int parallelism, int maxInFlight) {
+		return new ParallelMapStream<R>(mapper, parallelism, maxInFlight);
+	}
+
 	/**
 	 * Throws an UnsupportedOperationException()
 	 */
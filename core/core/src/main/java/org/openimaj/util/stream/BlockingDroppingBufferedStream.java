@@ -63,7 +63,7 @@ public class BlockingDroppingBufferedStream<T> extends AbstractStream<T> {
 	}
 
 	protected void register(T obj) throws InterruptedException {
-		buffer.offer(obj);
+		buffer.put(obj);
 	}
 
 	@Override
@@ -169,6 +169,50 @@ public interface Stream<T> extends Iterator<T>, Iterable<T> {
 	 */
 	public <R> Stream<R> map(MultiFunction<T, R> mapper);
 
+	/**
+	 * Transform the stream by creating a new stream that transforms the items
+	 * in this stream with the given {@link Function}, applying the function
+	 * to several items at once using the global fork-join pool. The order of
+	 * the items in the new stream is the same as the order in this stream.
+	 * The parallelism is that of the global fork-join pool, and up to twice
+	 * that many items are read ahead from this stream.
+	 *
+	 * @see #parallelMap(Function, int, int)
+	 *
+	 * @param mapper
+	 *            the function to apply
+	 * @return a new stream with transformed items from this stream
+	 */
+	public <R> Stream<R> parallelMap(Function<T, R> mapper);
+
+	/**
+	 * Transform the stream by creating a new stream that transforms the items
+	 * in this stream with the given {@link Function}, applying the function
+	 * to several items at once using the global fork-join pool. The order of
+	 * the items in the new stream is the same as the order in this stream.
+	 * <p>
+	 * Items are read from this stream by the thread consuming the new stream,
+	 * and only when there are fewer than <code>maxInFlight</code> items that
+	 * have been read but not yet consumed. A slow consumer therefore slows the
+	 * reading of this stream rather than causing items to be buffered without
+	 * limit. Exceptions thrown by the function are re-thrown from
+	 * {@link #next()} of the new stream at the position of the item that
+	 * caused them.
+	 *
+	 * @param mapper
+	 *            the function to apply; must be safe to call from multiple
+	 *            threads
+	 * @param parallelism
+	 *            the maximum number of items that are transformed
+	 *            concurrently
+	 * @param maxInFlight
+	 *            the maximum number of items read ahead of the consumer
+	 *            (including those being transformed); values smaller than
+	 *            the parallelism will limit the parallelism
+	 * @return a new stream with transformed items from this stream
+	 */
+	public <R> Stream<R> parallelMap(Function<T, R> mapper, int parallelism, int maxInFlight);
+
 	/**
 	 * Transform the stream using the given function to transform the items in
 	 * this stream.
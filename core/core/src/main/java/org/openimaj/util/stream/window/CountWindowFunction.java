@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.stream.window;
+
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+
+import org.openimaj.util.function.Function;
+import org.openimaj.util.stream.AbstractStream;
+import org.openimaj.util.stream.Stream;
+
+/**
+ * Groups the items of a stream into windows of a fixed number of items and
+ * aggregates each window incrementally with a {@link WindowAccumulator}. A
+ * new window starts every <code>slide</code> items, so a slide equal to the
+ * size gives non-overlapping (tumbling) windows. The resultant stream
+ * contains an {@link Aggregation} of the result and {@link WindowExtent} (in
+ * item sequence numbers) of each window. Windows that are still incomplete
+ * when the input ends are emitted with their actual extent.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ *
+ * @param <IN>
+ *            the type of the items
+ * @param <ACC>
+ *            the type of the running state of a window
+ * @param <OUT>
+ *            the type of the result of a window
+ */
+public class CountWindowFunction<IN, ACC, OUT>
+		implements
+		Function<Stream<IN>, Stream<Aggregation<OUT, WindowExtent>>>
+{
+	private class OpenWindow {
+		final long start;
+		ACC acc;
+
+		OpenWindow(long start) {
+			this.start = start;
+			this.acc = accumulator.create();
+		}
+	}
+
+	private long size;
+	private long slide;
+	private WindowAccumulator<IN, ACC, OUT> accumulator;
+
+	/**
+	 * Construct for tumbling windows of the given size
+	 *
+	 * @param size
+	 *            the number of items in each window
+	 * @param accumulator
+	 *            the accumulator used to aggregate the windows
+	 */
+	public CountWindowFunction(long size, WindowAccumulator<IN, ACC, OUT> accumulator) {
+		this(size, size, accumulator);
+	}
+
+	/**
+	 * Construct for sliding windows of the given size
+	 *
+	 * @param size
+	 *            the number of items in each window
+	 * @param slide
+	 *            the number of items between the starts of the windows
+	 * @param accumulator
+	 *            the accumulator used to aggregate the windows
+	 */
+	public CountWindowFunction(long size, long slide, WindowAccumulator<IN, ACC, OUT> accumulator) {
+		if (size <= 0 || slide <= 0)
+			throw new IllegalArgumentException("size and slide must be positive");
+
+		this.size = size;
+		this.slide = slide;
+		this.accumulator = accumulator;
+	}
+
+	@Override
+	public Stream<Aggregation<OUT, WindowExtent>> apply(final Stream<IN> inner) {
+		return new AbstractStream<Aggregation<OUT, WindowExtent>>() {
+			final ArrayDeque<OpenWindow> open = new ArrayDeque<OpenWindow>();
+			Aggregation<OUT, WindowExtent> pending;
+			long count;
+
+			@Override
+			public boolean hasNext() {
+				if (pending == null)
+					pending = advance();
+
+				return pending != null;
+			}
+
+			@Override
+			public Aggregation<OUT, WindowExtent> next() {
+				if (!hasNext())
+					throw new NoSuchElementException("iteration has no more elements");
+
+				final Aggregation<OUT, WindowExtent> ret = pending;
+				pending = null;
+				return ret;
+			}
+
+			private Aggregation<OUT, WindowExtent> advance() {
+				while (inner.hasNext()) {
+					final IN item = inner.next();
+
+					if (count % slide == 0)
+						open.add(new OpenWindow(count));
+
+					for (final OpenWindow w : open)
+						w.acc = accumulator.add(w.acc, item);
+
+					count++;
+
+					if (!open.isEmpty() && open.peekFirst().start + size == count)
+						return emit(open.pollFirst());
+				}
+
+				if (open.isEmpty())
+					return null;
+
+				return emit(open.pollFirst());
+			}
+
+			private Aggregation<OUT, WindowExtent> emit(OpenWindow w) {
+				final WindowExtent extent = new WindowExtent(w.start, Math.min(w.start + size, count));
+
+				return new Aggregation<OUT, WindowExtent>(accumulator.result(w.acc), extent);
+			}
+		};
+	}
+}
@@ -0,0 +1,331 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.stream.window;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openimaj.util.function.Function;
+import org.openimaj.util.stream.AbstractStream;
+import org.openimaj.util.stream.Stream;
+
+/**
+ * Groups the items of a stream into event-time windows (as determined by a
+ * {@link WindowAssigner}) and aggregates each window incrementally with a
+ * {@link WindowAccumulator}. The resultant stream contains an
+ * {@link Aggregation} of the result and {@link WindowExtent} of each window,
+ * in the order the windows close.
+ * <p>
+ * Windows close when the watermark passes their end. The watermark is the
+ * largest timestamp seen so far minus the allowed out-of-orderness; items
+ * that arrive after all the windows they belong to have closed are dropped.
+ * <p>
+ * If an idle timeout is given, the input stream is read by a separate daemon
+ * thread, and if no items arrive within the timeout the watermark advances
+ * with the wall clock (as if the event time kept moving at the same rate
+ * while the source was quiet). This allows windows to close on a source that
+ * has gone idle, rather than waiting for the next item to arrive. Without an
+ * idle timeout the input is read by the consuming thread and windows only
+ * close when later items arrive or the input ends. All remaining windows are
+ * closed when the input ends.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ *
+ * @param <IN>
+ *            the type of the items
+ * @param <ACC>
+ *            the type of the running state of a window
+ * @param <OUT>
+ *            the type of the result of a window
+ */
+public class EventTimeWindowFunction<IN, ACC, OUT>
+		implements
+		Function<Stream<IN>, Stream<Aggregation<OUT, WindowExtent>>>
+{
+	private static final int BUFFER_SIZE = 1024;
+	private static final Object END = new Object();
+
+	private static class Failure {
+		final Throwable cause;
+
+		Failure(Throwable cause) {
+			this.cause = cause;
+		}
+	}
+
+	private WindowAssigner assigner;
+	private Function<IN, Long> timestamps;
+	private WindowAccumulator<IN, ACC, OUT> accumulator;
+	private long maxOutOfOrderness;
+	private long idleTimeout;
+
+	/**
+	 * Construct with the given window assigner, timestamp extractor and
+	 * accumulator. Items must arrive in timestamp order, and windows only
+	 * close when a later item arrives or the stream ends.
+	 *
+	 * @param assigner
+	 *            the window assigner
+	 * @param timestamps
+	 *            function to extract the timestamp of an item
+	 * @param accumulator
+	 *            the accumulator used to aggregate the windows
+	 */
+	public EventTimeWindowFunction(WindowAssigner assigner, Function<IN, Long> timestamps,
+			WindowAccumulator<IN, ACC, OUT> accumulator)
+	{
+		this(assigner, timestamps, accumulator, 0, 0);
+	}
+
+	/**
+	 * Construct with the given window assigner, timestamp extractor,
+	 * accumulator, out-of-orderness and idle timeout.
+	 *
+	 * @param assigner
+	 *            the window assigner
+	 * @param timestamps
+	 *            function to extract the timestamp of an item
+	 * @param accumulator
+	 *            the accumulator used to aggregate the windows
+	 * @param maxOutOfOrderness
+	 *            the maximum amount by which the timestamp of an item can be
+	 *            earlier than the largest timestamp seen before it
+	 * @param idleTimeout
+	 *            the time in milliseconds without any items after which the
+	 *            watermark advances with the wall clock; zero or less to
+	 *            disable
+	 */
+	public EventTimeWindowFunction(WindowAssigner assigner, Function<IN, Long> timestamps,
+			WindowAccumulator<IN, ACC, OUT> accumulator, long maxOutOfOrderness, long idleTimeout)
+	{
+		if (maxOutOfOrderness < 0)
+			throw new IllegalArgumentException("maxOutOfOrderness must not be negative");
+
+		this.assigner = assigner;
+		this.timestamps = timestamps;
+		this.accumulator = accumulator;
+		this.maxOutOfOrderness = maxOutOfOrderness;
+		this.idleTimeout = idleTimeout;
+	}
+
+	@Override
+	public Stream<Aggregation<OUT, WindowExtent>> apply(Stream<IN> inner) {
+		return new WindowStream(inner);
+	}
+
+	class WindowStream extends AbstractStream<Aggregation<OUT, WindowExtent>> {
+		final Stream<IN> inner;
+		final TreeMap<WindowExtent, ACC> open = new TreeMap<WindowExtent, ACC>();
+		final ArrayDeque<Aggregation<OUT, WindowExtent>> ready = new ArrayDeque<Aggregation<OUT, WindowExtent>>();
+		final List<WindowExtent> assigned = new ArrayList<WindowExtent>();
+		BlockingQueue<Object> buffer;
+		long maxTimestamp = Long.MIN_VALUE;
+		long watermark = Long.MIN_VALUE;
+		long lastArrival;
+		boolean finished;
+
+		WindowStream(Stream<IN> inner) {
+			this.inner = inner;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (ready.isEmpty() && !finished)
+				pump();
+
+			return !ready.isEmpty();
+		}
+
+		@Override
+		public Aggregation<OUT, WindowExtent> next() {
+			if (!hasNext())
+				throw new NoSuchElementException("iteration has no more elements");
+
+			return ready.poll();
+		}
+
+		@SuppressWarnings("unchecked")
+		private void pump() {
+			if (idleTimeout <= 0) {
+				if (inner.hasNext())
+					process(inner.next());
+				else
+					finish();
+
+				return;
+			}
+
+			if (buffer == null)
+				startReader();
+
+			final Object obj;
+			try {
+				obj = buffer.poll(idleTimeout, TimeUnit.MILLISECONDS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+
+			if (obj == null) {
+				idle();
+			} else if (obj == END) {
+				finish();
+			} else if (obj instanceof Failure) {
+				finished = true;
+				final Throwable t = ((Failure) obj).cause;
+
+				if (t instanceof Error)
+					throw (Error) t;
+				if (t instanceof RuntimeException)
+					throw (RuntimeException) t;
+				throw new RuntimeException(t);
+			} else {
+				process((IN) obj);
+			}
+		}
+
+		private void startReader() {
+			buffer = new ArrayBlockingQueue<Object>(BUFFER_SIZE);
+
+			final Thread reader = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						try {
+							while (inner.hasNext())
+								buffer.put(inner.next());
+
+							buffer.put(END);
+						} catch (final InterruptedException e) {
+							return;
+						} catch (final Throwable t) {
+							buffer.put(new Failure(t));
+						}
+					} catch (final InterruptedException e) {
+						// give up
+					}
+				}
+			}, "EventTimeWindowFunction-reader");
+			reader.setDaemon(true);
+			reader.start();
+		}
+
+		private void process(IN item) {
+			final long timestamp = timestamps.apply(item);
+			lastArrival = System.currentTimeMillis();
+
+			assigned.clear();
+			assigner.assignWindows(timestamp, assigned);
+
+			for (final WindowExtent w : assigned) {
+				if (w.getEnd() <= watermark)
+					continue; // already closed; the item is late
+
+				if (assigner.isMerging())
+					addMerging(w, item);
+				else
+					add(w, item);
+			}
+
+			if (timestamp > maxTimestamp) {
+				maxTimestamp = timestamp;
+				advance(timestamp - maxOutOfOrderness);
+			}
+		}
+
+		private void add(WindowExtent w, IN item) {
+			ACC acc = open.get(w);
+
+			if (acc == null)
+				acc = accumulator.create();
+
+			open.put(w, accumulator.add(acc, item));
+		}
+
+		private void addMerging(WindowExtent w, IN item) {
+			ACC acc = null;
+
+			// existing windows don't overlap each other, so the ones that
+			// overlap the new window can be found in a single pass
+			final Iterator<Entry<WindowExtent, ACC>> iter = open.entrySet().iterator();
+			while (iter.hasNext()) {
+				final Entry<WindowExtent, ACC> e = iter.next();
+
+				if (e.getKey().intersects(w)) {
+					w = w.cover(e.getKey());
+					acc = acc == null ? e.getValue() : accumulator.merge(acc, e.getValue());
+					iter.remove();
+				}
+			}
+
+			if (acc == null)
+				acc = accumulator.create();
+
+			open.put(w, accumulator.add(acc, item));
+		}
+
+		private void idle() {
+			if (maxTimestamp == Long.MIN_VALUE)
+				return;
+
+			final long elapsed = System.currentTimeMillis() - lastArrival;
+			advance(maxTimestamp + elapsed - maxOutOfOrderness);
+		}
+
+		private void advance(long wm) {
+			if (wm <= watermark)
+				return;
+
+			watermark = wm;
+
+			while (!open.isEmpty() && open.firstKey().getEnd() <= watermark)
+				emit(open.pollFirstEntry());
+		}
+
+		private void finish() {
+			finished = true;
+
+			while (!open.isEmpty())
+				emit(open.pollFirstEntry());
+		}
+
+		private void emit(Entry<WindowExtent, ACC> e) {
+			ready.add(new Aggregation<OUT, WindowExtent>(accumulator.result(e.getValue()), e.getKey()));
+		}
+	}
+}
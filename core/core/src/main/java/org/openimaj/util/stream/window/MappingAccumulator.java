@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.stream.window;
+
+import org.openimaj.util.function.Function;
+
+/**
+ * A {@link WindowAccumulator} that applies a {@link Function} to each item
+ * before passing it to another accumulator. This is the incremental
+ * equivalent of applying a {@link WindowFunction} to a materialised
+ * {@link Window}.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ *
+ * @param <IN>
+ *            the type of the items
+ * @param <MID>
+ *            the type of the transformed items
+ * @param <ACC>
+ *            the type of the running state
+ * @param <OUT>
+ *            the type of the result
+ */
+public class MappingAccumulator<IN, MID, ACC, OUT> implements WindowAccumulator<IN, ACC, OUT> {
+	private Function<IN, MID> fun;
+	private WindowAccumulator<MID, ACC, OUT> inner;
+
+	/**
+	 * Construct with the given function and accumulator
+	 *
+	 * @param fun
+	 *            the function to apply to each item
+	 * @param inner
+	 *            the accumulator for the transformed items
+	 */
+	public MappingAccumulator(Function<IN, MID> fun, WindowAccumulator<MID, ACC, OUT> inner) {
+		this.fun = fun;
+		this.inner = inner;
+	}
+
+	@Override
+	public ACC create() {
+		return inner.create();
+	}
+
+	@Override
+	public ACC add(ACC acc, IN item) {
+		return inner.add(acc, fun.apply(item));
+	}
+
+	@Override
+	public ACC merge(ACC a, ACC b) {
+		return inner.merge(a, b);
+	}
+
+	@Override
+	public OUT result(ACC acc) {
+		return inner.result(acc);
+	}
+}
@@ -37,7 +37,11 @@ import org.openimaj.util.stream.Stream;
 
 /**
  * Given a period of time to wait in milliseconds, this function consumes
- * a stream for that period of time and produces a new stream of lists representing windows of that time period
+ * a stream for that period of time and produces a new stream of lists representing windows of that time period.
+ * <p>
+ * Windows are only closed when the next item arrives, and are fully buffered. See
+ * {@link EventTimeWindowFunction} for windows that are aggregated incrementally and
+ * can close on an idle stream.
  * @author Sina Samangooei (ss@ecs.soton.ac.uk)
  *
  * @param <IN>
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.stream.window;
+
+/**
+ * Incremental aggregation of the items in a window. Rather than buffering
+ * all the items of a window and then processing them (as is done with a
+ * {@link Window}), an accumulator folds each item into a running state as it
+ * arrives, so the memory used by a window is independent of the number of
+ * items it contains.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ *
+ * @param <IN>
+ *            the type of the items
+ * @param <ACC>
+ *            the type of the running state
+ * @param <OUT>
+ *            the type of the result
+ */
+public interface WindowAccumulator<IN, ACC, OUT> {
+	/**
+	 * Create the state for a new, empty window
+	 *
+	 * @return the new state
+	 */
+	public ACC create();
+
+	/**
+	 * Add an item to the state of a window
+	 *
+	 * @param acc
+	 *            the state
+	 * @param item
+	 *            the item
+	 * @return the updated state (which may be the same object as the input)
+	 */
+	public ACC add(ACC acc, IN item);
+
+	/**
+	 * Merge the states of two windows. This is used when windows are merged
+	 * (for example, session windows that grow until they overlap).
+	 *
+	 * @param a
+	 *            the first state
+	 * @param b
+	 *            the second state
+	 * @return the merged state (which may be one of the inputs)
+	 */
+	public ACC merge(ACC a, ACC b);
+
+	/**
+	 * Compute the result of a window from its state
+	 *
+	 * @param acc
+	 *            the state
+	 * @return the result
+	 */
+	public OUT result(ACC acc);
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.stream.window;
+
+import java.util.List;
+
+/**
+ * Assigns timestamps to the event-time windows they belong to. Standard
+ * assigners for tumbling, sliding and session windows are available from the
+ * static factory methods.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public abstract class WindowAssigner {
+	/**
+	 * Add the windows that an item with the given timestamp belongs to to the
+	 * given list.
+	 *
+	 * @param timestamp
+	 *            the timestamp of the item
+	 * @param windows
+	 *            the list to add the windows to
+	 */
+	public abstract void assignWindows(long timestamp, List<WindowExtent> windows);
+
+	/**
+	 * Returns true if overlapping windows produced by this assigner should be
+	 * merged into a single window.
+	 *
+	 * @return true if windows are merged; false otherwise.
+	 */
+	public boolean isMerging() {
+		return false;
+	}
+
+	private static void checkPositive(long value, String name) {
+		if (value <= 0)
+			throw new IllegalArgumentException(name + " must be positive");
+	}
+
+	private static long floorMod(long x, long y) {
+		final long m = x % y;
+		return m < 0 ? m + y : m;
+	}
+
+	/**
+	 * Create an assigner for fixed-size, non-overlapping windows aligned to
+	 * multiples of the size.
+	 *
+	 * @param size
+	 *            the size of the windows
+	 * @return the assigner
+	 */
+	public static WindowAssigner tumbling(final long size) {
+		checkPositive(size, "size");
+
+		return new WindowAssigner() {
+			@Override
+			public void assignWindows(long timestamp, List<WindowExtent> windows) {
+				final long start = timestamp - floorMod(timestamp, size);
+				windows.add(new WindowExtent(start, start + size));
+			}
+		};
+	}
+
+	/**
+	 * Create an assigner for fixed-size windows that start every
+	 * <code>slide</code> time units (aligned to multiples of the slide). Each
+	 * item belongs to roughly <code>size / slide</code> windows. If the slide
+	 * is larger than the size, items that fall between windows are not
+	 * assigned to any window.
+	 *
+	 * @param size
+	 *            the size of the windows
+	 * @param slide
+	 *            the interval between the starts of the windows
+	 * @return the assigner
+	 */
+	public static WindowAssigner sliding(final long size, final long slide) {
+		checkPositive(size, "size");
+		checkPositive(slide, "slide");
+
+		return new WindowAssigner() {
+			@Override
+			public void assignWindows(long timestamp, List<WindowExtent> windows) {
+				final long last = timestamp - floorMod(timestamp, slide);
+
+				for (long start = last; start > timestamp - size; start -= slide)
+					windows.add(new WindowExtent(start, start + size));
+			}
+		};
+	}
+
+	/**
+	 * Create an assigner for session windows. A session is a period of
+	 * activity that ends once no items have been seen for the given gap; each
+	 * item initially gets the window <code>[timestamp, timestamp + gap)</code>
+	 * and overlapping windows are merged.
+	 *
+	 * @param gap
+	 *            the period of inactivity that closes a session
+	 * @return the assigner
+	 */
+	public static WindowAssigner session(final long gap) {
+		checkPositive(gap, "gap");
+
+		return new WindowAssigner() {
+			@Override
+			public void assignWindows(long timestamp, List<WindowExtent> windows) {
+				windows.add(new WindowExtent(timestamp, timestamp + gap));
+			}
+
+			@Override
+			public boolean isMerging() {
+				return true;
+			}
+		};
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.stream.window;
+
+/**
+ * The extent of a window produced by an {@link EventTimeWindowFunction} or a
+ * {@link CountWindowFunction}. For event-time windows the start and end are
+ * timestamps; for count windows they are the sequence numbers of the items
+ * in the stream (counting from zero). In both cases the start is inclusive
+ * and the end is exclusive.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public final class WindowExtent implements Comparable<WindowExtent> {
+	private final long start;
+	private final long end;
+
+	/**
+	 * Construct with the given bounds
+	 *
+	 * @param start
+	 *            the start (inclusive)
+	 * @param end
+	 *            the end (exclusive)
+	 */
+	public WindowExtent(long start, long end) {
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * @return the start of the window (inclusive)
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * @return the end of the window (exclusive)
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	/**
+	 * Test whether this window overlaps another
+	 *
+	 * @param other
+	 *            the other window
+	 * @return true if the windows overlap; false otherwise
+	 */
+	public boolean intersects(WindowExtent other) {
+		return start < other.end && other.start < end;
+	}
+
+	/**
+	 * Get the smallest window that covers this window and another
+	 *
+	 * @param other
+	 *            the other window
+	 * @return the covering window
+	 */
+	public WindowExtent cover(WindowExtent other) {
+		return new WindowExtent(Math.min(start, other.start), Math.max(end, other.end));
+	}
+
+	/**
+	 * Windows are ordered by their end, and then by their start.
+	 */
+	@Override
+	public int compareTo(WindowExtent o) {
+		if (end != o.end)
+			return end < o.end ? -1 : 1;
+		if (start != o.start)
+			return start < o.start ? -1 : 1;
+		return 0;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof WindowExtent))
+			return false;
+
+		final WindowExtent o = (WindowExtent) obj;
+		return start == o.start && end == o.end;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (int) (start ^ (start >>> 32)) + (int) (end ^ (end >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return "[" + start + ", " + end + ")";
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link LargeMappedFile}. Small chunk sizes are used so that values
+ * spanning chunk boundaries are exercised.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class LargeMappedFileTest {
+	/**
+	 * Temporary folder for the test data
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final int HEADER = 5;
+	private static final int N = 100;
+	private File file;
+
+	/**
+	 * Write a file with a short header followed by a sequence of ints
+	 *
+	 * @throws IOException
+	 */
+	@Before
+	public void setup() throws IOException {
+		file = folder.newFile("data.bin");
+
+		final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		dos.write(new byte[HEADER]);
+		for (int i = 0; i < N; i++)
+			dos.writeInt(i * 1000003);
+		dos.close();
+	}
+
+	/**
+	 * Test that the region is chunked correctly
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testChunks() throws IOException {
+		final LargeMappedFile lmf = new LargeMappedFile(file, HEADER, -1, 12, 50);
+
+		assertEquals(N * 4, lmf.length());
+		assertEquals(4, lmf.recordsPerChunk());
+		assertEquals(9, lmf.numChunks());
+		assertEquals(N * 4 / 12, lmf.numRecords());
+		assertEquals(48, lmf.getChunk(0).limit());
+		assertEquals(N * 4 - 8 * 48, lmf.getChunk(8).limit());
+	}
+
+	/**
+	 * Test reading aligned and unaligned values, including those that span
+	 * chunks
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testGet() throws IOException {
+		final LargeMappedFile lmf = new LargeMappedFile(file, HEADER, -1, 6, 16);
+
+		for (int i = 0; i < N; i++)
+			assertEquals(i * 1000003, lmf.getInt(i * 4));
+
+		assertEquals(1000003 * 3, lmf.getInt(12));
+		assertEquals((((long) 1000003 * 2) << 32) | (1000003 * 3), lmf.getLong(8));
+		assertEquals((short) ((1000003 * 3) >>> 16), lmf.getShort(12));
+		assertEquals(Float.intBitsToFloat(1000003 * 5), lmf.getFloat(20), 0);
+
+		final int[] all = new int[N];
+		lmf.get(0, all, 0, N);
+		for (int i = 0; i < N; i++)
+			assertEquals(i * 1000003, all[i]);
+
+		final int[] within = new int[2];
+		lmf.get(24, within, 0, 2);
+		assertArrayEquals(new int[] { 6 * 1000003, 7 * 1000003 }, within);
+	}
+
+	/**
+	 * Test that a single chunk is used when the region is small
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testSingleChunk() throws IOException {
+		final LargeMappedFile lmf = new LargeMappedFile(file, HEADER, -1, 4);
+
+		assertEquals(1, lmf.numChunks());
+		assertEquals(N, lmf.numRecords());
+		assertEquals((N - 1) * 1000003, lmf.getInt((N - 1) * 4));
+	}
+}
@@ -0,0 +1,247 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openimaj.util.cache.BoundedCache.Policy;
+import org.openimaj.util.cache.BoundedCache.Weigher;
+import org.openimaj.util.function.Function;
+
+/**
+ * Tests for the {@link BoundedCache}.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ * 
+ */
+public class BoundedCacheTest {
+	/**
+	 * Test that the LRU policy evicts the least recently used entry
+	 */
+	@Test
+	public void testLRU() {
+		final BoundedCache<Integer, String> cache = new BoundedCache<Integer, String>(3, Policy.LRU);
+		cache.put(0, "0");
+		cache.put(1, "1");
+		cache.put(2, "2");
+		assertEquals("0", cache.getIfPresent(0));
+
+		cache.put(3, "3");
+
+		assertEquals(3, cache.size());
+		assertNull(cache.getIfPresent(1));
+		assertNotNull(cache.getIfPresent(0));
+		assertNotNull(cache.getIfPresent(2));
+		assertNotNull(cache.getIfPresent(3));
+		assertEquals(1, cache.stats().getEvictionCount());
+	}
+
+	/**
+	 * Test that the total weight is bounded and overweight entries are not
+	 * cached
+	 */
+	@Test
+	public void testWeight() {
+		final Weigher<Integer, String> weigher = new Weigher<Integer, String>() {
+			@Override
+			public long weigh(Integer key, String value) {
+				return value.length();
+			}
+		};
+
+		for (final Policy policy : Policy.values()) {
+			final BoundedCache<Integer, String> cache = new BoundedCache<Integer, String>(10, weigher, policy);
+
+			for (int i = 0; i < 100; i++) {
+				cache.put(i, "abc");
+				assertTrue(cache.weight() <= 10);
+			}
+
+			cache.put(1000, "01234567890");
+			assertNull(cache.getIfPresent(1000));
+			assertTrue(cache.weight() <= 10);
+		}
+	}
+
+	/**
+	 * Test that a heavy candidate that is less popular than one of the entries
+	 * it would displace is rejected without evicting any of them
+	 */
+	@Test
+	public void testAdmissionBeforeEviction() {
+		final Weigher<Integer, String> weigher = new Weigher<Integer, String>() {
+			@Override
+			public long weigh(Integer key, String value) {
+				return key == 100 ? 30 : 10;
+			}
+		};
+
+		final BoundedCache<Integer, String> cache = new BoundedCache<Integer, String>(100, weigher, Policy.WINDOW_TINY_LFU);
+
+		// give the heavy key some history
+		cache.put(100, "100");
+		cache.put(100, "100");
+		cache.invalidate(100);
+
+		// a cold entry followed by a popular one at the head of the main region
+		cache.put(0, "0");
+		for (int i = 0; i < 5; i++)
+			cache.put(1, "1");
+		for (int i = 2; i < 9; i++)
+			cache.put(i, Integer.toString(i));
+
+		final long evictions = cache.stats().getEvictionCount();
+		cache.put(100, "100");
+
+		assertEquals(evictions + 1, cache.stats().getEvictionCount());
+		assertNull(cache.getIfPresent(100));
+		for (int i = 0; i < 9; i++)
+			assertNotNull(cache.getIfPresent(i));
+	}
+
+	/**
+	 * Test that Window-TinyLFU keeps popular entries through a scan of entries
+	 * that are only used once, whereas LRU doesn't
+	 */
+	@Test
+	public void testScanResistance() {
+		final BoundedCache<Integer, Integer> tinylfu = new BoundedCache<Integer, Integer>(100);
+		final BoundedCache<Integer, Integer> lru = new BoundedCache<Integer, Integer>(100, Policy.LRU);
+
+		for (final BoundedCache<Integer, Integer> cache : asList(tinylfu, lru)) {
+			for (int r = 0; r < 5; r++)
+				for (int i = 0; i < 50; i++)
+					cache.get(i, identity());
+
+			for (int i = 1000; i < 2000; i++)
+				cache.get(i, identity());
+		}
+
+		int tinylfuHits = 0, lruHits = 0;
+		for (int i = 0; i < 50; i++) {
+			if (tinylfu.getIfPresent(i) != null)
+				tinylfuHits++;
+			if (lru.getIfPresent(i) != null)
+				lruHits++;
+		}
+
+		assertEquals(0, lruHits);
+		assertTrue(tinylfuHits > 40);
+		assertTrue(tinylfu.size() <= 100);
+	}
+
+	/**
+	 * Test that concurrent requests for the same key share a single load
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testSharedLoad() throws InterruptedException {
+		final BoundedCache<String, String> cache = new BoundedCache<String, String>(10);
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		final Function<String, String> loader = new Function<String, String>() {
+			@Override
+			public String apply(String key) {
+				loads.incrementAndGet();
+				started.countDown();
+				try {
+					release.await();
+				} catch (final InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				return key.toUpperCase();
+			}
+		};
+
+		final int nthreads = 8;
+		final String[] results = new String[nthreads];
+		final List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < nthreads; i++) {
+			final int index = i;
+			final Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					results[index] = cache.get("key", loader);
+				}
+			});
+			threads.add(t);
+			t.start();
+
+			if (i == 0)
+				started.await();
+		}
+
+		Thread.sleep(50);
+		release.countDown();
+
+		for (final Thread t : threads)
+			t.join();
+
+		assertEquals(1, loads.get());
+		for (final String r : results)
+			assertEquals("KEY", r);
+
+		assertEquals(1, cache.stats().getLoadCount());
+
+		final long hits = cache.stats().getHitCount();
+		assertEquals("KEY", cache.get("key", loader));
+		assertEquals(hits + 1, cache.stats().getHitCount());
+	}
+
+	private static List<BoundedCache<Integer, Integer>> asList(BoundedCache<Integer, Integer> a,
+			BoundedCache<Integer, Integer> b)
+	{
+		final List<BoundedCache<Integer, Integer>> list = new ArrayList<BoundedCache<Integer, Integer>>();
+		list.add(a);
+		list.add(b);
+		return list;
+	}
+
+	private static Function<Integer, Integer> identity() {
+		return new Function<Integer, Integer>() {
+			@Override
+			public Integer apply(Integer in) {
+				return in;
+			}
+		};
+	}
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.openimaj.util.concurrent.RingBufferDroppingQueue.WaitStrategy;
+
+/**
+ * Tests for {@link RingBufferDroppingQueue}.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class RingBufferDroppingQueueTest {
+	/**
+	 * Test FIFO ordering and dropping of the oldest elements
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testDropOldest() throws InterruptedException {
+		final RingBufferDroppingQueue<Integer> q = new RingBufferDroppingQueue<Integer>(3);
+
+		assertNull(q.put(1));
+		assertNull(q.put(2));
+		assertNull(q.put(3));
+		assertEquals(1, (int) q.put(4));
+		assertEquals(2, (int) q.put(5));
+
+		assertEquals(3, q.size());
+		assertEquals(0, q.remainingCapacity());
+		assertEquals(5, q.insertCount());
+		assertEquals(2, q.dropCount());
+		assertEquals(Arrays.asList(3, 4, 5), new ArrayList<Integer>(q));
+
+		assertEquals(3, (int) q.peek());
+		assertEquals(3, (int) q.take());
+		assertEquals(4, (int) q.poll());
+		assertEquals(5, (int) q.poll());
+		assertNull(q.poll());
+		assertNull(q.poll(1, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * Test a queue with a capacity of one, as used by the live stream
+	 * providers
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testSingle() throws InterruptedException {
+		final RingBufferDroppingQueue<Integer> q = new RingBufferDroppingQueue<Integer>(1);
+
+		assertEquals(true, q.offer(1));
+		assertEquals(false, q.offer(2));
+		assertEquals(1, (int) q.put(3));
+		assertEquals(3, (int) q.take());
+		assertEquals(0, q.size());
+	}
+
+	/**
+	 * Test batched draining
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testDrain() throws InterruptedException {
+		final RingBufferDroppingQueue<Integer> q = new RingBufferDroppingQueue<Integer>(10);
+		for (int i = 0; i < 15; i++)
+			q.put(i);
+
+		final List<Integer> out = new ArrayList<Integer>();
+		assertEquals(4, q.drainTo(out, 4));
+		assertEquals(Arrays.asList(5, 6, 7, 8), out);
+
+		out.clear();
+		assertEquals(6, q.drainTo(out));
+		assertEquals(Arrays.asList(9, 10, 11, 12, 13, 14), out);
+		assertEquals(0, q.size());
+	}
+
+	/**
+	 * Test that every element is received exactly once with multiple
+	 * producers and consumers, for each wait strategy
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test(timeout = 60000)
+	public void testConcurrent() throws InterruptedException {
+		for (final WaitStrategy ws : WaitStrategy.values())
+			testConcurrent(ws);
+	}
+
+	private void testConcurrent(WaitStrategy ws) throws InterruptedException {
+		final int nthreads = 3;
+		final int perThread = 20000;
+		final RingBufferDroppingQueue<Integer> q = new RingBufferDroppingQueue<Integer>(64, ws);
+		final AtomicIntegerArray seen = new AtomicIntegerArray(nthreads * perThread);
+		final List<Thread> threads = new ArrayList<Thread>();
+
+		for (int i = 0; i < nthreads; i++) {
+			final int base = i * perThread;
+
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < perThread; j++) {
+						while (!q.offer(base + j))
+							Thread.yield();
+					}
+				}
+			});
+
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < perThread; j++)
+							seen.incrementAndGet(q.take());
+					} catch (final InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+		}
+
+		for (final Thread t : threads)
+			t.start();
+		for (final Thread t : threads)
+			t.join();
+
+		for (int i = 0; i < seen.length(); i++)
+			assertEquals(1, seen.get(i));
+		assertEquals(nthreads * perThread, q.insertCount());
+		assertEquals(0, q.dropCount());
+	}
+
+	/**
+	 * Test that a parked consumer is always woken when a single producer
+	 * inserts into the empty queue. Every element is handed over only after
+	 * the previous one has been received, so the consumer usually parks on an
+	 * empty queue and a lost wakeup would hang the test.
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test(timeout = 60000)
+	public void testParkedConsumerWakeup() throws InterruptedException {
+		final int n = 20000;
+		final RingBufferDroppingQueue<Integer> q = new RingBufferDroppingQueue<Integer>(1, WaitStrategy.PARK);
+		final AtomicInteger received = new AtomicInteger();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		final Thread consumer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < n; i++) {
+						assertEquals(i, (int) q.take());
+						received.incrementAndGet();
+					}
+				} catch (final Throwable t) {
+					failure.set(t);
+				}
+			}
+		};
+		consumer.start();
+
+		for (int i = 0; i < n; i++) {
+			assertEquals(true, q.offer(i));
+
+			while (received.get() <= i && consumer.isAlive())
+				Thread.yield();
+		}
+		consumer.join();
+
+		assertNull(failure.get());
+		assertEquals(n, received.get());
+	}
+}
@@ -30,12 +30,14 @@
 package org.openimaj.util.parallel;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.openimaj.util.function.Operation;
@@ -96,4 +98,167 @@ public class ParallelTest {
 
 		assertEquals(intsList.size(), out.size());
 	}
+
+	/**
+	 * Test that the range loop visits every index exactly once with a
+	 * non-unit increment
+	 */
+	@Test
+	public void testForRange() {
+		final int start = 3, stop = 100003, incr = 7;
+		final AtomicInteger[] counts = new AtomicInteger[stop];
+		for (int i = 0; i < stop; i++)
+			counts[i] = new AtomicInteger();
+
+		Parallel.forRange(start, stop, incr, new Operation<Parallel.IntRange>() {
+			@Override
+			public void perform(Parallel.IntRange range) {
+				for (int i = range.start; i < range.stop; i += range.incr)
+					counts[i].incrementAndGet();
+			}
+		});
+
+		for (int i = 0; i < stop; i++)
+			assertEquals(i >= start && (i - start) % incr == 0 ? 1 : 0, counts[i].get());
+	}
+
+	/**
+	 * Test that loops can be nested, including inner loops that use the
+	 * global thread pool explicitly
+	 */
+	@Test(timeout = 60000)
+	public void testNested() {
+		final int outer = 4 * GlobalExecutorPool.getPool().getMaximumPoolSize() + 1;
+		final AtomicInteger count = new AtomicInteger();
+
+		Parallel.forIndex(0, outer, 1, new Operation<Integer>() {
+			@Override
+			public void perform(Integer i) {
+				Parallel.forIndex(0, 100, 1, new Operation<Integer>() {
+					@Override
+					public void perform(Integer j) {
+						count.incrementAndGet();
+					}
+				}, GlobalExecutorPool.getPool());
+
+				final List<Integer> items = new ArrayList<Integer>();
+				for (int j = 0; j < 10; j++)
+					items.add(j);
+
+				Parallel.forEachUnpartitioned(items.iterator(), new Operation<Integer>() {
+					@Override
+					public void perform(Integer j) {
+						count.incrementAndGet();
+					}
+				});
+			}
+		});
+
+		assertEquals(outer * 110, count.get());
+	}
+
+	/**
+	 * Test that exceptions thrown by an operation reach the caller
+	 */
+	@Test
+	public void testExceptions() {
+		try {
+			Parallel.forIndex(0, 1000, 1, new Operation<Integer>() {
+				@Override
+				public void perform(Integer i) {
+					if (i == 500)
+						throw new IllegalStateException();
+				}
+			});
+			assertTrue(false);
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+
+		final List<Integer> items = new ArrayList<Integer>();
+		for (int i = 0; i < 1000; i++)
+			items.add(i);
+
+		try {
+			Parallel.forEachUnpartitioned(items.iterator(), new Operation<Integer>() {
+				@Override
+				public void perform(Integer i) {
+					if (i == 500)
+						throw new IllegalStateException();
+				}
+			});
+			assertTrue(false);
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Test that a range loop whose first piece fails does not return while
+	 * other pieces are still running
+	 */
+	@Test
+	public void testForRangeFailureWaits() {
+		final AtomicInteger running = new AtomicInteger();
+
+		try {
+			Parallel.forRange(0, 10000, 1, new Operation<Parallel.IntRange>() {
+				@Override
+				public void perform(Parallel.IntRange range) {
+					if (range.start == 0) {
+						try {
+							Thread.sleep(5);
+						} catch (final InterruptedException e) {
+						}
+						throw new IllegalStateException();
+					}
+
+					running.incrementAndGet();
+					try {
+						Thread.sleep(20);
+					} catch (final InterruptedException e) {
+					}
+					running.decrementAndGet();
+				}
+			}, 4);
+			assertTrue(false);
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+
+		assertEquals(0, running.get());
+	}
+
+	/**
+	 * Test that the per-call parallelism limit is respected
+	 */
+	@Test
+	public void testParallelism() {
+		final List<Integer> items = new ArrayList<Integer>();
+		for (int i = 0; i < 200; i++)
+			items.add(i);
+
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger max = new AtomicInteger();
+		final Operation<Integer> op = new Operation<Integer>() {
+			@Override
+			public void perform(Integer i) {
+				final int r = running.incrementAndGet();
+				for (int m = max.get(); r > m && !max.compareAndSet(m, r); m = max.get())
+					;
+				try {
+					Thread.sleep(1);
+				} catch (final InterruptedException e) {
+				}
+				running.decrementAndGet();
+			}
+		};
+
+		Parallel.forEach(items, op, 2);
+		assertTrue(max.get() <= 2);
+
+		max.set(0);
+		Parallel.forEachUnpartitioned(items.iterator(), op, 1);
+		assertEquals(1, max.get());
+	}
 }
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openimaj.util.function.Function;
+
+/**
+ * Tests for {@link Stream#parallelMap(Function, int, int)}.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class ParallelMapTest {
+	private static List<Integer> range(int n) {
+		final List<Integer> list = new ArrayList<Integer>();
+		for (int i = 0; i < n; i++)
+			list.add(i);
+		return list;
+	}
+
+	/**
+	 * Test that the output order matches the input order, even when items
+	 * take different amounts of time to process
+	 */
+	@Test
+	public void testOrder() {
+		final Stream<Integer> out = new CollectionStream<Integer>(range(1000)).parallelMap(
+				new Function<Integer, Integer>() {
+					@Override
+					public Integer apply(Integer in) {
+						if (in % 7 == 0)
+							Thread.yield();
+						return in * 2;
+					}
+				}, 4, 8);
+
+		int count = 0;
+		while (out.hasNext()) {
+			assertEquals(count * 2, (int) out.next());
+			count++;
+		}
+		assertEquals(1000, count);
+	}
+
+	/**
+	 * Test that items are only read from the underlying stream when there is
+	 * room in the window
+	 */
+	@Test
+	public void testBackpressure() {
+		final AtomicInteger read = new AtomicInteger();
+		final Stream<Integer> in = new CollectionStream<Integer>(range(100)).map(new Function<Integer, Integer>() {
+			@Override
+			public Integer apply(Integer in) {
+				read.incrementAndGet();
+				return in;
+			}
+		});
+
+		final Stream<Integer> out = in.parallelMap(new Function<Integer, Integer>() {
+			@Override
+			public Integer apply(Integer in) {
+				return in;
+			}
+		}, 2, 5);
+
+		assertEquals(0, read.get());
+		assertEquals(0, (int) out.next());
+		assertEquals(5, read.get());
+		assertEquals(1, (int) out.next());
+		assertEquals(6, read.get());
+	}
+
+	/**
+	 * Test that exceptions are re-thrown at the position of the failing item
+	 */
+	@Test
+	public void testException() {
+		final Stream<Integer> out = new CollectionStream<Integer>(range(10)).parallelMap(
+				new Function<Integer, Integer>() {
+					@Override
+					public Integer apply(Integer in) {
+						if (in == 3)
+							throw new IllegalStateException();
+						return in;
+					}
+				}, 2, 4);
+
+		for (int i = 0; i < 3; i++)
+			assertEquals(i, (int) out.next());
+
+		try {
+			out.next();
+			assertTrue(false);
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+
+		for (int i = 4; i < 10; i++)
+			assertEquals(i, (int) out.next());
+		assertFalse(out.hasNext());
+	}
+}
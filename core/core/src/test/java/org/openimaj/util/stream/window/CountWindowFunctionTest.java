@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.stream.window;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.openimaj.util.stream.CollectionStream;
+import org.openimaj.util.stream.Stream;
+
+/**
+ * Tests for {@link CountWindowFunction}.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class CountWindowFunctionTest {
+	private static Stream<Aggregation<List<Integer>, WindowExtent>> window(int size, int slide, Integer... items) {
+		return new CollectionStream<Integer>(Arrays.asList(items)).transform(
+				new CountWindowFunction<Integer, List<Integer>, List<Integer>>(size, slide,
+						new ListAccumulator<Integer>()));
+	}
+
+	private static void check(Aggregation<List<Integer>, WindowExtent> agg, long start, long end, Integer... items) {
+		assertEquals(new WindowExtent(start, end), agg.getMeta());
+		assertEquals(Arrays.asList(items), agg.getPayload());
+	}
+
+	/**
+	 * Test tumbling windows, with an incomplete window at the end
+	 */
+	@Test
+	public void testTumbling() {
+		final Stream<Aggregation<List<Integer>, WindowExtent>> s = window(2, 2, 1, 2, 3, 4, 5);
+
+		check(s.next(), 0, 2, 1, 2);
+		check(s.next(), 2, 4, 3, 4);
+		check(s.next(), 4, 5, 5);
+		assertFalse(s.hasNext());
+	}
+
+	/**
+	 * Test sliding windows
+	 */
+	@Test
+	public void testSliding() {
+		final Stream<Aggregation<List<Integer>, WindowExtent>> s = window(3, 1, 1, 2, 3, 4);
+
+		check(s.next(), 0, 3, 1, 2, 3);
+		check(s.next(), 1, 4, 2, 3, 4);
+		check(s.next(), 2, 4, 3, 4);
+		check(s.next(), 3, 4, 4);
+		assertFalse(s.hasNext());
+	}
+
+	/**
+	 * Test windows with gaps between them
+	 */
+	@Test
+	public void testGaps() {
+		final Stream<Aggregation<List<Integer>, WindowExtent>> s = window(1, 3, 1, 2, 3, 4, 5);
+
+		check(s.next(), 0, 1, 1);
+		check(s.next(), 3, 4, 4);
+		assertFalse(s.hasNext());
+	}
+}
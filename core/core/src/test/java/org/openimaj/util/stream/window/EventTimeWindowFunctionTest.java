@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.stream.window;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import org.openimaj.util.function.Function;
+import org.openimaj.util.stream.AbstractStream;
+import org.openimaj.util.stream.CollectionStream;
+import org.openimaj.util.stream.Stream;
+
+/**
+ * Tests for {@link EventTimeWindowFunction}.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class EventTimeWindowFunctionTest {
+	private static final Function<Long, Long> IDENTITY = new Function<Long, Long>() {
+		@Override
+		public Long apply(Long in) {
+			return in;
+		}
+	};
+
+	private static Stream<Aggregation<List<Long>, WindowExtent>> window(WindowAssigner assigner, long delay,
+			Long... times)
+	{
+		return new CollectionStream<Long>(Arrays.asList(times)).transform(
+				new EventTimeWindowFunction<Long, List<Long>, List<Long>>(assigner, IDENTITY,
+						new ListAccumulator<Long>(), delay, 0));
+	}
+
+	private static void check(Aggregation<List<Long>, WindowExtent> agg, long start, long end, Long... items) {
+		assertEquals(new WindowExtent(start, end), agg.getMeta());
+		assertEquals(Arrays.asList(items), agg.getPayload());
+	}
+
+	/**
+	 * Test tumbling windows
+	 */
+	@Test
+	public void testTumbling() {
+		final Stream<Aggregation<List<Long>, WindowExtent>> s = window(WindowAssigner.tumbling(10), 0, 1L, 5L, 10L,
+				25L, 29L);
+
+		check(s.next(), 0, 10, 1L, 5L);
+		check(s.next(), 10, 20, 10L);
+		check(s.next(), 20, 30, 25L, 29L);
+		assertFalse(s.hasNext());
+	}
+
+	/**
+	 * Test sliding windows
+	 */
+	@Test
+	public void testSliding() {
+		final Stream<Aggregation<List<Long>, WindowExtent>> s = window(WindowAssigner.sliding(10, 5), 0, 3L, 7L, 12L);
+
+		check(s.next(), -5, 5, 3L);
+		check(s.next(), 0, 10, 3L, 7L);
+		check(s.next(), 5, 15, 7L, 12L);
+		check(s.next(), 10, 20, 12L);
+		assertFalse(s.hasNext());
+	}
+
+	/**
+	 * Test session windows, including merging of sessions by an out-of-order
+	 * item
+	 */
+	@Test
+	public void testSession() {
+		final Stream<Aggregation<List<Long>, WindowExtent>> s = window(WindowAssigner.session(5), 10, 0L, 8L, 4L,
+				30L, 32L);
+
+		check(s.next(), 0, 13, 0L, 8L, 4L);
+		check(s.next(), 30, 37, 30L, 32L);
+		assertFalse(s.hasNext());
+	}
+
+	/**
+	 * Test that out-of-order items within the allowed delay are kept, and
+	 * later ones are dropped
+	 */
+	@Test
+	public void testLateness() {
+		final Stream<Aggregation<List<Long>, WindowExtent>> s = window(WindowAssigner.tumbling(10), 5, 1L, 12L, 8L,
+				16L, 9L, 22L);
+
+		check(s.next(), 0, 10, 1L, 8L);
+		check(s.next(), 10, 20, 12L, 16L);
+		check(s.next(), 20, 30, 22L);
+		assertFalse(s.hasNext());
+	}
+
+	/**
+	 * Test that windows close on an idle source when an idle timeout is set
+	 */
+	@Test(timeout = 10000)
+	public void testIdle() {
+		final CountDownLatch release = new CountDownLatch(1);
+		final long now = System.currentTimeMillis();
+		final List<Long> times = new ArrayList<Long>(Arrays.asList(now, now + 1));
+
+		final Stream<Long> source = new AbstractStream<Long>() {
+			@Override
+			public boolean hasNext() {
+				if (times.isEmpty()) {
+					try {
+						release.await();
+					} catch (final InterruptedException e) {
+					}
+					return false;
+				}
+				return true;
+			}
+
+			@Override
+			public Long next() {
+				return times.remove(0);
+			}
+		};
+
+		final Stream<Aggregation<List<Long>, WindowExtent>> s = source.transform(
+				new EventTimeWindowFunction<Long, List<Long>, List<Long>>(WindowAssigner.session(50), IDENTITY,
+						new ListAccumulator<Long>(), 0, 10));
+
+		// the source never ends until released, so this relies on the idle
+		// timeout
+		check(s.next(), now, now + 51, now, now + 1);
+
+		release.countDown();
+		assertFalse(s.hasNext());
+	}
+}
@@ -51,7 +51,7 @@ import org.openimaj.tools.twitter.modes.preprocessing.TokeniseMode;
 import org.openimaj.twitter.USMFStatus;
 import org.openimaj.util.api.auth.DefaultTokenFactory;
 import org.openimaj.util.api.auth.common.TwitterAPIToken;
-import org.openimaj.util.concurrent.ArrayBlockingDroppingQueue;
+import org.openimaj.util.concurrent.RingBufferDroppingQueue;
 import org.openimaj.util.pair.IndependentPair;
 import org.openimaj.util.stream.Stream;
 import org.openimaj.util.stream.window.MetaPayload;
@@ -89,7 +89,7 @@ public class FinancialStreamRecorder {
 				.transform(yahooWindow);
 
 		// The Twitter Stream
-		final ArrayBlockingDroppingQueue<Status> buffer = new ArrayBlockingDroppingQueue<Status>(1);
+		final RingBufferDroppingQueue<Status> buffer = new RingBufferDroppingQueue<Status>(1);
 		final LanguageDetectionMode languageDetectionMode = new LanguageDetectionMode();
 		final StopwordMode stopwordMode = new StopwordMode();
 		final TokeniseMode tokeniseMode = new TokeniseMode();
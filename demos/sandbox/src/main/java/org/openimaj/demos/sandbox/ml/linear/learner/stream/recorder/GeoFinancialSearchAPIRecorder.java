@@ -52,7 +52,7 @@ import org.openimaj.tools.twitter.modes.preprocessing.TokeniseMode;
 import org.openimaj.twitter.USMFStatus;
 import org.openimaj.util.api.auth.DefaultTokenFactory;
 import org.openimaj.util.api.auth.common.TwitterAPIToken;
-import org.openimaj.util.concurrent.ArrayBlockingDroppingQueue;
+import org.openimaj.util.concurrent.RingBufferDroppingQueue;
 import org.openimaj.util.data.Context;
 import org.openimaj.util.function.context.ContextFunctionAdaptor;
 import org.openimaj.util.function.context.ContextListFunction;
@@ -94,7 +94,7 @@ public class GeoFinancialSearchAPIRecorder {
 		final List<Map<String, String>> geoLocs = loadGeoLocs("/org/openimaj/demos/sandbox/ml/linear/learner/stream/locations_input_srv_II.txt");
 
 		// The Twitter Stream
-		final ArrayBlockingDroppingQueue<Context> buffer = new ArrayBlockingDroppingQueue<Context>(1000);
+		final RingBufferDroppingQueue<Context> buffer = new RingBufferDroppingQueue<Context>(1000);
 		final LanguageDetectionMode languageDetectionMode = new LanguageDetectionMode();
 		final StopwordMode stopwordMode = new StopwordMode();
 		final TokeniseMode tokeniseMode = new TokeniseMode();
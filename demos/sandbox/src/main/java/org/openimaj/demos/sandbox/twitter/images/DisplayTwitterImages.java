@@ -48,7 +48,7 @@ import org.openimaj.stream.functions.twitter.TwitterURLExtractor;
 import org.openimaj.stream.provider.twitter.TwitterStreamDataset;
 import org.openimaj.util.api.auth.DefaultTokenFactory;
 import org.openimaj.util.api.auth.common.TwitterAPIToken;
-import org.openimaj.util.concurrent.ArrayBlockingDroppingQueue;
+import org.openimaj.util.concurrent.RingBufferDroppingQueue;
 import org.openimaj.util.function.Operation;
 import org.openimaj.util.stream.BlockingDroppingBufferedStream;
 import org.openimaj.util.stream.CollectionStream;
@@ -71,7 +71,7 @@ public class DisplayTwitterImages {
 		final TwitterAPIToken token = DefaultTokenFactory.get(TwitterAPIToken.class);
 		final Stream<Status> stream = new TwitterStreamDataset(token);
 
-		final ArrayBlockingDroppingQueue<MBFImage> buffer = new ArrayBlockingDroppingQueue<MBFImage>(10);
+		final RingBufferDroppingQueue<MBFImage> buffer = new RingBufferDroppingQueue<MBFImage>(10);
 		final BlockingDroppingBufferedStream<MBFImage> imageStream = new BlockingDroppingBufferedStream<MBFImage>(buffer);
 
 		new Thread(new Runnable() {
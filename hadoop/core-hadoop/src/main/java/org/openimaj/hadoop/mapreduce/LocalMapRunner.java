@@ -0,0 +1,271 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.hadoop.mapreduce;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.Reader;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.openimaj.hadoop.sequencefile.SequenceFileUtility;
+import org.openimaj.util.parallel.GlobalExecutorPool.DaemonThreadFactory;
+
+/**
+ * Runs the logic of a map-only job over {@link SequenceFile}s on the local
+ * machine with a thread pool, rather than submitting a MapReduce job. For
+ * medium sized datasets this avoids the job startup, distributed cache and
+ * task overheads, which can easily dominate the actual work.
+ * <p>
+ * The input files are streamed on the calling thread, a record at a time, in
+ * batches that are handed to the pool. {@link #map(Writable, Writable)} is
+ * called concurrently for each record, and the results are passed to
+ * {@link #collect(Writable, Object)} on the calling thread in exactly the
+ * order the records were read, so the output can be written in the same
+ * order as a map task would have produced it. The number of batches in flight
+ * is bounded, so memory use doesn't depend on the size of the input.
+ * <p>
+ * Each record is read into new key and value objects, so they can safely be
+ * retained by the implementation.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ *
+ * @param <K>
+ *            Type of the input keys
+ * @param <V>
+ *            Type of the input values
+ * @param <R>
+ *            Type of the result of mapping a record
+ */
+public abstract class LocalMapRunner<K extends Writable, V extends Writable, R> {
+	/**
+	 * The default number of records in each batch
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 64;
+
+	protected final Configuration config;
+	protected final int nthreads;
+	protected final int batchSize;
+
+	/**
+	 * Construct with the given number of threads and the default
+	 * configuration and batch size.
+	 *
+	 * @param nthreads
+	 *            the number of threads
+	 */
+	public LocalMapRunner(int nthreads) {
+		this(new Configuration(), nthreads, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Construct with the given configuration, number of threads and batch
+	 * size.
+	 *
+	 * @param config
+	 *            the configuration used to access the filesystem
+	 * @param nthreads
+	 *            the number of threads
+	 * @param batchSize
+	 *            the number of records in each batch
+	 */
+	public LocalMapRunner(Configuration config, int nthreads, int batchSize) {
+		if (nthreads <= 0 || batchSize <= 0)
+			throw new IllegalArgumentException("The number of threads and the batch size must be positive");
+
+		this.config = config;
+		this.nthreads = nthreads;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Process a record. This is called concurrently from multiple threads.
+	 *
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value
+	 * @return the result, or <code>null</code> if nothing should be collected
+	 * @throws Exception
+	 *             if an error occurs; this aborts the run
+	 */
+	protected abstract R map(K key, V value) throws Exception;
+
+	/**
+	 * Collect the result of processing a record. This is called on the thread
+	 * that called {@link #run(Path...)}, in input order.
+	 *
+	 * @param key
+	 *            the key of the record
+	 * @param result
+	 *            the (non-null) result of {@link #map(Writable, Writable)}
+	 * @throws IOException
+	 *             if an error occurs
+	 */
+	protected abstract void collect(K key, R result) throws IOException;
+
+	/**
+	 * Called before the records of each input file are read. Does nothing by
+	 * default.
+	 *
+	 * @param index
+	 *            the index of the file
+	 * @param path
+	 *            the path of the file
+	 * @throws IOException
+	 *             if an error occurs
+	 */
+	protected void beginFile(int index, Path path) throws IOException {
+		// do nothing
+	}
+
+	/**
+	 * Called after the results of every record in an input file have been
+	 * collected. Does nothing by default.
+	 *
+	 * @param index
+	 *            the index of the file
+	 * @param path
+	 *            the path of the file
+	 * @throws IOException
+	 *             if an error occurs
+	 */
+	protected void endFile(int index, Path path) throws IOException {
+		// do nothing
+	}
+
+	/**
+	 * Process all the records in the given sequence files.
+	 *
+	 * @param inputs
+	 *            the input files
+	 * @throws IOException
+	 *             if an error occurs reading the input, or processing or
+	 *             collecting a record
+	 */
+	public void run(Path... inputs) throws IOException {
+		final ExecutorService pool = Executors.newFixedThreadPool(nthreads, new DaemonThreadFactory());
+
+		try {
+			for (int i = 0; i < inputs.length; i++) {
+				beginFile(i, inputs[i]);
+				runFile(pool, inputs[i]);
+				endFile(i, inputs[i]);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void runFile(ExecutorService pool, Path path) throws IOException {
+		final FileSystem fs = SequenceFileUtility.getFileSystem(path.toUri(), config);
+		final Reader reader = new Reader(fs, path, config);
+		final Class<K> keyClass = (Class<K>) reader.getKeyClass();
+		final Class<V> valueClass = (Class<V>) reader.getValueClass();
+
+		final ArrayDeque<Future<List<Object[]>>> inflight = new ArrayDeque<Future<List<Object[]>>>();
+		final int maxInflight = 2 * nthreads;
+
+		try {
+			List<Object[]> batch = new ArrayList<Object[]>(batchSize);
+			while (true) {
+				final K key = ReflectionUtils.newInstance(keyClass, config);
+				final V value = ReflectionUtils.newInstance(valueClass, config);
+				final boolean more = reader.next(key, value);
+
+				if (more)
+					batch.add(new Object[] { key, value });
+
+				if (batch.size() == batchSize || (!more && batch.size() > 0)) {
+					if (inflight.size() >= maxInflight)
+						collectBatch(inflight.poll());
+
+					inflight.add(pool.submit(createTask(batch)));
+					batch = new ArrayList<Object[]>(batchSize);
+				}
+
+				if (!more)
+					break;
+			}
+
+			while (!inflight.isEmpty())
+				collectBatch(inflight.poll());
+		} finally {
+			for (final Future<?> f : inflight)
+				f.cancel(true);
+
+			reader.close();
+		}
+	}
+
+	private Callable<List<Object[]>> createTask(final List<Object[]> batch) {
+		return new Callable<List<Object[]>>() {
+			@SuppressWarnings("unchecked")
+			@Override
+			public List<Object[]> call() throws Exception {
+				for (final Object[] record : batch)
+					record[1] = map((K) record[0], (V) record[1]);
+
+				return batch;
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	private void collectBatch(Future<List<Object[]>> future) throws IOException {
+		final List<Object[]> results;
+		try {
+			results = future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+
+		for (final Object[] record : results)
+			if (record[1] != null)
+				collect((K) record[0], (R) record[1]);
+	}
+}
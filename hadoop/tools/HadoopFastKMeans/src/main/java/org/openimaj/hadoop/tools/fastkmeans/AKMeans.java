@@ -81,6 +81,12 @@ public class AKMeans {
 
 	private static final String CENTROIDS_FALLBACK_CHANCE = "uk.ac.soton.ecs.jsh2.clusterquantiser.FallbackChance";
 
+	/**
+	 * The default probability of a feature also being emitted as a candidate
+	 * replacement for an empty centroid
+	 */
+	static final double DEFAULT_FALLBACK_CHANCE = 0.01;
+
 	/**
 	 * the map for approximate kmeans. Uses the {@link ByteKMeans} under the
 	 * hood. For each feature assign the feature to a centroid and emit with
@@ -112,7 +118,7 @@ public class AKMeans {
 				k = Integer.parseInt(context.getConfiguration().getStrings(CENTROIDS_K)[0]);
 				exact = Boolean.parseBoolean(context.getConfiguration().getStrings(CENTROIDS_EXACT)[0]);
 				System.out.println("This is exact mode: " + exact);
-				randomFallbackChance = 0.01;
+				randomFallbackChance = DEFAULT_FALLBACK_CHANCE;
 				if (context.getConfiguration().getStrings(CENTROIDS_FALLBACK_CHANCE) != null) {
 					randomFallbackChance = Double.parseDouble(context.getConfiguration().getStrings(
 							CENTROIDS_FALLBACK_CHANCE)[0]);
@@ -125,10 +131,7 @@ public class AKMeans {
 				final InputStream is = fs.open(centroidsPath);
 				final ByteCentroidsResult centroids = IOUtils.read(is, ByteCentroidsResult.class);
 
-				if (exact)
-					assigner = new ExactByteAssigner(centroids);
-				else
-					assigner = new KDTreeByteEuclideanAssigner(centroids);
+				assigner = createAssigner(centroids, exact);
 			} else {
 				// System.out.println("No need to reload tree");
 			}
@@ -150,7 +153,40 @@ public class AKMeans {
 		}
 	}
 
-	private static int accumulateFromFeature(int[] sum, byte[] assigned) throws IOException {
+	/**
+	 * Create the assigner used to assign features to the given centroids
+	 *
+	 * @param centroids
+	 *            the centroids
+	 * @param exact
+	 *            true for exact assignment; false for approximate
+	 *            assignment using a KD-Tree ensemble
+	 * @return the assigner
+	 */
+	static HardAssigner<byte[], float[], IntFloatPair> createAssigner(ByteCentroidsResult centroids, boolean exact) {
+		if (exact)
+			return new ExactByteAssigner(centroids);
+		return new KDTreeByteEuclideanAssigner(centroids);
+	}
+
+	/**
+	 * Compute a centroid from the sum of the features assigned to it
+	 *
+	 * @param sum
+	 *            the sum of the features
+	 * @param totalAssigned
+	 *            the number of features
+	 * @return the centroid
+	 */
+	static byte[] centroid(int[] sum, int totalAssigned) {
+		final byte[] out = new byte[sum.length];
+		for (int i = 0; i < sum.length; i++) {
+			out[i] = (byte) ((sum[i] / totalAssigned));
+		}
+		return out;
+	}
+
+	static int accumulateFromFeature(int[] sum, byte[] assigned) throws IOException {
 		if (assigned.length != sum.length)
 			throw new IOException("Inconsistency in sum and feature length");
 		for (int i = 0; i < sum.length; i++) {
@@ -244,7 +280,6 @@ public class AKMeans {
 		InterruptedException
 		{
 			final int[] sum = new int[128];
-			final byte[] out = new byte[128];
 
 			int totalAssigned = 0;
 			for (final BytesWritable val : values) {
@@ -269,11 +304,7 @@ public class AKMeans {
 			if (key.get() > k)
 				return;
 
-			for (int i = 0; i < sum.length; i++) {
-				out[i] = (byte) ((sum[i] / totalAssigned));
-			}
-
-			context.write(key, new BytesWritable(out));
+			context.write(key, new BytesWritable(centroid(sum, totalAssigned)));
 		}
 	}
 
@@ -126,22 +126,7 @@ public class HadoopFastKMeans extends Configured implements Tool {
 			String newOutPath = base + "/" + i;
 			if (i == options.iter - 1)
 				newOutPath = base + "/final";
-			final Job job = TextBytesJobUtil.createJob(new Path(selected), new Path(newOutPath),
-					new HashMap<String, String>(), this.getConf());
-			job.setJarByClass(this.getClass());
-			job.setMapperClass(MultithreadedMapper.class);
-			MultithreadedMapper.setNumberOfThreads(job, options.concurrency);
-			MultithreadedMapper.setMapperClass(job, AKMeans.Map.class);
-
-			job.setCombinerClass(AKMeans.Combine.class);
-			job.setReducerClass(AKMeans.Reduce.class);
-			job.setOutputKeyClass(IntWritable.class);
-			job.setOutputValueClass(BytesWritable.class);
-			job.getConfiguration().setStrings(AKMeans.CENTROIDS_PATH, currentCompletePath);
-			job.getConfiguration().setStrings(AKMeans.CENTROIDS_K, options.k + "");
-			job.getConfiguration().setStrings(AKMeans.CENTROIDS_EXACT, options.exact + "");
-			((JobConf) job.getConfiguration()).setNumTasksToExecutePerJvm(-1);
-			job.waitForCompletion(true);
+			iterate(selected, currentCompletePath, newOutPath);
 
 			currentCompletePath = newOutPath;
 			cluster = AKMeans.completeCentroids(currentCompletePath + "/part-r-00000", selected, options);
@@ -151,6 +136,42 @@ public class HadoopFastKMeans extends Configured implements Tool {
 		return 0;
 	}
 
+	/**
+	 * Perform a single k-means iteration over the selected features, either
+	 * with a MapReduce job or locally, depending on the options.
+	 * 
+	 * @param selected
+	 *            the selected features
+	 * @param centroids
+	 *            the file holding the current centroids
+	 * @param output
+	 *            the output directory
+	 * @throws Exception
+	 */
+	void iterate(String selected, String centroids, String output) throws Exception {
+		if (options.local) {
+			LocalFastKMeans.iterate(selected, centroids, output, options);
+			return;
+		}
+
+		final Job job = TextBytesJobUtil.createJob(new Path(selected), new Path(output),
+				new HashMap<String, String>(), this.getConf());
+		job.setJarByClass(this.getClass());
+		job.setMapperClass(MultithreadedMapper.class);
+		MultithreadedMapper.setNumberOfThreads(job, options.concurrency);
+		MultithreadedMapper.setMapperClass(job, AKMeans.Map.class);
+
+		job.setCombinerClass(AKMeans.Combine.class);
+		job.setReducerClass(AKMeans.Reduce.class);
+		job.setOutputKeyClass(IntWritable.class);
+		job.setOutputValueClass(BytesWritable.class);
+		job.getConfiguration().setStrings(AKMeans.CENTROIDS_PATH, centroids);
+		job.getConfiguration().setStrings(AKMeans.CENTROIDS_K, options.k + "");
+		job.getConfiguration().setStrings(AKMeans.CENTROIDS_EXACT, options.exact + "");
+		((JobConf) job.getConfiguration()).setNumTasksToExecutePerJvm(-1);
+		job.waitForCompletion(true);
+	}
+
 	static byte[][] trimNullClusters(byte[][] bytes) {
 		int i = 0;
 		while (i < bytes.length && bytes[i] != null) {
@@ -91,6 +91,12 @@ public class HadoopFastKMeansOptions {
 			usage = "How many times should the Kmeans iterate")
 	public int iter = 3;
 
+	@Option(
+			name = "--local",
+			required = false,
+			usage = "Run on this machine using a pool of threads (see --threads) rather than as MapReduce jobs.")
+	public boolean local = false;
+
 	@Option(name = "--samples-only", aliases = "-so", required = false, usage = "Extract samples only.")
 	public boolean samplesOnly = false;
 
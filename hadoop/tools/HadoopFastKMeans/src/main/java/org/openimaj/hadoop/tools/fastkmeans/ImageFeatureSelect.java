@@ -31,6 +31,8 @@ package org.openimaj.hadoop.tools.fastkmeans;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.Text;
@@ -67,9 +69,7 @@ public class ImageFeatureSelect {
 		public void map(Text key, BytesWritable value, Context context) throws IOException, InterruptedException {
 			System.out.println("Reading from file: " + key);
 			try {
-				final FeatureFile input = fileType.read(new ByteArrayInputStream(value.getBytes()));
-				for (final FeatureFileFeature ff : input) {
-					final IndexedByteArray iba = new IndexedByteArray(ff.data);
+				for (final IndexedByteArray iba : readFeatures(fileType, value)) {
 					if (queue != null) {
 						queue.insert(iba);
 					}
@@ -102,6 +102,27 @@ public class ImageFeatureSelect {
 
 	}
 
+	/**
+	 * Read the features from a record, giving each one a random index
+	 *
+	 * @param fileType
+	 *            the type of the feature file
+	 * @param value
+	 *            the record holding the feature file
+	 * @return the features
+	 * @throws IOException
+	 *             if an error occurs reading the features
+	 */
+	static List<IndexedByteArray> readFeatures(FileType fileType, BytesWritable value) throws IOException {
+		final List<IndexedByteArray> features = new ArrayList<IndexedByteArray>();
+
+		final FeatureFile input = fileType.read(new ByteArrayInputStream(value.getBytes()));
+		for (final FeatureFileFeature ff : input)
+			features.add(new IndexedByteArray(ff.data));
+
+		return features;
+	}
+
 	public static class Reduce extends Reducer<Text, BytesWritable, Text, BytesWritable> {
 		private int nfeatures = -1;
 		private int seen = 0;
@@ -0,0 +1,264 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.hadoop.tools.fastkmeans;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.log4j.Logger;
+import org.openimaj.hadoop.mapreduce.LocalMapRunner;
+import org.openimaj.hadoop.sequencefile.SequenceFileUtility;
+import org.openimaj.hadoop.sequencefile.TextBytesSequenceFileUtility;
+import org.openimaj.io.IOUtils;
+import org.openimaj.ml.clustering.ByteCentroidsResult;
+import org.openimaj.ml.clustering.assignment.HardAssigner;
+import org.openimaj.tools.clusterquantiser.FileType;
+import org.openimaj.util.pair.IntFloatPair;
+
+/**
+ * Local (single machine) implementations of the MapReduce jobs used by
+ * {@link HadoopFastKMeans}. These are used when the <code>--local</code>
+ * option is given. Each one reads the same sequence files as the
+ * corresponding job, runs the same mapper logic over a
+ * {@link LocalMapRunner} thread pool, performs the combine and reduce steps
+ * in memory, and writes its result to a <code>part-r-00000</code> file in the
+ * same format as the job's reducer.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class LocalFastKMeans {
+	private static final Logger logger = Logger.getLogger(LocalFastKMeans.class);
+
+	private static final String OUTPUT_FILE = "part-r-00000";
+
+	private LocalFastKMeans() {
+	}
+
+	private static Path[] inputPaths(List<String> inputs) throws IOException {
+		final List<Path> paths = new ArrayList<Path>();
+		for (final String input : inputs) {
+			for (final Path p : SequenceFileUtility.getFilePaths(input, "part"))
+				paths.add(p);
+		}
+		return paths.toArray(new Path[paths.size()]);
+	}
+
+	private static Path outputFile(String output) {
+		return new Path(SequenceFileUtility.convertToURI(output).toString(), OUTPUT_FILE);
+	}
+
+	/**
+	 * Select features from the feature files in the given sequence files.
+	 * This is the local equivalent of {@link ImageFeatureSelect}: each feature
+	 * is given a random index and the features with the largest indices are
+	 * kept.
+	 *
+	 * @param inputs
+	 *            the input sequence files of feature files
+	 * @param output
+	 *            the output directory
+	 * @param nfeatures
+	 *            the number of features to select, or -1 for all features
+	 * @param options
+	 *            the options
+	 * @throws IOException
+	 *             if an error occurs
+	 */
+	public static void selectImageFeatures(List<String> inputs, String output, final int nfeatures,
+			HadoopFastKMeansOptions options) throws IOException
+	{
+		final FileType fileType = FileType.valueOf(options.fileType);
+		final TextBytesSequenceFileUtility out = new TextBytesSequenceFileUtility(
+				outputFile(output).toUri(), CompressionType.NONE);
+		final IndexedByteArrayPriorityQueue queue = nfeatures == -1 ? null : new IndexedByteArrayPriorityQueue(
+				nfeatures);
+
+		try {
+			new LocalMapRunner<Text, BytesWritable, List<IndexedByteArray>>(options.concurrency) {
+				@Override
+				protected List<IndexedByteArray> map(Text key, BytesWritable value) {
+					try {
+						return ImageFeatureSelect.readFeatures(fileType, value);
+					} catch (final Throwable t) {
+						logger.warn("There was an error while reading the features from " + key, t);
+						return null;
+					}
+				}
+
+				@Override
+				protected void collect(Text key, List<IndexedByteArray> features) throws IOException {
+					for (final IndexedByteArray iba : features) {
+						if (queue != null)
+							queue.insert(iba);
+						else
+							out.appendData(new Text(iba.index + ""), new BytesWritable(iba.array));
+					}
+				}
+			}.run(inputPaths(inputs));
+
+			if (queue != null) {
+				for (int seen = 0; queue.size() > 0; seen++)
+					out.appendData(new Text(seen + ""), new BytesWritable(queue.pop().array));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Select random features from a sequence file of features. This is the
+	 * local equivalent of {@link FeatureSelect}.
+	 *
+	 * @param input
+	 *            the input sequence file(s) of features
+	 * @param output
+	 *            the output directory
+	 * @param nfeatures
+	 *            the number of features to select
+	 * @param options
+	 *            the options
+	 * @throws IOException
+	 *             if an error occurs
+	 */
+	public static void selectRandomFeatures(String input, String output, int nfeatures,
+			HadoopFastKMeansOptions options) throws IOException
+	{
+		final IndexedByteArrayPriorityQueue queue = new IndexedByteArrayPriorityQueue(nfeatures);
+
+		new LocalMapRunner<Writable, BytesWritable, IndexedByteArray>(options.concurrency) {
+			@Override
+			protected IndexedByteArray map(Writable key, BytesWritable value) {
+				final byte[] validBytes = new byte[value.getLength()];
+				System.arraycopy(value.getBytes(), 0, validBytes, 0, validBytes.length);
+
+				return new IndexedByteArray(validBytes);
+			}
+
+			@Override
+			protected void collect(Writable key, IndexedByteArray result) {
+				queue.insert(result);
+			}
+		}.run(SequenceFileUtility.getFilePaths(input, "part"));
+
+		final IntBytesSequenceMemoryUtility out = new IntBytesSequenceMemoryUtility(outputFile(output).toUri(),
+				CompressionType.NONE);
+		try {
+			for (int seen = 0; queue.size() > 0; seen++)
+				out.appendData(new IntWritable(seen), new BytesWritable(queue.pop().array));
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Perform a single iteration of (approximate) k-means. This is the local
+	 * equivalent of a single {@link AKMeans} job: the features are assigned to
+	 * the centroids in parallel, and the sum of the features assigned to each
+	 * centroid is accumulated in memory. The new centroids are written in
+	 * centroid order, followed by the randomly chosen features that can
+	 * replace empty centroids.
+	 *
+	 * @param selected
+	 *            the sequence file(s) of features
+	 * @param centroidsPath
+	 *            the file holding the current centroids
+	 * @param output
+	 *            the output directory
+	 * @param options
+	 *            the options
+	 * @throws IOException
+	 *             if an error occurs
+	 */
+	public static void iterate(String selected, String centroidsPath, String output,
+			HadoopFastKMeansOptions options) throws IOException
+	{
+		final Path path = new Path(centroidsPath);
+		final FileSystem fs = HadoopFastKMeansOptions.getFileSystem(path.toUri());
+		final InputStream is = fs.open(path);
+		final ByteCentroidsResult centroids;
+		try {
+			centroids = IOUtils.read(is, ByteCentroidsResult.class);
+		} finally {
+			is.close();
+		}
+
+		final int k = options.k;
+		final HardAssigner<byte[], float[], IntFloatPair> assigner = AKMeans.createAssigner(centroids, options.exact);
+		final int[][] sums = new int[k][];
+		final int[] counts = new int[k];
+		final List<byte[]> fallbacks = new ArrayList<byte[]>();
+		final Random random = new Random();
+
+		new LocalMapRunner<Writable, BytesWritable, IndexedByteArray>(options.concurrency) {
+			@Override
+			protected IndexedByteArray map(Writable key, BytesWritable value) {
+				final byte[] points = new byte[value.getLength()];
+				System.arraycopy(value.getBytes(), 0, points, 0, points.length);
+
+				return new IndexedByteArray(points, assigner.assign(points));
+			}
+
+			@Override
+			protected void collect(Writable key, IndexedByteArray result) throws IOException {
+				if (sums[result.index] == null)
+					sums[result.index] = new int[128];
+
+				counts[result.index] += AKMeans.accumulateFromFeature(sums[result.index], result.array);
+
+				if (random.nextDouble() < AKMeans.DEFAULT_FALLBACK_CHANCE)
+					fallbacks.add(result.array);
+			}
+		}.run(SequenceFileUtility.getFilePaths(selected, "part"));
+
+		final IntBytesSequenceMemoryUtility out = new IntBytesSequenceMemoryUtility(outputFile(output).toUri(),
+				CompressionType.BLOCK);
+		try {
+			for (int i = 0; i < k; i++) {
+				if (counts[i] > 0)
+					out.appendData(new IntWritable(i), new BytesWritable(AKMeans.centroid(sums[i], counts[i])));
+			}
+
+			for (final byte[] f : fallbacks)
+				out.appendData(new IntWritable(k + 1), new BytesWritable(f));
+		} finally {
+			out.close();
+		}
+	}
+}
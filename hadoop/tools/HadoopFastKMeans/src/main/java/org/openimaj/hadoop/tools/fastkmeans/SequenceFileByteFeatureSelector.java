@@ -63,7 +63,10 @@ public class SequenceFileByteFeatureSelector extends Configured implements Tool
 
 	public String getRandomFeatures(int k) throws Exception {
 		this.nRandomRows = k;
-		ToolRunner.run(this, options.original_args);
+		if (options.local)
+			LocalFastKMeans.selectRandomFeatures(inputFilePath, outputFilePath, k, options);
+		else
+			ToolRunner.run(this, options.original_args);
         return this.outputFilePath;
 	}
 
@@ -64,7 +64,10 @@ public class SequenceFileByteImageFeatureSelector extends Configured implements
 
 	public String getFeatures(int k) throws Exception {
 		this.nRandomRows = k;
-		ToolRunner.run(this, options.original_args);
+		if (options.local)
+			LocalFastKMeans.selectImageFeatures(inputFilePaths, outputFilePath, k, options);
+		else
+			ToolRunner.run(this, options.original_args);
 		return this.outputFilePath;
 	}
 
@@ -30,16 +30,29 @@
 package org.openimaj.hadoop.tools.fastkmeans;
 
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Random;
 
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.ToolRunner;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.openimaj.feature.local.list.MemoryLocalFeatureList;
+import org.openimaj.hadoop.sequencefile.TextBytesSequenceFileUtility;
 import org.openimaj.hadoop.tools.fastkmeans.HadoopFastKMeans;
 import org.openimaj.hadoop.tools.fastkmeans.HadoopFastKMeansOptions;
+import org.openimaj.image.feature.local.keypoints.Keypoint;
+import org.openimaj.io.IOUtils;
+import org.openimaj.ml.clustering.ByteCentroidsResult;
 
 
 public class HadoopFastKMeansTest {
@@ -82,6 +95,81 @@ public class HadoopFastKMeansTest {
 		ToolRunner.run(hfkm, new String[]{});
 	}
 	
+	/**
+	 * Write a sequence file of binary keypoint lists, with the keypoints drawn
+	 * from well separated clusters so that no centroid can become empty
+	 */
+	private File createFeatures(int nimages, int nkeypoints, int nclusters) throws Exception {
+		final Random rng = new Random(42);
+		final byte[][] centres = new byte[nclusters][128];
+		for (final byte[] c : centres)
+			for (int i = 0; i < c.length; i++)
+				c[i] = (byte) (rng.nextInt(200) - 100);
+
+		final File features = folder.newFolder("features.seq");
+		final TextBytesSequenceFileUtility seq = new TextBytesSequenceFileUtility(
+				new File(features, "part-m-00000").toURI(), CompressionType.NONE);
+		try {
+			for (int i = 0; i < nimages; i++) {
+				final MemoryLocalFeatureList<Keypoint> keys = new MemoryLocalFeatureList<Keypoint>();
+				for (int j = 0; j < nkeypoints; j++) {
+					final byte[] c = centres[rng.nextInt(nclusters)];
+					final Keypoint k = new Keypoint(128);
+					for (int d = 0; d < 128; d++)
+						k.ivec[d] = (byte) (c[d] + rng.nextInt(21) - 10);
+					keys.add(k);
+				}
+
+				final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				IOUtils.writeBinary(baos, keys);
+				seq.appendData(new Text("image" + i), new BytesWritable(baos.toByteArray()));
+			}
+		} finally {
+			seq.close();
+		}
+
+		return features;
+	}
+
+	/**
+	 * The local mode should produce exactly the same centroids as a MapReduce
+	 * job when started from the same features and initial centroids
+	 */
+	@Test
+	public void testLocal() throws Exception {
+		final File features = createFeatures(10, 100, 8);
+
+		HadoopFastKMeans hfkm = new HadoopFastKMeans();
+		HadoopFastKMeansOptions hfkmo = new HadoopFastKMeansOptions(null);
+		hfkmo.inputs = new ArrayList<String>();
+		hfkmo.inputs.add(features.getAbsolutePath());
+		hfkmo.output = tmpOut.getAbsolutePath();
+		hfkmo.forceRM = true;
+		hfkmo.nsamples = -1;
+		hfkmo.k = 8;
+		hfkmo.iter = 1;
+		hfkmo.exact = true;
+		hfkmo.concurrency = 2;
+		hfkmo.local = true;
+		hfkm.setOptions(hfkmo);
+		ToolRunner.run(hfkm, new String[]{});
+
+		ByteCentroidsResult local = IOUtils.read(new File(tmpOut, "final"), ByteCentroidsResult.class);
+		assertEquals(hfkmo.k, local.numClusters());
+
+		// repeat the iteration as a job, starting from the features and
+		// initial centroids chosen by the local run
+		final String selected = tmpOut.getAbsolutePath() + "/" + features.getName() + "_select_-1";
+		final String jobOut = new File(folder.getRoot(), "job").getAbsolutePath();
+		hfkmo.local = false;
+		hfkm.iterate(selected, tmpOut.getAbsolutePath() + "/init", jobOut);
+
+		ByteCentroidsResult job = AKMeans.completeCentroids(jobOut + "/part-r-00000", selected, hfkmo);
+		assertEquals(hfkmo.k, job.numClusters());
+		for (int i = 0; i < hfkmo.k; i++)
+			assertArrayEquals(job.centroids[i], local.centroids[i]);
+	}
+	
 	public static void main(String args[]) throws Exception{
 		HadoopFastKMeansTest test = new HadoopFastKMeansTest();
 		test.setUp();
@@ -34,6 +34,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.List;
 
@@ -41,6 +42,7 @@ import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.filecache.DistributedCache;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
@@ -48,22 +50,31 @@ import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
 import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 import org.openimaj.feature.local.list.MemoryLocalFeatureList;
+import org.openimaj.hadoop.mapreduce.LocalMapRunner;
 import org.openimaj.hadoop.mapreduce.TextBytesJobUtil;
 import org.openimaj.hadoop.sequencefile.SequenceFileUtility;
+import org.openimaj.hadoop.sequencefile.TextBytesSequenceFileUtility;
 import org.openimaj.image.feature.local.keypoints.Keypoint;
 import org.openimaj.image.indexing.vlad.VLADIndexerData;
 
 /**
  * Indexer for Product-quantised VLAD-PCA features. Consumes existing
  * local-features and requires a {@link VLADIndexerData} to provide the data.
+ * <p>
+ * With the <code>--local</code> option the indexer runs on the current
+ * machine using a thread pool instead of as a MapReduce job, producing the
+ * same output files.
  * 
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  */
 public class HadoopPqPcaVladIndexer extends Configured implements Tool {
+	private static final Logger logger = Logger.getLogger(HadoopPqPcaVladIndexer.class);
+
 	/**
 	 * {@link Mapper} for extracting PQ-PCA-VLAD features from sets of local
 	 * features. Also outputs the raw PCA-VLAD features.
@@ -89,14 +100,10 @@ public class HadoopPqPcaVladIndexer extends Configured implements Tool {
 		protected void map(Text key, BytesWritable value, Context context)
 				throws IOException, InterruptedException
 		{
-			final List<Keypoint> keys = MemoryLocalFeatureList.read(new ByteArrayInputStream(value.getBytes()),
-					Keypoint.class);
-
-			final float[] vladData = indexer.extractPcaVlad(keys);
+			final float[] vladData = extractPcaVlad(indexer, value);
 
 			if (vladData == null) {
 				context.getCounter(COUNTERS.NULL).increment(1L);
-				System.out.println("VLAD is null; keys has length " + keys.size());
 				return;
 			}
 
@@ -108,7 +115,25 @@ public class HadoopPqPcaVladIndexer extends Configured implements Tool {
 			context.getCounter(COUNTERS.EMIT).increment(1L);
 		}
 
-		BytesWritable floatToBytes(float[] arr) throws IOException {
+		/**
+		 * Extract the PCA-VLAD feature from a serialised list of keypoints.
+		 * This is the logic shared by the mapper and the local runner.
+		 *
+		 * @return the feature, or null if one couldn't be extracted
+		 */
+		static float[] extractPcaVlad(VLADIndexerData indexer, BytesWritable value) throws IOException {
+			final List<Keypoint> keys = MemoryLocalFeatureList.read(new ByteArrayInputStream(value.getBytes()),
+					Keypoint.class);
+
+			final float[] vladData = indexer.extractPcaVlad(keys);
+
+			if (vladData == null)
+				logger.warn("VLAD is null; keys has length " + keys.size());
+
+			return vladData;
+		}
+
+		static BytesWritable floatToBytes(float[] arr) throws IOException {
 			final ByteArrayOutputStream baos = new ByteArrayOutputStream();
 			final DataOutputStream dos = new DataOutputStream(baos);
 			for (final float f : arr)
@@ -150,6 +175,21 @@ public class HadoopPqPcaVladIndexer extends Configured implements Tool {
 	@Option(name = "--indexer-data", aliases = "-id", required = true, usage = "Indexer data file.", metaVar = "STRING")
 	private String indexerData;
 
+	@Option(
+			name = "--local",
+			required = false,
+			usage = "Run on this machine with a thread pool rather than as a MapReduce job.",
+			metaVar = "BOOLEAN")
+	private boolean local = false;
+
+	@Option(
+			name = "--threads",
+			aliases = "-j",
+			required = false,
+			usage = "Number of threads to use when running locally.",
+			metaVar = "NUMBER")
+	private int nthreads = Runtime.getRuntime().availableProcessors();
+
 	@Override
 	public int run(String[] args) throws Exception {
 		final CmdLineParser parser = new CmdLineParser(this);
@@ -169,6 +209,9 @@ public class HadoopPqPcaVladIndexer extends Configured implements Tool {
 		if (outputPath.getFileSystem(this.getConf()).exists(outputPath) && replace)
 			outputPath.getFileSystem(this.getConf()).delete(outputPath, true);
 
+		if (local)
+			return runLocal(paths, outputPath);
+
 		final Job job = TextBytesJobUtil.createJob(paths, outputPath, null, this.getConf());
 		job.setJarByClass(this.getClass());
 		job.setMapperClass(PqPcaVladMapper.class);
@@ -185,6 +228,76 @@ public class HadoopPqPcaVladIndexer extends Configured implements Tool {
 		return 0;
 	}
 
+	/**
+	 * Run the indexer on this machine using a {@link LocalMapRunner}. For each
+	 * input file, the same records that the corresponding map task would
+	 * produce are written (in the same order) to the same
+	 * <code>part-m-NNNNN</code> and <code>pcavlad-m-NNNNN</code> files.
+	 */
+	private int runLocal(Path[] paths, final Path outputPath) throws IOException {
+		final Path indexerPath = new Path(indexerData);
+		final InputStream is = indexerPath.getFileSystem(this.getConf()).open(indexerPath);
+		final VLADIndexerData indexer;
+		try {
+			indexer = VLADIndexerData.read(is);
+		} finally {
+			is.close();
+		}
+
+		final CompressionType compression = dontcompress ? CompressionType.NONE : CompressionType.BLOCK;
+
+		final LocalMapRunner<Text, BytesWritable, BytesWritable[]> runner =
+				new LocalMapRunner<Text, BytesWritable, BytesWritable[]>(this.getConf(), nthreads,
+						LocalMapRunner.DEFAULT_BATCH_SIZE)
+				{
+					TextBytesSequenceFileUtility pqOut;
+					TextBytesSequenceFileUtility pcaVladOut;
+					long emitted;
+
+					@Override
+					protected BytesWritable[] map(Text key, BytesWritable value) throws Exception {
+						final float[] vladData = PqPcaVladMapper.extractPcaVlad(indexer, value);
+
+						if (vladData == null)
+							return null;
+
+						final byte[] pqVladData = indexer.getProductQuantiser().quantise(vladData);
+
+						return new BytesWritable[] {
+								new BytesWritable(pqVladData), PqPcaVladMapper.floatToBytes(vladData) };
+					}
+
+					@Override
+					protected void beginFile(int index, Path path) throws IOException {
+						final String suffix = String.format("-m-%05d", index);
+
+						pqOut = new TextBytesSequenceFileUtility(
+								new Path(outputPath, "part" + suffix).toUri(), compression);
+						pcaVladOut = new TextBytesSequenceFileUtility(
+								new Path(outputPath, "pcavlad" + suffix).toUri(), compression);
+						emitted = 0;
+					}
+
+					@Override
+					protected void collect(Text key, BytesWritable[] result) throws IOException {
+						pcaVladOut.appendData(key, result[1]);
+						pqOut.appendData(key, result[0]);
+						emitted++;
+					}
+
+					@Override
+					protected void endFile(int index, Path path) throws IOException {
+						pqOut.close();
+						pcaVladOut.close();
+						logger.info(path + ": " + emitted + " emitted");
+					}
+				};
+
+		runner.run(paths);
+
+		return 0;
+	}
+
 	/**
 	 * Main method
 	 * 
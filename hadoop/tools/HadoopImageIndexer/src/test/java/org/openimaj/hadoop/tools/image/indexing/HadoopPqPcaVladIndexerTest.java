@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.hadoop.tools.image.indexing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.ToolRunner;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openimaj.feature.MultidimensionalFloatFV;
+import org.openimaj.feature.local.FloatLocalFeatureAdaptor;
+import org.openimaj.feature.local.list.MemoryLocalFeatureList;
+import org.openimaj.hadoop.sequencefile.ExtractionState;
+import org.openimaj.hadoop.sequencefile.KeyValueDump;
+import org.openimaj.hadoop.sequencefile.NamingStrategy;
+import org.openimaj.hadoop.sequencefile.TextBytesSequenceFileUtility;
+import org.openimaj.image.feature.local.aggregate.VLAD;
+import org.openimaj.image.feature.local.keypoints.Keypoint;
+import org.openimaj.image.indexing.vlad.VLADIndexerData;
+import org.openimaj.image.indexing.vlad.VLADIndexerDataBuilder.StandardPostProcesses;
+import org.openimaj.io.IOUtils;
+import org.openimaj.knn.pq.FloatProductQuantiser;
+import org.openimaj.knn.pq.FloatProductQuantiserUtilities;
+import org.openimaj.math.matrix.algorithm.pca.ThinSvdPrincipalComponentAnalysis;
+import org.openimaj.ml.clustering.FloatCentroidsResult;
+import org.openimaj.ml.clustering.assignment.hard.ExactFloatAssigner;
+import org.openimaj.ml.pca.FeatureVectorPCA;
+import org.openimaj.util.array.ArrayUtils;
+
+/**
+ * Tests for the local mode of {@link HadoopPqPcaVladIndexer}
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class HadoopPqPcaVladIndexerTest {
+	/**
+	 * Temporary folder for the input and output
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private List<MemoryLocalFeatureList<Keypoint>> images;
+	private VLADIndexerData indexer;
+	private File input;
+	private File indexerData;
+
+	/**
+	 * Create random keypoints, learn a small indexer from them, and write
+	 * both to the temporary folder
+	 * 
+	 * @throws IOException
+	 */
+	@Before
+	public void setup() throws IOException {
+		final Random rng = new Random(0);
+
+		images = new ArrayList<MemoryLocalFeatureList<Keypoint>>();
+		for (int i = 0; i < 30; i++) {
+			final MemoryLocalFeatureList<Keypoint> keys = new MemoryLocalFeatureList<Keypoint>();
+			for (int j = 0; j < 20 + rng.nextInt(20); j++) {
+				final Keypoint k = new Keypoint(128);
+				rng.nextBytes(k.ivec);
+				keys.add(k);
+			}
+			images.add(keys);
+		}
+
+		final FloatCentroidsResult centroids = new FloatCentroidsResult();
+		centroids.centroids = new float[4][128];
+		for (final float[] c : centroids.centroids)
+			for (int i = 0; i < c.length; i++)
+				c[i] = rng.nextFloat() * 256 - 128;
+
+		final VLAD<float[]> vlad = new VLAD<float[]>(new ExactFloatAssigner(centroids), centroids, true);
+
+		final List<MultidimensionalFloatFV> vlads = new ArrayList<MultidimensionalFloatFV>();
+		for (final MemoryLocalFeatureList<Keypoint> keys : images) {
+			final List<FloatLocalFeatureAdaptor<?>> fkeys = StandardPostProcesses.NONE.apply(keys);
+			vlads.add(vlad.aggregate(fkeys));
+		}
+
+		final FeatureVectorPCA pca = new FeatureVectorPCA(new ThinSvdPrincipalComponentAnalysis(8));
+		pca.learnBasis(vlads);
+
+		final float[][] pcaVlads = new float[vlads.size()][];
+		for (int i = 0; i < pcaVlads.length; i++)
+			pcaVlads[i] = ArrayUtils.convertToFloat(pca.project(vlads.get(i)).normaliseFV(2).values);
+
+		final FloatProductQuantiser pq = FloatProductQuantiserUtilities.train(pcaVlads, 2, 8, 10);
+		indexer = new VLADIndexerData(vlad, pca, pq, null, StandardPostProcesses.NONE);
+
+		indexerData = folder.newFile("vlad-data.bin");
+		final FileOutputStream fos = new FileOutputStream(indexerData);
+		try {
+			indexer.write(fos);
+		} finally {
+			fos.close();
+		}
+
+		input = folder.newFolder("features.seq");
+		final TextBytesSequenceFileUtility seq = new TextBytesSequenceFileUtility(
+				new File(input, "part-m-00000").toURI(), CompressionType.NONE);
+		try {
+			for (int i = 0; i < images.size(); i++) {
+				final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				IOUtils.writeBinary(baos, images.get(i));
+				seq.appendData(new Text("image" + i), new BytesWritable(baos.toByteArray()));
+			}
+		} finally {
+			seq.close();
+		}
+	}
+
+	private static List<byte[]> readValues(File file, final List<String> keys) {
+		final List<byte[]> values = new ArrayList<byte[]>();
+
+		final TextBytesSequenceFileUtility seq;
+		try {
+			seq = new TextBytesSequenceFileUtility(file.toURI(), true);
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		seq.exportData(NamingStrategy.KEY, new ExtractionState(), 0, new KeyValueDump<Text, BytesWritable>() {
+			@Override
+			public void dumpValue(Text key, BytesWritable val) {
+				keys.add(key.toString());
+				values.add(Arrays.copyOf(val.getBytes(), val.getLength()));
+			}
+		});
+
+		return values;
+	}
+
+	/**
+	 * The local mode should write the PQ-PCA-VLAD and PCA-VLAD features of
+	 * every image, in input order
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testLocal() throws Exception {
+		final File output = new File(folder.getRoot(), "output");
+
+		final int ret = ToolRunner.run(new HadoopPqPcaVladIndexer(), new String[] {
+				"--input", input.getAbsolutePath(),
+				"--output", output.getAbsolutePath(),
+				"--indexer-data", indexerData.getAbsolutePath(),
+				"--local", "--threads", "3" });
+		assertEquals(0, ret);
+
+		final List<String> pqKeys = new ArrayList<String>();
+		final List<byte[]> pq = readValues(new File(output, "part-m-00000"), pqKeys);
+		final List<String> pcaVladKeys = new ArrayList<String>();
+		final List<byte[]> pcaVlad = readValues(new File(output, "pcavlad-m-00000"), pcaVladKeys);
+
+		assertEquals(images.size(), pq.size());
+		assertEquals(pqKeys, pcaVladKeys);
+
+		for (int i = 0; i < images.size(); i++) {
+			assertEquals("image" + i, pqKeys.get(i));
+
+			final float[] expected = indexer.extractPcaVlad(images.get(i));
+			assertArrayEquals(indexer.getProductQuantiser().quantise(expected), pq.get(i));
+
+			final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(pcaVlad.get(i)));
+			final float[] actual = new float[expected.length];
+			for (int j = 0; j < actual.length; j++)
+				actual[j] = dis.readFloat();
+			assertArrayEquals(expected, actual, 0f);
+		}
+	}
+}
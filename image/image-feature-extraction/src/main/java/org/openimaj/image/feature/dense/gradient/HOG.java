@@ -153,4 +153,23 @@ public class HOG implements ImageAnalyser<FImage> {
 	public Histogram getFeatureVector(Rectangle rectangle) {
 		return currentHist = strategy.extract(extractor, rectangle, currentHist);
 	}
+
+	/**
+	 * Get the {@link GradientOrientationHistogramExtractor} that holds the
+	 * binned gradients of the image being analysed.
+	 *
+	 * @return the gradient histogram extractor
+	 */
+	public GradientOrientationHistogramExtractor getExtractor() {
+		return extractor;
+	}
+
+	/**
+	 * Get the {@link SpatialBinningStrategy} used to produce the features.
+	 *
+	 * @return the spatial binning strategy
+	 */
+	public SpatialBinningStrategy getStrategy() {
+		return strategy;
+	}
 }
@@ -77,7 +77,7 @@ public class FixedHOGStrategy implements SpatialBinningStrategy {
 		 */
 		L1 {
 			@Override
-			final void normalise(Histogram h, int blockArea) {
+			public final void normalise(Histogram h, int blockArea) {
 				h.normaliseL1();
 			}
 		},
@@ -86,7 +86,7 @@ public class FixedHOGStrategy implements SpatialBinningStrategy {
 		 */
 		L2 {
 			@Override
-			final void normalise(Histogram h, int blockArea) {
+			public final void normalise(Histogram h, int blockArea) {
 				// each cell is l2 normed, so it follows that the l2 norm of the
 				// block is simply the values divided by the area
 				ArrayUtils.divide(h.values, blockArea);
@@ -97,7 +97,7 @@ public class FixedHOGStrategy implements SpatialBinningStrategy {
 		 */
 		L1sqrt {
 			@Override
-			final void normalise(Histogram h, int blockArea) {
+			public final void normalise(Histogram h, int blockArea) {
 				h.normaliseL1();
 
 				for (int x = 0; x < h.values.length; x++)
@@ -109,7 +109,7 @@ public class FixedHOGStrategy implements SpatialBinningStrategy {
 		 */
 		L2clip {
 			@Override
-			final void normalise(Histogram h, int blockArea) {
+			public final void normalise(Histogram h, int blockArea) {
 				// each cell is l2 normed, so it follows that the l2 norm of the
 				// block is simply the values divided by the area
 				double sumsq = 0;
@@ -127,7 +127,16 @@ public class FixedHOGStrategy implements SpatialBinningStrategy {
 			}
 		};
 
-		abstract void normalise(Histogram h, int blockArea);
+		/**
+		 * Normalise the given block histogram in-place. The block is assumed
+		 * to be made from L2-normalised cell histograms.
+		 * 
+		 * @param h
+		 *            the block histogram
+		 * @param blockArea
+		 *            the number of cells in the block
+		 */
+		public abstract void normalise(Histogram h, int blockArea);
 	}
 
 	int cellWidth = 6;
@@ -218,4 +218,67 @@ public class FlexibleHOGStrategy implements SpatialBinningStrategy {
 			}
 		}
 	}
+
+	/**
+	 * Get the number of cells across the window.
+	 * 
+	 * @return the number of cells across the window
+	 */
+	public int getNumCellsX() {
+		return numCellsX;
+	}
+
+	/**
+	 * Get the number of cells down the window.
+	 * 
+	 * @return the number of cells down the window
+	 */
+	public int getNumCellsY() {
+		return numCellsY;
+	}
+
+	/**
+	 * Get the number of cells per block in the x direction.
+	 * 
+	 * @return the number of cells per block in the x direction
+	 */
+	public int getCellsPerBlockX() {
+		return cellsPerBlockX;
+	}
+
+	/**
+	 * Get the number of cells per block in the y direction.
+	 * 
+	 * @return the number of cells per block in the y direction
+	 */
+	public int getCellsPerBlockY() {
+		return cellsPerBlockY;
+	}
+
+	/**
+	 * Get the amount each block is shifted in the x direction, in cells.
+	 * 
+	 * @return the amount each block is shifted in the x direction, in cells
+	 */
+	public int getBlockStepX() {
+		return blockStepX;
+	}
+
+	/**
+	 * Get the amount each block is shifted in the y direction, in cells.
+	 * 
+	 * @return the amount each block is shifted in the y direction, in cells
+	 */
+	public int getBlockStepY() {
+		return blockStepY;
+	}
+
+	/**
+	 * Get the block normalisation scheme.
+	 * 
+	 * @return the block normalisation scheme
+	 */
+	public BlockNormalisation getNorm() {
+		return norm;
+	}
 }
@@ -0,0 +1,1095 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.indexing.invertedfile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openimaj.citation.annotation.Reference;
+import org.openimaj.citation.annotation.ReferenceType;
+import org.openimaj.feature.SparseIntFV;
+import org.openimaj.feature.local.quantised.QuantisedLocalFeature;
+import org.openimaj.image.feature.local.aggregate.BagOfVisualWords;
+import org.openimaj.util.array.SparseIntArray;
+import org.openimaj.util.pair.IntDoublePair;
+
+/**
+ * An on-disk inverted file index for bag-of-visual-words retrieval. Documents
+ * (images) are added as collections of quantised features (visual words,
+ * optionally with the geometry of each keypoint), and are given sequential
+ * integer identifiers which can be used to look up metadata in (for example)
+ * an {@link org.openimaj.image.searching.IncrementalMetaIndex}.
+ * <p>
+ * Added documents are buffered in memory and written as an immutable segment
+ * when the buffer is full or {@link #flush()} is called; only flushed
+ * documents are searchable. Each segment stores, for each visual word, a
+ * variable-byte compressed postings list of (document gap, term frequency)
+ * pairs with a skip table, and optionally the geometry of each keypoint
+ * occurrence in a separate block so that it isn't touched when scoring.
+ * Segments are memory-mapped. Whenever there are <code>mergeFactor</code>
+ * segments of a similar size at the end of the index they are merged into one
+ * (which keeps the number of segments logarithmic in the number of documents);
+ * {@link #merge()} merges all the segments.
+ * <p>
+ * Queries are scored with a {@link ScoringModel} (BM25 by default) using the
+ * collection statistics of the whole index. The top-k documents are found
+ * with the WAND algorithm, which uses an upper bound on the score
+ * contribution of each visual word in each segment to skip over documents
+ * that can't enter the top-k. The stored geometry of the matching words of a
+ * result can be retrieved with {@link #getGeometry(int, int)} for spatial
+ * re-ranking.
+ * <p>
+ * Searching is thread-safe and can happen concurrently with documents being
+ * added and segments being merged. Only one process can open an index at a
+ * time.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+@Reference(
+		type = ReferenceType.Inproceedings,
+		author = { "Broder, Andrei Z.", "Carmel, David", "Herscovici, Michael", "Soffer, Aya", "Zien, Jason" },
+		title = "Efficient Query Evaluation Using a Two-level Retrieval Process",
+		year = "2003",
+		booktitle = "Proceedings of the Twelfth International Conference on Information and Knowledge Management",
+		pages = { "426", "434" },
+		publisher = "ACM",
+		series = "CIKM '03")
+public class InvertedFileIndex implements Closeable {
+	private static final Logger logger = LogManager.getLogger(InvertedFileIndex.class);
+
+	/**
+	 * The default number of documents buffered in memory before a segment is
+	 * written
+	 */
+	public static final int DEFAULT_MAX_BUFFERED_DOCUMENTS = 10000;
+
+	/**
+	 * The default number of segments of a similar size that are merged
+	 * together
+	 */
+	public static final int DEFAULT_MERGE_FACTOR = 10;
+
+	private static final int MANIFEST_MAGIC = 0x4956464d; // "IVFM"
+	private static final String MANIFEST_FILE = "segments.dat";
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".ivf";
+	private static final String LOCK_FILE = ".lock";
+
+	/**
+	 * In-memory postings of a visual word
+	 */
+	private static final class PostingsBuffer {
+		int[] documents = new int[4];
+		int[] termFrequencies = new int[4];
+		int size;
+		float[] geometry;
+		int geometrySize;
+
+		void add(int document, int termFrequency) {
+			if (size == documents.length) {
+				documents = Arrays.copyOf(documents, size * 2);
+				termFrequencies = Arrays.copyOf(termFrequencies, size * 2);
+			}
+			documents[size] = document;
+			termFrequencies[size] = termFrequency;
+			size++;
+		}
+
+		void addGeometry(float[] values, int offset, int length) {
+			if (geometry == null)
+				geometry = new float[Math.max(16, length)];
+			else if (geometrySize + length > geometry.length)
+				geometry = Arrays.copyOf(geometry, Math.max(geometrySize + length, geometry.length * 2));
+
+			System.arraycopy(values, offset, geometry, geometrySize, length);
+			geometrySize += length;
+		}
+	}
+
+	/**
+	 * A query term being evaluated against a segment
+	 */
+	private static final class Term {
+		final PostingsCursor cursor;
+		final double weight;
+		final double bound;
+
+		Term(PostingsCursor cursor, double weight, double bound) {
+			this.cursor = cursor;
+			this.weight = weight;
+			this.bound = bound;
+		}
+	}
+
+	/**
+	 * Min-heap of the best documents found so far
+	 */
+	private static final class TopDocuments {
+		final int[] documents;
+		final double[] scores;
+		int size;
+
+		TopDocuments(int k) {
+			documents = new int[k];
+			scores = new double[k];
+		}
+
+		double threshold() {
+			return size < documents.length ? Double.NEGATIVE_INFINITY : scores[0];
+		}
+
+		void offer(int document, double score) {
+			if (size < documents.length) {
+				int i = size++;
+				while (i > 0) {
+					final int parent = (i - 1) >>> 1;
+					if (scores[parent] <= score)
+						break;
+					documents[i] = documents[parent];
+					scores[i] = scores[parent];
+					i = parent;
+				}
+				documents[i] = document;
+				scores[i] = score;
+			} else if (score > scores[0]) {
+				int i = 0;
+				while (true) {
+					int child = 2 * i + 1;
+					if (child >= size)
+						break;
+					if (child + 1 < size && scores[child + 1] < scores[child])
+						child++;
+					if (scores[child] >= score)
+						break;
+					documents[i] = documents[child];
+					scores[i] = scores[child];
+					i = child;
+				}
+				documents[i] = document;
+				scores[i] = score;
+			}
+		}
+
+		List<IntDoublePair> toList() {
+			final List<IntDoublePair> results = new ArrayList<IntDoublePair>(size);
+			for (int i = 0; i < size; i++)
+				results.add(new IntDoublePair(documents[i], scores[i]));
+
+			Collections.sort(results, IntDoublePair.SECOND_ITEM_DESCENDING_COMPARATOR);
+			return results;
+		}
+	}
+
+	private final File directory;
+	private final int geometryDimensions;
+	private final RandomAccessFile lockFile;
+	private final FileLock lock;
+	private final ReentrantLock writeLock = new ReentrantLock();
+
+	private volatile InvertedFileSegment[] segments = new InvertedFileSegment[0];
+	private int nextSegment;
+	private int nextDocument;
+	private boolean closed;
+
+	private final Map<Integer, PostingsBuffer> buffer = new HashMap<Integer, PostingsBuffer>();
+	private int[] bufferLengths = new int[1024];
+	private int bufferedDocuments;
+
+	private int maxBufferedDocuments = DEFAULT_MAX_BUFFERED_DOCUMENTS;
+	private int mergeFactor = DEFAULT_MERGE_FACTOR;
+	private int maxMergeDocuments = Integer.MAX_VALUE;
+	private volatile ScoringModel scoringModel = new ScoringModel.BM25();
+	int chunkSize = InvertedFileSegment.DEFAULT_CHUNK_SIZE;
+
+	/**
+	 * Open (or create) an index without keypoint geometry in the given
+	 * directory. If the directory contains an existing index, the geometry
+	 * setting of that index is used.
+	 * 
+	 * @param directory
+	 *            the directory
+	 * @throws IOException
+	 *             if the index can't be opened or is already open
+	 */
+	public InvertedFileIndex(File directory) throws IOException {
+		this(directory, -1);
+	}
+
+	/**
+	 * Open (or create) an index in the given directory, storing the given
+	 * number of geometry values (i.e. x, y, scale and orientation) for each
+	 * keypoint.
+	 * 
+	 * @param directory
+	 *            the directory
+	 * @param geometryDimensions
+	 *            the number of geometry values per keypoint; 0 to not store
+	 *            geometry
+	 * @throws IOException
+	 *             if the index can't be opened, is already open, or was
+	 *             created with a different number of geometry values
+	 */
+	public InvertedFileIndex(File directory, int geometryDimensions) throws IOException {
+		this.directory = directory;
+
+		directory.mkdirs();
+		if (!directory.isDirectory())
+			throw new IOException("Unable to create directory " + directory);
+
+		lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+		FileLock l = null;
+		try {
+			l = lockFile.getChannel().tryLock();
+		} catch (final OverlappingFileLockException e) {
+			l = null;
+		}
+		if (l == null) {
+			lockFile.close();
+			throw new IOException("The index in " + directory + " is already open");
+		}
+		lock = l;
+
+		try {
+			this.geometryDimensions = open(geometryDimensions);
+		} catch (final IOException e) {
+			lock.release();
+			lockFile.close();
+			throw e;
+		}
+	}
+
+	private int open(int dimensions) throws IOException {
+		final File manifest = new File(directory, MANIFEST_FILE);
+		final Set<String> live = new HashSet<String>();
+
+		if (manifest.exists()) {
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest)));
+			try {
+				if (in.readInt() != MANIFEST_MAGIC)
+					throw new IOException("Invalid index manifest " + manifest);
+
+				final int storedDimensions = in.readInt();
+				if (dimensions >= 0 && dimensions != storedDimensions)
+					throw new IOException("The index in " + directory + " stores " + storedDimensions
+							+ " geometry values per keypoint");
+				dimensions = storedDimensions;
+
+				nextSegment = in.readInt();
+				final InvertedFileSegment[] segs = new InvertedFileSegment[in.readInt()];
+				for (int i = 0; i < segs.length; i++) {
+					final String name = in.readUTF();
+					segs[i] = new InvertedFileSegment(new File(directory, name));
+					live.add(name);
+				}
+				segments = segs;
+			} finally {
+				in.close();
+			}
+		} else if (dimensions < 0) {
+			dimensions = 0;
+		}
+
+		if (segments.length > 0)
+			nextDocument = segments[segments.length - 1].endDocument();
+
+		// remove segments left behind by an interrupted flush or merge
+		final File[] listing = directory.listFiles();
+		if (listing != null) {
+			for (final File f : listing) {
+				final String name = f.getName();
+				if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX) && !live.contains(name)) {
+					logger.warn("Removing unused segment " + f);
+					f.delete();
+				}
+			}
+		}
+
+		return dimensions;
+	}
+
+	private void writeManifest(InvertedFileSegment[] segs) throws IOException {
+		final File tmp = new File(directory, MANIFEST_FILE + ".tmp");
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MANIFEST_MAGIC);
+			out.writeInt(geometryDimensions);
+			out.writeInt(nextSegment);
+			out.writeInt(segs.length);
+			for (final InvertedFileSegment s : segs)
+				out.writeUTF(s.file.getName());
+		} finally {
+			out.close();
+		}
+
+		final File manifest = new File(directory, MANIFEST_FILE);
+		if (manifest.exists() && !manifest.delete())
+			throw new IOException("Unable to replace " + manifest);
+		if (!tmp.renameTo(manifest))
+			throw new IOException("Unable to rename " + tmp + " to " + manifest);
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed)
+			throw new IOException("The index has been closed");
+	}
+
+	/**
+	 * Add a document consisting of the given visual words. Words may be
+	 * repeated. If the index stores geometry, <code>geometry</code> must hold
+	 * the geometry values of each word in turn.
+	 * 
+	 * @param words
+	 *            the visual words of the document
+	 * @param geometry
+	 *            the geometry of each word; ignored if the index doesn't
+	 *            store geometry
+	 * @return the identifier of the document
+	 * @throws IOException
+	 *             if an error occurs writing a segment
+	 */
+	public int addDocument(int[] words, float[] geometry) throws IOException {
+		if (geometryDimensions > 0 && (geometry == null || geometry.length < words.length * geometryDimensions))
+			throw new IllegalArgumentException("Expected " + geometryDimensions + " geometry values for each word");
+
+		// sort the words, keeping track of where each came from
+		final long[] keys = new long[words.length];
+		for (int i = 0; i < words.length; i++) {
+			if (words[i] < 0)
+				throw new IllegalArgumentException("Visual words must be non-negative");
+			keys[i] = ((long) words[i] << 32) | i;
+		}
+		Arrays.sort(keys);
+
+		writeLock.lock();
+		try {
+			ensureOpen();
+
+			final int document = nextDocument++;
+			for (int i = 0; i < keys.length;) {
+				final int word = (int) (keys[i] >>> 32);
+				int j = i + 1;
+				while (j < keys.length && (int) (keys[j] >>> 32) == word)
+					j++;
+
+				final PostingsBuffer pb = getBuffer(word);
+				pb.add(document, j - i);
+				if (geometryDimensions > 0) {
+					for (int k = i; k < j; k++)
+						pb.addGeometry(geometry, (int) keys[k] * geometryDimensions, geometryDimensions);
+				}
+
+				i = j;
+			}
+
+			bufferDocument(words.length);
+			return document;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Add a document represented by a histogram of visual words (i.e. as
+	 * produced by {@link BagOfVisualWords}). This can only be used if the
+	 * index doesn't store geometry.
+	 * 
+	 * @param histogram
+	 *            the histogram
+	 * @return the identifier of the document
+	 * @throws IOException
+	 *             if an error occurs writing a segment
+	 */
+	public int addDocument(SparseIntFV histogram) throws IOException {
+		if (geometryDimensions > 0)
+			throw new IllegalArgumentException("The index requires keypoint geometry");
+
+		writeLock.lock();
+		try {
+			ensureOpen();
+
+			final int document = nextDocument++;
+			int length = 0;
+			for (final SparseIntArray.Entry e : histogram.values.entries()) {
+				if (e.value > 0) {
+					getBuffer(e.index).add(document, e.value);
+					length += e.value;
+				}
+			}
+
+			bufferDocument(length);
+			return document;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Add a document consisting of the given quantised features. If the index
+	 * stores geometry, the first <code>geometryDimensions</code> ordinates of
+	 * the location of each feature are stored (for a
+	 * {@link org.openimaj.feature.local.list.LocalFeatureList} of
+	 * <code>QuantisedKeypoint</code>s these are x, y, scale and orientation).
+	 * 
+	 * @param features
+	 *            the features
+	 * @return the identifier of the document
+	 * @throws IOException
+	 *             if an error occurs writing a segment
+	 */
+	public int addDocument(List<? extends QuantisedLocalFeature<?>> features) throws IOException {
+		final int[] words = new int[features.size()];
+		final float[] geometry = new float[features.size() * geometryDimensions];
+
+		for (int i = 0, j = 0; i < words.length; i++) {
+			final QuantisedLocalFeature<?> f = features.get(i);
+			words[i] = f.id;
+			for (int d = 0; d < geometryDimensions; d++)
+				geometry[j++] = f.location.getOrdinate(d).floatValue();
+		}
+
+		return addDocument(words, geometry);
+	}
+
+	private PostingsBuffer getBuffer(int word) {
+		PostingsBuffer pb = buffer.get(word);
+		if (pb == null) {
+			pb = new PostingsBuffer();
+			buffer.put(word, pb);
+		}
+		return pb;
+	}
+
+	private void bufferDocument(int length) throws IOException {
+		if (bufferedDocuments == bufferLengths.length)
+			bufferLengths = Arrays.copyOf(bufferLengths, bufferLengths.length * 2);
+		bufferLengths[bufferedDocuments++] = length;
+
+		if (bufferedDocuments >= maxBufferedDocuments)
+			flushBuffer();
+	}
+
+	/**
+	 * Write any buffered documents to a new segment, making them searchable,
+	 * and record the segments of the index on disk.
+	 * 
+	 * @throws IOException
+	 *             if an error occurs writing the segment
+	 */
+	public void flush() throws IOException {
+		writeLock.lock();
+		try {
+			ensureOpen();
+			flushBuffer();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (bufferedDocuments == 0)
+			return;
+
+		final int[] words = new int[buffer.size()];
+		int i = 0;
+		for (final Integer w : buffer.keySet())
+			words[i++] = w;
+		Arrays.sort(words);
+
+		final File file = newSegmentFile();
+		final SegmentWriter writer = new SegmentWriter(file, nextDocument - bufferedDocuments, bufferLengths,
+				bufferedDocuments, geometryDimensions, chunkSize);
+		try {
+			for (final int w : words) {
+				final PostingsBuffer pb = buffer.get(w);
+				writer.writeList(w, pb.documents, pb.termFrequencies, pb.size, pb.geometry);
+			}
+		} catch (final IOException e) {
+			writer.close();
+			file.delete();
+			throw e;
+		}
+		writer.close();
+
+		final InvertedFileSegment[] current = segments;
+		final InvertedFileSegment[] updated = Arrays.copyOf(current, current.length + 1);
+		updated[current.length] = new InvertedFileSegment(file);
+		writeManifest(updated);
+		segments = updated;
+
+		buffer.clear();
+		bufferedDocuments = 0;
+
+		maybeMerge();
+	}
+
+	private File newSegmentFile() {
+		return new File(directory, String.format("%s%06d%s", SEGMENT_PREFIX, nextSegment++, SEGMENT_SUFFIX));
+	}
+
+	private int level(InvertedFileSegment segment) {
+		int level = 0;
+		for (long size = segment.numDocuments / maxBufferedDocuments; size >= mergeFactor; size /= mergeFactor)
+			level++;
+		return level;
+	}
+
+	/**
+	 * Merge the last <code>mergeFactor</code> segments whilst they are all of
+	 * the same level
+	 */
+	private void maybeMerge() throws IOException {
+		while (true) {
+			final InvertedFileSegment[] segs = segments;
+			final int n = segs.length;
+			if (n < mergeFactor)
+				return;
+
+			final int level = level(segs[n - mergeFactor]);
+			long total = 0;
+			for (int i = n - mergeFactor; i < n; i++) {
+				if (level(segs[i]) != level)
+					return;
+				total += segs[i].numDocuments;
+			}
+			if (total > maxMergeDocuments)
+				return;
+
+			merge(n - mergeFactor, n);
+		}
+	}
+
+	/**
+	 * Flush any buffered documents and merge all the segments of the index
+	 * into a single segment. This gives the fastest searches, but is costly
+	 * for a large index.
+	 * 
+	 * @throws IOException
+	 *             if an error occurs writing the segment
+	 */
+	public void merge() throws IOException {
+		writeLock.lock();
+		try {
+			ensureOpen();
+			flushBuffer();
+
+			if (segments.length > 1)
+				merge(0, segments.length);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Merge a contiguous run of segments. As the segments cover contiguous
+	 * ranges of documents, the postings of each word are simply concatenated.
+	 */
+	private void merge(int from, int to) throws IOException {
+		final InvertedFileSegment[] segs = segments;
+
+		int numDocuments = 0;
+		for (int i = from; i < to; i++)
+			numDocuments += segs[i].numDocuments;
+
+		final int firstDocument = segs[from].firstDocument;
+		final int[] lengths = new int[numDocuments];
+		for (int i = 0; i < numDocuments; i++) {
+			final int doc = firstDocument + i;
+			int s = from;
+			while (segs[s].endDocument() <= doc)
+				s++;
+			lengths[i] = segs[s].getDocumentLength(doc);
+		}
+
+		final File file = newSegmentFile();
+		final SegmentWriter writer = new SegmentWriter(file, firstDocument, lengths, numDocuments,
+				geometryDimensions, chunkSize);
+		try {
+			final int[] entries = new int[to - from];
+			int[] documents = new int[1024];
+			int[] termFrequencies = new int[1024];
+			float[] geometry = new float[geometryDimensions > 0 ? 1024 : 0];
+
+			while (true) {
+				// the next word in any of the dictionaries
+				int word = Integer.MAX_VALUE;
+				for (int i = from; i < to; i++) {
+					final int e = entries[i - from];
+					if (e < segs[i].numWords)
+						word = Math.min(word, segs[i].getWord(e));
+				}
+				if (word == Integer.MAX_VALUE)
+					break;
+
+				int count = 0;
+				int occurrences = 0;
+				for (int i = from; i < to; i++) {
+					final InvertedFileSegment seg = segs[i];
+					final int e = entries[i - from];
+					if (e >= seg.numWords || seg.getWord(e) != word)
+						continue;
+
+					final int df = seg.getDocumentFrequency(e);
+					if (count + df > documents.length) {
+						documents = Arrays.copyOf(documents, Math.max(count + df, documents.length * 2));
+						termFrequencies = Arrays.copyOf(termFrequencies, documents.length);
+					}
+
+					final PostingsCursor cursor = seg.cursor(e);
+					final int start = occurrences;
+					while (cursor.next() != PostingsCursor.END) {
+						documents[count] = cursor.document();
+						termFrequencies[count++] = cursor.termFrequency();
+						occurrences += cursor.termFrequency();
+					}
+
+					if (geometryDimensions > 0) {
+						final int needed = occurrences * geometryDimensions;
+						if (needed > geometry.length)
+							geometry = Arrays.copyOf(geometry, Math.max(needed, geometry.length * 2));
+						seg.readGeometry(e, 0, occurrences - start, geometry, start * geometryDimensions);
+					}
+
+					entries[i - from]++;
+				}
+
+				writer.writeList(word, documents, termFrequencies, count, geometry);
+			}
+		} catch (final IOException e) {
+			writer.close();
+			file.delete();
+			throw e;
+		}
+		writer.close();
+
+		final InvertedFileSegment[] updated = new InvertedFileSegment[segs.length - (to - from) + 1];
+		System.arraycopy(segs, 0, updated, 0, from);
+		updated[from] = new InvertedFileSegment(file);
+		System.arraycopy(segs, to, updated, from + 1, segs.length - to);
+
+		writeManifest(updated);
+		segments = updated;
+
+		// searches in progress keep their mappings of the old segments
+		for (int i = from; i < to; i++)
+			if (!segs[i].file.delete())
+				logger.warn("Unable to delete merged segment " + segs[i].file);
+	}
+
+	/**
+	 * Search for the documents most similar to a query consisting of the
+	 * given visual words (which may be repeated).
+	 * 
+	 * @param words
+	 *            the visual words of the query
+	 * @param k
+	 *            the maximum number of results
+	 * @return the identifiers and scores of the top documents, best first
+	 */
+	public List<IntDoublePair> search(int[] words, int k) {
+		final int[] sorted = words.clone();
+		Arrays.sort(sorted);
+
+		final int[] terms = new int[sorted.length];
+		final int[] counts = new int[sorted.length];
+		int n = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (n > 0 && terms[n - 1] == sorted[i]) {
+				counts[n - 1]++;
+			} else {
+				terms[n] = sorted[i];
+				counts[n++] = 1;
+			}
+		}
+
+		return search(terms, counts, n, k);
+	}
+
+	/**
+	 * Search for the documents most similar to a query represented by a
+	 * histogram of visual words.
+	 * 
+	 * @param histogram
+	 *            the query histogram
+	 * @param k
+	 *            the maximum number of results
+	 * @return the identifiers and scores of the top documents, best first
+	 */
+	public List<IntDoublePair> search(SparseIntFV histogram, int k) {
+		final int[] terms = new int[histogram.values.used()];
+		final int[] counts = new int[terms.length];
+		int n = 0;
+		for (final SparseIntArray.Entry e : histogram.values.entries()) {
+			if (e.value > 0) {
+				terms[n] = e.index;
+				counts[n++] = e.value;
+			}
+		}
+
+		return search(terms, counts, n, k);
+	}
+
+	/**
+	 * Search for the documents most similar to a query consisting of the
+	 * given quantised features.
+	 * 
+	 * @param features
+	 *            the query features
+	 * @param k
+	 *            the maximum number of results
+	 * @return the identifiers and scores of the top documents, best first
+	 */
+	public List<IntDoublePair> search(List<? extends QuantisedLocalFeature<?>> features, int k) {
+		final int[] words = new int[features.size()];
+		for (int i = 0; i < words.length; i++)
+			words[i] = features.get(i).id;
+
+		return search(words, k);
+	}
+
+	private List<IntDoublePair> search(int[] words, int[] counts, int n, int k) {
+		final InvertedFileSegment[] segs = segments;
+		final ScoringModel model = scoringModel;
+
+		long numDocuments = 0;
+		long totalLength = 0;
+		for (final InvertedFileSegment s : segs) {
+			numDocuments += s.numDocuments;
+			totalLength += s.totalLength;
+		}
+
+		final TopDocuments top = new TopDocuments(Math.max(0, k));
+		if (numDocuments == 0 || k <= 0)
+			return top.toList();
+
+		final double averageLength = (double) totalLength / numDocuments;
+
+		// global collection statistics of each query word
+		final int[][] entries = new int[segs.length][n];
+		final double[] weights = new double[n];
+		for (int i = 0; i < n; i++) {
+			int df = 0;
+			for (int s = 0; s < segs.length; s++) {
+				entries[s][i] = segs[s].find(words[i]);
+				if (entries[s][i] >= 0)
+					df += segs[s].getDocumentFrequency(entries[s][i]);
+			}
+			if (df > 0)
+				weights[i] = model.queryWeight(counts[i], df, numDocuments);
+		}
+
+		// the threshold carries across segments, so later segments are pruned
+		// more aggressively
+		for (int s = 0; s < segs.length; s++) {
+			final InvertedFileSegment seg = segs[s];
+			final Term[] terms = new Term[n];
+			int m = 0;
+
+			for (int i = 0; i < n; i++) {
+				final int e = entries[s][i];
+				if (e < 0 || weights[i] <= 0)
+					continue;
+
+				final double bound = weights[i] * model.documentWeightBound(seg.getMaxTermFrequency(e),
+						seg.getMaxTermFrequencyRatio(e), seg.minDocumentLength, averageLength);
+				terms[m++] = new Term(seg.cursor(e), weights[i], bound);
+			}
+
+			wand(seg, terms, m, top, model, averageLength);
+		}
+
+		return top.toList();
+	}
+
+	/**
+	 * Evaluate the query terms against a segment with the WAND algorithm
+	 */
+	private static void wand(InvertedFileSegment seg, Term[] terms, int n, TopDocuments top, ScoringModel model,
+			double averageLength)
+	{
+		for (int i = 0; i < n; i++)
+			terms[i].cursor.next();
+		sort(terms, 0, n);
+
+		while (true) {
+			// find the pivot: the first term at which the sum of the bounds
+			// could beat the current threshold
+			final double threshold = top.threshold();
+			double sum = 0;
+			int pivot = -1;
+			for (int i = 0; i < n; i++) {
+				if (terms[i].cursor.document() == PostingsCursor.END)
+					break;
+
+				sum += terms[i].bound;
+				if (sum > threshold) {
+					pivot = i;
+					break;
+				}
+			}
+			if (pivot < 0)
+				return;
+
+			final int pivotDocument = terms[pivot].cursor.document();
+			int moved;
+			if (terms[0].cursor.document() == pivotDocument) {
+				// all the terms up to the pivot are on the pivot document, so
+				// fully score it
+				final int length = seg.getDocumentLength(pivotDocument);
+				double score = 0;
+				moved = 0;
+				while (moved < n && terms[moved].cursor.document() == pivotDocument) {
+					final Term t = terms[moved];
+					score += t.weight * model.documentWeight(t.cursor.termFrequency(), length, averageLength);
+					t.cursor.next();
+					moved++;
+				}
+
+				top.offer(pivotDocument, score);
+			} else {
+				// no document before the pivot document can beat the threshold
+				moved = 0;
+				while (moved < pivot && terms[moved].cursor.document() < pivotDocument) {
+					terms[moved].cursor.advance(pivotDocument);
+					moved++;
+				}
+			}
+
+			sort(terms, 0, n);
+		}
+	}
+
+	/**
+	 * Insertion sort of the terms by current document; only a few terms move
+	 * at each step so this is fast
+	 */
+	private static void sort(Term[] terms, int from, int to) {
+		for (int i = from + 1; i < to; i++) {
+			final Term t = terms[i];
+			final int doc = t.cursor.document();
+			int j = i - 1;
+			while (j >= from && terms[j].cursor.document() > doc) {
+				terms[j + 1] = terms[j];
+				j--;
+			}
+			terms[j + 1] = t;
+		}
+	}
+
+	/**
+	 * Get the stored geometry of the occurrences of a visual word in a
+	 * document.
+	 * 
+	 * @param document
+	 *            the document identifier
+	 * @param word
+	 *            the visual word
+	 * @return the geometry values of each occurrence in turn, or null if the
+	 *         word doesn't occur in the document (or hasn't been flushed)
+	 * @throws UnsupportedOperationException
+	 *             if the index doesn't store geometry
+	 */
+	public float[] getGeometry(int document, int word) {
+		if (geometryDimensions == 0)
+			throw new UnsupportedOperationException("The index doesn't store geometry");
+
+		final InvertedFileSegment seg = findSegment(document);
+		if (seg == null)
+			return null;
+
+		final int e = seg.find(word);
+		if (e < 0)
+			return null;
+
+		final PostingsCursor cursor = seg.cursor(e);
+		if (cursor.advance(document) != document)
+			return null;
+
+		final float[] geometry = new float[cursor.termFrequency() * geometryDimensions];
+		seg.readGeometry(e, cursor.occurrence(), cursor.termFrequency(), geometry, 0);
+		return geometry;
+	}
+
+	private InvertedFileSegment findSegment(int document) {
+		final InvertedFileSegment[] segs = segments;
+
+		int low = 0;
+		int high = segs.length - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			if (segs[mid].endDocument() <= document)
+				low = mid + 1;
+			else if (segs[mid].firstDocument > document)
+				high = mid - 1;
+			else
+				return segs[mid];
+		}
+		return null;
+	}
+
+	/**
+	 * @return the number of searchable (i.e. flushed) documents
+	 */
+	public int numDocuments() {
+		final InvertedFileSegment[] segs = segments;
+		return segs.length == 0 ? 0 : segs[segs.length - 1].endDocument();
+	}
+
+	/**
+	 * @return the number of segments
+	 */
+	public int numSegments() {
+		return segments.length;
+	}
+
+	/**
+	 * @return the number of geometry values stored per keypoint (0 if
+	 *         geometry isn't stored)
+	 */
+	public int getGeometryDimensions() {
+		return geometryDimensions;
+	}
+
+	/**
+	 * @return the scoring model used for searches
+	 */
+	public ScoringModel getScoringModel() {
+		return scoringModel;
+	}
+
+	/**
+	 * Set the scoring model used for searches
+	 * 
+	 * @param scoringModel
+	 *            the scoring model
+	 */
+	public void setScoringModel(ScoringModel scoringModel) {
+		this.scoringModel = scoringModel;
+	}
+
+	/**
+	 * @return the number of documents buffered in memory before a segment is
+	 *         written
+	 */
+	public int getMaxBufferedDocuments() {
+		return maxBufferedDocuments;
+	}
+
+	/**
+	 * Set the number of documents buffered in memory before a segment is
+	 * written
+	 * 
+	 * @param maxBufferedDocuments
+	 *            the number of documents
+	 */
+	public void setMaxBufferedDocuments(int maxBufferedDocuments) {
+		this.maxBufferedDocuments = Math.max(1, maxBufferedDocuments);
+	}
+
+	/**
+	 * @return the number of segments of a similar size that are merged
+	 *         together
+	 */
+	public int getMergeFactor() {
+		return mergeFactor;
+	}
+
+	/**
+	 * Set the number of segments of a similar size that are merged together
+	 * 
+	 * @param mergeFactor
+	 *            the merge factor (at least 2)
+	 */
+	public void setMergeFactor(int mergeFactor) {
+		this.mergeFactor = Math.max(2, mergeFactor);
+	}
+
+	/**
+	 * @return the maximum number of documents in a segment created by an
+	 *         automatic merge
+	 */
+	public int getMaxMergeDocuments() {
+		return maxMergeDocuments;
+	}
+
+	/**
+	 * Set the maximum number of documents in a segment created by an
+	 * automatic merge. Segments larger than this are left alone (unless
+	 * {@link #merge()} is called).
+	 * 
+	 * @param maxMergeDocuments
+	 *            the maximum number of documents
+	 */
+	public void setMaxMergeDocuments(int maxMergeDocuments) {
+		this.maxMergeDocuments = maxMergeDocuments;
+	}
+
+	/**
+	 * Flush any buffered documents and close the index.
+	 */
+	@Override
+	public void close() throws IOException {
+		writeLock.lock();
+		try {
+			if (closed)
+				return;
+
+			try {
+				flushBuffer();
+			} finally {
+				closed = true;
+				lock.release();
+				lockFile.close();
+			}
+		} finally {
+			writeLock.unlock();
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.indexing.invertedfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * An immutable, memory-mapped segment of an {@link InvertedFileIndex}. A
+ * segment holds the postings of a contiguous range of documents. The file
+ * consists of the postings lists (and optionally the keypoint geometry) of
+ * each visual word, a dictionary of the words sorted by word, the length of
+ * each document, and a fixed-length footer. See {@link SegmentWriter} for the
+ * layout of the postings lists.
+ * <p>
+ * Segments are mapped in chunks; no list or table crosses a chunk boundary,
+ * so segments can be larger than the 2GB limit of a single mapping.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+final class InvertedFileSegment {
+	static final int MAGIC = 0x49564653; // "IVFS"
+	static final int VERSION = 1;
+	static final int BLOCK_SIZE = 128;
+	static final int SKIP_ENTRY_LENGTH = 12;
+	static final int DICTIONARY_ENTRY_LENGTH = 36;
+	static final int FOOTER_LENGTH = 56;
+	static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+
+	final File file;
+	final int geometryDimensions;
+	final int firstDocument;
+	final int numDocuments;
+	final int numWords;
+	final int minDocumentLength;
+	final long totalLength;
+
+	private final int chunkSize;
+	private final ByteBuffer[] chunks;
+	private final ByteBuffer dictionary;
+	private final ByteBuffer documentLengths;
+
+	/**
+	 * Open a segment
+	 * 
+	 * @param file
+	 *            the segment file
+	 * @throws IOException
+	 *             if the file isn't a valid segment
+	 */
+	InvertedFileSegment(File file) throws IOException {
+		this.file = file;
+
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final long length = raf.length();
+			if (length < FOOTER_LENGTH)
+				throw new IOException("Invalid segment " + file);
+
+			raf.seek(length - FOOTER_LENGTH);
+			if (raf.readInt() != MAGIC || raf.readInt() != VERSION)
+				throw new IOException("Invalid segment " + file);
+
+			chunkSize = raf.readInt();
+			geometryDimensions = raf.readInt();
+			firstDocument = raf.readInt();
+			numDocuments = raf.readInt();
+			numWords = raf.readInt();
+			minDocumentLength = raf.readInt();
+			totalLength = raf.readLong();
+			final long dictionaryOffset = raf.readLong();
+			final long documentLengthsOffset = raf.readLong();
+
+			final FileChannel channel = raf.getChannel();
+			chunks = new ByteBuffer[(int) ((length + chunkSize - 1) / chunkSize)];
+			for (int i = 0; i < chunks.length; i++) {
+				final long start = (long) i * chunkSize;
+				chunks[i] = channel.map(MapMode.READ_ONLY, start, Math.min(chunkSize, length - start));
+			}
+
+			dictionary = slice(dictionaryOffset, numWords * DICTIONARY_ENTRY_LENGTH);
+			documentLengths = slice(documentLengthsOffset, 4 * numDocuments);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Get a buffer over a region of the file. The region must lie within a
+	 * single chunk.
+	 */
+	ByteBuffer slice(long offset, int length) {
+		final ByteBuffer buffer = chunks[(int) (offset / chunkSize)].duplicate();
+		final int start = (int) (offset % chunkSize);
+		buffer.limit(start + length);
+		buffer.position(start);
+		return buffer.slice();
+	}
+
+	/**
+	 * Find the dictionary entry of a visual word
+	 * 
+	 * @param word
+	 *            the word
+	 * @return the index of the entry, or -1 if the word doesn't occur in the
+	 *         segment
+	 */
+	int find(int word) {
+		int low = 0;
+		int high = numWords - 1;
+
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final int w = dictionary.getInt(mid * DICTIONARY_ENTRY_LENGTH);
+
+			if (w < word)
+				low = mid + 1;
+			else if (w > word)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	int getWord(int entry) {
+		return dictionary.getInt(entry * DICTIONARY_ENTRY_LENGTH);
+	}
+
+	int getDocumentFrequency(int entry) {
+		return dictionary.getInt(entry * DICTIONARY_ENTRY_LENGTH + 16);
+	}
+
+	int getMaxTermFrequency(int entry) {
+		return dictionary.getInt(entry * DICTIONARY_ENTRY_LENGTH + 20);
+	}
+
+	float getMaxTermFrequencyRatio(int entry) {
+		return dictionary.getFloat(entry * DICTIONARY_ENTRY_LENGTH + 24);
+	}
+
+	/**
+	 * Get a cursor over the postings of a dictionary entry
+	 * 
+	 * @param entry
+	 *            the entry
+	 * @return the cursor
+	 */
+	PostingsCursor cursor(int entry) {
+		final int base = entry * DICTIONARY_ENTRY_LENGTH;
+		final long offset = dictionary.getLong(base + 4);
+		final int length = dictionary.getInt(base + 12);
+
+		return new PostingsCursor(slice(offset, length), dictionary.getInt(base + 16));
+	}
+
+	/**
+	 * Read the geometry of a run of keypoint occurrences of a dictionary
+	 * entry
+	 * 
+	 * @param entry
+	 *            the entry
+	 * @param occurrence
+	 *            the index of the first occurrence
+	 * @param count
+	 *            the number of occurrences
+	 * @param dest
+	 *            the array to read into
+	 * @param destPos
+	 *            the position in the array to start at
+	 */
+	void readGeometry(int entry, int occurrence, int count, float[] dest, int destPos) {
+		final long offset = dictionary.getLong(entry * DICTIONARY_ENTRY_LENGTH + 28);
+		final int n = count * geometryDimensions;
+		final ByteBuffer buffer = slice(offset + 4L * occurrence * geometryDimensions, 4 * n);
+
+		buffer.asFloatBuffer().get(dest, destPos, n);
+	}
+
+	/**
+	 * Get the length of a document
+	 * 
+	 * @param document
+	 *            the (global) document identifier
+	 * @return the number of visual words in the document
+	 */
+	int getDocumentLength(int document) {
+		return documentLengths.getInt(4 * (document - firstDocument));
+	}
+
+	/**
+	 * @return the identifier after the last document in the segment
+	 */
+	int endDocument() {
+		return firstDocument + numDocuments;
+	}
+}
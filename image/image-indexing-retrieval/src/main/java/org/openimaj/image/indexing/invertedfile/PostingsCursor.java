@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.indexing.invertedfile;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A forward-only cursor over a postings list of an
+ * {@link InvertedFileSegment}, with skipping to a target document using the
+ * list's skip table.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+final class PostingsCursor {
+	/**
+	 * The document returned once the cursor is exhausted
+	 */
+	static final int END = Integer.MAX_VALUE;
+
+	private final ByteBuffer buffer;
+	private final int documentFrequency;
+	private final int numBlocks;
+	private final int dataStart;
+
+	private int index = -1;
+	private int document = -1;
+	private int termFrequency;
+	private int occurrence;
+
+	PostingsCursor(ByteBuffer buffer, int documentFrequency) {
+		this.buffer = buffer;
+		this.documentFrequency = documentFrequency;
+		this.numBlocks = (documentFrequency + InvertedFileSegment.BLOCK_SIZE - 1) / InvertedFileSegment.BLOCK_SIZE;
+		this.dataStart = numBlocks * InvertedFileSegment.SKIP_ENTRY_LENGTH;
+
+		buffer.position(dataStart);
+	}
+
+	/**
+	 * @return the current document, {@link #END} if the cursor is exhausted
+	 *         or -1 if {@link #next()} hasn't been called
+	 */
+	int document() {
+		return document;
+	}
+
+	/**
+	 * @return the term frequency in the current document
+	 */
+	int termFrequency() {
+		return termFrequency;
+	}
+
+	/**
+	 * @return the index of the first keypoint occurrence of the current
+	 *         document amongst all the occurrences in the list
+	 */
+	int occurrence() {
+		return occurrence;
+	}
+
+	/**
+	 * Move to the next posting
+	 * 
+	 * @return the new current document, or {@link #END}
+	 */
+	int next() {
+		if (index + 1 >= documentFrequency) {
+			index = documentFrequency;
+			document = END;
+			termFrequency = 0;
+			return END;
+		}
+
+		index++;
+		occurrence += termFrequency;
+		document += VByte.read(buffer);
+		termFrequency = VByte.read(buffer);
+
+		return document;
+	}
+
+	/**
+	 * Move to the first posting with a document greater than or equal to the
+	 * target
+	 * 
+	 * @param target
+	 *            the target document
+	 * @return the new current document, or {@link #END}
+	 */
+	int advance(int target) {
+		if (document >= target)
+			return document;
+
+		int block = index < 0 ? 0 : index / InvertedFileSegment.BLOCK_SIZE;
+		if (lastDocument(block) < target) {
+			// skip to the first block that could contain the target
+			int low = block + 1;
+			int high = numBlocks - 1;
+			while (low <= high) {
+				final int mid = (low + high) >>> 1;
+				if (lastDocument(mid) < target)
+					low = mid + 1;
+				else
+					high = mid - 1;
+			}
+
+			if (low >= numBlocks) {
+				index = documentFrequency;
+				document = END;
+				termFrequency = 0;
+				return END;
+			}
+
+			block = low;
+			final int skip = block * InvertedFileSegment.SKIP_ENTRY_LENGTH;
+			index = block * InvertedFileSegment.BLOCK_SIZE - 1;
+			document = lastDocument(block - 1);
+			termFrequency = 0;
+			occurrence = buffer.getInt(skip + 8);
+			buffer.position(dataStart + buffer.getInt(skip + 4));
+		}
+
+		while (document < target)
+			next();
+
+		return document;
+	}
+
+	private int lastDocument(int block) {
+		if (block < 0)
+			return -1;
+		return buffer.getInt(block * InvertedFileSegment.SKIP_ENTRY_LENGTH);
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.indexing.invertedfile;
+
+/**
+ * A model for scoring documents against a query in an
+ * {@link InvertedFileIndex}. The score of a document is a sum over the visual
+ * words it shares with the query of the product of a query-side weight (which
+ * depends on the query term frequency and the collection statistics) and a
+ * document-side weight (which depends on the term frequency in the document
+ * and the document length).
+ * <p>
+ * To allow top-k pruning, the document-side weight must increase with the
+ * term frequency and not increase with the document length, except for the
+ * term frequency ratio which is tracked explicitly; see
+ * {@link #documentWeightBound(int, float, int, double)}.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public abstract class ScoringModel {
+	/**
+	 * Okapi BM25 scoring
+	 * 
+	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+	 */
+	public static class BM25 extends ScoringModel {
+		private final double k1;
+		private final double b;
+
+		/**
+		 * Construct with the standard parameters <code>k1=1.2</code> and
+		 * <code>b=0.75</code>
+		 */
+		public BM25() {
+			this(1.2, 0.75);
+		}
+
+		/**
+		 * Construct with the given parameters
+		 * 
+		 * @param k1
+		 *            the term frequency saturation parameter
+		 * @param b
+		 *            the document length normalisation parameter
+		 */
+		public BM25(double k1, double b) {
+			this.k1 = k1;
+			this.b = b;
+		}
+
+		@Override
+		public double queryWeight(int queryFrequency, int documentFrequency, long numDocuments) {
+			final double idf = Math.log(1 + (numDocuments - documentFrequency + 0.5) / (documentFrequency + 0.5));
+
+			return queryFrequency * idf;
+		}
+
+		@Override
+		public double documentWeight(int termFrequency, int documentLength, double averageDocumentLength) {
+			return termFrequency * (k1 + 1)
+					/ (termFrequency + k1 * (1 - b + b * documentLength / averageDocumentLength));
+		}
+
+		@Override
+		public double documentWeightBound(int maxTermFrequency, float maxTermFrequencyRatio, int minDocumentLength,
+				double averageDocumentLength)
+		{
+			return documentWeight(maxTermFrequency, minDocumentLength, averageDocumentLength);
+		}
+
+		@Override
+		public String toString() {
+			return "BM25[k1=" + k1 + ", b=" + b + "]";
+		}
+	}
+
+	/**
+	 * Classic tf-idf scoring with the term frequencies normalised by the
+	 * document length (the number of visual words in the document). Cosine
+	 * normalisation isn't used as the document norms would depend on the
+	 * collection statistics, which change as the index grows.
+	 * 
+	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+	 */
+	public static class TFIDF extends ScoringModel {
+		@Override
+		public double queryWeight(int queryFrequency, int documentFrequency, long numDocuments) {
+			final double idf = Math.log((double) numDocuments / documentFrequency);
+
+			return queryFrequency * idf * idf;
+		}
+
+		@Override
+		public double documentWeight(int termFrequency, int documentLength, double averageDocumentLength) {
+			return (double) termFrequency / documentLength;
+		}
+
+		@Override
+		public double documentWeightBound(int maxTermFrequency, float maxTermFrequencyRatio, int minDocumentLength,
+				double averageDocumentLength)
+		{
+			return maxTermFrequencyRatio;
+		}
+
+		@Override
+		public String toString() {
+			return "TFIDF";
+		}
+	}
+
+	/**
+	 * Compute the query-side weight of a term
+	 * 
+	 * @param queryFrequency
+	 *            the number of times the term occurs in the query
+	 * @param documentFrequency
+	 *            the number of documents in the index containing the term
+	 * @param numDocuments
+	 *            the number of documents in the index
+	 * @return the weight
+	 */
+	public abstract double queryWeight(int queryFrequency, int documentFrequency, long numDocuments);
+
+	/**
+	 * Compute the document-side weight of a term
+	 * 
+	 * @param termFrequency
+	 *            the number of times the term occurs in the document
+	 * @param documentLength
+	 *            the number of terms in the document
+	 * @param averageDocumentLength
+	 *            the average document length in the index
+	 * @return the weight
+	 */
+	public abstract double documentWeight(int termFrequency, int documentLength, double averageDocumentLength);
+
+	/**
+	 * Compute an upper bound on {@link #documentWeight(int, int, double)} over
+	 * a postings list with the given statistics.
+	 * 
+	 * @param maxTermFrequency
+	 *            the maximum term frequency in the list
+	 * @param maxTermFrequencyRatio
+	 *            an upper bound on the ratio of the term frequency to the
+	 *            document length in the list
+	 * @param minDocumentLength
+	 *            a lower bound on the length of the documents in the list
+	 * @param averageDocumentLength
+	 *            the average document length in the index
+	 * @return the bound
+	 */
+	public abstract double documentWeightBound(int maxTermFrequency, float maxTermFrequencyRatio,
+			int minDocumentLength, double averageDocumentLength);
+}
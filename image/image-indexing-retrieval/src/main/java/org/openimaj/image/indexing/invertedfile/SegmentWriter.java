@@ -0,0 +1,284 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.indexing.invertedfile;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Writes an {@link InvertedFileSegment}. The postings lists must be written
+ * in order of increasing visual word, and the documents within each list must
+ * be in increasing order.
+ * <p>
+ * The postings of each list are grouped into blocks of
+ * {@link InvertedFileSegment#BLOCK_SIZE}. Each list starts with a skip table
+ * holding the last document, the offset of the encoded postings and the
+ * number of preceding keypoint occurrences of each block, followed by the
+ * postings themselves as variable-byte coded (document gap, term frequency)
+ * pairs. Lists, geometry blocks, the dictionary and the document lengths are
+ * padded so that none of them crosses a chunk boundary, which allows each to
+ * be read from a single memory-mapped buffer.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+final class SegmentWriter implements Closeable {
+	private final DataOutputStream out;
+	private final int chunkSize;
+	private long position;
+
+	private final int firstDocument;
+	private final int[] documentLengths;
+	private final int numDocuments;
+	private final int geometryDimensions;
+
+	private int numWords;
+	private int[] words = new int[1024];
+	private long[] offsets = new long[1024];
+	private int[] lengths = new int[1024];
+	private int[] documentFrequencies = new int[1024];
+	private int[] maxTermFrequencies = new int[1024];
+	private float[] maxTermFrequencyRatios = new float[1024];
+	private long[] geometryOffsets = new long[1024];
+
+	private byte[] scratch = new byte[4096];
+
+	/**
+	 * Construct a writer
+	 * 
+	 * @param file
+	 *            the segment file
+	 * @param firstDocument
+	 *            the identifier of the first document in the segment
+	 * @param documentLengths
+	 *            the lengths of the documents in the segment
+	 * @param numDocuments
+	 *            the number of documents in the segment
+	 * @param geometryDimensions
+	 *            the number of geometry values per keypoint occurrence; 0 if
+	 *            geometry isn't stored
+	 * @param chunkSize
+	 *            the size of the chunks that the file will be mapped in
+	 * @throws IOException
+	 */
+	SegmentWriter(File file, int firstDocument, int[] documentLengths, int numDocuments, int geometryDimensions,
+			int chunkSize) throws IOException
+	{
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		this.firstDocument = firstDocument;
+		this.documentLengths = documentLengths;
+		this.numDocuments = numDocuments;
+		this.geometryDimensions = geometryDimensions;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Write the postings list of a visual word
+	 * 
+	 * @param word
+	 *            the visual word
+	 * @param documents
+	 *            the documents containing the word, in increasing order
+	 * @param termFrequencies
+	 *            the number of occurrences of the word in each document
+	 * @param count
+	 *            the number of documents
+	 * @param geometry
+	 *            the geometry of each occurrence, in postings order; ignored
+	 *            if the segment doesn't store geometry
+	 * @throws IOException
+	 */
+	void writeList(int word, int[] documents, int[] termFrequencies, int count, float[] geometry)
+			throws IOException
+	{
+		if (numWords > 0 && word <= words[numWords - 1])
+			throw new IllegalArgumentException("Postings lists must be written in increasing word order");
+
+		final int numBlocks = (count + InvertedFileSegment.BLOCK_SIZE - 1) / InvertedFileSegment.BLOCK_SIZE;
+		final int dataStart = numBlocks * InvertedFileSegment.SKIP_ENTRY_LENGTH;
+		final long maxLength = dataStart + 2L * count * VByte.MAX_BYTES;
+		if (maxLength > chunkSize)
+			throw new IOException("The postings list of word " + word + " is too long");
+		if (scratch.length < maxLength)
+			scratch = new byte[(int) Math.max(maxLength, Math.min(chunkSize, 2L * scratch.length))];
+
+		int pos = dataStart;
+		int previous = -1;
+		int occurrences = 0;
+		int maxTermFrequency = 0;
+		double maxTermFrequencyRatio = 0;
+
+		for (int block = 0, i = 0; block < numBlocks; block++) {
+			final int blockStart = pos - dataStart;
+			final int blockOccurrences = occurrences;
+			final int end = Math.min(count, i + InvertedFileSegment.BLOCK_SIZE);
+
+			for (; i < end; i++) {
+				final int doc = documents[i];
+				final int tf = termFrequencies[i];
+
+				if (doc <= previous)
+					throw new IllegalArgumentException("Documents must be in increasing order");
+
+				pos = VByte.write(scratch, pos, doc - previous);
+				pos = VByte.write(scratch, pos, tf);
+
+				previous = doc;
+				occurrences += tf;
+				maxTermFrequency = Math.max(maxTermFrequency, tf);
+				maxTermFrequencyRatio = Math.max(maxTermFrequencyRatio,
+						(double) tf / documentLengths[doc - firstDocument]);
+			}
+
+			final int skip = block * InvertedFileSegment.SKIP_ENTRY_LENGTH;
+			putInt(scratch, skip, previous);
+			putInt(scratch, skip + 4, blockStart);
+			putInt(scratch, skip + 8, blockOccurrences);
+		}
+
+		align(pos);
+		final long offset = position;
+		out.write(scratch, 0, pos);
+		position += pos;
+
+		long geometryOffset = -1;
+		if (geometryDimensions > 0) {
+			final long geometryLength = 4L * occurrences * geometryDimensions;
+			if (geometryLength > chunkSize)
+				throw new IOException("The geometry of word " + word + " is too long");
+
+			align(geometryLength);
+			geometryOffset = position;
+			for (int i = 0; i < occurrences * geometryDimensions; i++)
+				out.writeFloat(geometry[i]);
+			position += geometryLength;
+		}
+
+		if (numWords == words.length)
+			grow();
+
+		words[numWords] = word;
+		offsets[numWords] = offset;
+		lengths[numWords] = pos;
+		documentFrequencies[numWords] = count;
+		maxTermFrequencies[numWords] = maxTermFrequency;
+		// round up so the stored value is still an upper bound
+		maxTermFrequencyRatios[numWords] = Math.nextUp((float) maxTermFrequencyRatio);
+		geometryOffsets[numWords] = geometryOffset;
+		numWords++;
+	}
+
+	private static void putInt(byte[] buffer, int pos, int value) {
+		buffer[pos] = (byte) (value >>> 24);
+		buffer[pos + 1] = (byte) (value >>> 16);
+		buffer[pos + 2] = (byte) (value >>> 8);
+		buffer[pos + 3] = (byte) value;
+	}
+
+	private void grow() {
+		final int size = words.length * 2;
+		words = Arrays.copyOf(words, size);
+		offsets = Arrays.copyOf(offsets, size);
+		lengths = Arrays.copyOf(lengths, size);
+		documentFrequencies = Arrays.copyOf(documentFrequencies, size);
+		maxTermFrequencies = Arrays.copyOf(maxTermFrequencies, size);
+		maxTermFrequencyRatios = Arrays.copyOf(maxTermFrequencyRatios, size);
+		geometryOffsets = Arrays.copyOf(geometryOffsets, size);
+	}
+
+	/**
+	 * Pad the output so that a region of the given length starting at the
+	 * current position won't cross a chunk boundary
+	 */
+	private void align(long length) throws IOException {
+		if (length > chunkSize)
+			throw new IOException("Segment region too large to map");
+
+		final long remaining = chunkSize - (position % chunkSize);
+		if (length > remaining) {
+			final byte[] zeros = new byte[(int) Math.min(remaining, 1 << 16)];
+			for (long r = remaining; r > 0; r -= zeros.length)
+				out.write(zeros, 0, (int) Math.min(r, zeros.length));
+			position += remaining;
+		}
+	}
+
+	/**
+	 * Write the dictionary, document lengths and footer and close the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			align((long) numWords * InvertedFileSegment.DICTIONARY_ENTRY_LENGTH);
+			final long dictionaryOffset = position;
+			for (int i = 0; i < numWords; i++) {
+				out.writeInt(words[i]);
+				out.writeLong(offsets[i]);
+				out.writeInt(lengths[i]);
+				out.writeInt(documentFrequencies[i]);
+				out.writeInt(maxTermFrequencies[i]);
+				out.writeFloat(maxTermFrequencyRatios[i]);
+				out.writeLong(geometryOffsets[i]);
+			}
+			position += (long) numWords * InvertedFileSegment.DICTIONARY_ENTRY_LENGTH;
+
+			align(4L * numDocuments);
+			final long documentLengthsOffset = position;
+			long totalLength = 0;
+			int minDocumentLength = 0;
+			for (int i = 0; i < numDocuments; i++) {
+				final int len = documentLengths[i];
+				out.writeInt(len);
+				totalLength += len;
+				if (len > 0 && (minDocumentLength == 0 || len < minDocumentLength))
+					minDocumentLength = len;
+			}
+			position += 4L * numDocuments;
+
+			out.writeInt(InvertedFileSegment.MAGIC);
+			out.writeInt(InvertedFileSegment.VERSION);
+			out.writeInt(chunkSize);
+			out.writeInt(geometryDimensions);
+			out.writeInt(firstDocument);
+			out.writeInt(numDocuments);
+			out.writeInt(numWords);
+			out.writeInt(minDocumentLength);
+			out.writeLong(totalLength);
+			out.writeLong(dictionaryOffset);
+			out.writeLong(documentLengthsOffset);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.indexing.invertedfile;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Variable-byte coding of non-negative integers. Each byte holds seven bits
+ * of the value, least significant group first; the high bit is set on every
+ * byte except the last.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+final class VByte {
+	private VByte() {
+	}
+
+	/**
+	 * The maximum number of bytes used to encode an int
+	 */
+	static final int MAX_BYTES = 5;
+
+	/**
+	 * Encode a value into the buffer at the given position. The buffer must
+	 * have at least {@link #MAX_BYTES} bytes available.
+	 * 
+	 * @param buffer
+	 *            the buffer
+	 * @param pos
+	 *            the position to write at
+	 * @param value
+	 *            the (non-negative) value
+	 * @return the position after the encoded value
+	 */
+	static int write(byte[] buffer, int pos, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[pos++] = (byte) value;
+
+		return pos;
+	}
+
+	/**
+	 * Decode a value from the current position of the buffer, advancing the
+	 * position past it.
+	 * 
+	 * @param buffer
+	 *            the buffer
+	 * @return the value
+	 */
+	static int read(ByteBuffer buffer) {
+		int b = buffer.get();
+		int value = b & 0x7F;
+
+		for (int shift = 7; b < 0; shift += 7) {
+			b = buffer.get();
+			value |= (b & 0x7F) << shift;
+		}
+
+		return value;
+	}
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.indexing.invertedfile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openimaj.util.pair.IntDoublePair;
+
+/**
+ * Tests for {@link InvertedFileIndex}
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class InvertedFileIndexTest {
+	/**
+	 * Temporary folder for the index
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final int NUM_DOCS = 600;
+	private static final int NUM_WORDS = 300;
+
+	private File dir;
+	private int[][] docs;
+	private InvertedFileIndex index;
+
+	/**
+	 * Build a random corpus with a skewed word distribution and index it with
+	 * small segments and chunks so that merging and chunk alignment are
+	 * exercised.
+	 * 
+	 * @throws IOException
+	 */
+	@Before
+	public void setup() throws IOException {
+		final Random rng = new Random(1);
+
+		docs = new int[NUM_DOCS][];
+		for (int i = 0; i < NUM_DOCS; i++) {
+			docs[i] = new int[5 + rng.nextInt(60)];
+			for (int j = 0; j < docs[i].length; j++)
+				docs[i][j] = (int) (NUM_WORDS * Math.pow(rng.nextDouble(), 2));
+		}
+
+		dir = folder.newFolder("index");
+		index = new InvertedFileIndex(dir, 2);
+		index.chunkSize = 1 << 14;
+		index.setMaxBufferedDocuments(50);
+		index.setMergeFactor(3);
+
+		for (int i = 0; i < NUM_DOCS; i++)
+			assertEquals(i, index.addDocument(docs[i], geometry(i)));
+		index.flush();
+	}
+
+	/**
+	 * Close the index
+	 * 
+	 * @throws IOException
+	 */
+	@After
+	public void teardown() throws IOException {
+		index.close();
+	}
+
+	private float[] geometry(int doc) {
+		final float[] g = new float[docs[doc].length * 2];
+		for (int j = 0; j < docs[doc].length; j++) {
+			g[2 * j] = doc;
+			g[2 * j + 1] = j;
+		}
+		return g;
+	}
+
+	private double[] bruteForce(ScoringModel model, int[] query, int k) {
+		final int[] qtf = new int[NUM_WORDS];
+		for (final int w : query)
+			qtf[w]++;
+
+		final int[][] tf = new int[NUM_DOCS][NUM_WORDS];
+		final int[] df = new int[NUM_WORDS];
+		long total = 0;
+		for (int i = 0; i < NUM_DOCS; i++) {
+			for (final int w : docs[i]) {
+				if (tf[i][w]++ == 0)
+					df[w]++;
+			}
+			total += docs[i].length;
+		}
+		final double avg = (double) total / NUM_DOCS;
+
+		final double[] scores = new double[NUM_DOCS];
+		for (int i = 0; i < NUM_DOCS; i++) {
+			for (int w = 0; w < NUM_WORDS; w++) {
+				if (qtf[w] > 0 && tf[i][w] > 0)
+					scores[i] += model.queryWeight(qtf[w], df[w], NUM_DOCS)
+							* model.documentWeight(tf[i][w], docs[i].length, avg);
+			}
+		}
+
+		Arrays.sort(scores);
+		final double[] top = new double[k];
+		for (int i = 0; i < k; i++)
+			top[i] = scores[NUM_DOCS - 1 - i];
+		return top;
+	}
+
+	private void checkSearch(ScoringModel model) {
+		index.setScoringModel(model);
+
+		for (int q = 0; q < 20; q++) {
+			final int[] query = docs[q * 7];
+			final List<IntDoublePair> results = index.search(query, 10);
+			final double[] expected = bruteForce(model, query, 10);
+
+			assertEquals(10, results.size());
+			final double[] actual = new double[10];
+			for (int i = 0; i < 10; i++)
+				actual[i] = results.get(i).second;
+
+			assertArrayEquals(expected, actual, 1e-9);
+		}
+	}
+
+	/**
+	 * Test that the top-k BM25 results match an exhaustive search
+	 */
+	@Test
+	public void testBM25() {
+		assertTrue(index.numSegments() > 1);
+		checkSearch(new ScoringModel.BM25());
+	}
+
+	/**
+	 * Test that the top-k tf-idf results match an exhaustive search
+	 */
+	@Test
+	public void testTFIDF() {
+		checkSearch(new ScoringModel.TFIDF());
+	}
+
+	/**
+	 * Test that merging all the segments doesn't change the results
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testMerge() throws IOException {
+		index.merge();
+		assertEquals(1, index.numSegments());
+		checkSearch(new ScoringModel.BM25());
+	}
+
+	/**
+	 * Test retrieval of the stored geometry
+	 */
+	@Test
+	public void testGeometry() {
+		for (int doc = 0; doc < NUM_DOCS; doc += 37) {
+			final int word = docs[doc][0];
+
+			int count = 0;
+			for (final int w : docs[doc])
+				if (w == word)
+					count++;
+
+			final float[] g = index.getGeometry(doc, word);
+			assertEquals(2 * count, g.length);
+			for (int i = 0, j = 0; j < docs[doc].length; j++) {
+				if (docs[doc][j] == word) {
+					assertEquals(doc, g[i++], 0);
+					assertEquals(j, g[i++], 0);
+				}
+			}
+		}
+
+		assertNull(index.getGeometry(NUM_DOCS + 1, 0));
+	}
+
+	/**
+	 * Test that a re-opened index gives the same results
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testReopen() throws IOException {
+		final List<IntDoublePair> before = index.search(docs[3], 10);
+		index.close();
+
+		index = new InvertedFileIndex(dir);
+		assertEquals(2, index.getGeometryDimensions());
+		assertEquals(NUM_DOCS, index.numDocuments());
+
+		final List<IntDoublePair> after = index.search(docs[3], 10);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(before.get(i).first, after.get(i).first);
+			assertEquals(before.get(i).second, after.get(i).second, 0);
+		}
+
+		assertEquals(NUM_DOCS, index.addDocument(docs[0], geometry(0)));
+	}
+
+	/**
+	 * Test that an index can't be opened twice
+	 * 
+	 * @throws IOException
+	 */
+	@Test(expected = IOException.class)
+	public void testLock() throws IOException {
+		new InvertedFileIndex(dir);
+	}
+}
@@ -34,6 +34,7 @@ import java.util.List;
 
 import org.openimaj.feature.DoubleFVComparison;
 import org.openimaj.feature.local.LocalFeature;
+import org.openimaj.feature.local.matcher.BlockedDescriptorMatcher.PackedDescriptors;
 import org.openimaj.util.pair.Pair;
 
 import gnu.trove.map.hash.TObjectIntHashMap;
@@ -43,6 +44,11 @@ import gnu.trove.procedure.TObjectIntProcedure;
  * Matcher that uses minimum Euclidean distance to find matches. Model and
  * object are compared both ways. Matches that are oneway are rejected, as are
  * one->many matches.
+ * <p>
+ * The nearest neighbours in both directions are computed in a single
+ * exhaustive pass using a {@link BlockedDescriptorMatcher}. Subclasses that
+ * override {@link #findMatch(LocalFeature, List)} must be constructed with
+ * {@link #BasicTwoWayMatcher(boolean)} for it to be used.
  *
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  *
@@ -51,14 +57,41 @@ import gnu.trove.procedure.TObjectIntProcedure;
 public class BasicTwoWayMatcher<T extends LocalFeature<?, ?>> implements LocalFeatureMatcher<T> {
 	protected List<T> modelKeypoints;
 	protected List<Pair<T>> matches;
+	protected BlockedDescriptorMatcher engine = new BlockedDescriptorMatcher();
+	protected PackedDescriptors modelDescriptors;
+	private final boolean useFindMatch;
+
+	/**
+	 * Construct a matcher that finds the nearest neighbours with a
+	 * {@link BlockedDescriptorMatcher}.
+	 */
+	public BasicTwoWayMatcher() {
+		this(false);
+	}
+
+	/**
+	 * Construct a matcher, optionally finding the nearest neighbours by
+	 * calling {@link #findMatch(LocalFeature, List)} for every feature in each
+	 * direction. This is much slower, and is only needed by subclasses that
+	 * override {@link #findMatch(LocalFeature, List)}.
+	 *
+	 * @param useFindMatch
+	 *            true if {@link #findMatch(LocalFeature, List)} should be used
+	 */
+	protected BasicTwoWayMatcher(boolean useFindMatch) {
+		this.useFindMatch = useFindMatch;
+	}
 
 	@Override
 	public void setModelFeatures(List<T> modelkeys) {
 		this.modelKeypoints = modelkeys;
+		this.modelDescriptors = BlockedDescriptorMatcher.pack(modelkeys);
 	}
 
 	/**
 	 * This searches through the keypoints in klist for the closest match to key.
+	 * Only used if the matcher was constructed with
+	 * {@link #BasicTwoWayMatcher(boolean)} set to true.
 	 */
 	protected T findMatch(T query, List<T> features) {
 		double distsq = Double.MAX_VALUE;
@@ -80,6 +113,25 @@ public class BasicTwoWayMatcher<T extends LocalFeature<?, ?>> implements LocalFe
 
 	@Override
 	public boolean findMatches(List<T> queryfeatures) {
+		if (useFindMatch)
+			return findMatchesWithFindMatch(queryfeatures);
+
+		matches = new ArrayList<Pair<T>>();
+
+		final BlockedDescriptorMatcher.Result result = engine.match(BlockedDescriptorMatcher.pack(queryfeatures),
+				modelDescriptors);
+		final int[] nearest = result.getNearest();
+
+		// a target can be the mutual nearest neighbour of at most one query,
+		// so there are no one->many matches to remove
+		for (final int i : result.mutualNearest()) {
+			matches.add(new Pair<T>(queryfeatures.get(i), modelKeypoints.get(nearest[i])));
+		}
+
+		return matches.size() > 0;
+	}
+
+	private boolean findMatchesWithFindMatch(List<T> queryfeatures) {
 		matches = new ArrayList<Pair<T>>();
 
 		final TObjectIntHashMap<T> targets = new TObjectIntHashMap<T>();
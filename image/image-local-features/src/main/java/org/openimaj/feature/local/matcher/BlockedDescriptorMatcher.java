@@ -0,0 +1,489 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.feature.local.matcher;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.openimaj.feature.ByteFV;
+import org.openimaj.feature.FeatureVector;
+import org.openimaj.feature.local.LocalFeature;
+import org.openimaj.image.feature.local.keypoints.Keypoint;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.GlobalExecutorPool;
+import org.openimaj.util.parallel.Parallel;
+
+/**
+ * An exhaustive matching engine for local feature descriptors. Both sets of
+ * descriptors are packed into contiguous byte (or float) matrices and the
+ * squared Euclidean distances between all pairs are computed in cache-sized
+ * tiles. For each query the nearest and second nearest targets are recorded,
+ * and for each target the nearest query is recorded; this provides everything
+ * that is needed for ratio tests and mutual-nearest-neighbour checks without
+ * any per-pair object access. Blocks of queries are processed in parallel.
+ * <p>
+ * Ties are always broken in favour of the lowest index, so the results are
+ * identical to a naive sequential search.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class BlockedDescriptorMatcher {
+	/**
+	 * Descriptors packed into a contiguous row-major matrix. Descriptors with
+	 * byte features (i.e. {@link Keypoint}s) are packed as bytes; everything
+	 * else is packed as floats.
+	 */
+	public static class PackedDescriptors {
+		final int size;
+		final int dims;
+		final byte[] bytes;
+		final float[] floats;
+
+		private PackedDescriptors(int size, int dims, byte[] bytes, float[] floats) {
+			this.size = size;
+			this.dims = dims;
+			this.bytes = bytes;
+			this.floats = floats;
+		}
+
+		/**
+		 * @return the number of descriptors
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @return the dimensionality of the descriptors
+		 */
+		public int dimensions() {
+			return dims;
+		}
+
+		boolean isByte() {
+			return bytes != null;
+		}
+	}
+
+	/**
+	 * The default number of queries in a tile
+	 */
+	public static final int DEFAULT_QUERY_BLOCK_SIZE = 32;
+
+	/**
+	 * The default number of targets in a tile
+	 */
+	public static final int DEFAULT_TARGET_BLOCK_SIZE = 256;
+
+	/**
+	 * Problems with fewer than this many multiply-adds are processed in the
+	 * calling thread
+	 */
+	private static final long MIN_PARALLEL_WORK = 1 << 22;
+
+	private ThreadPoolExecutor pool;
+	private int queryBlockSize = DEFAULT_QUERY_BLOCK_SIZE;
+	private int targetBlockSize = DEFAULT_TARGET_BLOCK_SIZE;
+
+	/**
+	 * Construct using the global thread pool
+	 */
+	public BlockedDescriptorMatcher() {
+		this(GlobalExecutorPool.getPool());
+	}
+
+	/**
+	 * Construct using the given thread pool. If the pool is <code>null</code>
+	 * all work is performed in the calling thread.
+	 * 
+	 * @param pool
+	 *            the thread pool
+	 */
+	public BlockedDescriptorMatcher(ThreadPoolExecutor pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Pack the feature vectors of a list of local features. {@link Keypoint}s
+	 * and features with {@link ByteFV} vectors are packed as bytes without
+	 * conversion; other features are converted to floats.
+	 * 
+	 * @param features
+	 *            the features
+	 * @return the packed descriptors
+	 */
+	public static PackedDescriptors pack(List<? extends LocalFeature<?, ?>> features) {
+		final int n = features.size();
+
+		if (n == 0)
+			return new PackedDescriptors(0, 0, new byte[0], null);
+
+		final FeatureVector first = features.get(0).getFeatureVector();
+		final int dims = first.length();
+
+		if (first instanceof ByteFV) {
+			final byte[] data = new byte[n * dims];
+
+			for (int i = 0; i < n; i++) {
+				final LocalFeature<?, ?> f = features.get(i);
+				final byte[] v = f instanceof Keypoint ? ((Keypoint) f).ivec : ((ByteFV) f.getFeatureVector()).values;
+				checkLength(v.length, dims);
+				System.arraycopy(v, 0, data, i * dims, dims);
+			}
+
+			return new PackedDescriptors(n, dims, data, null);
+		}
+
+		final float[] data = new float[n * dims];
+		for (int i = 0; i < n; i++) {
+			final double[] v = features.get(i).getFeatureVector().asDoubleVector();
+			checkLength(v.length, dims);
+
+			for (int j = 0, k = i * dims; j < dims; j++, k++)
+				data[k] = (float) v[j];
+		}
+
+		return new PackedDescriptors(n, dims, null, data);
+	}
+
+	private static void checkLength(int length, int dims) {
+		if (length != dims)
+			throw new IllegalArgumentException("All descriptors must have the same length");
+	}
+
+	/**
+	 * The result of matching a set of query descriptors against a set of
+	 * target descriptors. All distances are squared Euclidean distances.
+	 */
+	public static class Result {
+		final int[] nearest;
+		final float[] nearestDistance;
+		final float[] secondDistance;
+		final int[] reverseNearest;
+		final float[] reverseDistance;
+
+		Result(int nQueries, int nTargets) {
+			nearest = new int[nQueries];
+			nearestDistance = new float[nQueries];
+			secondDistance = new float[nQueries];
+			reverseNearest = new int[nTargets];
+			reverseDistance = new float[nTargets];
+		}
+
+		/**
+		 * @return for each query, the index of the nearest target (or -1 if
+		 *         there are no targets)
+		 */
+		public int[] getNearest() {
+			return nearest;
+		}
+
+		/**
+		 * @return for each query, the distance to the nearest target
+		 */
+		public float[] getNearestDistance() {
+			return nearestDistance;
+		}
+
+		/**
+		 * @return for each query, the distance to the second nearest target
+		 *         ({@link Float#MAX_VALUE} if there is only one target)
+		 */
+		public float[] getSecondDistance() {
+			return secondDistance;
+		}
+
+		/**
+		 * @return for each target, the index of the nearest query (or -1 if
+		 *         there are no queries)
+		 */
+		public int[] getReverseNearest() {
+			return reverseNearest;
+		}
+
+		/**
+		 * @return for each target, the distance to the nearest query
+		 */
+		public float[] getReverseDistance() {
+			return reverseDistance;
+		}
+
+		/**
+		 * Get the indices of the queries that pass Lowe's ratio test; that is,
+		 * the distance to the nearest target is less than
+		 * <code>ratio</code> times the distance to the second nearest.
+		 * 
+		 * @param ratio
+		 *            the ratio
+		 * @return the indices of the queries that pass the test
+		 */
+		public int[] ratioTest(float ratio) {
+			final float r2 = ratio * ratio;
+
+			int count = 0;
+			final int[] out = new int[nearest.length];
+			for (int i = 0; i < nearest.length; i++)
+				if (nearest[i] >= 0 && nearestDistance[i] < r2 * secondDistance[i])
+					out[count++] = i;
+
+			return trim(out, count);
+		}
+
+		/**
+		 * Get the indices of the queries whose nearest target has the query
+		 * as its nearest query
+		 * 
+		 * @return the indices of the queries that are mutual nearest
+		 *         neighbours
+		 */
+		public int[] mutualNearest() {
+			int count = 0;
+			final int[] out = new int[nearest.length];
+			for (int i = 0; i < nearest.length; i++)
+				if (nearest[i] >= 0 && reverseNearest[nearest[i]] == i)
+					out[count++] = i;
+
+			return trim(out, count);
+		}
+
+		private static int[] trim(int[] arr, int count) {
+			if (count == arr.length)
+				return arr;
+
+			final int[] out = new int[count];
+			System.arraycopy(arr, 0, out, 0, count);
+			return out;
+		}
+	}
+
+	/**
+	 * Match the given query descriptors against the given target descriptors
+	 * 
+	 * @param queries
+	 *            the query descriptors
+	 * @param targets
+	 *            the target descriptors
+	 * @return the result
+	 */
+	public Result match(final PackedDescriptors queries, final PackedDescriptors targets) {
+		final int nq = queries.size;
+		final int nt = targets.size;
+		final Result result = new Result(nq, nt);
+
+		Arrays.fill(result.nearest, -1);
+		Arrays.fill(result.nearestDistance, Float.MAX_VALUE);
+		Arrays.fill(result.secondDistance, Float.MAX_VALUE);
+		Arrays.fill(result.reverseNearest, -1);
+		Arrays.fill(result.reverseDistance, Float.MAX_VALUE);
+
+		if (nq == 0 || nt == 0)
+			return result;
+
+		if (queries.dims != targets.dims || queries.isByte() != targets.isByte())
+			throw new IllegalArgumentException("Query and target descriptors must have the same type and length");
+
+		final int qbs = Math.max(1, queryBlockSize);
+		final int nBlocks = (nq + qbs - 1) / qbs;
+		final int[][] blockReverse = new int[nBlocks][];
+		final float[][] blockReverseDistance = new float[nBlocks][];
+
+		final Operation<Integer> op = new Operation<Integer>() {
+			@Override
+			public void perform(Integer block) {
+				final int q0 = block * qbs;
+				final int q1 = Math.min(nq, q0 + qbs);
+
+				final int[] rev = new int[nt];
+				final float[] revDist = new float[nt];
+				Arrays.fill(rev, -1);
+				Arrays.fill(revDist, Float.MAX_VALUE);
+
+				matchBlock(queries, targets, q0, q1, result, rev, revDist);
+
+				blockReverse[block] = rev;
+				blockReverseDistance[block] = revDist;
+			}
+		};
+
+		if (pool == null || nBlocks == 1 || (long) nq * nt * queries.dims < MIN_PARALLEL_WORK) {
+			for (int i = 0; i < nBlocks; i++)
+				op.perform(i);
+		} else {
+			Parallel.forIndex(0, nBlocks, 1, op, pool);
+		}
+
+		// merge the per-block reverse matches; blocks are in query order, so
+		// a strict comparison keeps the lowest index on ties
+		for (int b = 0; b < nBlocks; b++) {
+			final int[] rev = blockReverse[b];
+			final float[] revDist = blockReverseDistance[b];
+
+			for (int t = 0; t < nt; t++) {
+				if (revDist[t] < result.reverseDistance[t]) {
+					result.reverseDistance[t] = revDist[t];
+					result.reverseNearest[t] = rev[t];
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Match a block of queries against all the targets, one tile of targets
+	 * at a time
+	 */
+	private void matchBlock(PackedDescriptors queries, PackedDescriptors targets, int q0, int q1, Result result,
+			int[] rev, float[] revDist)
+	{
+		final int nt = targets.size;
+		final int tbs = Math.max(1, targetBlockSize);
+		final float[] dists = new float[(q1 - q0) * tbs];
+
+		final int[] nearest = result.nearest;
+		final float[] d1 = result.nearestDistance;
+		final float[] d2 = result.secondDistance;
+
+		for (int t0 = 0; t0 < nt; t0 += tbs) {
+			final int t1 = Math.min(nt, t0 + tbs);
+
+			if (queries.isByte())
+				distances(queries.bytes, targets.bytes, queries.dims, q0, q1, t0, t1, dists);
+			else
+				distances(queries.floats, targets.floats, queries.dims, q0, q1, t0, t1, dists);
+
+			for (int q = q0, k = 0; q < q1; q++) {
+				int best = nearest[q];
+				float best1 = d1[q];
+				float best2 = d2[q];
+
+				for (int t = t0; t < t1; t++, k++) {
+					final float d = dists[k];
+
+					if (d < best1) {
+						best2 = best1;
+						best1 = d;
+						best = t;
+					} else if (d < best2) {
+						best2 = d;
+					}
+
+					if (d < revDist[t]) {
+						revDist[t] = d;
+						rev[t] = q;
+					}
+				}
+
+				nearest[q] = best;
+				d1[q] = best1;
+				d2[q] = best2;
+			}
+		}
+	}
+
+	/**
+	 * Compute the squared distances between a block of byte queries and a
+	 * tile of byte targets
+	 */
+	private static void distances(byte[] qd, byte[] td, int dims, int q0, int q1, int t0, int t1, float[] out) {
+		for (int q = q0, k = 0; q < q1; q++) {
+			final int qo = q * dims;
+
+			for (int t = t0; t < t1; t++, k++) {
+				final int to = t * dims;
+
+				int s0 = 0, s1 = 0;
+				int j = 0;
+				for (; j + 1 < dims; j += 2) {
+					final int a = qd[qo + j] - td[to + j];
+					final int b = qd[qo + j + 1] - td[to + j + 1];
+					s0 += a * a;
+					s1 += b * b;
+				}
+				for (; j < dims; j++) {
+					final int a = qd[qo + j] - td[to + j];
+					s0 += a * a;
+				}
+
+				out[k] = s0 + s1;
+			}
+		}
+	}
+
+	/**
+	 * Compute the squared distances between a block of float queries and a
+	 * tile of float targets
+	 */
+	private static void distances(float[] qd, float[] td, int dims, int q0, int q1, int t0, int t1, float[] out) {
+		for (int q = q0, k = 0; q < q1; q++) {
+			final int qo = q * dims;
+
+			for (int t = t0; t < t1; t++, k++) {
+				final int to = t * dims;
+
+				float s = 0;
+				for (int j = 0; j < dims; j++) {
+					final float a = qd[qo + j] - td[to + j];
+					s += a * a;
+				}
+
+				out[k] = s;
+			}
+		}
+	}
+
+	/**
+	 * Set the size of the tiles used for the distance computations. The
+	 * target block should be small enough that a block of target descriptors
+	 * fits in the processor cache; the query block is the unit of parallel
+	 * work.
+	 * 
+	 * @param queryBlockSize
+	 *            the number of queries per tile
+	 * @param targetBlockSize
+	 *            the number of targets per tile
+	 */
+	public void setBlockSizes(int queryBlockSize, int targetBlockSize) {
+		this.queryBlockSize = queryBlockSize;
+		this.targetBlockSize = targetBlockSize;
+	}
+
+	/**
+	 * Set the thread pool. If the pool is <code>null</code> all work is
+	 * performed in the calling thread.
+	 * 
+	 * @param pool
+	 *            the thread pool
+	 */
+	public void setPool(ThreadPoolExecutor pool) {
+		this.pool = pool;
+	}
+}
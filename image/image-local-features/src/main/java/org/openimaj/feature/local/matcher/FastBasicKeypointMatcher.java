@@ -35,6 +35,7 @@ import java.util.List;
 import org.openimaj.citation.annotation.Reference;
 import org.openimaj.citation.annotation.ReferenceType;
 import org.openimaj.citation.annotation.References;
+import org.openimaj.feature.local.matcher.BlockedDescriptorMatcher.PackedDescriptors;
 import org.openimaj.image.feature.local.keypoints.Keypoint;
 import org.openimaj.knn.approximate.ByteNearestNeighboursKDTree;
 import org.openimaj.util.pair.Pair;
@@ -46,6 +47,9 @@ import org.openimaj.util.pair.Pair;
  * <p>
  * This is the method for determining matches suggested by Lowe in the original
  * SIFT papers.
+ * <p>
+ * The nearest neighbours are found exhaustively using a
+ * {@link BlockedDescriptorMatcher}.
  * 
  * @author Jonathon Hare
  * @param <T>
@@ -72,6 +76,18 @@ import org.openimaj.util.pair.Pair;
 		)
 })
 public class FastBasicKeypointMatcher<T extends Keypoint> extends BasicMatcher<T> {
+	protected BlockedDescriptorMatcher engine = new BlockedDescriptorMatcher();
+	protected PackedDescriptors modelDescriptors;
+
+	/**
+	 * KD-Tree over the model keypoints. This is no longer used for matching
+	 * (see {@link #engine}), so it is only built on the first call to
+	 * {@link #getModelKeypointsKNN()}; subclasses that search it must use that
+	 * method rather than reading this field.
+	 * 
+	 * @deprecated use {@link #engine} with {@link #modelDescriptors} instead
+	 */
+	@Deprecated
 	protected ByteNearestNeighboursKDTree modelKeypointsKNN;
 
 	/**
@@ -103,20 +119,18 @@ public class FastBasicKeypointMatcher<T extends Keypoint> extends BasicMatcher<T
 	{
 		matches = new ArrayList<Pair<T>>();
 
-		final byte[][] data = new byte[keys1.size()][];
-		for (int i = 0; i < keys1.size(); i++)
-			data[i] = keys1.get(i).ivec;
-
-		final int[][] argmins = new int[keys1.size()][2];
-		final float[][] mins = new float[keys1.size()][2];
-		modelKeypointsKNN.searchKNN(data, 2, argmins, mins);
+		final BlockedDescriptorMatcher.Result result = engine.match(BlockedDescriptorMatcher.pack(keys1),
+				modelDescriptors);
+		final int[] argmins = result.getNearest();
+		final float[] mins1 = result.getNearestDistance();
+		final float[] mins2 = result.getSecondDistance();
 
 		for (int i = 0; i < keys1.size(); i++) {
-			final float distsq1 = mins[i][0];
-			final float distsq2 = mins[i][1];
+			final float distsq1 = mins1[i];
+			final float distsq2 = mins2[i];
 
-			if (10 * 10 * distsq1 < thresh * thresh * distsq2) {
-				matches.add(new Pair<T>(keys1.get(i), modelKeypoints.get(argmins[i][0])));
+			if (argmins[i] >= 0 && 10 * 10 * distsq1 < thresh * thresh * distsq2) {
+				matches.add(new Pair<T>(keys1.get(i), modelKeypoints.get(argmins[i])));
 			}
 		}
 
@@ -126,11 +140,26 @@ public class FastBasicKeypointMatcher<T extends Keypoint> extends BasicMatcher<T
 	@Override
 	public void setModelFeatures(List<T> modelkeys) {
 		modelKeypoints = modelkeys;
+		modelDescriptors = BlockedDescriptorMatcher.pack(modelkeys);
+		modelKeypointsKNN = null;
+	}
+
+	/**
+	 * Get a KD-Tree over the model keypoints, building it if necessary.
+	 * 
+	 * @return the KD-Tree
+	 * @deprecated use {@link #engine} with {@link #modelDescriptors} instead
+	 */
+	@Deprecated
+	protected ByteNearestNeighboursKDTree getModelKeypointsKNN() {
+		if (modelKeypointsKNN == null) {
+			final byte[][] data = new byte[modelKeypoints.size()][];
+			for (int i = 0; i < modelKeypoints.size(); i++)
+				data[i] = modelKeypoints.get(i).ivec;
 
-		final byte[][] data = new byte[modelkeys.size()][];
-		for (int i = 0; i < modelkeys.size(); i++)
-			data[i] = modelkeys.get(i).ivec;
+			modelKeypointsKNN = new ByteNearestNeighboursKDTree(data, 1, 100);
+		}
 
-		modelKeypointsKNN = new ByteNearestNeighboursKDTree(data, 1, 100);
+		return modelKeypointsKNN;
 	}
 }
@@ -64,20 +64,17 @@ public class FastLimitedBasicKeypointMatcher<T extends Keypoint> extends FastBas
 	{
 		matches = new ArrayList<Pair<T>>();
 		
-		byte [][] data = new byte[keys1.size()][];
-		for (int i=0; i<keys1.size(); i++)
-			data[i] = keys1.get(i).ivec;
-		
-		int [][] argmins = new int[keys1.size()][2];
-		float [][] mins = new float[keys1.size()][2];
-		modelKeypointsKNN.searchKNN(data, 2, argmins, mins);
+		final BlockedDescriptorMatcher.Result result = engine.match(BlockedDescriptorMatcher.pack(keys1), modelDescriptors);
+		final int [] argmins = result.getNearest();
+		final float [] mins1 = result.getNearestDistance();
+		final float [] mins2 = result.getSecondDistance();
 		
 		for (int i=0; i<keys1.size(); i++) {
-			float distsq1 = mins[i][0];
-			float distsq2 = mins[i][1];
+			float distsq1 = mins1[i];
+			float distsq2 = mins2[i];
 			
-			if (10 * 10 * distsq1 < thresh * thresh * distsq2) {
-				matches.add(new Pair<T>(keys1.get(i), modelKeypoints.get(argmins[i][0])));
+			if (argmins[i] >= 0 && 10 * 10 * distsq1 < thresh * thresh * distsq2) {
+				matches.add(new Pair<T>(keys1.get(i), modelKeypoints.get(argmins[i])));
 		    }
 			
 			if (matches.size() >= limit) break;
@@ -31,11 +31,10 @@ package org.openimaj.feature.local.matcher;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Queue;
 
+import org.openimaj.feature.local.matcher.BlockedDescriptorMatcher.PackedDescriptors;
 import org.openimaj.image.feature.local.keypoints.Keypoint;
-import org.openimaj.knn.approximate.ByteNearestNeighboursKDTree;
+import org.openimaj.util.array.ArrayUtils;
 import org.openimaj.util.pair.Pair;
 
 
@@ -50,7 +49,8 @@ import org.openimaj.util.pair.Pair;
  * @param <T>
  */
 public class FastLimitedEuclideanKeypointMatcher<T extends Keypoint> implements LocalFeatureMatcher<T> {
-	private ByteNearestNeighboursKDTree modelKeypointsKNN;
+	private BlockedDescriptorMatcher engine = new BlockedDescriptorMatcher();
+	private PackedDescriptors modelDescriptors;
 	private int limit;
 	private List<Pair<T>> matches;
 	private List<T> modelKeypoints;
@@ -66,50 +66,19 @@ public class FastLimitedEuclideanKeypointMatcher<T extends Keypoint> implements
 	@Override
 	public void setModelFeatures(List<T> modelkeys) {
 		modelKeypoints = modelkeys;
-		
-		byte [][] data = new byte[modelkeys.size()][];
-		for (int i=0; i<modelkeys.size(); i++)
-			data[i] = modelkeys.get(i).ivec;
-		
-		modelKeypointsKNN = new ByteNearestNeighboursKDTree(data, 8, 768);
+		modelDescriptors = BlockedDescriptorMatcher.pack(modelkeys);
 	}
 
-	class WPair extends Pair<T> implements Comparable<WPair> {
-		float weight;
-
-		public WPair(T obj1, T obj2, float weight) {
-			super(obj1, obj2);
-			this.weight = weight;
-		}
-
-		@Override
-		public int compareTo(WPair o) {
-			if (weight == o.weight) return 0;
-			if (weight < o.weight) return -1;
-			return 1;
-		}
-	}
-	
 	@Override
 	public boolean findMatches(List<T> keys1) {
-		Queue<WPair> mq = new PriorityQueue<WPair>();
-		
-		byte [][] data = new byte[keys1.size()][];
-		for (int i=0; i<keys1.size(); i++)
-			data[i] = keys1.get(i).ivec;
-		
-		int [] argmins = new int[keys1.size()];
-		float [] mins = new float[keys1.size()];
-		modelKeypointsKNN.searchNN(data, argmins, mins);
-		
-		for (int i=0; i<keys1.size(); i++) {
-			float distsq = mins[i];
-			
-			mq.add(new WPair(keys1.get(i), modelKeypoints.get(argmins[i]), distsq));
-		}
+		final BlockedDescriptorMatcher.Result result = engine.match(BlockedDescriptorMatcher.pack(keys1), modelDescriptors);
+		final int [] argmins = result.getNearest();
+		final int [] order = ArrayUtils.indexSort(result.getNearestDistance());
 		
-		matches = new ArrayList<Pair<T>>(limit);
-		for (int i=0; i<limit; i++) matches.add(mq.poll());
+		final int n = modelDescriptors.size() == 0 ? 0 : Math.min(limit, order.length);
+		matches = new ArrayList<Pair<T>>(n);
+		for (int i=0; i<n; i++) 
+			matches.add(new Pair<T>(keys1.get(order[i]), modelKeypoints.get(argmins[order[i]])));
 		
 	    return true;
 	}
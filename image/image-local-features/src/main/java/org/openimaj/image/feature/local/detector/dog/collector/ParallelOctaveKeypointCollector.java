@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.feature.local.detector.dog.collector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openimaj.feature.OrientedFeatureVector;
+import org.openimaj.feature.local.list.LocalFeatureList;
+import org.openimaj.image.FImage;
+import org.openimaj.image.analysis.pyramid.gaussian.GaussianOctave;
+import org.openimaj.image.feature.local.detector.dog.extractor.GradientFeatureExtractor;
+import org.openimaj.image.feature.local.detector.pyramid.OctaveInterestPointFinder;
+import org.openimaj.image.feature.local.extraction.GradientScaleSpaceImageExtractorProperties;
+import org.openimaj.image.feature.local.keypoints.Keypoint;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.Parallel;
+import org.openimaj.util.parallel.Parallel.IntRange;
+
+/**
+ * A version of {@link OctaveKeypointCollector} that computes the feature
+ * vectors of the detected interest points using multiple threads.
+ * <p>
+ * Interest points are buffered as they are detected. When the interest points
+ * of an octave are complete (i.e. when a point from a different octave is
+ * found, or {@link #getFeatures()} is called) the gradient images of each
+ * scale are computed, and then the features of the buffered points are
+ * extracted in parallel. The resultant {@link Keypoint}s are added to the
+ * feature list in the order that the interest points were detected, so the
+ * output is identical to that of an {@link OctaveKeypointCollector} using the
+ * same extractor.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class ParallelOctaveKeypointCollector
+		extends
+		AbstractOctaveLocalFeatureCollector<GaussianOctave<FImage>, GradientFeatureExtractor, Keypoint, FImage>
+{
+	private static class PendingPoint {
+		FImage image;
+		float x;
+		float y;
+		float scale;
+		float octSize;
+	}
+
+	private GaussianOctave<FImage> pendingOctave;
+	private List<PendingPoint> pending = new ArrayList<PendingPoint>();
+
+	/**
+	 * Construct with the given feature extractor.
+	 *
+	 * @param featureExtractor
+	 *            the feature extractor.
+	 */
+	public ParallelOctaveKeypointCollector(GradientFeatureExtractor featureExtractor) {
+		super(featureExtractor);
+	}
+
+	@Override
+	public void foundInterestPoint(OctaveInterestPointFinder<GaussianOctave<FImage>, FImage> finder, float x,
+			float y, float octaveScale)
+	{
+		final GaussianOctave<FImage> octave = finder.getOctave();
+
+		if (octave != pendingOctave) {
+			extractPending();
+			pendingOctave = octave;
+		}
+
+		final PendingPoint pt = new PendingPoint();
+		pt.image = octave.images[finder.getCurrentScaleIndex()];
+		pt.x = x;
+		pt.y = y;
+		pt.scale = octaveScale;
+		pt.octSize = octave.octaveSize;
+
+		pending.add(pt);
+	}
+
+	@Override
+	public LocalFeatureList<Keypoint> getFeatures() {
+		extractPending();
+
+		return features;
+	}
+
+	/**
+	 * Extract the features of all the buffered interest points
+	 */
+	protected void extractPending() {
+		if (pending.isEmpty())
+			return;
+
+		final List<PendingPoint> points = pending;
+		pending = new ArrayList<PendingPoint>();
+		pendingOctave = null;
+
+		// find the distinct scale images; points from the same image are
+		// always contiguous
+		final List<FImage> images = new ArrayList<FImage>();
+		final int[] imageIndex = new int[points.size()];
+		for (int i = 0; i < points.size(); i++) {
+			final FImage image = points.get(i).image;
+
+			if (images.isEmpty() || images.get(images.size() - 1) != image)
+				images.add(image);
+
+			imageIndex[i] = images.size() - 1;
+		}
+
+		// compute the gradients of each distinct scale image
+		@SuppressWarnings("unchecked")
+		final GradientScaleSpaceImageExtractorProperties<FImage>[] gradients = new GradientScaleSpaceImageExtractorProperties[images
+				.size()];
+		Parallel.forIndex(0, images.size(), 1, new Operation<Integer>() {
+			@Override
+			public void perform(Integer i) {
+				gradients[i] = GradientFeatureExtractor.computeGradientProperties(images.get(i));
+			}
+		});
+
+		// extract the features
+		final OrientedFeatureVector[][] results = new OrientedFeatureVector[points.size()][];
+		Parallel.forRange(0, points.size(), 1, new Operation<IntRange>() {
+			@Override
+			public void perform(IntRange range) {
+				final GradientScaleSpaceImageExtractorProperties<FImage> props = new GradientScaleSpaceImageExtractorProperties<FImage>();
+
+				for (int i = range.start; i < range.stop; i += range.incr) {
+					final PendingPoint pt = points.get(i);
+					final GradientScaleSpaceImageExtractorProperties<FImage> gprops = gradients[imageIndex[i]];
+
+					props.image = gprops.image;
+					props.magnitude = gprops.magnitude;
+					props.orientation = gprops.orientation;
+					props.x = pt.x;
+					props.y = pt.y;
+					props.scale = pt.scale;
+
+					results[i] = featureExtractor.extractFeatureFromGradients(props);
+				}
+			}
+		});
+
+		// add the features in detection order
+		for (int i = 0; i < results.length; i++) {
+			final PendingPoint pt = points.get(i);
+
+			for (final OrientedFeatureVector fv : results[i]) {
+				features.add(new Keypoint(pt.octSize * pt.x, pt.octSize * pt.y, fv.orientation, pt.octSize * pt.scale,
+						fv.values));
+			}
+		}
+	}
+}
@@ -128,6 +128,54 @@ public class GradientFeatureExtractor implements ScaleSpaceFeatureExtractor<Orie
 		return ret;
 	}
 
+	/**
+	 * Extract features from properties that already contain the gradient
+	 * images (for example, created with
+	 * {@link #computeGradientProperties(FImage)}). Unlike
+	 * {@link #extractFeature(ScaleSpaceImageExtractorProperties)}, this method
+	 * does not use any internal cached state, and so can be safely called from
+	 * multiple threads concurrently as long as each thread uses its own
+	 * properties object.
+	 *
+	 * @param gprops
+	 *            the properties, including gradient magnitudes and
+	 *            orientations
+	 * @return the extracted features
+	 */
+	public OrientedFeatureVector[] extractFeatureFromGradients(GradientScaleSpaceImageExtractorProperties<FImage> gprops)
+	{
+		final float[] dominantOrientations = dominantOrientationExtractor.extractFeatureRaw(gprops);
+
+		final OrientedFeatureVector[] ret = new OrientedFeatureVector[dominantOrientations.length];
+
+		for (int i = 0; i < dominantOrientations.length; i++) {
+			ret[i] = createFeature(gprops, dominantOrientations[i]);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Create a new GradientScaleSpaceImageExtractorProperties for the given
+	 * image, with freshly computed gradient magnitude and orientation images.
+	 * The position and scale of the returned properties are not set.
+	 *
+	 * @param image
+	 *            the image
+	 * @return the properties
+	 */
+	public static GradientScaleSpaceImageExtractorProperties<FImage> computeGradientProperties(FImage image) {
+		final GradientScaleSpaceImageExtractorProperties<FImage> gprops = new GradientScaleSpaceImageExtractorProperties<FImage>();
+
+		gprops.image = image;
+		gprops.orientation = new FImage(image.width, image.height);
+		gprops.magnitude = new FImage(image.width, image.height);
+
+		FImageGradients.gradientMagnitudesAndOrientations(image, gprops.magnitude, gprops.orientation);
+
+		return gprops;
+	}
+
 	/**
 	 * Get the GradientScaleSpaceImageExtractorProperties for the given
 	 * properties. The returned properties are the same as the input properties,
@@ -177,9 +225,19 @@ public class GradientFeatureExtractor implements ScaleSpaceFeatureExtractor<Orie
 	 * extract the relevant feature vector.
 	 */
 	protected OrientedFeatureVector createFeature(final float orientation) {
-		final float fx = currentGradientProperties.x;
-		final float fy = currentGradientProperties.y;
-		final float scale = currentGradientProperties.scale;
+		return createFeature(currentGradientProperties, orientation);
+	}
+
+	/*
+	 * As createFeature(float), but using the given properties rather than the
+	 * cached ones.
+	 */
+	protected OrientedFeatureVector createFeature(final GradientScaleSpaceImageExtractorProperties<FImage> gprops,
+			final float orientation)
+	{
+		final float fx = gprops.x;
+		final float fy = gprops.y;
+		final float scale = gprops.scale;
 
 		// create a new feature provider and initialise it with the dominant
 		// orientation
@@ -217,8 +275,8 @@ public class GradientFeatureExtractor implements ScaleSpaceFeatureExtractor<Orie
 		final int orientedSamplingBoxHalfSize = Math.round(orientedSamplingBoxSize / 2.0f);
 
 		// get the images and their size
-		final FImage mag = currentGradientProperties.magnitude;
-		final FImage ori = currentGradientProperties.orientation;
+		final FImage mag = gprops.magnitude;
+		final FImage ori = gprops.orientation;
 		final int width = mag.width;
 		final int height = mag.height;
 
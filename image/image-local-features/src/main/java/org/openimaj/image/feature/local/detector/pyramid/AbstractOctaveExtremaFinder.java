@@ -29,9 +29,14 @@
  */
 package org.openimaj.image.feature.local.detector.pyramid;
 
+import gnu.trove.list.array.TIntArrayList;
+
 import org.openimaj.image.FImage;
 import org.openimaj.image.analysis.pyramid.Octave;
 import org.openimaj.image.analysis.pyramid.gaussian.GaussianOctave;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.Parallel;
+import org.openimaj.util.parallel.Parallel.IntRange;
 
 /**
  * <p>
@@ -51,6 +56,14 @@ import org.openimaj.image.analysis.pyramid.gaussian.GaussianOctave;
  * The AbstractOctaveExtremaFinder uses an event listener paradigm. Once
  * interest points are found, the internal listener will be informed.
  * </p>
+ * <p>
+ * If parallel mode is enabled with {@link #setParallel(boolean)}, the search
+ * for candidate extrema in each scale is split across rows and performed by
+ * multiple threads. The candidates are then passed to
+ * {@link #processExtrema(FImage[], int, int, int, float)} on the calling
+ * thread in exactly the same order as the serial search, so the listener sees
+ * an identical sequence of interest points.
+ * </p>
  *
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  *
@@ -67,6 +80,8 @@ public abstract class AbstractOctaveExtremaFinder<OCTAVE extends GaussianOctave<
 	// IJCV, p.12)
 	protected float eigenvalueRatio = DEFAULT_EIGENVALUE_RATIO;
 
+	protected boolean parallel = false;
+
 	/**
 	 * Construct an AbstractOctaveExtremaFinder with the default Eigenvalue
 	 * ratio threshold.
@@ -95,6 +110,25 @@ public abstract class AbstractOctaveExtremaFinder<OCTAVE extends GaussianOctave<
 		return currentScaleIndex;
 	}
 
+	/**
+	 * Is the search for extrema performed in parallel?
+	 *
+	 * @return true if the search is parallel; false otherwise
+	 */
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * Set whether the search for extrema is performed in parallel.
+	 *
+	 * @param parallel
+	 *            true if the search should be parallel; false otherwise
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
 	@Override
 	public void process(OCTAVE octave) {
 		beforeProcess(octave);
@@ -106,18 +140,16 @@ public abstract class AbstractOctaveExtremaFinder<OCTAVE extends GaussianOctave<
 		final int width = images[0].width;
 		final int borderDist = octave.options.getBorderPixels();
 
+		if (parallel) {
+			processParallel(images, width, height, borderDist);
+			return;
+		}
+
 		// search through the scale-space images, leaving a border
 		for (currentScaleIndex = 1; currentScaleIndex < images.length - 1; currentScaleIndex++) {
 			for (int y = borderDist; y < height - borderDist; y++) {
 				for (int x = borderDist; x < width - borderDist; x++) {
-					final float val = images[currentScaleIndex].pixels[y][x];
-
-					if (firstCheck(val, x, y, currentScaleIndex, images) &&
-							isLocalExtremum(val, images[currentScaleIndex - 1], x, y) &&
-							isLocalExtremum(val, images[currentScaleIndex], x, y) &&
-							isLocalExtremum(val, images[currentScaleIndex + 1], x, y) &&
-							isNotEdge(images[currentScaleIndex], x, y))
-					{
+					if (isExtremum(images, currentScaleIndex, x, y)) {
 						processExtrema(images, currentScaleIndex, x, y, octave.octaveSize);
 					}
 				}
@@ -125,6 +157,73 @@ public abstract class AbstractOctaveExtremaFinder<OCTAVE extends GaussianOctave<
 		}
 	}
 
+	private void processParallel(final FImage[] images, final int width, final int height, final int borderDist) {
+		final int nRows = height - 2 * borderDist;
+		if (nRows <= 0)
+			return;
+
+		final TIntArrayList[] candidates = new TIntArrayList[nRows];
+
+		for (currentScaleIndex = 1; currentScaleIndex < images.length - 1; currentScaleIndex++) {
+			final int s = currentScaleIndex;
+
+			// find the candidates in each row concurrently...
+			Parallel.forRange(borderDist, height - borderDist, 1, new Operation<IntRange>() {
+				@Override
+				public void perform(IntRange range) {
+					for (int y = range.start; y < range.stop; y += range.incr) {
+						TIntArrayList row = null;
+
+						for (int x = borderDist; x < width - borderDist; x++) {
+							if (isExtremum(images, s, x, y)) {
+								if (row == null)
+									row = new TIntArrayList();
+								row.add(x);
+							}
+						}
+
+						candidates[y - borderDist] = row;
+					}
+				}
+			});
+
+			// ...and then process them serially in scan order
+			for (int i = 0; i < nRows; i++) {
+				final TIntArrayList row = candidates[i];
+
+				if (row != null) {
+					for (int j = 0; j < row.size(); j++)
+						processExtrema(images, s, row.get(j), i + borderDist, octave.octaveSize);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test whether the given point is an extremum that should be processed.
+	 * This method must not modify the state of the finder, as it might be
+	 * called concurrently from multiple threads.
+	 *
+	 * @param images
+	 *            the scale images
+	 * @param s
+	 *            the scale index
+	 * @param x
+	 *            the x-coordinate of the point.
+	 * @param y
+	 *            the y-coordinate of the point.
+	 * @return true if the point is an extremum; false otherwise.
+	 */
+	protected boolean isExtremum(FImage[] images, int s, int x, int y) {
+		final float val = images[s].pixels[y][x];
+
+		return firstCheck(val, x, y, s, images) &&
+				isLocalExtremum(val, images[s - 1], x, y) &&
+				isLocalExtremum(val, images[s], x, y) &&
+				isLocalExtremum(val, images[s + 1], x, y) &&
+				isNotEdge(images[s], x, y);
+	}
+
 	/**
 	 * Perform the first of the checks that determine whether a point is a valid
 	 * interest point. This can be overridden to allow for cheaper tests to
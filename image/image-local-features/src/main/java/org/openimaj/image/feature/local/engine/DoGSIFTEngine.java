@@ -39,6 +39,7 @@ import org.openimaj.image.analysis.pyramid.gaussian.GaussianPyramid;
 import org.openimaj.image.feature.local.descriptor.gradient.SIFTFeatureProvider;
 import org.openimaj.image.feature.local.detector.dog.collector.Collector;
 import org.openimaj.image.feature.local.detector.dog.collector.OctaveKeypointCollector;
+import org.openimaj.image.feature.local.detector.dog.collector.ParallelOctaveKeypointCollector;
 import org.openimaj.image.feature.local.detector.dog.extractor.DominantOrientationExtractor;
 import org.openimaj.image.feature.local.detector.dog.extractor.GradientFeatureExtractor;
 import org.openimaj.image.feature.local.detector.dog.extractor.OrientationHistogramExtractor;
@@ -57,6 +58,12 @@ import org.openimaj.image.feature.local.keypoints.Keypoint;
  * the work needed to extract SIFT features into a single place without having
  * to deal with the setup of pyramid finders, collectors and providers.
  * </p>
+ * <p>
+ * If {@link DoGSIFTEngineOptions#setParallel(boolean)} is enabled, the
+ * Gaussian blurring, extrema detection and descriptor computation are spread
+ * across multiple threads; the resultant features are identical to those
+ * produced by the single-threaded mode.
+ * </p>
  * 
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  * 
@@ -103,31 +110,38 @@ public class DoGSIFTEngine implements Engine<Keypoint, FImage> {
 
 	@Override
 	public LocalFeatureList<Keypoint> findFeatures(FImage image) {
+		final BasicOctaveExtremaFinder innerFinder = new BasicOctaveExtremaFinder(options.magnitudeThreshold,
+				options.eigenvalueRatio);
+		innerFinder.setParallel(options.parallel);
+
 		final OctaveInterestPointFinder<GaussianOctave<FImage>, FImage> finder =
-				new DoGOctaveExtremaFinder(new BasicOctaveExtremaFinder(options.magnitudeThreshold,
-						options.eigenvalueRatio));
+				new DoGOctaveExtremaFinder(innerFinder);
 
-		final Collector<GaussianOctave<FImage>, Keypoint, FImage> collector = new OctaveKeypointCollector<FImage>(
-				new GradientFeatureExtractor(
-						new DominantOrientationExtractor(
-								options.peakThreshold,
-								new OrientationHistogramExtractor(
-										options.numOriHistBins,
-										options.scaling,
-										options.smoothingIterations,
-										options.samplingSize
-								)
-						),
-						new SIFTFeatureProvider(
-								options.numOriBins,
-								options.numSpatialBins,
-								options.valueThreshold,
-								options.gaussianSigma
-						),
-						options.magnificationFactor * options.numSpatialBins
-				)
+		final GradientFeatureExtractor extractor = new GradientFeatureExtractor(
+				new DominantOrientationExtractor(
+						options.peakThreshold,
+						new OrientationHistogramExtractor(
+								options.numOriHistBins,
+								options.scaling,
+								options.smoothingIterations,
+								options.samplingSize
+						)
+				),
+				new SIFTFeatureProvider(
+						options.numOriBins,
+						options.numSpatialBins,
+						options.valueThreshold,
+						options.gaussianSigma
+				),
+				options.magnificationFactor * options.numSpatialBins
 				);
 
+		final Collector<GaussianOctave<FImage>, Keypoint, FImage> collector;
+		if (options.parallel)
+			collector = new ParallelOctaveKeypointCollector(extractor);
+		else
+			collector = new OctaveKeypointCollector<FImage>(extractor);
+
 		finder.setOctaveInterestPointListener(collector);
 
 		options.setOctaveProcessor(finder);
@@ -34,6 +34,8 @@ import org.openimaj.image.Image;
 import org.openimaj.image.analysis.pyramid.gaussian.GaussianPyramidOptions;
 import org.openimaj.image.feature.local.detector.dog.extractor.DominantOrientationExtractor;
 import org.openimaj.image.feature.local.detector.pyramid.BasicOctaveExtremaFinder;
+import org.openimaj.image.processing.convolution.FGaussianConvolve;
+import org.openimaj.image.processing.convolution.FImageConvolveSeparable;
 import org.openimaj.image.processor.SinglebandImageProcessor;
 
 /**
@@ -110,6 +112,13 @@ public class DoGSIFTEngineOptions<IMAGE extends Image<?, IMAGE> & SinglebandImag
 	 */
 	protected float gaussianSigma = 1.0f;
 
+	/**
+	 * Should the scale-space construction, extrema detection and feature
+	 * extraction use multiple threads (default false). The features produced
+	 * are identical to the serial mode.
+	 */
+	protected boolean parallel = false;
+
 	/**
 	 * Get the threshold on the ratio of the Eigenvalues of the Hessian matrix
 	 * (Lowe IJCV, p.12)
@@ -361,4 +370,43 @@ public class DoGSIFTEngineOptions<IMAGE extends Image<?, IMAGE> & SinglebandImag
 	public void setGaussianSigma(float gaussianSigma) {
 		this.gaussianSigma = gaussianSigma;
 	}
+
+	/**
+	 * Should the scale-space construction, extrema detection and feature
+	 * extraction use multiple threads? The features produced are identical to
+	 * the serial mode.
+	 * 
+	 * @return true if multiple threads will be used; false otherwise
+	 */
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * Set whether the scale-space construction, extrema detection and feature
+	 * extraction should use multiple threads. The features produced are
+	 * identical to the serial mode.
+	 * 
+	 * @param parallel
+	 *            true if multiple threads should be used; false otherwise
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	@Override
+	public SinglebandImageProcessor<Float, FImage> createGaussianBlur(float sigma) {
+		if (!parallel)
+			return super.createGaussianBlur(sigma);
+
+		final float[] kernel = FGaussianConvolve.makeKernel(sigma);
+
+		return new SinglebandImageProcessor<Float, FImage>() {
+			@Override
+			public void processImage(FImage image) {
+				FImageConvolveSeparable.convolveHorizontalParallel(image, kernel);
+				FImageConvolveSeparable.convolveVerticalParallel(image, kernel);
+			}
+		};
+	}
 }
@@ -0,0 +1,258 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.feature.local.matcher;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openimaj.feature.local.matcher.BlockedDescriptorMatcher.Result;
+import org.openimaj.image.feature.local.keypoints.Keypoint;
+import org.openimaj.util.pair.Pair;
+
+/**
+ * Tests for {@link BlockedDescriptorMatcher} and the matchers that use it
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class BlockedDescriptorMatcherTest {
+	private List<Keypoint> queries;
+	private List<Keypoint> targets;
+
+	private int[] nearest;
+	private float[] nearestDistance;
+	private float[] secondDistance;
+	private int[] reverseNearest;
+
+	/**
+	 * Create some random keypoints, some of which have a near duplicate in the
+	 * other set, and compute the expected results by brute force.
+	 */
+	@Before
+	public void setup() {
+		final Random rng = new Random(0);
+
+		targets = makeKeypoints(rng, 300);
+		queries = makeKeypoints(rng, 250);
+
+		for (int i = 0; i < 50; i++) {
+			final byte[] ivec = queries.get(i * 3).ivec;
+			System.arraycopy(targets.get(i * 5).ivec, 0, ivec, 0, ivec.length);
+			ivec[i] += 3;
+		}
+
+		// a duplicate target to check that ties go to the lowest index
+		System.arraycopy(targets.get(11).ivec, 0, targets.get(12).ivec, 0, 128);
+
+		nearest = new int[queries.size()];
+		nearestDistance = new float[queries.size()];
+		secondDistance = new float[queries.size()];
+		reverseNearest = new int[targets.size()];
+		final float[] reverseDistance = new float[targets.size()];
+
+		for (int t = 0; t < targets.size(); t++)
+			reverseDistance[t] = Float.MAX_VALUE;
+
+		for (int q = 0; q < queries.size(); q++) {
+			nearestDistance[q] = Float.MAX_VALUE;
+			secondDistance[q] = Float.MAX_VALUE;
+
+			for (int t = 0; t < targets.size(); t++) {
+				final float d = distance(queries.get(q).ivec, targets.get(t).ivec);
+
+				if (d < nearestDistance[q]) {
+					secondDistance[q] = nearestDistance[q];
+					nearestDistance[q] = d;
+					nearest[q] = t;
+				} else if (d < secondDistance[q]) {
+					secondDistance[q] = d;
+				}
+
+				if (d < reverseDistance[t]) {
+					reverseDistance[t] = d;
+					reverseNearest[t] = q;
+				}
+			}
+		}
+	}
+
+	private static List<Keypoint> makeKeypoints(Random rng, int n) {
+		final List<Keypoint> keys = new ArrayList<Keypoint>();
+
+		for (int i = 0; i < n; i++) {
+			final Keypoint k = new Keypoint(128);
+			rng.nextBytes(k.ivec);
+			keys.add(k);
+		}
+
+		return keys;
+	}
+
+	private static float distance(byte[] a, byte[] b) {
+		int sum = 0;
+		for (int i = 0; i < a.length; i++) {
+			final int d = a[i] - b[i];
+			sum += d * d;
+		}
+		return sum;
+	}
+
+	/**
+	 * Test that the blocked search gives the same results as brute force for
+	 * a range of tile sizes
+	 */
+	@Test
+	public void testMatchesBruteForce() {
+		final int[][] sizes = { { 1, 1 }, { 7, 13 }, { 32, 256 }, { 1000, 1000 } };
+
+		for (final int[] s : sizes) {
+			final BlockedDescriptorMatcher engine = new BlockedDescriptorMatcher();
+			engine.setBlockSizes(s[0], s[1]);
+
+			final Result result = engine.match(BlockedDescriptorMatcher.pack(queries),
+					BlockedDescriptorMatcher.pack(targets));
+
+			assertArrayEquals(nearest, result.getNearest());
+			assertArrayEquals(nearestDistance, result.getNearestDistance(), 0f);
+			assertArrayEquals(secondDistance, result.getSecondDistance(), 0f);
+			assertArrayEquals(reverseNearest, result.getReverseNearest());
+		}
+	}
+
+	/**
+	 * Test the ratio test
+	 */
+	@Test
+	public void testRatioTest() {
+		final Result result = new BlockedDescriptorMatcher(null).match(BlockedDescriptorMatcher.pack(queries),
+				BlockedDescriptorMatcher.pack(targets));
+
+		final List<Integer> expected = new ArrayList<Integer>();
+		for (int q = 0; q < queries.size(); q++)
+			if (nearestDistance[q] < 0.64f * secondDistance[q])
+				expected.add(q);
+
+		final int[] actual = result.ratioTest(0.8f);
+		assertEquals(expected.size(), actual.length);
+		for (int i = 0; i < actual.length; i++)
+			assertEquals((int) expected.get(i), actual[i]);
+	}
+
+	/**
+	 * Test that the two-way matcher returns the mutual nearest neighbours
+	 */
+	@Test
+	public void testTwoWayMatcher() {
+		final BasicTwoWayMatcher<Keypoint> matcher = new BasicTwoWayMatcher<Keypoint>();
+		matcher.setModelFeatures(targets);
+		matcher.findMatches(queries);
+
+		int i = 0;
+		for (int q = 0; q < queries.size(); q++) {
+			if (reverseNearest[nearest[q]] == q) {
+				final Pair<Keypoint> match = matcher.getMatches().get(i++);
+				assertSame(queries.get(q), match.firstObject());
+				assertSame(targets.get(nearest[q]), match.secondObject());
+			}
+		}
+		assertEquals(i, matcher.getMatches().size());
+	}
+
+	/**
+	 * Test that a subclass overriding findMatch is still used by the two-way
+	 * matcher, and gives the same matches as the blocked search
+	 */
+	@Test
+	public void testTwoWayMatcherOverride() {
+		final int[] calls = { 0 };
+		final BasicTwoWayMatcher<Keypoint> matcher = new BasicTwoWayMatcher<Keypoint>(true) {
+			@Override
+			protected Keypoint findMatch(Keypoint query, List<Keypoint> features) {
+				calls[0]++;
+				return super.findMatch(query, features);
+			}
+		};
+		matcher.setModelFeatures(targets);
+		matcher.findMatches(queries);
+
+		final BasicTwoWayMatcher<Keypoint> fast = new BasicTwoWayMatcher<Keypoint>();
+		fast.setModelFeatures(targets);
+		fast.findMatches(queries);
+
+		assertTrue(calls[0] > 0);
+		assertEquals(fast.getMatches().size(), matcher.getMatches().size());
+		for (int i = 0; i < fast.getMatches().size(); i++) {
+			assertSame(fast.getMatches().get(i).firstObject(), matcher.getMatches().get(i).firstObject());
+			assertSame(fast.getMatches().get(i).secondObject(), matcher.getMatches().get(i).secondObject());
+		}
+	}
+
+	/**
+	 * Test that the ratio test matcher finds the planted matches
+	 */
+	@Test
+	public void testBasicMatcher() {
+		final FastBasicKeypointMatcher<Keypoint> matcher = new FastBasicKeypointMatcher<Keypoint>(8);
+		matcher.setModelFeatures(targets);
+		matcher.findMatches(queries);
+
+		assertEquals(50, matcher.getMatches().size());
+		for (final Pair<Keypoint> match : matcher.getMatches()) {
+			final int q = queries.indexOf(match.firstObject());
+			assertSame(targets.get((q / 3) * 5), match.secondObject());
+		}
+		assertNull(matcher.modelKeypointsKNN);
+		assertEquals(targets.size(), matcher.getModelKeypointsKNN().size());
+	}
+
+	/**
+	 * Test that the limited matcher does not return more matches than there
+	 * are queries
+	 */
+	@Test
+	public void testLimitedMatcher() {
+		final FastLimitedEuclideanKeypointMatcher<Keypoint> matcher = new FastLimitedEuclideanKeypointMatcher<Keypoint>(
+				1000);
+		matcher.setModelFeatures(targets);
+		matcher.findMatches(queries.subList(0, 10));
+
+		assertEquals(10, matcher.getMatches().size());
+		assertEquals(0f, distance(matcher.getMatches().get(0).firstObject().ivec,
+				matcher.getMatches().get(0).secondObject().ivec), 9f);
+	}
+}
@@ -30,6 +30,7 @@
 package org.openimaj.image.analysis.algorithm;
 
 import org.openimaj.image.FImage;
+import org.openimaj.image.FlatFImage;
 import org.openimaj.image.analyser.ImageAnalyser;
 import org.openimaj.math.geometry.shape.Rectangle;
 
@@ -47,10 +48,17 @@ import org.openimaj.math.geometry.shape.Rectangle;
  */
 public class SummedAreaTable implements ImageAnalyser<FImage> {
 	/**
-	 * The SAT data
+	 * The SAT data. This is <code>null</code> if the table was computed from a
+	 * {@link FlatFImage}, in which case {@link #flatData} holds the table.
 	 */
 	public FImage data;
 
+	/**
+	 * The SAT data, if the table was computed from a {@link FlatFImage};
+	 * <code>null</code> otherwise.
+	 */
+	public FlatFImage flatData;
+
 	/**
 	 * Construct an empty SAT
 	 */
@@ -67,7 +75,18 @@ public class SummedAreaTable implements ImageAnalyser<FImage> {
 		computeTable(image);
 	}
 
+	/**
+	 * Construct a SAT from the provided image
+	 * 
+	 * @param image
+	 *            the image
+	 */
+	public SummedAreaTable(FlatFImage image) {
+		computeTable(image);
+	}
+
 	protected void computeTable(FImage image) {
+		flatData = null;
 		data = new FImage(image.width + 1, image.height + 1);
 
 		for (int y = 0; y < image.height; y++) {
@@ -80,6 +99,28 @@ public class SummedAreaTable implements ImageAnalyser<FImage> {
 		}
 	}
 
+	protected void computeTable(FlatFImage image) {
+		final int w = image.width + 1;
+		final float[] sat = new float[w * (image.height + 1)];
+		final float[] src = image.data;
+
+		for (int y = 0; y < image.height; y++) {
+			final int srcRow = image.offset + y * image.stride;
+			final int prev = y * w;
+			final int curr = prev + w;
+
+			for (int x = 0; x < image.width; x++) {
+				sat[curr + x + 1] = src[srcRow + x] +
+						sat[curr + x] +
+						sat[prev + x + 1] -
+						sat[prev + x];
+			}
+		}
+
+		data = null;
+		flatData = new FlatFImage(sat, 0, w, w, image.height + 1);
+	}
+
 	/**
 	 * Calculate the sum of pixels in the image used for constructing this SAT
 	 * within the rectangle defined by (x1,y1) [top-left coordinate] and (x2,y2)
@@ -96,6 +137,14 @@ public class SummedAreaTable implements ImageAnalyser<FImage> {
 	 * @return sum of pixels in given rectangle
 	 */
 	public float calculateArea(int x1, int y1, int x2, int y2) {
+		if (flatData != null) {
+			final float[] sat = flatData.data;
+			final int r1 = y1 * flatData.stride;
+			final int r2 = y2 * flatData.stride;
+
+			return sat[r1 + x1] + sat[r2 + x2] - sat[r1 + x2] - sat[r2 + x1];
+		}
+
 		final float A = data.pixels[y1][x1];
 		final float B = data.pixels[y1][x2];
 		final float C = data.pixels[y2][x2];
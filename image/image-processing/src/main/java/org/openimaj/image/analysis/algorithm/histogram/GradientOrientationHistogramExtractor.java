@@ -122,4 +122,23 @@ implements ImageAnalyser<FImage>
 
 		computeSATs(magnitudes);
 	}
+
+	/**
+	 * Get the range of orientations extracted.
+	 *
+	 * @return the orientation mode
+	 */
+	public FImageGradients.Mode getOrientationMode() {
+		return orientationMode;
+	}
+
+	/**
+	 * Is cyclic linear interpolation used to share magnitudes across the two
+	 * closest bins?
+	 *
+	 * @return true if histogram interpolation is used; false otherwise
+	 */
+	public boolean isHistogramInterpolation() {
+		return histogramInterpolation;
+	}
 }
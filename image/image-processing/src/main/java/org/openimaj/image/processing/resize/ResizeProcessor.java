@@ -32,6 +32,7 @@ package org.openimaj.image.processing.resize;
 import org.openimaj.citation.annotation.Reference;
 import org.openimaj.citation.annotation.ReferenceType;
 import org.openimaj.image.FImage;
+import org.openimaj.image.FlatFImage;
 import org.openimaj.image.Image;
 import org.openimaj.image.processing.resize.filters.TriangleFilter;
 import org.openimaj.image.processor.SinglebandImageProcessor;
@@ -529,6 +530,59 @@ public class ResizeProcessor implements SinglebandImageProcessor<Float, FImage>
 		image.internalAssign(halfSize(image));
 	}
 
+	/**
+	 * Double the size of a {@link FlatFImage}. The result is identical to
+	 * {@link #doubleSize(FImage)}.
+	 *
+	 * @param image
+	 *            The image to double in size
+	 * @return a new image with twice the size
+	 */
+	public static FlatFImage doubleSize(FlatFImage image) {
+		final FlatFImage newimage = new FlatFImage(2 * image.width - 2, 2 * image.height - 2);
+		final float[] im = image.data;
+		final float[] tmp = newimage.data;
+		final int nwidth = newimage.width;
+
+		for (int y = 0; y < image.height - 1; y++) {
+			final int r0 = image.offset + y * image.stride;
+			final int r1 = r0 + image.stride;
+			final int o0 = 2 * y * nwidth;
+			final int o1 = o0 + nwidth;
+
+			for (int x = 0; x < image.width - 1; x++) {
+				final int x2 = 2 * x;
+				tmp[o0 + x2] = im[r0 + x];
+				tmp[o1 + x2] = 0.5f * (im[r0 + x] + im[r1 + x]);
+				tmp[o0 + x2 + 1] = 0.5f * (im[r0 + x] + im[r0 + x + 1]);
+				tmp[o1 + x2 + 1] = 0.25f * (im[r0 + x] + im[r1 + x] + im[r0 + x + 1] + im[r1 + x + 1]);
+			}
+		}
+		return newimage;
+	}
+
+	/**
+	 * Halve the size of a {@link FlatFImage} by sampling every other pixel.
+	 * The result is identical to {@link #halfSize(FImage)}.
+	 *
+	 * @param image
+	 *            The image halve in size
+	 * @return a new image with half the size
+	 */
+	public static FlatFImage halfSize(FlatFImage image) {
+		final FlatFImage newimage = new FlatFImage(image.width / 2, image.height / 2);
+		final float[] im = image.data;
+		final float[] tmp = newimage.data;
+
+		for (int y = 0, o = 0, r = image.offset; y < newimage.height; y++, r += 2 * image.stride) {
+			for (int x = 0, xi = r; x < newimage.width; x++, o++, xi += 2) {
+				tmp[o] = im[xi];
+			}
+		}
+
+		return newimage;
+	}
+
 	/**
 	 * Returns a new image that is a resampled version of the given image.
 	 *
@@ -770,73 +824,26 @@ public class ResizeProcessor implements SinglebandImageProcessor<Float, FImage>
 	}/* calcXContrib */
 
 	/**
-	 * Resizes an image.
-	 *
-	 * @param in
-	 *            The source image
-	 * @param newX
-	 *            The desired width of the image
-	 * @param newY
-	 *            The desired height of the image
-	 * @return the input image, resized appropriately
-	 */
-	public static FImage zoomInplace(FImage in, int newX, int newY) {
-		final ResizeFilterFunction filter = DEFAULT_FILTER;
-		return zoomInplace(in, newX, newY, filter);
-	}
-
-	/**
-	 * Resizes an image.
-	 *
-	 * @param newX
-	 *            New width of the image
-	 * @param newY
-	 *            New height of the image
-	 * @param in
-	 *            The source image
-	 * @param filterf
-	 *            The filter function
-	 * @return the input image, resized appropriately
-	 */
-	public static FImage zoomInplace(FImage in, int newX, int newY, ResizeFilterFunction filterf) {
-		final FImage dst = new FImage(newX, newY);
-		zoom(in, dst, filterf);
-		in.internalAssign(dst);
-		return in;
-	}
-
-	/**
-	 * Resizes bitmaps while resampling them.
+	 * Calculates the filter weights for all the target rows.
 	 *
-	 * @param dst
-	 *            Destination Image
-	 * @param in
-	 *            Source Image
+	 * @param yscale
+	 *            Vertical zooming scale
 	 * @param filterf
-	 *            Filter to use
-	 *
-	 * @return the destination image
+	 *            Filter processor
+	 * @param dstHeight
+	 *            Target bitmap height
+	 * @param srcHeight
+	 *            Source bitmap height
+	 * @return the contributions for each target row
 	 */
-	public static FImage zoom(FImage in, FImage dst, ResizeFilterFunction filterf) {
-		final int dstWidth = dst.getWidth();
-		final int dstHeight = dst.getHeight();
-
-		final int srcWidth = in.getWidth();
-		final int srcHeight = in.getHeight();
-
-		final double xscale = (double) dstWidth / (double) srcWidth;
-		final double yscale = (double) dstHeight / (double) srcHeight;
-
-		/* create intermediate column to hold horizontal dst column zoom */
-		final float[] work = new float[in.height];
-
+	private static PixelContributions[] calc_y_contrib(double yscale, ResizeFilterFunction filterf, int dstHeight,
+			int srcHeight)
+	{
 		final PixelContributions[] contribY = new PixelContributions[dstHeight];
 		for (int i = 0; i < contribY.length; i++) {
 			contribY[i] = new PixelContributions();
 		}
 
-		final float maxValue = in.max();
-
 		// TODO: What to do when fwidth > srcHeight or dstHeight
 		final double fwidth = filterf.getSupport();
 		if (yscale < 1.0) {
@@ -939,6 +946,75 @@ public class ResizeProcessor implements SinglebandImageProcessor<Float, FImage>
 			}
 		}
 
+		return contribY;
+	}
+
+	/**
+	 * Resizes an image.
+	 *
+	 * @param in
+	 *            The source image
+	 * @param newX
+	 *            The desired width of the image
+	 * @param newY
+	 *            The desired height of the image
+	 * @return the input image, resized appropriately
+	 */
+	public static FImage zoomInplace(FImage in, int newX, int newY) {
+		final ResizeFilterFunction filter = DEFAULT_FILTER;
+		return zoomInplace(in, newX, newY, filter);
+	}
+
+	/**
+	 * Resizes an image.
+	 *
+	 * @param newX
+	 *            New width of the image
+	 * @param newY
+	 *            New height of the image
+	 * @param in
+	 *            The source image
+	 * @param filterf
+	 *            The filter function
+	 * @return the input image, resized appropriately
+	 */
+	public static FImage zoomInplace(FImage in, int newX, int newY, ResizeFilterFunction filterf) {
+		final FImage dst = new FImage(newX, newY);
+		zoom(in, dst, filterf);
+		in.internalAssign(dst);
+		return in;
+	}
+
+	/**
+	 * Resizes bitmaps while resampling them.
+	 *
+	 * @param dst
+	 *            Destination Image
+	 * @param in
+	 *            Source Image
+	 * @param filterf
+	 *            Filter to use
+	 *
+	 * @return the destination image
+	 */
+	public static FImage zoom(FImage in, FImage dst, ResizeFilterFunction filterf) {
+		final int dstWidth = dst.getWidth();
+		final int dstHeight = dst.getHeight();
+
+		final int srcWidth = in.getWidth();
+		final int srcHeight = in.getHeight();
+
+		final double xscale = (double) dstWidth / (double) srcWidth;
+		final double yscale = (double) dstHeight / (double) srcHeight;
+
+		/* create intermediate column to hold horizontal dst column zoom */
+		final float[] work = new float[in.height];
+
+		final double fwidth = filterf.getSupport();
+		final PixelContributions[] contribY = calc_y_contrib(yscale, filterf, dstHeight, srcHeight);
+
+		final float maxValue = in.max();
+
 		for (int xx = 0; xx < dstWidth; xx++) {
 			final PixelContributions contribX = new PixelContributions();
 			calc_x_contrib(contribX, xscale, fwidth, dst.width, in.width, filterf, xx);
@@ -1003,6 +1079,89 @@ public class ResizeProcessor implements SinglebandImageProcessor<Float, FImage>
 		return dst;
 	}
 
+	/**
+	 * Resizes a {@link FlatFImage} while resampling it. The result is identical
+	 * to {@link #zoom(FImage, FImage, ResizeFilterFunction)}, but the
+	 * horizontal pass works along the rows of the source rather than down its
+	 * columns, so both passes read memory sequentially.
+	 *
+	 * @param dst
+	 *            Destination Image
+	 * @param in
+	 *            Source Image
+	 * @param filterf
+	 *            Filter to use
+	 *
+	 * @return the destination image
+	 */
+	public static FlatFImage zoom(FlatFImage in, FlatFImage dst, ResizeFilterFunction filterf) {
+		final int dstWidth = dst.width;
+		final int dstHeight = dst.height;
+
+		final int srcWidth = in.width;
+		final int srcHeight = in.height;
+
+		final double xscale = (double) dstWidth / (double) srcWidth;
+		final double yscale = (double) dstHeight / (double) srcHeight;
+
+		final double fwidth = filterf.getSupport();
+		final PixelContributions[] contribX = new PixelContributions[dstWidth];
+		for (int xx = 0; xx < dstWidth; xx++) {
+			contribX[xx] = new PixelContributions();
+			calc_x_contrib(contribX[xx], xscale, fwidth, dstWidth, srcWidth, filterf, xx);
+		}
+		final PixelContributions[] contribY = calc_y_contrib(yscale, filterf, dstHeight, srcHeight);
+
+		final float maxValue = in.max();
+
+		/* horizontal pass: srcHeight rows of dstWidth columns */
+		final float[] work = new float[srcHeight * dstWidth];
+		for (int k = 0, row = in.offset, w = 0; k < srcHeight; k++, row += in.stride, w += dstWidth) {
+			for (int xx = 0; xx < dstWidth; xx++) {
+				work[w + xx] = applyContributions(in.data, row, 1, contribX[xx], maxValue);
+			}
+		}
+
+		/* vertical pass */
+		for (int i = 0, row = dst.offset; i < dstHeight; i++, row += dst.stride) {
+			for (int xx = 0; xx < dstWidth; xx++) {
+				dst.data[row + xx] = applyContributions(work, xx, dstWidth, contribY[i], maxValue);
+			}
+		}
+
+		return dst;
+	}
+
+	/*
+	 * Apply the filter weights to the samples at base + pixel * step, in the
+	 * same way as the inner loops of zoom(FImage, FImage, ResizeFilterFunction)
+	 */
+	private static float applyContributions(float[] data, int base, int step, PixelContributions contrib,
+			float maxValue)
+	{
+		double weight = 0.0;
+		boolean bPelDelta = false;
+		final double pel = data[base + contrib.contributions[0].pixel * step];
+
+		for (int j = 0; j < contrib.numberOfContributors; j++) {
+			final double pel2 = j == 0 ? pel : data[base + contrib.contributions[j].pixel * step];
+			if (pel2 != pel) {
+				bPelDelta = true;
+			}
+			weight += pel2 * contrib.contributions[j].weight;
+		}
+		weight = bPelDelta ? Math.round(weight * 255) / 255f : pel;
+
+		if (weight < 0) {
+			weight = 0;
+		}
+		else if (weight > maxValue) {
+			weight = maxValue;
+		}
+
+		return (float) weight;
+	}
+
 	/**
 	 * Draws one portion of an image into another, resampling as necessary using
 	 * the default filter function.
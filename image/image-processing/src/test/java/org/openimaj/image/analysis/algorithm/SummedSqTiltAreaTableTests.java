@@ -34,6 +34,7 @@ import static org.junit.Assert.assertEquals;
 import org.junit.Test;
 import org.openimaj.data.RandomData;
 import org.openimaj.image.FImage;
+import org.openimaj.image.FlatFImage;
 
 /**
  * Tests for {@link SummedSqTiltAreaTable}s.
@@ -86,4 +87,32 @@ public class SummedSqTiltAreaTableTests {
 			}
 		}
 	}
+
+	/**
+	 * Ensure that a SAT computed from a {@link FlatFImage} gives the same box
+	 * sums as one computed from an {@link FImage}.
+	 */
+	@Test
+	public void testCompareFlat() {
+		final FImage image = new FImage(RandomData.getRandomFloatArray(37, 23, 0f, 1f));
+		final FlatFImage padded = new FlatFImage(image.width + 10, image.height + 10);
+		final FlatFImage roi = padded.extractROI(3, 4, image.width, image.height).copyFrom(image);
+
+		final SummedAreaTable sat = new SummedAreaTable(image);
+		final SummedAreaTable flat = new SummedAreaTable(roi);
+
+		assertEquals(null, flat.data);
+		assertEquals(image.width + 1, flat.flatData.width);
+		assertEquals(image.height + 1, flat.flatData.height);
+
+		for (int y1 = 0; y1 <= image.height; y1 += 3) {
+			for (int x1 = 0; x1 <= image.width; x1 += 2) {
+				for (int y2 = y1; y2 <= image.height; y2 += 5) {
+					for (int x2 = x1; x2 <= image.width; x2 += 4) {
+						assertEquals(sat.calculateArea(x1, y1, x2, y2), flat.calculateArea(x1, y1, x2, y2), 0f);
+					}
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,241 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.processing.convolution;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.openimaj.image.FImage;
+import org.openimaj.image.FlatFImage;
+
+/**
+ * Tests for {@link FImageConvolveSeparable}. The optimised horizontal and
+ * vertical passes are checked element-for-element against a straightforward
+ * implementation that convolves one padded row or column at a time.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class FImageConvolveSeparableTest {
+	private static final int[][] SIZES = {
+			{ 1, 1 }, { 1, 9 }, { 9, 1 }, { 2, 2 }, { 5, 3 }, { 33, 17 }, { 400, 200 }, { 257, 300 }
+	};
+
+	private static final int[] KERNEL_LENGTHS = { 1, 2, 3, 4, 7, 8, 15, 16, 31 };
+
+	private final Random rng = new Random(42);
+
+	/**
+	 * Reference horizontal convolution, as implemented before the passes were
+	 * vectorised
+	 */
+	private static void referenceHorizontal(FImage image, float[] kernel) {
+		final int halfsize = kernel.length / 2;
+
+		final float buffer[] = new float[image.width + kernel.length];
+
+		for (int r = 0; r < image.height; r++) {
+			for (int i = 0; i < halfsize; i++)
+				buffer[i] = image.pixels[r][0];
+			for (int i = 0; i < image.width; i++)
+				buffer[halfsize + i] = image.pixels[r][i];
+			for (int i = 0; i < halfsize; i++)
+				buffer[halfsize + image.width + i] = image.pixels[r][image.width - 1];
+
+			convolveBuffer(buffer, kernel);
+
+			for (int c = 0; c < image.width; c++)
+				image.pixels[r][c] = buffer[c];
+		}
+	}
+
+	/**
+	 * Reference vertical convolution, as implemented before the pass was tiled
+	 */
+	private static void referenceVertical(FImage image, float[] kernel) {
+		final int halfsize = kernel.length / 2;
+
+		final float buffer[] = new float[image.height + kernel.length];
+
+		for (int c = 0; c < image.width; c++) {
+			for (int i = 0; i < halfsize; i++)
+				buffer[i] = image.pixels[0][c];
+			for (int i = 0; i < image.height; i++)
+				buffer[halfsize + i] = image.pixels[i][c];
+			for (int i = 0; i < halfsize; i++)
+				buffer[halfsize + image.height + i] = image.pixels[image.height - 1][c];
+
+			convolveBuffer(buffer, kernel);
+
+			for (int r = 0; r < image.height; r++)
+				image.pixels[r][c] = buffer[r];
+		}
+	}
+
+	private static void convolveBuffer(float[] buffer, float[] kernel) {
+		final int l = buffer.length - kernel.length;
+		for (int i = 0; i < l; i++) {
+			float sum = 0.0f;
+
+			for (int j = 0, jj = kernel.length - 1; j < kernel.length; j++, jj--)
+				sum += buffer[i + j] * kernel[jj];
+
+			buffer[i] = sum;
+		}
+	}
+
+	private FImage randomImage(int width, int height) {
+		final FImage image = new FImage(width, height);
+
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				image.pixels[y][x] = rng.nextFloat();
+
+		return image;
+	}
+
+	private float[] randomKernel(int length) {
+		final float[] kernel = new float[length];
+
+		for (int i = 0; i < length; i++)
+			kernel[i] = rng.nextFloat() - 0.25f;
+
+		return kernel;
+	}
+
+	/*
+	 * Create a view of the image inside a larger padded array, so that the
+	 * flat versions are tested with a non-zero offset and a stride bigger than
+	 * the width
+	 */
+	private static FlatFImage flatView(FImage image) {
+		final FlatFImage padded = new FlatFImage(image.width + 3, image.height + 2);
+		padded.fill(Float.NaN);
+
+		return padded.extractROI(2, 1, image.width, image.height).copyFrom(image);
+	}
+
+	private static void assertIdentical(String msg, FImage expected, FImage actual) {
+		assertEquals(msg, expected.width, actual.width);
+		assertEquals(msg, expected.height, actual.height);
+
+		for (int y = 0; y < expected.height; y++)
+			for (int x = 0; x < expected.width; x++)
+				assertEquals(msg + " at (" + x + ", " + y + ")", expected.pixels[y][x], actual.pixels[y][x], 0f);
+	}
+
+	private static void assertIdentical(String msg, FImage expected, FlatFImage actual) {
+		assertIdentical(msg, expected, actual.toFImage());
+	}
+
+	/**
+	 * Test the horizontal pass against the reference implementation
+	 */
+	@Test
+	public void testHorizontal() {
+		for (final int[] sz : SIZES) {
+			for (final int kl : KERNEL_LENGTHS) {
+				final String msg = "image " + sz[0] + "x" + sz[1] + ", kernel " + kl;
+				final FImage image = randomImage(sz[0], sz[1]);
+				final float[] kernel = randomKernel(kl);
+
+				final FImage expected = image.clone();
+				referenceHorizontal(expected, kernel);
+
+				final FImage serial = image.clone();
+				FImageConvolveSeparable.convolveHorizontal(serial, kernel);
+				assertIdentical(msg, expected, serial);
+
+				final FImage parallel = image.clone();
+				FImageConvolveSeparable.convolveHorizontalParallel(parallel, kernel);
+				assertIdentical(msg + " (parallel)", expected, parallel);
+
+				final FlatFImage flat = flatView(image);
+				FImageConvolveSeparable.convolveHorizontal(flat, kernel);
+				assertIdentical(msg + " (flat)", expected, flat);
+			}
+		}
+	}
+
+	/**
+	 * Test the vertical pass against the reference implementation
+	 */
+	@Test
+	public void testVertical() {
+		for (final int[] sz : SIZES) {
+			for (final int kl : KERNEL_LENGTHS) {
+				final String msg = "image " + sz[0] + "x" + sz[1] + ", kernel " + kl;
+				final FImage image = randomImage(sz[0], sz[1]);
+				final float[] kernel = randomKernel(kl);
+
+				final FImage expected = image.clone();
+				referenceVertical(expected, kernel);
+
+				final FImage serial = image.clone();
+				FImageConvolveSeparable.convolveVertical(serial, kernel);
+				assertIdentical(msg, expected, serial);
+
+				final FImage parallel = image.clone();
+				FImageConvolveSeparable.convolveVerticalParallel(parallel, kernel);
+				assertIdentical(msg + " (parallel)", expected, parallel);
+
+				final FlatFImage flat = flatView(image);
+				FImageConvolveSeparable.convolveVertical(flat, kernel);
+				assertIdentical(msg + " (flat)", expected, flat);
+			}
+		}
+	}
+
+	/**
+	 * Test that processing with different horizontal and vertical kernels
+	 * matches the reference implementation
+	 */
+	@Test
+	public void testProcessImage() {
+		for (final int[] sz : SIZES) {
+			final String msg = "image " + sz[0] + "x" + sz[1];
+			final FImage image = randomImage(sz[0], sz[1]);
+			final float[] hkernel = randomKernel(5);
+			final float[] vkernel = randomKernel(8);
+			final FImageConvolveSeparable conv = new FImageConvolveSeparable(hkernel, vkernel);
+
+			final FImage expected = image.clone();
+			referenceHorizontal(expected, hkernel);
+			referenceVertical(expected, vkernel);
+
+			assertIdentical(msg, expected, image.process(conv));
+
+			final FlatFImage flat = flatView(image);
+			conv.processImage(flat);
+			assertIdentical(msg + " (flat)", expected, flat);
+		}
+	}
+}
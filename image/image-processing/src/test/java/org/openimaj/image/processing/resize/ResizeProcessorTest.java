@@ -34,8 +34,10 @@ import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 import org.openimaj.image.FImage;
+import org.openimaj.image.FlatFImage;
 import org.openimaj.image.ImageUtilities;
 import org.openimaj.image.processing.resize.filters.BSplineFilter;
+import org.openimaj.image.processing.resize.filters.TriangleFilter;
 import org.openimaj.math.geometry.shape.Rectangle;
 
 /**
@@ -142,4 +144,41 @@ public class ResizeProcessorTest {
 		assertTrue(3700000 > image.height * image.width);
 		assertEquals(2687.0 / 3356.0, (double) image.width / (double) image.height, 0.001);
 	}
+
+	/**
+	 * Test that the {@link FlatFImage} versions of the resizing methods give
+	 * identical results to the {@link FImage} versions
+	 */
+	@Test
+	public void testFlat() {
+		final FImage image = new FImage(47, 31);
+		for (int y = 0; y < image.height; y++)
+			for (int x = 0; x < image.width; x++)
+				image.pixels[y][x] = (float) (0.5 + 0.5 * Math.sin(x * 0.3) * Math.cos(y * 0.2));
+
+		final FlatFImage padded = new FlatFImage(image.width + 5, image.height + 2);
+		final FlatFImage flat = padded.extractROI(2, 1, image.width, image.height).copyFrom(image);
+
+		assertImageEquals(ResizeProcessor.halfSize(image), ResizeProcessor.halfSize(flat));
+		assertImageEquals(ResizeProcessor.doubleSize(image), ResizeProcessor.doubleSize(flat));
+
+		final int[][] sizes = { { 20, 13 }, { 100, 70 }, { 47, 10 }, { 3, 90 } };
+		for (final ResizeFilterFunction ff : new ResizeFilterFunction[] { new BSplineFilter(), TriangleFilter.INSTANCE }) {
+			for (final int[] sz : sizes) {
+				final FImage expected = ResizeProcessor.zoom(image, new FImage(sz[0], sz[1]), ff);
+				final FlatFImage actual = ResizeProcessor.zoom(flat, new FlatFImage(sz[0], sz[1]), ff);
+
+				assertImageEquals(expected, actual);
+			}
+		}
+	}
+
+	private static void assertImageEquals(FImage expected, FlatFImage actual) {
+		assertEquals(expected.width, actual.width);
+		assertEquals(expected.height, actual.height);
+
+		for (int y = 0; y < expected.height; y++)
+			for (int x = 0; x < expected.width; x++)
+				assertEquals(expected.pixels[y][x], actual.get(x, y), 0f);
+	}
 }
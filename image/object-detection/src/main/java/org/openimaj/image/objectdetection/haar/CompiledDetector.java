@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.objectdetection.haar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openimaj.image.FImage;
+import org.openimaj.image.objectdetection.haar.CompiledStageTreeClassifier.Batch;
+import org.openimaj.image.objectdetection.haar.CompiledStageTreeClassifier.IntegralImages;
+import org.openimaj.image.objectdetection.haar.CompiledStageTreeClassifier.Scale;
+import org.openimaj.math.geometry.shape.Rectangle;
+
+/**
+ * A {@link Detector} that uses a {@link CompiledStageTreeClassifier}. The
+ * search is identical to that of the {@link Detector} (and gives exactly the
+ * same detections), but the windows along each row are classified in batches,
+ * with each stage of the cascade being applied to all the windows of a batch
+ * that survived the previous stage. The window positions within a batch are
+ * the ones the search would visit if there were no hint of detection; if a
+ * window in the batch hints at a detection, the search resumes with a new
+ * batch from the following position. Each row starts with a full batch; after
+ * a detection hint the batches restart small and grow back up to the batch
+ * size whilst there are no further hints.
+ * <p>
+ * The compiled scales are cached between calls to {@link #detect(FImage)}, so
+ * detection on a sequence of same-sized images (i.e. video frames) only pays
+ * the cost of scaling the features once. Unlike the {@link Detector}, this
+ * detector can safely be used from multiple threads concurrently.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class CompiledDetector extends Detector {
+	/**
+	 * Default number of windows classified together
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 64;
+
+	private static final int MIN_BATCH_SIZE = 1;
+
+	protected CompiledStageTreeClassifier compiled;
+	protected int batchSize = DEFAULT_BATCH_SIZE;
+	private ConcurrentHashMap<Float, Scale> scales = new ConcurrentHashMap<Float, Scale>();
+
+	/**
+	 * Construct the {@link CompiledDetector} with the given parameters.
+	 *
+	 * @param cascade
+	 *            the cascade or tree of stages.
+	 * @param scaleFactor
+	 *            the amount to change between scales (multiplicative)
+	 * @param smallStep
+	 *            the amount to step when there is a hint of detection
+	 * @param bigStep
+	 *            the amount to step when there is definitely no detection
+	 */
+	public CompiledDetector(StageTreeClassifier cascade, float scaleFactor, int smallStep, int bigStep) {
+		super(cascade, scaleFactor, smallStep, bigStep);
+
+		this.compiled = new CompiledStageTreeClassifier(cascade);
+	}
+
+	/**
+	 * Construct the {@link CompiledDetector} with the given tree of stages and
+	 * scale factor. The default step sizes are used.
+	 *
+	 * @param cascade
+	 *            the cascade or tree of stages.
+	 * @param scaleFactor
+	 *            the amount to change between scales
+	 */
+	public CompiledDetector(StageTreeClassifier cascade, float scaleFactor) {
+		this(cascade, scaleFactor, DEFAULT_SMALL_STEP, DEFAULT_BIG_STEP);
+	}
+
+	/**
+	 * Construct the {@link CompiledDetector} with the given tree of stages, and
+	 * the default parameters for step sizes and scale factor.
+	 *
+	 * @param cascade
+	 *            the cascade or tree of stages.
+	 */
+	public CompiledDetector(StageTreeClassifier cascade) {
+		this(cascade, DEFAULT_SCALE_FACTOR, DEFAULT_SMALL_STEP, DEFAULT_BIG_STEP);
+	}
+
+	@Override
+	public List<Rectangle> detect(FImage image) {
+		final List<Rectangle> results = new ArrayList<Rectangle>();
+		final IntegralImages images = new IntegralImages(image, compiled.hasTiltedFeatures());
+		final Batch batch = new Batch(batchSize);
+
+		for (final ScaleParameters sp : computeScales(image.getWidth(), image.getHeight())) {
+			final Scale scale = getScale(sp.factor, images);
+
+			for (int iy = sp.startY; iy < sp.stopY; iy++) {
+				final int y = Math.round(iy * sp.ystep);
+
+				scanRow(images, scale, batch, sp, y, results);
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Scan a row, replaying the step logic of the {@link Detector} over the
+	 * batched results.
+	 */
+	private void scanRow(IntegralImages images, Scale scale, Batch batch, ScaleParameters sp, int y,
+			List<Rectangle> results)
+	{
+		// after a detection the batches start small and grow whilst there are
+		// no more detections, so little work is wasted around detections
+		int size = batch.capacity();
+		int ix = sp.startX;
+
+		while (ix < sp.stopX) {
+			// the positions visited if there is no hint of a detection
+			batch.size = 0;
+			for (int jx = ix; jx < sp.stopX && batch.size < size; jx += bigStep)
+				batch.x[batch.size++] = Math.round(jx * sp.ystep);
+
+			compiled.classify(images, scale, y, batch);
+
+			for (int k = 0;;) {
+				final int result = batch.results[k];
+
+				if (result > 0) {
+					results.add(new Rectangle(batch.x[k], y, sp.windowWidth, sp.windowHeight));
+				}
+
+				// if there is no detection, then increase the step size
+				final int xstep = (result > 0 ? smallStep : bigStep);
+				ix += xstep;
+				k++;
+
+				// the remainder of the batch is only valid if the big step
+				// was taken
+				if (xstep != bigStep) {
+					size = Math.min(MIN_BATCH_SIZE, batch.capacity());
+					break;
+				}
+
+				if (k == batch.size) {
+					size = Math.min(2 * size, batch.capacity());
+					break;
+				}
+			}
+		}
+	}
+
+	private Scale getScale(float factor, IntegralImages images) {
+		Scale scale = scales.get(factor);
+
+		if (scale == null || !scale.isCompatible(images)) {
+			scale = compiled.compile(factor, images);
+			scales.put(factor, scale);
+		}
+
+		return scale;
+	}
+
+	/**
+	 * Get the compiled form of the classifier
+	 *
+	 * @return the compiled classifier
+	 */
+	public CompiledStageTreeClassifier getCompiledClassifier() {
+		return compiled;
+	}
+
+	/**
+	 * Get the maximum number of windows that are classified together.
+	 *
+	 * @return the batch size
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Set the maximum number of windows that are classified together.
+	 *
+	 * @param batchSize
+	 *            the batch size; must be positive
+	 * @throws IllegalArgumentException
+	 *             if batchSize is less than one
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("The batch size must be positive");
+
+		this.batchSize = batchSize;
+	}
+}
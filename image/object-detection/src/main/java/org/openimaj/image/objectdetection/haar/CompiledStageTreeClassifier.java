@@ -0,0 +1,752 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.objectdetection.haar;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openimaj.image.FImage;
+import org.openimaj.image.analysis.algorithm.SummedSqTiltAreaTable;
+
+/**
+ * A "compiled" form of a {@link StageTreeClassifier}. The tree of
+ * {@link Stage}s, {@link HaarFeatureClassifier}s and {@link HaarFeature}s is
+ * flattened into primitive arrays, and the scaled rectangles of all the
+ * features are pre-computed for each scale into a {@link Scale} object as
+ * offsets into flattened integral images ({@link IntegralImages}). This avoids
+ * the virtual calls, pointer chasing and two-dimensional array accesses of the
+ * object-based representation.
+ * <p>
+ * In addition to classifying single windows, cascades (i.e. trees where no
+ * stage has a failure stage) can classify a {@link Batch} of windows along a
+ * row in one go. Each stage is evaluated for all the windows that passed the
+ * previous stage before moving on to the next stage, so the (typically
+ * few) survivors of the early stages are all that are advanced, and each
+ * stage's parameters are only read once per batch.
+ * <p>
+ * The compiled classifier gives exactly the same results as the
+ * {@link StageTreeClassifier} it was built from. Unlike the
+ * {@link StageTreeClassifier}, the compiled classifier and its {@link Scale}s
+ * are immutable, so can be used concurrently from multiple threads at
+ * different scales.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class CompiledStageTreeClassifier {
+	/**
+	 * Flattened, single-dimensional versions of the integral images in a
+	 * {@link SummedSqTiltAreaTable}.
+	 *
+	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+	 */
+	public static class IntegralImages {
+		final float[] sum;
+		final float[] sqSum;
+		final float[] tiltSum;
+		final int stride;
+		final int tiltStride;
+
+		/**
+		 * Construct by flattening the given tables
+		 *
+		 * @param sat
+		 *            the tables
+		 */
+		public IntegralImages(SummedSqTiltAreaTable sat) {
+			this.stride = sat.sum.width;
+			this.sum = flatten(sat.sum);
+			this.sqSum = flatten(sat.sqSum);
+
+			if (sat.tiltSum != null) {
+				this.tiltStride = sat.tiltSum.width;
+				this.tiltSum = flatten(sat.tiltSum);
+			} else {
+				this.tiltStride = 0;
+				this.tiltSum = null;
+			}
+		}
+
+		/**
+		 * Construct from an image
+		 *
+		 * @param image
+		 *            the image
+		 * @param computeTilted
+		 *            if true the tilted integral image is also computed
+		 */
+		public IntegralImages(FImage image, boolean computeTilted) {
+			this(new SummedSqTiltAreaTable(image, computeTilted));
+		}
+
+		private static float[] flatten(FImage image) {
+			final int w = image.width;
+			final float[] data = new float[w * image.height];
+
+			for (int y = 0; y < image.height; y++)
+				System.arraycopy(image.pixels[y], 0, data, y * w, w);
+
+			return data;
+		}
+	}
+
+	/**
+	 * The pre-computed state of a {@link CompiledStageTreeClassifier} for a
+	 * single scale and integral image width.
+	 *
+	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+	 */
+	public static final class Scale {
+		final float scale;
+		final int stride;
+		final int tiltStride;
+
+		// offsets (from the window origin) of the four corners of each
+		// rectangle, and the weight of each rectangle
+		final int[] rectOffsets;
+		final float[] rectWeights;
+
+		// offsets of the four corners of the box used for the window variance
+		final int varOffset;
+		final int var00;
+		final int var01;
+		final int var10;
+		final int var11;
+		final float invArea;
+
+		Scale(float scale, int stride, int tiltStride, int[] rectOffsets, float[] rectWeights, int varOffset,
+				int varW, int varH, float invArea)
+		{
+			this.scale = scale;
+			this.stride = stride;
+			this.tiltStride = tiltStride;
+			this.rectOffsets = rectOffsets;
+			this.rectWeights = rectWeights;
+			this.varOffset = varOffset;
+			this.var00 = 0;
+			this.var01 = varW;
+			this.var10 = varH * stride;
+			this.var11 = varH * stride + varW;
+			this.invArea = invArea;
+		}
+
+		/**
+		 * @return the scale factor
+		 */
+		public float getScale() {
+			return scale;
+		}
+
+		/**
+		 * Test whether this scale is valid for the given integral images
+		 *
+		 * @param images
+		 *            the integral images
+		 * @return true if the images are the same width as the ones this scale
+		 *         was compiled for
+		 */
+		public boolean isCompatible(IntegralImages images) {
+			return images.stride == stride && images.tiltStride == tiltStride;
+		}
+	}
+
+	/**
+	 * A batch of windows on a single row to be classified together.
+	 *
+	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+	 */
+	public static final class Batch {
+		/** The x-ordinates of the windows */
+		public final int[] x;
+
+		/**
+		 * The results of classification; the same as the value returned by
+		 * {@link StageTreeClassifier#classify(SummedSqTiltAreaTable, int, int)}
+		 */
+		public final int[] results;
+
+		/** The number of windows in the batch */
+		public int size;
+
+		// working data for the windows that are still active, stored
+		// contiguously: the index of the window in the batch, its x-ordinate,
+		// its variance normalisation, and its total for the current stage
+		final int[] activeIndex;
+		final int[] activeX;
+		final float[] activeNorm;
+		final float[] activeTotal;
+
+		/**
+		 * Construct a batch with the given maximum size
+		 *
+		 * @param capacity
+		 *            the maximum number of windows
+		 */
+		public Batch(int capacity) {
+			x = new int[capacity];
+			results = new int[capacity];
+			activeIndex = new int[capacity];
+			activeX = new int[capacity];
+			activeNorm = new float[capacity];
+			activeTotal = new float[capacity];
+		}
+
+		/**
+		 * @return the maximum number of windows in the batch
+		 */
+		public int capacity() {
+			return x.length;
+		}
+	}
+
+	final int width;
+	final int height;
+	final boolean hasTiltedFeatures;
+
+	// the stages; successors and failures are stage indices or -1
+	final float[] stageThreshold;
+	final int[] stageFirstTree;
+	final int[] stageNumTrees;
+	final int[] stageSuccess;
+	final int[] stageFailure;
+	final boolean[] stageHasNegative;
+	final boolean isCascade;
+
+	// the root node of each tree; nodes >= 0 are feature nodes, whilst
+	// negative values are the complement of an index into leafValue
+	final int[] treeRoot;
+
+	// the feature nodes of the trees
+	final float[] nodeThreshold;
+	final int[] nodeLeft;
+	final int[] nodeRight;
+	final int[] nodeFirstRect;
+	final int[] nodeNumRects;
+	final boolean[] nodeTilted;
+
+	final float[] leafValue;
+
+	// private copies of the features used to compute the scaled rectangles
+	private final HaarFeature[] features;
+
+	/**
+	 * Compile the given {@link StageTreeClassifier}. The classifier is not
+	 * modified.
+	 *
+	 * @param cascade
+	 *            the classifier to compile
+	 */
+	public CompiledStageTreeClassifier(StageTreeClassifier cascade) {
+		this.width = cascade.width;
+		this.height = cascade.height;
+		this.hasTiltedFeatures = cascade.hasTiltedFeatures;
+
+		// number the stages (the root is always stage 0)
+		final Map<Stage, Integer> stageIds = new IdentityHashMap<Stage, Integer>();
+		final List<Stage> stages = new ArrayList<Stage>();
+		number(cascade.root, stageIds, stages);
+
+		final List<Classifier> trees = new ArrayList<Classifier>();
+		final List<HaarFeatureClassifier> nodes = new ArrayList<HaarFeatureClassifier>();
+		final List<int[]> children = new ArrayList<int[]>();
+		final List<Float> leaves = new ArrayList<Float>();
+
+		final int nstages = stages.size();
+		stageThreshold = new float[nstages];
+		stageFirstTree = new int[nstages];
+		stageNumTrees = new int[nstages];
+		stageSuccess = new int[nstages];
+		stageFailure = new int[nstages];
+		stageHasNegative = new boolean[nstages];
+
+		boolean cascadeOnly = true;
+		for (int i = 0; i < nstages; i++) {
+			final Stage s = stages.get(i);
+
+			stageThreshold[i] = s.threshold;
+			stageFirstTree[i] = trees.size();
+			stageNumTrees[i] = s.ensemble.length;
+			stageSuccess[i] = s.successStage == null ? -1 : stageIds.get(s.successStage);
+			stageFailure[i] = s.failureStage == null ? -1 : stageIds.get(s.failureStage);
+			stageHasNegative[i] = hasNegativeValues(s);
+
+			if (s.failureStage != null)
+				cascadeOnly = false;
+
+			for (final Classifier c : s.ensemble)
+				trees.add(c);
+		}
+		isCascade = cascadeOnly;
+
+		treeRoot = new int[trees.size()];
+		for (int i = 0; i < treeRoot.length; i++)
+			treeRoot[i] = flatten(trees.get(i), nodes, children, leaves);
+
+		final int nnodes = nodes.size();
+		nodeThreshold = new float[nnodes];
+		nodeLeft = new int[nnodes];
+		nodeRight = new int[nnodes];
+		nodeFirstRect = new int[nnodes];
+		nodeNumRects = new int[nnodes];
+		nodeTilted = new boolean[nnodes];
+		features = new HaarFeature[nnodes];
+
+		int nrects = 0;
+		for (int i = 0; i < nnodes; i++) {
+			final HaarFeatureClassifier hfc = nodes.get(i);
+
+			nodeThreshold[i] = hfc.threshold;
+			nodeLeft[i] = children.get(i)[0];
+			nodeRight[i] = children.get(i)[1];
+			nodeFirstRect[i] = nrects;
+			nodeNumRects[i] = hfc.feature.rects.length;
+			nodeTilted[i] = hfc.feature instanceof HaarFeature.TiltedFeature;
+			features[i] = hfc.feature.copy();
+
+			nrects += nodeNumRects[i];
+		}
+
+		leafValue = new float[leaves.size()];
+		for (int i = 0; i < leafValue.length; i++)
+			leafValue[i] = leaves.get(i);
+	}
+
+	private static void number(Stage stage, Map<Stage, Integer> ids, List<Stage> stages) {
+		// iterative to cope with long cascades
+		final List<Stage> todo = new ArrayList<Stage>();
+		todo.add(stage);
+
+		while (!todo.isEmpty()) {
+			final Stage s = todo.remove(todo.size() - 1);
+
+			if (s == null || ids.containsKey(s))
+				continue;
+
+			ids.put(s, stages.size());
+			stages.add(s);
+
+			todo.add(s.failureStage);
+			todo.add(s.successStage);
+		}
+	}
+
+	private static boolean hasNegativeValues(Stage stage) {
+		for (final Classifier c : stage.ensemble)
+			if (hasNegativeValues(c))
+				return true;
+
+		return false;
+	}
+
+	private static boolean hasNegativeValues(Classifier classifier) {
+		if (classifier instanceof ValueClassifier)
+			return ((ValueClassifier) classifier).value < 0;
+
+		final HaarFeatureClassifier hfc = (HaarFeatureClassifier) classifier;
+		return hasNegativeValues(hfc.left) || hasNegativeValues(hfc.right);
+	}
+
+	/**
+	 * Number the nodes and leaves of a tree in depth-first order, recording
+	 * the children of each node and returning the id of the root
+	 */
+	private static int flatten(Classifier classifier, List<HaarFeatureClassifier> nodes, List<int[]> children,
+			List<Float> leaves)
+	{
+		if (classifier instanceof ValueClassifier) {
+			leaves.add(((ValueClassifier) classifier).value);
+			return ~(leaves.size() - 1);
+		}
+
+		final HaarFeatureClassifier hfc = (HaarFeatureClassifier) classifier;
+		final int id = nodes.size();
+		final int[] lr = new int[2];
+		nodes.add(hfc);
+		children.add(lr);
+
+		lr[0] = flatten(hfc.left, nodes, children, leaves);
+		lr[1] = flatten(hfc.right, nodes, children, leaves);
+
+		return id;
+	}
+
+	/**
+	 * Compile the state for the given scale and integral images. The result
+	 * can be reused for any integral images of the same width.
+	 *
+	 * @param scale
+	 *            the scale factor
+	 * @param images
+	 *            the integral images
+	 * @return the compiled state for the scale
+	 */
+	public synchronized Scale compile(float scale, IntegralImages images) {
+		// following StageTreeClassifier#setScale
+		final int cachedW = Math.round(scale * (width - 2));
+		final int cachedH = Math.round(scale * (height - 2));
+		final float invArea = 1.0f / (cachedW * cachedH);
+
+		final int stride = images.stride;
+		final int tiltStride = images.tiltStride;
+
+		int nrects = 0;
+		for (int i = 0; i < features.length; i++)
+			nrects += nodeNumRects[i];
+
+		final int[] offsets = new int[nrects * 4];
+		final float[] weights = new float[nrects];
+
+		for (int i = 0; i < features.length; i++) {
+			final HaarFeature f = features[i];
+			f.setScale(scale, invArea);
+
+			for (int j = 0, r = nodeFirstRect[i]; j < nodeNumRects[i]; j++, r++) {
+				final WeightedRectangle rect = f.cachedRects[j];
+				final int x = rect.x;
+				final int y = rect.y;
+				final int w = rect.width;
+				final int h = rect.height;
+
+				if (nodeTilted[i]) {
+					offsets[4 * r] = y * tiltStride + x;
+					offsets[4 * r + 1] = (y + h) * tiltStride + x - h;
+					offsets[4 * r + 2] = (y + w) * tiltStride + x + w;
+					offsets[4 * r + 3] = (y + w + h) * tiltStride + x + w - h;
+				} else {
+					offsets[4 * r] = (y + h) * stride + x + w;
+					offsets[4 * r + 1] = (y + h) * stride + x;
+					offsets[4 * r + 2] = y * stride + x + w;
+					offsets[4 * r + 3] = y * stride + x;
+				}
+				weights[r] = rect.weight;
+			}
+		}
+
+		final int shift = Math.round(scale);
+
+		return new Scale(scale, stride, tiltStride, offsets, weights, shift * stride + shift, cachedW, cachedH,
+				invArea);
+	}
+
+	/**
+	 * @return true if the compiled classifier is a cascade (and can thus be
+	 *         used with batches); false if it is a tree
+	 */
+	public boolean isCascade() {
+		return isCascade;
+	}
+
+	/**
+	 * @return the width of the detection window at unit scale
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the height of the detection window at unit scale
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return true if the classifier uses tilted features
+	 */
+	public boolean hasTiltedFeatures() {
+		return hasTiltedFeatures;
+	}
+
+	private float windowVarianceNorm(IntegralImages images, Scale s, int base) {
+		final float[] sum = images.sum;
+		final float[] sqSum = images.sqSum;
+		final int b = base + s.varOffset;
+
+		final float wsum = sum[b + s.var11] + sum[b + s.var00] - sum[b + s.var10] - sum[b + s.var01];
+		final float wsqSum = sqSum[b + s.var11] + sqSum[b + s.var00] - sqSum[b + s.var10] - sqSum[b + s.var01];
+
+		final float mean = wsum * s.invArea;
+		float wvNorm = wsqSum * s.invArea - mean * mean;
+		wvNorm = (float) ((wvNorm > 0) ? Math.sqrt(wvNorm) : 1);
+
+		return wvNorm;
+	}
+
+	private float nodeResponse(IntegralImages images, Scale s, int node, int base, int tiltBase) {
+		final float[] data;
+		final int b;
+		if (nodeTilted[node]) {
+			data = images.tiltSum;
+			b = tiltBase;
+		} else {
+			data = images.sum;
+			b = base;
+		}
+
+		// the corners of both normal and tilted rectangles are combined in
+		// the same way
+		final int[] o = s.rectOffsets;
+		final float[] w = s.rectWeights;
+		final int first = nodeFirstRect[node];
+		final int last = first + nodeNumRects[node];
+
+		float total = 0;
+		for (int r = first, or = 4 * first; r < last; r++, or += 4) {
+			final float regionSum = data[b + o[or]] - data[b + o[or + 1]] - data[b + o[or + 2]] + data[b + o[or + 3]];
+
+			total += regionSum * w[r];
+		}
+
+		return total;
+	}
+
+	private float treeValue(IntegralImages images, Scale s, int tree, int base, int tiltBase, float wvNorm) {
+		int node = treeRoot[tree];
+
+		while (node >= 0) {
+			final float response = nodeResponse(images, s, node, base, tiltBase);
+
+			node = (response < nodeThreshold[node] * wvNorm) ? nodeLeft[node] : nodeRight[node];
+		}
+
+		return leafValue[~node];
+	}
+
+	private boolean pass(IntegralImages images, Scale s, int stage, int base, int tiltBase, float wvNorm) {
+		final int first = stageFirstTree[stage];
+		final int last = first + stageNumTrees[stage];
+		final float threshold = stageThreshold[stage];
+
+		float total = 0;
+		if (stageHasNegative[stage]) {
+			for (int t = first; t < last; t++)
+				total += treeValue(images, s, t, base, tiltBase, wvNorm);
+
+			return total >= threshold;
+		} else {
+			for (int t = first; t < last; t++) {
+				total += treeValue(images, s, t, base, tiltBase, wvNorm);
+				if (total >= threshold)
+					return true;
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * Classify the window at the given position. The result is the same as
+	 * {@link StageTreeClassifier#classify(SummedSqTiltAreaTable, int, int)}.
+	 *
+	 * @param images
+	 *            the integral images
+	 * @param s
+	 *            the compiled scale, which must be compatible with the images
+	 * @param x
+	 *            the x-ordinate of the window
+	 * @param y
+	 *            the y-ordinate of the window
+	 * @return the number of stages that passed (positive if the window was
+	 *         accepted; negative otherwise)
+	 */
+	public int classify(IntegralImages images, Scale s, int x, int y) {
+		final int base = y * s.stride + x;
+		final int tiltBase = y * s.tiltStride + x;
+		final float wvNorm = windowVarianceNorm(images, s, base);
+
+		int matches = 0;
+		int stage = 0;
+		while (true) {
+			if (pass(images, s, stage, base, tiltBase, wvNorm)) {
+				matches++;
+				stage = stageSuccess[stage];
+				if (stage < 0)
+					return matches;
+			} else {
+				stage = stageFailure[stage];
+				if (stage < 0)
+					return -matches;
+			}
+		}
+	}
+
+	/**
+	 * Classify a batch of windows along the given row, storing the results in
+	 * {@link Batch#results}. For cascades each stage is evaluated for all the
+	 * surviving windows before the next stage; trees are evaluated one window
+	 * at a time.
+	 *
+	 * @param images
+	 *            the integral images
+	 * @param s
+	 *            the compiled scale, which must be compatible with the images
+	 * @param y
+	 *            the y-ordinate of the row
+	 * @param batch
+	 *            the batch of windows
+	 */
+	public void classify(IntegralImages images, Scale s, int y, Batch batch) {
+		final int n = batch.size;
+		final int[] xs = batch.x;
+		final int[] results = batch.results;
+
+		if (!isCascade) {
+			for (int i = 0; i < n; i++)
+				results[i] = classify(images, s, xs[i], y);
+			return;
+		}
+
+		final int rowBase = y * s.stride;
+		final int tiltRowBase = y * s.tiltStride;
+		final int[] index = batch.activeIndex;
+		final int[] ax = batch.activeX;
+		final float[] norm = batch.activeNorm;
+		final float[] totals = batch.activeTotal;
+
+		for (int i = 0; i < n; i++) {
+			index[i] = i;
+			ax[i] = xs[i];
+			norm[i] = windowVarianceNorm(images, s, rowBase + xs[i]);
+		}
+
+		int nactive = n;
+		int matches = 0;
+		for (int stage = 0; stage >= 0 && nactive > 0; stage = stageSuccess[stage]) {
+			final int first = stageFirstTree[stage];
+			final int last = first + stageNumTrees[stage];
+			final float threshold = stageThreshold[stage];
+
+			for (int a = 0; a < nactive; a++)
+				totals[a] = 0;
+
+			// Every tree is evaluated for every window. If the stage has no
+			// negative values this gives the same result as stopping as soon
+			// as the threshold is reached, because the totals can only
+			// increase.
+			for (int t = first; t < last; t++) {
+				final int node = treeRoot[t];
+
+				if (node >= 0 && nodeLeft[node] < 0 && nodeRight[node] < 0) {
+					if (nodeTilted[node])
+						accumulateStump(images.tiltSum, tiltRowBase, s, node, ax, norm, totals, nactive);
+					else
+						accumulateStump(images.sum, rowBase, s, node, ax, norm, totals, nactive);
+				} else {
+					for (int a = 0; a < nactive; a++)
+						totals[a] += treeValue(images, s, t, rowBase + ax[a], tiltRowBase + ax[a], norm[a]);
+				}
+			}
+
+			// compact the windows that passed; the others have failed
+			int npassed = 0;
+			for (int a = 0; a < nactive; a++) {
+				if (totals[a] >= threshold) {
+					index[npassed] = index[a];
+					ax[npassed] = ax[a];
+					norm[npassed] = norm[a];
+					npassed++;
+				} else {
+					results[index[a]] = -matches;
+				}
+			}
+
+			nactive = npassed;
+			matches++;
+		}
+
+		// the remaining windows passed every stage
+		for (int a = 0; a < nactive; a++)
+			results[index[a]] = matches;
+	}
+
+	/**
+	 * Add the value of a tree consisting of a single feature node (a "stump",
+	 * which is by far the most common type of tree) to the totals of the
+	 * active windows. The parameters of the node are hoisted out of the loop
+	 * over the windows, and the common two and three rectangle cases are
+	 * unrolled. The corners of both normal and tilted rectangles are combined
+	 * in the same way, so only the integral image differs.
+	 */
+	private void accumulateStump(float[] data, int rowBase, Scale s, int node, int[] ax, float[] norm,
+			float[] totals, int nactive)
+	{
+		final int[] o = s.rectOffsets;
+		final float[] w = s.rectWeights;
+		final int r = nodeFirstRect[node];
+		final int nrects = nodeNumRects[node];
+		final float threshold = nodeThreshold[node];
+		final float left = leafValue[~nodeLeft[node]];
+		final float right = leafValue[~nodeRight[node]];
+
+		if (nrects == 2) {
+			final int a0 = o[4 * r], b0 = o[4 * r + 1], c0 = o[4 * r + 2], d0 = o[4 * r + 3];
+			final int a1 = o[4 * r + 4], b1 = o[4 * r + 5], c1 = o[4 * r + 6], d1 = o[4 * r + 7];
+			final float w0 = w[r], w1 = w[r + 1];
+
+			for (int a = 0; a < nactive; a++) {
+				final int b = rowBase + ax[a];
+
+				float response = (data[b + a0] - data[b + b0] - data[b + c0] + data[b + d0]) * w0;
+				response += (data[b + a1] - data[b + b1] - data[b + c1] + data[b + d1]) * w1;
+
+				totals[a] += (response < threshold * norm[a]) ? left : right;
+			}
+		} else if (nrects == 3) {
+			final int a0 = o[4 * r], b0 = o[4 * r + 1], c0 = o[4 * r + 2], d0 = o[4 * r + 3];
+			final int a1 = o[4 * r + 4], b1 = o[4 * r + 5], c1 = o[4 * r + 6], d1 = o[4 * r + 7];
+			final int a2 = o[4 * r + 8], b2 = o[4 * r + 9], c2 = o[4 * r + 10], d2 = o[4 * r + 11];
+			final float w0 = w[r], w1 = w[r + 1], w2 = w[r + 2];
+
+			for (int a = 0; a < nactive; a++) {
+				final int b = rowBase + ax[a];
+
+				float response = (data[b + a0] - data[b + b0] - data[b + c0] + data[b + d0]) * w0;
+				response += (data[b + a1] - data[b + b1] - data[b + c1] + data[b + d1]) * w1;
+				response += (data[b + a2] - data[b + b2] - data[b + c2] + data[b + d2]) * w2;
+
+				totals[a] += (response < threshold * norm[a]) ? left : right;
+			}
+		} else {
+			for (int a = 0; a < nactive; a++) {
+				final int b = rowBase + ax[a];
+
+				float response = 0;
+				for (int j = r; j < r + nrects; j++) {
+					final int oj = 4 * j;
+					response += (data[b + o[oj]] - data[b + o[oj + 1]] - data[b + o[oj + 2]] + data[b + o[oj + 3]])
+							* w[j];
+				}
+
+				totals[a] += (response < threshold * norm[a]) ? left : right;
+			}
+		}
+	}
+}
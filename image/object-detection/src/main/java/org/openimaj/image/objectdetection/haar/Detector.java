@@ -163,6 +163,41 @@ public class Detector extends AbstractMultiScaleObjectDetector<FImage, Rectangle
 	protected void detectAtScale(final SummedSqTiltAreaTable sat, final int startX, final int stopX, final int startY,
 			final int stopY, final float ystep, final int windowWidth, final int windowHeight,
 			final List<Rectangle> results)
+	{
+		scanRows(cascade, sat, startX, stopX, startY, stopY, ystep, windowWidth, windowHeight, results);
+	}
+
+	/**
+	 * Scan the given range of rows with the given cascade, which must have
+	 * already been set to the current scale. This is the inner loop of
+	 * {@link #detectAtScale(SummedSqTiltAreaTable, int, int, int, int, float, int, int, List)}
+	 * and is exposed so that subclasses can scan parts of the image with their
+	 * own copies of the cascade.
+	 * 
+	 * @param cascade
+	 *            the cascade, set to the current scale
+	 * @param sat
+	 *            the summed area table(s)
+	 * @param startX
+	 *            the starting x-ordinate
+	 * @param stopX
+	 *            the stopping x-ordinate
+	 * @param startY
+	 *            the starting y-ordinate
+	 * @param stopY
+	 *            the stopping y-ordinate
+	 * @param ystep
+	 *            the amount to step
+	 * @param windowWidth
+	 *            the window width at the current scale
+	 * @param windowHeight
+	 *            the window height at the current scale
+	 * @param results
+	 *            the list to store detection results in
+	 */
+	protected void scanRows(final StageTreeClassifier cascade, final SummedSqTiltAreaTable sat, final int startX,
+			final int stopX, final int startY, final int stopY, final float ystep, final int windowWidth,
+			final int windowHeight, final List<Rectangle> results)
 	{
 		for (int iy = startY; iy < stopY; iy++) {
 			final int y = Math.round(iy * ystep);
@@ -186,15 +221,42 @@ public class Detector extends AbstractMultiScaleObjectDetector<FImage, Rectangle
 		}
 	}
 
-	@Override
-	public List<Rectangle> detect(FImage image) {
-		final List<Rectangle> results = new ArrayList<Rectangle>();
-
-		final int imageWidth = image.getWidth();
-		final int imageHeight = image.getHeight();
-
-		final SummedSqTiltAreaTable sat = new SummedSqTiltAreaTable(image, cascade.hasTiltedFeatures);
+	/**
+	 * The parameters of the search at a single scale.
+	 * 
+	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+	 */
+	protected static class ScaleParameters {
+		/** the scale factor of the cascade */
+		public float factor;
+		/** the amount to step */
+		public float ystep;
+		/** the window width at this scale */
+		public int windowWidth;
+		/** the window height at this scale */
+		public int windowHeight;
+		/** the starting x-ordinate */
+		public int startX;
+		/** the stopping x-ordinate */
+		public int stopX;
+		/** the starting y-ordinate */
+		public int startY;
+		/** the stopping y-ordinate */
+		public int stopY;
+	}
 
+	/**
+	 * Compute the scales to search for an image of the given size, taking into
+	 * account the minimum and maximum detection sizes and any region of
+	 * interest.
+	 * 
+	 * @param imageWidth
+	 *            the width of the image
+	 * @param imageHeight
+	 *            the height of the image
+	 * @return the parameters of each scale, from smallest to largest
+	 */
+	protected List<ScaleParameters> computeScales(int imageWidth, int imageHeight) {
 		// compute the number of scales to test and the starting factor
 		int nFactors = 0;
 		int startFactor = 0;
@@ -215,26 +277,44 @@ public class Detector extends AbstractMultiScaleObjectDetector<FImage, Rectangle
 			nFactors++;
 		}
 
-		// run the detection at each scale
+		final List<ScaleParameters> scales = new ArrayList<ScaleParameters>();
 		float factor = (float) Math.pow(scaleFactor, startFactor);
 		for (int scaleStep = startFactor; scaleStep < nFactors; factor *= scaleFactor, scaleStep++) {
-			final float ystep = Math.max(2, factor);
+			final ScaleParameters sp = new ScaleParameters();
+			sp.factor = factor;
+			sp.ystep = Math.max(2, factor);
 
-			final int windowWidth = (int) (factor * cascade.width);
-			final int windowHeight = (int) (factor * cascade.height);
+			sp.windowWidth = (int) (factor * cascade.width);
+			sp.windowHeight = (int) (factor * cascade.height);
 
 			// determine the spatial range, taking into account any ROI.
-			final int startX = (int) (roi == null ? 0 : Math.max(0, roi.x));
-			final int startY = (int) (roi == null ? 0 : Math.max(0, roi.y));
-			final int stopX = Math.round(
-					(((roi == null ? imageWidth : Math.min(imageWidth, roi.x + roi.width)) - windowWidth)) / ystep);
-			final int stopY = Math.round(
-					(((roi == null ? imageHeight : Math.min(imageHeight, roi.y + roi.height)) - windowHeight)) / ystep);
+			sp.startX = (int) (roi == null ? 0 : Math.max(0, roi.x));
+			sp.startY = (int) (roi == null ? 0 : Math.max(0, roi.y));
+			sp.stopX = Math.round(
+					(((roi == null ? imageWidth : Math.min(imageWidth, roi.x + roi.width)) - sp.windowWidth)) / sp.ystep);
+			sp.stopY = Math.round(
+					(((roi == null ? imageHeight : Math.min(imageHeight, roi.y + roi.height)) - sp.windowHeight))
+							/ sp.ystep);
+
+			scales.add(sp);
+		}
+
+		return scales;
+	}
+
+	@Override
+	public List<Rectangle> detect(FImage image) {
+		final List<Rectangle> results = new ArrayList<Rectangle>();
 
+		final SummedSqTiltAreaTable sat = new SummedSqTiltAreaTable(image, cascade.hasTiltedFeatures);
+
+		// run the detection at each scale
+		for (final ScaleParameters sp : computeScales(image.getWidth(), image.getHeight())) {
 			// prepare the cascade for this scale
-			cascade.setScale(factor);
+			cascade.setScale(sp.factor);
 
-			detectAtScale(sat, startX, stopX, startY, stopY, ystep, windowWidth, windowHeight, results);
+			detectAtScale(sat, sp.startX, sp.stopX, sp.startY, sp.stopY, sp.ystep, sp.windowWidth, sp.windowHeight,
+					results);
 		}
 
 		return results;
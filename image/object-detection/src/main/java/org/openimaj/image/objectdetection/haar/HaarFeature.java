@@ -192,6 +192,14 @@ public abstract class HaarFeature {
 		cachedRects[0].weight = (float) (-sum0 / area0);
 	}
 
+	/**
+	 * Create a copy of this feature that shares the rectangles of this feature,
+	 * but has its own cached state for the current scale.
+	 * 
+	 * @return the copy
+	 */
+	abstract HaarFeature copy();
+
 	/**
 	 * Compute the response of this feature at the given location. The scale of
 	 * the feature must have previously been set through a call to
@@ -213,6 +221,11 @@ public abstract class HaarFeature {
 			super(rects, 2f);
 		}
 
+		@Override
+		HaarFeature copy() {
+			return new TiltedFeature(rects);
+		}
+
 		@Override
 		public float computeResponse(SummedSqTiltAreaTable sat, int rx, int ry) {
 			float total = 0;
@@ -243,6 +256,11 @@ public abstract class HaarFeature {
 			super(rects, 1f);
 		}
 
+		@Override
+		HaarFeature copy() {
+			return new NormalFeature(rects);
+		}
+
 		@Override
 		public float computeResponse(SummedSqTiltAreaTable sat, int rx, int ry) {
 			float total = 0;
@@ -29,9 +29,13 @@
  */
 package org.openimaj.image.objectdetection.haar;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ThreadPoolExecutor;
 
+import org.openimaj.image.FImage;
 import org.openimaj.image.analysis.algorithm.SummedSqTiltAreaTable;
 import org.openimaj.math.geometry.shape.Rectangle;
 import org.openimaj.util.function.Operation;
@@ -44,6 +48,20 @@ import org.openimaj.util.parallel.Parallel.IntRange;
  * identical, but the image is separated into multiple vertical stripes for each
  * thread to process independently.
  * <p>
+ * By default, the scales are searched one after the other, with only the
+ * search within each scale being parallelised. If a {@link ForkJoinPool} is set
+ * with {@link #setWorkStealingPool(ForkJoinPool)}, the detector instead splits
+ * the search into tasks over (scale, band of rows) pairs which are all
+ * scheduled together on the pool; idle threads steal work from other scales,
+ * so the small number of rows at the coarse scales no longer limits the
+ * parallelism. Each scale is searched with its own copy of the cascade, which
+ * is set to the scale by the first task of the scale whilst the other scales
+ * are being searched, and is retained between calls so that repeated
+ * detections on same-sized images (i.e. video frames) don't have to rescale
+ * the features. Each task collects its detections in its own buffer, and the
+ * buffers are concatenated in order, so the results are identical to (and in
+ * the same order as) those of the {@link Detector}.
+ * <p>
  * <strong>Important note:</strong> This detector is NOT thread-safe due to the
  * fact that {@link StageTreeClassifier}s are not themselves thread-safe. Do not
  * attempt to use it in a multi-threaded environment!
@@ -52,7 +70,16 @@ import org.openimaj.util.parallel.Parallel.IntRange;
  * 
  */
 public class MultiThreadedDetector extends Detector {
+	/**
+	 * Default number of rows (in units of the step size) searched by each task
+	 * in work-stealing mode.
+	 */
+	public static final int DEFAULT_ROWS_PER_TASK = 4;
+
 	private ThreadPoolExecutor threadPool;
+	private ForkJoinPool workStealingPool;
+	private int rowsPerTask = DEFAULT_ROWS_PER_TASK;
+	private List<StageTreeClassifier> scaleCascades = new ArrayList<StageTreeClassifier>();
 
 	/**
 	 * Construct the {@link MultiThreadedDetector} with the given parameters.
@@ -111,6 +138,10 @@ public class MultiThreadedDetector extends Detector {
 		Parallel.forRange(startY, stopY, 1, new Operation<IntRange>() {
 			@Override
 			public void perform(IntRange range) {
+				// collect locally so the shared list is only locked once per
+				// range
+				final List<Rectangle> local = new ArrayList<Rectangle>();
+
 				for (int iy = range.start; iy < range.stop; iy += range.incr) {
 					final int y = Math.round(iy * ystep);
 
@@ -120,9 +151,7 @@ public class MultiThreadedDetector extends Detector {
 						final int result = cascade.classify(sat, x, y);
 
 						if (result > 0) {
-							synchronized (results) {
-								results.add(new Rectangle(x, y, windowWidth, windowHeight));
-							}
+							local.add(new Rectangle(x, y, windowWidth, windowHeight));
 						}
 
 						// if there is no hint of detection, then increase the
@@ -130,7 +159,152 @@ public class MultiThreadedDetector extends Detector {
 						xstep = result == 0 ? smallStep : bigStep;
 					}
 				}
+
+				if (local.size() > 0) {
+					synchronized (results) {
+						results.addAll(local);
+					}
+				}
 			}
 		}, threadPool);
 	}
+
+	@Override
+	public List<Rectangle> detect(FImage image) {
+		if (workStealingPool == null)
+			return super.detect(image);
+
+		final SummedSqTiltAreaTable sat = new SummedSqTiltAreaTable(image, cascade.hasTiltedFeatures);
+		final List<ScaleParameters> scales = computeScales(image.getWidth(), image.getHeight());
+
+		while (scaleCascades.size() < scales.size())
+			scaleCascades.add(cascade.copy());
+
+		final List<ScaleTask> tasks = new ArrayList<ScaleTask>(scales.size());
+		for (int i = 0; i < scales.size(); i++)
+			tasks.add(new ScaleTask(sat, scales.get(i), scaleCascades.get(i)));
+
+		workStealingPool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+
+		final List<Rectangle> results = new ArrayList<Rectangle>();
+		for (final ScaleTask st : tasks)
+			for (final BandTask bt : st.bands)
+				results.addAll(bt.results);
+
+		return results;
+	}
+
+	/**
+	 * Task to prepare the cascade for a scale, and then search the bands of
+	 * rows at that scale in parallel.
+	 */
+	private class ScaleTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final SummedSqTiltAreaTable sat;
+		final ScaleParameters sp;
+		final StageTreeClassifier scaleCascade;
+		final List<BandTask> bands = new ArrayList<BandTask>();
+
+		ScaleTask(SummedSqTiltAreaTable sat, ScaleParameters sp, StageTreeClassifier scaleCascade) {
+			this.sat = sat;
+			this.sp = sp;
+			this.scaleCascade = scaleCascade;
+		}
+
+		@Override
+		protected void compute() {
+			if (scaleCascade.cachedScale != sp.factor)
+				scaleCascade.setScale(sp.factor);
+
+			for (int y = sp.startY; y < sp.stopY; y += rowsPerTask)
+				bands.add(new BandTask(this, y, Math.min(y + rowsPerTask, sp.stopY)));
+
+			invokeAll(bands);
+		}
+	}
+
+	/**
+	 * Task to search a band of rows at a single scale, collecting the
+	 * detections in its own buffer.
+	 */
+	private class BandTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final ScaleTask scale;
+		final int startY;
+		final int stopY;
+		final List<Rectangle> results = new ArrayList<Rectangle>(0);
+
+		BandTask(ScaleTask scale, int startY, int stopY) {
+			this.scale = scale;
+			this.startY = startY;
+			this.stopY = stopY;
+		}
+
+		@Override
+		protected void compute() {
+			final ScaleParameters sp = scale.sp;
+
+			scanRows(scale.scaleCascade, scale.sat, sp.startX, sp.stopX, startY, stopY, sp.ystep, sp.windowWidth,
+					sp.windowHeight, results);
+		}
+	}
+
+	/**
+	 * Get the {@link ForkJoinPool} used for work-stealing detection.
+	 * 
+	 * @return the pool, or <code>null</code> if work-stealing detection is
+	 *         disabled.
+	 */
+	public ForkJoinPool getWorkStealingPool() {
+		return workStealingPool;
+	}
+
+	/**
+	 * Set the {@link ForkJoinPool} used for work-stealing detection across
+	 * scales. Setting to <code>null</code> (the default) reverts to searching
+	 * one scale at a time using the {@link ThreadPoolExecutor}.
+	 * 
+	 * @param workStealingPool
+	 *            the pool, or <code>null</code> to disable work-stealing
+	 *            detection.
+	 */
+	public void setWorkStealingPool(ForkJoinPool workStealingPool) {
+		this.workStealingPool = workStealingPool;
+	}
+
+	/**
+	 * Get the number of rows (in units of the step size at each scale) that
+	 * are searched by each task in work-stealing mode.
+	 * 
+	 * @return the number of rows per task
+	 */
+	public int getRowsPerTask() {
+		return rowsPerTask;
+	}
+
+	/**
+	 * Set the number of rows (in units of the step size at each scale) that
+	 * are searched by each task in work-stealing mode. Smaller values give
+	 * better load balancing at the expense of more scheduling overhead.
+	 * 
+	 * @param rowsPerTask
+	 *            the number of rows per task; must be positive
+	 * @throws IllegalArgumentException
+	 *             if rowsPerTask is less than one
+	 */
+	public void setRowsPerTask(int rowsPerTask) {
+		if (rowsPerTask < 1)
+			throw new IllegalArgumentException("The number of rows per task must be positive");
+
+		this.rowsPerTask = rowsPerTask;
+	}
 }
@@ -29,6 +29,9 @@
  */
 package org.openimaj.image.objectdetection.haar;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 import org.openimaj.citation.annotation.Reference;
 import org.openimaj.citation.annotation.ReferenceType;
 import org.openimaj.image.analysis.algorithm.SummedSqTiltAreaTable;
@@ -284,4 +287,50 @@ public class StageTreeClassifier {
 	public Stage getRoot() {
 		return root;
 	}
+
+	/**
+	 * Create a copy of this classifier. The copy shares the parameters of this
+	 * classifier, but has its own cached state for the current scale, so the
+	 * original and copy can be set to different scales and used concurrently
+	 * (on the same or different threads).
+	 * 
+	 * @return the copy
+	 */
+	public StageTreeClassifier copy() {
+		final Map<Stage, Stage> copies = new IdentityHashMap<Stage, Stage>();
+
+		return new StageTreeClassifier(width, height, name, hasTiltedFeatures, copy(root, copies));
+	}
+
+	private static Stage copy(Stage stage, Map<Stage, Stage> copies) {
+		if (stage == null)
+			return null;
+
+		Stage copy = copies.get(stage);
+		if (copy != null)
+			return copy;
+
+		final Classifier[] ensemble = new Classifier[stage.ensemble.length];
+		for (int i = 0; i < ensemble.length; i++)
+			ensemble[i] = copy(stage.ensemble[i]);
+
+		copy = new Stage(stage.threshold, ensemble, null, null);
+		copies.put(stage, copy);
+
+		copy.successStage = copy(stage.successStage, copies);
+		copy.failureStage = copy(stage.failureStage, copies);
+
+		return copy;
+	}
+
+	private static Classifier copy(Classifier classifier) {
+		if (classifier instanceof HaarFeatureClassifier) {
+			final HaarFeatureClassifier hfc = (HaarFeatureClassifier) classifier;
+
+			return new HaarFeatureClassifier(hfc.feature.copy(), hfc.threshold, copy(hfc.left), copy(hfc.right));
+		}
+
+		// value classifiers have no state
+		return classifier;
+	}
 }
@@ -44,6 +44,8 @@ public class HOGClassifier {
 	int height;
 	HOG hogExtractor;
 	Annotator<DoubleFV, Boolean> classifier;
+	double[] weights;
+	double bias;
 
 	public void prepare(FImage image) {
 		hogExtractor.analyseImage(image);
@@ -52,6 +54,22 @@ public class HOGClassifier {
 	public double classify(Rectangle current) {
 		final Histogram fv = hogExtractor.getFeatureVector(current);
 
+		return classify(fv);
+	}
+
+	/**
+	 * Classify a HOG feature vector that has already been extracted. If a
+	 * linear model has been set with {@link #setLinearModel(double[], double)}
+	 * it is used directly; otherwise the underlying annotator is used.
+	 * 
+	 * @param fv
+	 *            the feature vector
+	 * @return the confidence that the feature represents the object
+	 */
+	public double classify(DoubleFV fv) {
+		if (weights != null)
+			return linearResponse(linearDecision(fv.values, 0));
+
 		final List<ScoredAnnotation<Boolean>> res = classifier.annotate(fv);
 
 		if (res.get(0).annotation) {
@@ -60,4 +78,52 @@ public class HOGClassifier {
 			return 1 - res.get(0).confidence;
 		}
 	}
+
+	/**
+	 * Set a linear model that is used in place of the annotator. The model
+	 * should have been learnt on the same HOG features as the annotator (i.e.
+	 * it might be the weight vector of a linear SVM such as the one learnt by
+	 * liblinear), and should give positive decision values for the object. The
+	 * decision value is passed through a logistic function so that the
+	 * response is in the same range as the annotator's confidence. Setting a
+	 * linear model allows a {@link HOGPyramidDetector} to score windows with a
+	 * single dot product each.
+	 * 
+	 * @param weights
+	 *            the weight vector; null to remove the linear model
+	 * @param bias
+	 *            the bias term
+	 */
+	public void setLinearModel(double[] weights, double bias) {
+		this.weights = weights;
+		this.bias = bias;
+	}
+
+	/**
+	 * @return true if a linear model has been set; false otherwise.
+	 */
+	public boolean hasLinearModel() {
+		return weights != null;
+	}
+
+	/**
+	 * Compute the decision value of the linear model for the feature stored
+	 * in the given array from the given offset.
+	 * 
+	 * @param data
+	 *            the feature data
+	 * @param offset
+	 *            the offset of the feature in the data
+	 * @return the decision value
+	 */
+	double linearDecision(double[] data, int offset) {
+		double sum = bias;
+		for (int i = 0; i < weights.length; i++)
+			sum += weights[i] * data[offset + i];
+		return sum;
+	}
+
+	static double linearResponse(double decision) {
+		return 1.0 / (1.0 + Math.exp(-decision));
+	}
 }
@@ -59,6 +59,38 @@ public class HOGDetector extends AbstractMultiScaleObjectDetector<FImage, Rectan
 
 		classifier.prepare(image);
 
+		// run the detection at each scale
+		for (final float factor : computeScales(imageWidth, imageHeight)) {
+			final float ystep = 8 * factor;
+			final int windowWidth = (int) (factor * classifier.width);
+			final int windowHeight = (int) (factor * classifier.height);
+
+			// determine the spatial range, taking into account any ROI.
+			final int startX = (int) (roi == null ? 0 : Math.max(0, roi.x));
+			final int startY = (int) (roi == null ? 0 : Math.max(0, roi.y));
+			final int stopX = Math.round(
+					(roi == null ? imageWidth : Math.min(imageWidth, roi.x + roi.width)) - windowWidth);
+			final int stopY = Math.round((((roi == null ? imageHeight : Math.min(imageHeight, roi.y +
+					roi.height)) - windowHeight)));
+
+			detectAtScale(startX, stopX, startY, stopY, ystep, windowWidth, windowHeight, results);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Compute the scales (relative to the size of the classifier) at which
+	 * detection is performed for an image of the given size, taking into
+	 * account the minimum and maximum detection sizes.
+	 * 
+	 * @param imageWidth
+	 *            the width of the image
+	 * @param imageHeight
+	 *            the height of the image
+	 * @return the scales, in increasing order
+	 */
+	protected float[] computeScales(int imageWidth, int imageHeight) {
 		// compute the number of scales to test and the starting factor
 		int nFactors = 0;
 		int startFactor = 0;
@@ -79,27 +111,12 @@ public class HOGDetector extends AbstractMultiScaleObjectDetector<FImage, Rectan
 			nFactors++;
 		}
 
-		// run the detection at each scale
+		final float[] scales = new float[Math.max(0, nFactors - startFactor)];
 		float factor = (float) Math.pow(scaleFactor, startFactor);
-		for (int scaleStep = startFactor; scaleStep < nFactors; factor *=
-				scaleFactor, scaleStep++)
-		{
-			final float ystep = 8 * factor;
-			final int windowWidth = (int) (factor * classifier.width);
-			final int windowHeight = (int) (factor * classifier.height);
+		for (int i = 0; i < scales.length; i++, factor *= scaleFactor)
+			scales[i] = factor;
 
-			// determine the spatial range, taking into account any ROI.
-			final int startX = (int) (roi == null ? 0 : Math.max(0, roi.x));
-			final int startY = (int) (roi == null ? 0 : Math.max(0, roi.y));
-			final int stopX = Math.round(
-					(roi == null ? imageWidth : Math.min(imageWidth, roi.x + roi.width)) - windowWidth);
-			final int stopY = Math.round((((roi == null ? imageHeight : Math.min(imageHeight, roi.y +
-					roi.height)) - windowHeight)));
-
-			detectAtScale(startX, stopX, startY, stopY, ystep, windowWidth, windowHeight, results);
-		}
-
-		return results;
+		return scales;
 	}
 
 	/**
@@ -0,0 +1,448 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.objectdetection.hog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openimaj.citation.annotation.Reference;
+import org.openimaj.citation.annotation.ReferenceType;
+import org.openimaj.image.FImage;
+import org.openimaj.image.analysis.algorithm.histogram.GradientOrientationHistogramExtractor;
+import org.openimaj.image.feature.dense.gradient.HOG;
+import org.openimaj.image.feature.dense.gradient.binning.FixedHOGStrategy.BlockNormalisation;
+import org.openimaj.image.feature.dense.gradient.binning.FlexibleHOGStrategy;
+import org.openimaj.image.processing.convolution.FImageGradients;
+import org.openimaj.math.geometry.shape.Rectangle;
+import org.openimaj.math.statistics.distribution.Histogram;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.Parallel;
+
+/**
+ * A pyramid of dense HOG features for an image, laid out so that the features
+ * of every detection window at every scale can be read from contiguous arrays.
+ * <p>
+ * The oriented gradient histograms (in the form of a
+ * {@link GradientOrientationHistogramExtractor}) are only computed once per
+ * octave, from a box-filtered and halved copy of the previous octave. The
+ * levels between octaves are approximated from the gradients of the octave
+ * below by growing the cells in proportion to the scale, rather than by
+ * resampling the image and recomputing the gradients, in the style of the
+ * "fastest pedestrian detector in the west". Dollar et al. also correct the
+ * approximated channels with a power law; this isn't needed here as each cell
+ * histogram is L2 normalised.
+ * <p>
+ * For each level, every cell histogram is computed and normalised once, and
+ * then the normalised blocks at every cell position are computed once. The
+ * feature of a window is the concatenation of its blocks, in exactly the same
+ * order as the features produced by the {@link FlexibleHOGStrategy} of the
+ * {@link HOGClassifier}, so a window can be classified without any histograms
+ * being recomputed. At the base octave (and at all other scales that are
+ * powers of two) the features are identical to those computed by the
+ * {@link HOG} of the {@link HOGClassifier} if the window is aligned to the
+ * cells.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+@Reference(
+		type = ReferenceType.Inproceedings,
+		author = { "Dollar, Piotr", "Belongie, Serge", "Perona, Pietro" },
+		title = "The Fastest Pedestrian Detector in the West",
+		year = "2010",
+		booktitle = "Proceedings of the British Machine Vision Conference",
+		pages = { "68.1", "68.11" },
+		publisher = "BMVA Press")
+public class HOGFeaturePyramid {
+	/**
+	 * A single level of a {@link HOGFeaturePyramid}. The normalised blocks at
+	 * every cell position are stored in a single array, row by row, with the
+	 * block at cell (i, j) starting at
+	 * <code>(j * numBlockPositionsX + i) * blockLength</code>.
+	 * 
+	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+	 */
+	public static class Level {
+		final float scale;
+		final int octave;
+		final float cellWidth;
+		final float cellHeight;
+		final int numCellsX;
+		final int numCellsY;
+		final int numBlockPositionsX;
+		final int numBlockPositionsY;
+		final double[] blocks;
+
+		Level(float scale, int octave, float cellWidth, float cellHeight, int numCellsX, int numCellsY,
+				int numBlockPositionsX, int numBlockPositionsY, double[] blocks)
+		{
+			this.scale = scale;
+			this.octave = octave;
+			this.cellWidth = cellWidth;
+			this.cellHeight = cellHeight;
+			this.numCellsX = numCellsX;
+			this.numCellsY = numCellsY;
+			this.numBlockPositionsX = numBlockPositionsX;
+			this.numBlockPositionsY = numBlockPositionsY;
+			this.blocks = blocks;
+		}
+
+		/**
+		 * @return the scale of the level relative to the image
+		 */
+		public float getScale() {
+			return scale;
+		}
+
+		/**
+		 * @return the number of cells across the level
+		 */
+		public int getNumCellsX() {
+			return numCellsX;
+		}
+
+		/**
+		 * @return the number of cells down the level
+		 */
+		public int getNumCellsY() {
+			return numCellsY;
+		}
+
+		/**
+		 * Get the x-ordinate in the original image of the left edge of the
+		 * given column of cells
+		 * 
+		 * @param cx
+		 *            the cell column
+		 * @return the x-ordinate
+		 */
+		public int getX(int cx) {
+			return Math.round(cx * cellWidth) << octave;
+		}
+
+		/**
+		 * Get the y-ordinate in the original image of the top edge of the
+		 * given row of cells
+		 * 
+		 * @param cy
+		 *            the cell row
+		 * @return the y-ordinate
+		 */
+		public int getY(int cy) {
+			return Math.round(cy * cellHeight) << octave;
+		}
+	}
+
+	private final int nbins;
+	private final boolean histogramInterpolation;
+	private final FImageGradients.Mode orientationMode;
+	private final int windowWidth;
+	private final int windowHeight;
+	private final int numCellsX;
+	private final int numCellsY;
+	private final int cellsPerBlockX;
+	private final int cellsPerBlockY;
+	private final int blockStepX;
+	private final int blockStepY;
+	private final BlockNormalisation norm;
+	private final int numBlocksX;
+	private final int numBlocksY;
+	private final int blockLength;
+
+	private Level[] levels;
+
+	/**
+	 * Construct a pyramid that produces the same features as the given
+	 * classifier. The classifier's {@link HOG} must use a
+	 * {@link FlexibleHOGStrategy}.
+	 * 
+	 * @param classifier
+	 *            the classifier
+	 * @throws IllegalArgumentException
+	 *             if the classifier doesn't use a {@link FlexibleHOGStrategy}
+	 */
+	public HOGFeaturePyramid(HOGClassifier classifier) {
+		if (!(classifier.hogExtractor.getStrategy() instanceof FlexibleHOGStrategy))
+			throw new IllegalArgumentException("A feature pyramid can only be constructed for a FlexibleHOGStrategy");
+
+		final GradientOrientationHistogramExtractor extractor = classifier.hogExtractor.getExtractor();
+		final FlexibleHOGStrategy strategy = (FlexibleHOGStrategy) classifier.hogExtractor.getStrategy();
+
+		this.nbins = extractor.getNumBins();
+		this.histogramInterpolation = extractor.isHistogramInterpolation();
+		this.orientationMode = extractor.getOrientationMode();
+		this.windowWidth = classifier.width;
+		this.windowHeight = classifier.height;
+		this.numCellsX = strategy.getNumCellsX();
+		this.numCellsY = strategy.getNumCellsY();
+		this.cellsPerBlockX = strategy.getCellsPerBlockX();
+		this.cellsPerBlockY = strategy.getCellsPerBlockY();
+		this.blockStepX = strategy.getBlockStepX();
+		this.blockStepY = strategy.getBlockStepY();
+		this.norm = strategy.getNorm();
+
+		this.numBlocksX = 1 + (numCellsX - cellsPerBlockX) / blockStepX;
+		this.numBlocksY = 1 + (numCellsY - cellsPerBlockY) / blockStepY;
+		this.blockLength = nbins * cellsPerBlockX * cellsPerBlockY;
+	}
+
+	/**
+	 * Compute the levels of the pyramid for the given image at the given
+	 * scales. Each scale is the size of the detection window relative to the
+	 * size of the classifier window, and must be at least 1. The levels are
+	 * computed in parallel.
+	 * 
+	 * @param image
+	 *            the image
+	 * @param scales
+	 *            the scales
+	 */
+	public void analyseImage(FImage image, float[] scales) {
+		int maxOctave = 0;
+		for (final float s : scales)
+			maxOctave = Math.max(maxOctave, octave(s));
+
+		final List<FImage> octaveImages = new ArrayList<FImage>();
+		FImage current = image;
+		for (int o = 0; o <= maxOctave && current.width > 0 && current.height > 0; o++) {
+			octaveImages.add(current);
+			current = halve(current);
+		}
+
+		final GradientOrientationHistogramExtractor[] octaves = new GradientOrientationHistogramExtractor[octaveImages.size()];
+		Parallel.forIndex(0, octaveImages.size(), 1, new Operation<Integer>() {
+			@Override
+			public void perform(Integer o) {
+				final GradientOrientationHistogramExtractor goh = new GradientOrientationHistogramExtractor(nbins,
+						histogramInterpolation, orientationMode);
+				goh.analyseImage(octaveImages.get(o));
+				octaves[o] = goh;
+			}
+		});
+
+		final Level[] newLevels = new Level[scales.length];
+		Parallel.forIndex(0, scales.length, 1, new Operation<Integer>() {
+			@Override
+			public void perform(Integer i) {
+				final int o = Math.min(octave(scales[i]), octaves.length - 1);
+				final FImage img = octaveImages.get(o);
+
+				newLevels[i] = computeLevel(octaves[o], img.width, img.height, scales[i], o);
+			}
+		});
+
+		this.levels = newLevels;
+	}
+
+	private static int octave(float scale) {
+		int o = 0;
+		while ((2 << o) <= scale)
+			o++;
+		return o;
+	}
+
+	private static FImage halve(FImage image) {
+		final int w = image.width / 2;
+		final int h = image.height / 2;
+		final FImage out = new FImage(w, h);
+
+		for (int y = 0; y < h; y++) {
+			final float[] r0 = image.pixels[2 * y];
+			final float[] r1 = image.pixels[2 * y + 1];
+			final float[] o = out.pixels[y];
+
+			for (int x = 0; x < w; x++)
+				o[x] = 0.25f * (r0[2 * x] + r0[2 * x + 1] + r1[2 * x] + r1[2 * x + 1]);
+		}
+
+		return out;
+	}
+
+	private Level computeLevel(GradientOrientationHistogramExtractor goh, int width, int height, float scale,
+			int octave)
+	{
+		final float relativeScale = scale / (1 << octave);
+		final float cellWidth = relativeScale * windowWidth / numCellsX;
+		final float cellHeight = relativeScale * windowHeight / numCellsY;
+		final int ncx = (int) (width / cellWidth);
+		final int ncy = (int) (height / cellHeight);
+
+		if (ncx < numCellsX || ncy < numCellsY)
+			return new Level(scale, octave, cellWidth, cellHeight, ncx, ncy, 0, 0, new double[0]);
+
+		// the normalised cell histograms
+		final double[] cells = new double[ncx * ncy * nbins];
+		final Histogram hist = new Histogram(nbins);
+		for (int j = 0, k = 0; j < ncy; j++) {
+			final int y0 = Math.round(j * cellHeight);
+			final int y1 = Math.round((j + 1) * cellHeight);
+
+			for (int i = 0; i < ncx; i++, k += nbins) {
+				final int x0 = Math.round(i * cellWidth);
+				final int x1 = Math.round((i + 1) * cellWidth);
+
+				goh.computeHistogram(x0, y0, x1 - x0, y1 - y0, hist);
+				hist.normaliseL2();
+				System.arraycopy(hist.values, 0, cells, k, nbins);
+			}
+		}
+
+		// the normalised blocks at every cell position
+		final int nbx = ncx - cellsPerBlockX + 1;
+		final int nby = ncy - cellsPerBlockY + 1;
+		final double[] blocks = new double[nbx * nby * blockLength];
+		final Histogram block = new Histogram(blockLength);
+		final int blockArea = cellsPerBlockX * cellsPerBlockY;
+		for (int y = 0, k = 0; y < nby; y++) {
+			for (int x = 0; x < nbx; x++, k += blockLength) {
+				for (int j = 0, b = 0; j < cellsPerBlockY; j++) {
+					System.arraycopy(cells, ((y + j) * ncx + x) * nbins, block.values, b, cellsPerBlockX * nbins);
+					b += cellsPerBlockX * nbins;
+				}
+
+				norm.normalise(block, blockArea);
+				System.arraycopy(block.values, 0, blocks, k, blockLength);
+			}
+		}
+
+		return new Level(scale, octave, cellWidth, cellHeight, ncx, ncy, nbx, nby, blocks);
+	}
+
+	/**
+	 * Get the levels computed by the last call to
+	 * {@link #analyseImage(FImage, float[])}, in the same order as the scales.
+	 * 
+	 * @return the levels
+	 */
+	public Level[] getLevels() {
+		return levels;
+	}
+
+	/**
+	 * @return the length of the feature of a window
+	 */
+	public int getFeatureLength() {
+		return numBlocksX * numBlocksY * blockLength;
+	}
+
+	/**
+	 * @return the number of cells across a window
+	 */
+	public int getWindowCellsX() {
+		return numCellsX;
+	}
+
+	/**
+	 * @return the number of cells down a window
+	 */
+	public int getWindowCellsY() {
+		return numCellsY;
+	}
+
+	/**
+	 * Get the rectangle in the original image covered by the window whose top
+	 * left cell is at the given position in the given level
+	 * 
+	 * @param level
+	 *            the level
+	 * @param cx
+	 *            the cell column of the window
+	 * @param cy
+	 *            the cell row of the window
+	 * @return the rectangle
+	 */
+	public Rectangle getWindow(Level level, int cx, int cy) {
+		final int x = level.getX(cx);
+		final int y = level.getY(cy);
+
+		return new Rectangle(x, y, level.getX(cx + numCellsX) - x, level.getY(cy + numCellsY) - y);
+	}
+
+	/**
+	 * Copy the feature of the window whose top left cell is at the given
+	 * position in the given level into the given histogram.
+	 * 
+	 * @param level
+	 *            the level
+	 * @param cx
+	 *            the cell column of the window
+	 * @param cy
+	 *            the cell row of the window
+	 * @param output
+	 *            the histogram to fill; if null or the wrong length a new one
+	 *            will be created
+	 * @return the feature
+	 */
+	public Histogram getFeatureVector(Level level, int cx, int cy, Histogram output) {
+		if (output == null || output.values.length != getFeatureLength())
+			output = new Histogram(getFeatureLength());
+
+		for (int j = 0, k = 0; j < numBlocksY; j++) {
+			for (int i = 0; i < numBlocksX; i++, k += blockLength) {
+				final int offset = ((cy + j * blockStepY) * level.numBlockPositionsX + cx + i * blockStepX)
+						* blockLength;
+
+				System.arraycopy(level.blocks, offset, output.values, k, blockLength);
+			}
+		}
+
+		return output;
+	}
+
+	/**
+	 * Compute the dot product of the given weights with the feature of the
+	 * window whose top left cell is at the given position in the given level,
+	 * without copying the feature.
+	 * 
+	 * @param level
+	 *            the level
+	 * @param cx
+	 *            the cell column of the window
+	 * @param cy
+	 *            the cell row of the window
+	 * @param weights
+	 *            the weights; must have the length of the feature
+	 * @return the dot product
+	 */
+	public double dot(Level level, int cx, int cy, double[] weights) {
+		final double[] blocks = level.blocks;
+		double sum = 0;
+
+		for (int j = 0, k = 0; j < numBlocksY; j++) {
+			int offset = ((cy + j * blockStepY) * level.numBlockPositionsX + cx) * blockLength;
+
+			for (int i = 0; i < numBlocksX; i++, offset += blockStepX * blockLength) {
+				for (int b = 0; b < blockLength; b++, k++)
+					sum += weights[k] * blocks[offset + b];
+			}
+		}
+
+		return sum;
+	}
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.objectdetection.hog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openimaj.image.FImage;
+import org.openimaj.image.objectdetection.hog.HOGFeaturePyramid.Level;
+import org.openimaj.math.geometry.shape.Rectangle;
+import org.openimaj.math.statistics.distribution.Histogram;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.Parallel;
+
+/**
+ * A {@link HOGDetector} that computes the HOG features of all windows from a
+ * {@link HOGFeaturePyramid} rather than extracting the features of each window
+ * separately. The windows at each scale are aligned to the cells of the
+ * corresponding pyramid level (which is equivalent to the step of one cell
+ * used by the {@link HOGDetector}).
+ * <p>
+ * If the {@link HOGClassifier} has a linear model (see
+ * {@link HOGClassifier#setLinearModel(double[], double)}) each window is scored
+ * by a dot product directly over the contiguous blocks of the pyramid level,
+ * and the rows of windows across all the scales are classified in parallel.
+ * Otherwise the feature of each window is assembled and passed to the
+ * classifier's annotator; annotators aren't required to be thread-safe, so
+ * the rows are then classified one at a time. Because intermediate scales are
+ * approximated, the
+ * detections are close to, but not exactly the same as, those of the
+ * {@link HOGDetector}.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class HOGPyramidDetector extends HOGDetector {
+	/**
+	 * Construct with the given classifier and scale factor
+	 * 
+	 * @param classifier
+	 *            the classifier
+	 * @param scaleFactor
+	 *            the amount to change between scales (multiplicative)
+	 */
+	public HOGPyramidDetector(HOGClassifier classifier, float scaleFactor) {
+		super(classifier, scaleFactor);
+	}
+
+	/**
+	 * Construct with the given classifier and the default scale factor
+	 * 
+	 * @param classifier
+	 *            the classifier
+	 */
+	public HOGPyramidDetector(HOGClassifier classifier) {
+		super(classifier);
+	}
+
+	@Override
+	public List<Rectangle> detect(FImage image) {
+		final HOGFeaturePyramid pyramid = new HOGFeaturePyramid(classifier);
+		pyramid.analyseImage(image, computeScales(image.width, image.height));
+
+		final Level[] levels = pyramid.getLevels();
+
+		// each task is a row of windows at one level
+		final List<int[]> tasks = new ArrayList<int[]>();
+		for (int l = 0; l < levels.length; l++) {
+			final int nrows = levels[l].getNumCellsY() - pyramid.getWindowCellsY() + 1;
+			for (int cy = 0; cy < nrows; cy++)
+				tasks.add(new int[] { l, cy });
+		}
+
+		final int startX = (int) (roi == null ? 0 : Math.max(0, roi.x));
+		final int startY = (int) (roi == null ? 0 : Math.max(0, roi.y));
+		final int stopX = (int) (roi == null ? image.width : Math.min(image.width, roi.x + roi.width));
+		final int stopY = (int) (roi == null ? image.height : Math.min(image.height, roi.y + roi.height));
+
+		@SuppressWarnings("unchecked")
+		final List<Rectangle>[] taskResults = new List[tasks.size()];
+		final Operation<Integer> op = new Operation<Integer>() {
+			@Override
+			public void perform(Integer t) {
+				final int[] task = tasks.get(t);
+				taskResults[t] = detectRow(pyramid, levels[task[0]], task[1], startX, stopX, startY, stopY);
+			}
+		};
+
+		if (classifier.hasLinearModel()) {
+			Parallel.forIndex(0, tasks.size(), 1, op);
+		} else {
+			for (int t = 0; t < tasks.size(); t++)
+				op.perform(t);
+		}
+
+		final List<Rectangle> results = new ArrayList<Rectangle>();
+		for (final List<Rectangle> r : taskResults)
+			results.addAll(r);
+
+		return results;
+	}
+
+	/**
+	 * Classify the windows along a single row of cells of a level of the
+	 * pyramid. Only windows that lie completely within the given bounds are
+	 * classified.
+	 * 
+	 * @param pyramid
+	 *            the pyramid
+	 * @param level
+	 *            the pyramid level
+	 * @param cy
+	 *            the row of cells
+	 * @param startX
+	 *            the minimum x-ordinate
+	 * @param stopX
+	 *            the maximum x-ordinate (exclusive)
+	 * @param startY
+	 *            the minimum y-ordinate
+	 * @param stopY
+	 *            the maximum y-ordinate (exclusive)
+	 * @return the detections
+	 */
+	protected List<Rectangle> detectRow(HOGFeaturePyramid pyramid, Level level, int cy, int startX, int stopX,
+			int startY, int stopY)
+	{
+		final List<Rectangle> results = new ArrayList<Rectangle>();
+		final int ncx = level.getNumCellsX() - pyramid.getWindowCellsX() + 1;
+
+		final int y = level.getY(cy);
+		if (y < startY || level.getY(cy + pyramid.getWindowCellsY()) > stopY)
+			return results;
+
+		final boolean linear = classifier.hasLinearModel();
+		Histogram feature = null;
+
+		for (int cx = 0; cx < ncx; cx++) {
+			final int x = level.getX(cx);
+			if (x < startX || level.getX(cx + pyramid.getWindowCellsX()) > stopX)
+				continue;
+
+			final double response;
+			if (linear) {
+				response = HOGClassifier.linearResponse(pyramid.dot(level, cx, cy, classifier.weights)
+						+ classifier.bias);
+			} else {
+				feature = pyramid.getFeatureVector(level, cx, cy, feature);
+				response = classifier.classify(feature);
+			}
+
+			if (response > threshold)
+				results.add(pyramid.getWindow(level, cx, cy));
+		}
+
+		return results;
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.objectdetection.haar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openimaj.image.FImage;
+import org.openimaj.image.ImageUtilities;
+import org.openimaj.image.analysis.algorithm.SummedSqTiltAreaTable;
+import org.openimaj.image.objectdetection.haar.CompiledStageTreeClassifier.IntegralImages;
+import org.openimaj.image.objectdetection.haar.CompiledStageTreeClassifier.Scale;
+import org.openimaj.math.geometry.shape.Rectangle;
+
+/**
+ * Tests for the {@link CompiledDetector} and
+ * {@link CompiledStageTreeClassifier}
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ * 
+ */
+public class CompiledDetectorTest {
+	private FImage image;
+
+	/**
+	 * Load a test image containing a face
+	 * 
+	 * @throws IOException
+	 */
+	@Before
+	public void setup() throws IOException {
+		image = ImageUtilities.readF(CompiledDetectorTest.class
+				.getResourceAsStream("/org/openimaj/image/data/sinaface.jpg"));
+	}
+
+	private static StageTreeClassifier load(String name) throws IOException {
+		return OCVHaarLoader.read(OCVHaarLoader.class.getResourceAsStream(name));
+	}
+
+	private void checkDetections(StageTreeClassifier cascade) {
+		final List<Rectangle> expected = new Detector(cascade).detect(image);
+		final CompiledDetector detector = new CompiledDetector(cascade);
+
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, detector.detect(image));
+
+		// different batch sizes and a cached compilation
+		detector.setBatchSize(7);
+		assertEquals(expected, detector.detect(image));
+		assertEquals(expected, detector.detect(image));
+	}
+
+	private void checkClassify(StageTreeClassifier cascade) {
+		final CompiledStageTreeClassifier compiled = new CompiledStageTreeClassifier(cascade);
+		final SummedSqTiltAreaTable sat = new SummedSqTiltAreaTable(image, cascade.hasTiltedFeatures);
+		final IntegralImages images = new IntegralImages(sat);
+
+		for (final float scale : new float[] { 1f, 1.5f, 3.2f }) {
+			cascade.setScale(scale);
+			final Scale s = compiled.compile(scale, images);
+
+			final int maxX = image.width - Math.round(scale * cascade.width);
+			final int maxY = image.height - Math.round(scale * cascade.height);
+			for (int y = 0; y < maxY; y += 7)
+				for (int x = 0; x < maxX; x += 5)
+					assertEquals(cascade.classify(sat, x, y), compiled.classify(images, s, x, y));
+		}
+	}
+
+	/**
+	 * Test that the compiled detector gives exactly the same detections as
+	 * the {@link Detector} with a cascade of stumps
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testDetectStumps() throws IOException {
+		checkDetections(load("haarcascade_frontalface_alt2.xml"));
+	}
+
+	/**
+	 * Test that the compiled detector gives exactly the same detections as
+	 * the {@link Detector} with a tree of stages
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testDetectTree() throws IOException {
+		checkDetections(load("haarcascade_frontalface_alt_tree.xml"));
+	}
+
+	/**
+	 * Test that the compiled classifier gives the same responses as the
+	 * original at a number of scales
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testClassify() throws IOException {
+		checkClassify(load("haarcascade_frontalface_alt2.xml"));
+		checkClassify(load("haarcascade_frontalface_alt_tree.xml"));
+	}
+
+	/**
+	 * Test that a non-positive batch size is rejected
+	 * 
+	 * @throws IOException
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidBatchSize() throws IOException {
+		new CompiledDetector(load("haarcascade_frontalface_alt2.xml")).setBatchSize(0);
+	}
+}
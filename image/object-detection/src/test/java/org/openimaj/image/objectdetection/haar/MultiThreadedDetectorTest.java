@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.objectdetection.haar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openimaj.image.FImage;
+import org.openimaj.image.ImageUtilities;
+import org.openimaj.image.analysis.algorithm.SummedSqTiltAreaTable;
+import org.openimaj.math.geometry.shape.Rectangle;
+
+/**
+ * Tests for the {@link MultiThreadedDetector}
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ * 
+ */
+public class MultiThreadedDetectorTest {
+	private StageTreeClassifier cascade;
+	private FImage image;
+
+	/**
+	 * Load a cascade and a test image containing a face
+	 * 
+	 * @throws IOException
+	 */
+	@Before
+	public void setup() throws IOException {
+		cascade = OCVHaarLoader.read(OCVHaarLoader.class.getResourceAsStream("haarcascade_frontalface_alt2.xml"));
+		image = ImageUtilities.readF(MultiThreadedDetectorTest.class
+				.getResourceAsStream("/org/openimaj/image/data/sinaface.jpg"));
+	}
+
+	/**
+	 * Test that the work-stealing mode gives exactly the same results (in the
+	 * same order) as the single-threaded detector, including when it is
+	 * reused
+	 */
+	@Test
+	public void testWorkStealing() {
+		final List<Rectangle> expected = new Detector(cascade).detect(image);
+		assertFalse(expected.isEmpty());
+
+		final MultiThreadedDetector detector = new MultiThreadedDetector(cascade);
+		detector.setWorkStealingPool(new ForkJoinPool(4));
+		detector.setRowsPerTask(3);
+
+		assertEquals(expected, detector.detect(image));
+		assertEquals(expected, detector.detect(image));
+	}
+
+	/**
+	 * Test that a copy of the cascade classifies identically to the original,
+	 * and is unaffected by changes to the scale of the original
+	 */
+	@Test
+	public void testCopy() {
+		final SummedSqTiltAreaTable sat = new SummedSqTiltAreaTable(image, cascade.hasTiltedFeatures);
+		final StageTreeClassifier copy = cascade.copy();
+
+		cascade.setScale(1.5f);
+		copy.setScale(1.5f);
+
+		final int[] expected = new int[100];
+		for (int i = 0; i < expected.length; i++)
+			expected[i] = cascade.classify(sat, 2 * i, i);
+
+		cascade.setScale(2f);
+
+		for (int i = 0; i < expected.length; i++)
+			assertEquals(expected[i], copy.classify(sat, 2 * i, i));
+	}
+
+	/**
+	 * Test that a non-positive number of rows per task is rejected
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRowsPerTask() {
+		new MultiThreadedDetector(cascade).setRowsPerTask(0);
+	}
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.objectdetection.hog;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openimaj.feature.DoubleFV;
+import org.openimaj.image.FImage;
+import org.openimaj.image.feature.dense.gradient.HOG;
+import org.openimaj.image.feature.dense.gradient.binning.FlexibleHOGStrategy;
+import org.openimaj.image.objectdetection.hog.HOGFeaturePyramid.Level;
+import org.openimaj.image.processing.convolution.FImageGradients;
+import org.openimaj.math.geometry.shape.Rectangle;
+import org.openimaj.math.statistics.distribution.Histogram;
+import org.openimaj.ml.annotation.AbstractAnnotator;
+import org.openimaj.ml.annotation.ScoredAnnotation;
+
+/**
+ * Tests for the {@link HOGFeaturePyramid} and {@link HOGPyramidDetector}
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ * 
+ */
+public class HOGPyramidDetectorTest {
+	private HOGClassifier classifier;
+	private FImage image;
+	private Random rng;
+
+	/**
+	 * Create a classifier and a test image
+	 */
+	@Before
+	public void setup() {
+		classifier = new HOGClassifier();
+		classifier.width = 64;
+		classifier.height = 128;
+		classifier.hogExtractor = new HOG(9, false, FImageGradients.Mode.Unsigned, new FlexibleHOGStrategy(8, 16, 2));
+
+		rng = new Random(42);
+		image = new FImage(320, 240);
+		for (int y = 0; y < image.height; y++)
+			for (int x = 0; x < image.width; x++)
+				image.pixels[y][x] = (float) (0.5 + 0.3 * Math.sin(x * 0.1) * Math.cos(y * 0.13) + 0.2 * rng.nextFloat());
+	}
+
+	/**
+	 * Test that the features of the base level are the same as the features
+	 * extracted by the classifier's {@link HOG}
+	 */
+	@Test
+	public void testBaseLevelFeatures() {
+		final HOGFeaturePyramid pyramid = new HOGFeaturePyramid(classifier);
+		pyramid.analyseImage(image, new float[] { 1f, 1.2f, 2f });
+
+		classifier.prepare(image);
+
+		final Level level = pyramid.getLevels()[0];
+		for (int cy = 0; cy + pyramid.getWindowCellsY() <= level.getNumCellsY(); cy += 3) {
+			for (int cx = 0; cx + pyramid.getWindowCellsX() <= level.getNumCellsX(); cx += 5) {
+				final Rectangle window = pyramid.getWindow(level, cx, cy);
+				assertEquals(new Rectangle(cx * 8, cy * 8, 64, 128), window);
+
+				final Histogram expected = classifier.hogExtractor.getFeatureVector(window);
+				final Histogram actual = pyramid.getFeatureVector(level, cx, cy, null);
+
+				assertArrayEquals(expected.values, actual.values, 1e-6);
+			}
+		}
+	}
+
+	/**
+	 * Test that the dot product over the pyramid is the same as the dot
+	 * product with the extracted feature at every level
+	 */
+	@Test
+	public void testDot() {
+		final HOGFeaturePyramid pyramid = new HOGFeaturePyramid(classifier);
+		pyramid.analyseImage(image, new float[] { 1f, 1.2f, 1.44f });
+
+		final double[] weights = new double[pyramid.getFeatureLength()];
+		for (int i = 0; i < weights.length; i++)
+			weights[i] = rng.nextGaussian();
+
+		for (final Level level : pyramid.getLevels()) {
+			final Histogram f = pyramid.getFeatureVector(level, 1, 2, null);
+
+			double expected = 0;
+			for (int i = 0; i < weights.length; i++)
+				expected += weights[i] * f.values[i];
+
+			assertEquals(expected, pyramid.dot(level, 1, 2, weights), 1e-8);
+		}
+	}
+
+	/**
+	 * Test that the detector finds exactly the windows that the linear model
+	 * accepts when there is a single scale
+	 */
+	@Test
+	public void testDetect() {
+		final HOGFeaturePyramid pyramid = new HOGFeaturePyramid(classifier);
+		pyramid.analyseImage(image, new float[] { 1f });
+
+		final double[] weights = new double[pyramid.getFeatureLength()];
+		for (int i = 0; i < weights.length; i++)
+			weights[i] = rng.nextGaussian() * 0.1;
+		classifier.setLinearModel(weights, 0);
+
+		classifier.prepare(image);
+		final Level level = pyramid.getLevels()[0];
+		final List<Rectangle> expected = new ArrayList<Rectangle>();
+		for (int cy = 0; cy + pyramid.getWindowCellsY() <= level.getNumCellsY(); cy++) {
+			for (int cx = 0; cx + pyramid.getWindowCellsX() <= level.getNumCellsX(); cx++) {
+				final Rectangle window = pyramid.getWindow(level, cx, cy);
+				if (classifier.classify(window) > 0.5)
+					expected.add(window);
+			}
+		}
+
+		final HOGPyramidDetector detector = new HOGPyramidDetector(classifier);
+		detector.setMaximumDetectionSize(130);
+
+		assertEquals(expected, detector.detect(image));
+	}
+
+	/**
+	 * Test that the annotator is never called concurrently when there is no
+	 * linear model
+	 */
+	@Test
+	public void testAnnotatorNotConcurrent() {
+		final AtomicInteger active = new AtomicInteger();
+		final AtomicInteger calls = new AtomicInteger();
+		final AtomicBoolean concurrent = new AtomicBoolean();
+
+		classifier.classifier = new AbstractAnnotator<DoubleFV, Boolean>() {
+			@Override
+			public List<ScoredAnnotation<Boolean>> annotate(DoubleFV object) {
+				if (active.incrementAndGet() > 1)
+					concurrent.set(true);
+
+				calls.incrementAndGet();
+				Thread.yield();
+				active.decrementAndGet();
+
+				return Collections.singletonList(new ScoredAnnotation<Boolean>(false, 1f));
+			}
+
+			@Override
+			public Set<Boolean> getAnnotations() {
+				return Collections.singleton(true);
+			}
+		};
+
+		final HOGPyramidDetector detector = new HOGPyramidDetector(classifier);
+		detector.setMaximumDetectionSize(200);
+
+		assertTrue(detector.detect(image).isEmpty());
+		assertTrue(calls.get() > 0);
+		assertFalse(concurrent.get());
+	}
+}
@@ -0,0 +1,240 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.knn;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openimaj.util.parallel.GlobalExecutorPool;
+
+/**
+ * Executes batches of nearest-neighbour queries by splitting them into
+ * contiguous blocks which are searched in parallel. The calling thread always
+ * takes part in the search, and helper tasks submitted to the executor only
+ * ever wait for blocks that are actively being searched; this means that it is
+ * safe to perform batch searches from within tasks that are themselves
+ * running on the same executor (for example when assigning data to clusters
+ * inside a parallel loop).
+ * <p>
+ * Implementations are expected to keep any scratch memory they need (priority
+ * queues, distance buffers, etc) in per-thread storage so that it can be
+ * reused across blocks and batches.
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class BatchSearchExecutor {
+	/**
+	 * Operation that searches a contiguous block of queries
+	 * 
+	 * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+	 */
+	public static interface BlockSearch {
+		/**
+		 * Search the queries with indices in the range [start, stop)
+		 * 
+		 * @param start
+		 *            the index of the first query
+		 * @param stop
+		 *            the index after the last query
+		 */
+		public void searchBlock(int start, int stop);
+	}
+
+	/**
+	 * The default number of queries in each block
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 64;
+
+	/**
+	 * An executor that searches all queries sequentially on the calling thread
+	 */
+	public static final BatchSearchExecutor SEQUENTIAL = new BatchSearchExecutor(null, 1, Integer.MAX_VALUE);
+
+	private static BatchSearchExecutor defaultExecutor;
+
+	private final ExecutorService executor;
+	private final int parallelism;
+	private final int blockSize;
+
+	/**
+	 * Construct using the {@link GlobalExecutorPool} with a parallelism level
+	 * equal to the size of the pool and the default block size.
+	 */
+	public BatchSearchExecutor() {
+		this(GlobalExecutorPool.getPool());
+	}
+
+	/**
+	 * Construct using the given pool with a parallelism level equal to the
+	 * size of the pool and the default block size.
+	 * 
+	 * @param pool
+	 *            the pool
+	 */
+	public BatchSearchExecutor(ThreadPoolExecutor pool) {
+		this(pool, pool.getMaximumPoolSize(), DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Construct with the given executor, parallelism level and block size.
+	 * 
+	 * @param executor
+	 *            the executor used to run the helper tasks (can be null if the
+	 *            parallelism is 1)
+	 * @param parallelism
+	 *            the maximum number of threads (including the calling thread)
+	 *            that will search a batch concurrently
+	 * @param blockSize
+	 *            the number of queries in each block
+	 */
+	public BatchSearchExecutor(ExecutorService executor, int parallelism, int blockSize) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("parallelism must be at least 1");
+		if (blockSize < 1)
+			throw new IllegalArgumentException("blockSize must be at least 1");
+		if (executor == null && parallelism > 1)
+			throw new IllegalArgumentException("an executor is required if parallelism is greater than 1");
+
+		this.executor = executor;
+		this.parallelism = parallelism;
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Get the default executor used by nearest-neighbour implementations that
+	 * have not been given one explicitly. Unless changed with
+	 * {@link #setDefault(BatchSearchExecutor)}, this searches in parallel
+	 * using the {@link GlobalExecutorPool}.
+	 * 
+	 * @return the default executor
+	 */
+	public static synchronized BatchSearchExecutor getDefault() {
+		if (defaultExecutor == null)
+			defaultExecutor = new BatchSearchExecutor();
+
+		return defaultExecutor;
+	}
+
+	/**
+	 * Set the default executor used by nearest-neighbour implementations that
+	 * have not been given one explicitly.
+	 * 
+	 * @param executor
+	 *            the new default executor
+	 */
+	public static synchronized void setDefault(BatchSearchExecutor executor) {
+		defaultExecutor = executor;
+	}
+
+	/**
+	 * @return the maximum number of threads that will search a batch
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @return the number of queries in each block
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Search a batch of queries. The method returns once all the queries have
+	 * been searched. Any exception thrown by the search operation is rethrown
+	 * on the calling thread.
+	 * 
+	 * @param nqueries
+	 *            the number of queries
+	 * @param op
+	 *            the search operation
+	 */
+	public void execute(final int nqueries, final BlockSearch op) {
+		if (nqueries <= 0)
+			return;
+
+		final int nblocks = (int) ((nqueries + (long) blockSize - 1) / blockSize);
+		final int nhelpers = Math.min(parallelism, nblocks) - 1;
+
+		if (nhelpers <= 0) {
+			op.searchBlock(0, nqueries);
+			return;
+		}
+
+		final AtomicInteger nextBlock = new AtomicInteger();
+		final CountDownLatch completed = new CountDownLatch(nblocks);
+		final Throwable[] exception = new Throwable[1];
+
+		final Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				int block;
+				while ((block = nextBlock.getAndIncrement()) < nblocks) {
+					try {
+						if (exception[0] == null) {
+							final int start = block * blockSize;
+							op.searchBlock(start, Math.min(nqueries, start + blockSize));
+						}
+					} catch (final Throwable t) {
+						synchronized (exception) {
+							if (exception[0] == null)
+								exception[0] = t;
+						}
+					} finally {
+						completed.countDown();
+					}
+				}
+			}
+		};
+
+		for (int i = 0; i < nhelpers; i++)
+			executor.execute(worker);
+
+		worker.run();
+
+		try {
+			completed.await();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+
+		if (exception[0] != null) {
+			if (exception[0] instanceof RuntimeException)
+				throw (RuntimeException) exception[0];
+			if (exception[0] instanceof Error)
+				throw (Error) exception[0];
+			throw new RuntimeException(exception[0]);
+		}
+	}
+}
@@ -44,6 +44,7 @@ import org.openimaj.util.pair.IntFloatPair;
  */
 public abstract class ObjectNearestNeighbours<T> implements NearestNeighbours<T, float[], IntFloatPair> {
 	protected DistanceComparator<? super T> distance;
+	private transient BatchSearchExecutor batchExecutor;
 
 	/**
 	 * Construct with the given distance measure
@@ -85,4 +86,31 @@ public abstract class ObjectNearestNeighbours<T> implements NearestNeighbours<T,
 	public DistanceComparator<? super T> distanceComparator() {
 		return this.distance;
 	}
+
+	/**
+	 * Get the {@link BatchSearchExecutor} used to run searches over multiple
+	 * queries. If one hasn't been set, the
+	 * {@link BatchSearchExecutor#getDefault() default} is returned.
+	 *
+	 * @return the executor
+	 */
+	public BatchSearchExecutor getBatchExecutor() {
+		if (batchExecutor == null)
+			return BatchSearchExecutor.getDefault();
+		return batchExecutor;
+	}
+
+	/**
+	 * Set the {@link BatchSearchExecutor} used to run searches over multiple
+	 * queries. Use {@link BatchSearchExecutor#SEQUENTIAL} to search on the
+	 * calling thread only (for example if the distance measure is not
+	 * thread-safe), or <code>null</code> to revert to the default.
+	 * The executor isn't serialised with the index.
+	 *
+	 * @param batchExecutor
+	 *            the executor
+	 */
+	public void setBatchExecutor(BatchSearchExecutor batchExecutor) {
+		this.batchExecutor = batchExecutor;
+	}
 }
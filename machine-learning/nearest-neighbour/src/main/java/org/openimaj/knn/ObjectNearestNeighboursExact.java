@@ -132,101 +132,68 @@ public class ObjectNearestNeighboursExact<T> extends ObjectNearestNeighbours<T>
 	}
 
 	@Override
-	public void searchNN(final T[] qus, int[] indices, float[] distances) {
-		final int N = qus.length;
-
-		final BoundedPriorityQueue<IntFloatPair> queue =
-				new BoundedPriorityQueue<IntFloatPair>(1, IntFloatPair.SECOND_ITEM_ASCENDING_COMPARATOR);
-
-		// prepare working data
-		final List<IntFloatPair> list = new ArrayList<IntFloatPair>(2);
-		list.add(new IntFloatPair());
-		list.add(new IntFloatPair());
-
-		for (int n = 0; n < N; ++n) {
-			final List<IntFloatPair> result = search(qus[n], queue, list);
-
-			final IntFloatPair p = result.get(0);
-			indices[n] = p.first;
-			distances[n] = p.second;
-		}
+	public void searchNN(final List<T> qus, final int[] indices, final float[] distances) {
+		getBatchExecutor().execute(qus.size(), new BatchSearchExecutor.BlockSearch() {
+			@Override
+			public void searchBlock(int start, int stop) {
+				final BoundedPriorityQueue<IntFloatPair> queue =
+						new BoundedPriorityQueue<IntFloatPair>(1, IntFloatPair.SECOND_ITEM_ASCENDING_COMPARATOR);
+
+				// prepare working data
+				final List<IntFloatPair> list = new ArrayList<IntFloatPair>(2);
+				list.add(new IntFloatPair());
+				list.add(new IntFloatPair());
+
+				for (int n = start; n < stop; ++n) {
+					final List<IntFloatPair> result = search(qus.get(n), queue, list);
+
+					final IntFloatPair p = result.get(0);
+					indices[n] = p.first;
+					distances[n] = p.second;
+				}
+			}
+		});
 	}
 
 	@Override
-	public void searchKNN(final T[] qus, int K, int[][] indices, float[][] distances) {
+	public void searchKNN(final List<T> qus, int K, final int[][] indices, final float[][] distances) {
 		// Fix for when the user asks for too many points.
-		K = Math.min(K, pnts.size());
-
-		final int N = qus.length;
-
-		final BoundedPriorityQueue<IntFloatPair> queue =
-				new BoundedPriorityQueue<IntFloatPair>(K, IntFloatPair.SECOND_ITEM_ASCENDING_COMPARATOR);
-
-		// prepare working data
-		final List<IntFloatPair> list = new ArrayList<IntFloatPair>(K + 1);
-		for (int i = 0; i < K + 1; i++) {
-			list.add(new IntFloatPair());
-		}
-
-		// search on each query
-		for (int n = 0; n < N; ++n) {
-			final List<IntFloatPair> result = search(qus[n], queue, list);
-
-			for (int k = 0; k < K; ++k) {
-				final IntFloatPair p = result.get(k);
-				indices[n][k] = p.first;
-				distances[n][k] = p.second;
+		final int KK = Math.min(K, pnts.size());
+
+		getBatchExecutor().execute(qus.size(), new BatchSearchExecutor.BlockSearch() {
+			@Override
+			public void searchBlock(int start, int stop) {
+				final BoundedPriorityQueue<IntFloatPair> queue =
+						new BoundedPriorityQueue<IntFloatPair>(KK, IntFloatPair.SECOND_ITEM_ASCENDING_COMPARATOR);
+
+				// prepare working data
+				final List<IntFloatPair> list = new ArrayList<IntFloatPair>(KK + 1);
+				for (int i = 0; i < KK + 1; i++) {
+					list.add(new IntFloatPair());
+				}
+
+				// search on each query
+				for (int n = start; n < stop; ++n) {
+					final List<IntFloatPair> result = search(qus.get(n), queue, list);
+
+					for (int k = 0; k < KK; ++k) {
+						final IntFloatPair p = result.get(k);
+						indices[n][k] = p.first;
+						distances[n][k] = p.second;
+					}
+				}
 			}
-		}
+		});
 	}
 
 	@Override
-	public void searchNN(final List<T> qus, int[] indices, float[] distances) {
-		final int N = qus.size();
-
-		final BoundedPriorityQueue<IntFloatPair> queue =
-				new BoundedPriorityQueue<IntFloatPair>(1, IntFloatPair.SECOND_ITEM_ASCENDING_COMPARATOR);
-
-		// prepare working data
-		final List<IntFloatPair> list = new ArrayList<IntFloatPair>(2);
-		list.add(new IntFloatPair());
-		list.add(new IntFloatPair());
-
-		for (int n = 0; n < N; ++n) {
-			final List<IntFloatPair> result = search(qus.get(n), queue, list);
-
-			final IntFloatPair p = result.get(0);
-			indices[n] = p.first;
-			distances[n] = p.second;
-		}
+	public void searchNN(final T[] qus, int[] indices, float[] distances) {
+		searchNN(Arrays.asList(qus), indices, distances);
 	}
 
 	@Override
-	public void searchKNN(final List<T> qus, int K, int[][] indices, float[][] distances) {
-		// Fix for when the user asks for too many points.
-		K = Math.min(K, pnts.size());
-
-		final int N = qus.size();
-
-		final BoundedPriorityQueue<IntFloatPair> queue =
-				new BoundedPriorityQueue<IntFloatPair>(K, IntFloatPair.SECOND_ITEM_ASCENDING_COMPARATOR);
-
-		// prepare working data
-		final List<IntFloatPair> list = new ArrayList<IntFloatPair>(K + 1);
-		for (int i = 0; i < K + 1; i++) {
-			list.add(new IntFloatPair());
-		}
-
-		// search on each query
-		for (int n = 0; n < N; ++n) {
-			final List<IntFloatPair> result = search(qus.get(n), queue, list);
-
-			for (int k = 0; k < K; ++k) {
-				final IntFloatPair p = result.get(k);
-				indices[n][k] = p.first;
-				distances[n][k] = p.second;
-			}
-		}
+	public void searchKNN(final T[] qus, int K, int[][] indices, float[][] distances) {
+		searchKNN(Arrays.asList(qus), K, indices, distances);
 	}
 
 	@Override
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.knn.hamming;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * {@link PackedSketches} held on the heap. The sketches are stored
+ * contiguously in fixed-size pages of <code>long</code>s, so there is no
+ * per-sketch object overhead, and the collection can grow beyond the size of
+ * a single Java array.
+ * <p>
+ * Sketches can be added at any time; adding is not thread-safe, but
+ * concurrent reads of sketches that have already been added are.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class HeapPackedSketches extends PackedSketches {
+	private static final int PAGE_BITS = 16;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	private long[][] pages = new long[0][];
+	private long size;
+
+	/**
+	 * Construct an empty collection of sketches with the given number of bits
+	 *
+	 * @param nbits
+	 *            the number of bits in each sketch
+	 */
+	public HeapPackedSketches(int nbits) {
+		super(nbits);
+	}
+
+	/**
+	 * Construct with the given packed sketches
+	 *
+	 * @param nbits
+	 *            the number of bits in each sketch
+	 * @param sketches
+	 *            the packed sketches
+	 */
+	public HeapPackedSketches(int nbits, long[][] sketches) {
+		super(nbits);
+
+		for (final long[] s : sketches)
+			add(s);
+	}
+
+	/**
+	 * Add a packed sketch
+	 *
+	 * @param sketch
+	 *            the sketch
+	 * @return the index of the added sketch
+	 */
+	public long add(long[] sketch) {
+		checkLength(sketch);
+
+		final int page = (int) (size >>> PAGE_BITS);
+		if (page == pages.length) {
+			pages = Arrays.copyOf(pages, page + 1);
+			pages[page] = new long[PAGE_SIZE * nwords];
+		}
+
+		System.arraycopy(sketch, 0, pages[page], (int) (size & PAGE_MASK) * nwords, nwords);
+
+		return size++;
+	}
+
+	/**
+	 * Add a {@link BitSet} sketch
+	 *
+	 * @param sketch
+	 *            the sketch
+	 * @return the index of the added sketch
+	 */
+	public long add(BitSet sketch) {
+		return add(pack(sketch, nbits));
+	}
+
+	/**
+	 * Add a sketch packed into bytes
+	 *
+	 * @param sketch
+	 *            the sketch
+	 * @return the index of the added sketch
+	 */
+	public long add(byte[] sketch) {
+		return add(pack(sketch));
+	}
+
+	/**
+	 * Add a sketch packed into shorts
+	 *
+	 * @param sketch
+	 *            the sketch
+	 * @return the index of the added sketch
+	 */
+	public long add(short[] sketch) {
+		return add(pack(sketch));
+	}
+
+	/**
+	 * Add a sketch packed into ints
+	 *
+	 * @param sketch
+	 *            the sketch
+	 * @return the index of the added sketch
+	 */
+	public long add(int[] sketch) {
+		return add(pack(sketch));
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public long getWord(long index, int word) {
+		return pages[(int) (index >>> PAGE_BITS)][(int) (index & PAGE_MASK) * nwords + word];
+	}
+
+	@Override
+	public void get(long index, long[] dst) {
+		System.arraycopy(pages[(int) (index >>> PAGE_BITS)], (int) (index & PAGE_MASK) * nwords, dst, 0, nwords);
+	}
+
+	@Override
+	public int distance(long index, long[] query) {
+		final long[] page = pages[(int) (index >>> PAGE_BITS)];
+		final int offset = (int) (index & PAGE_MASK) * nwords;
+
+		int d = 0;
+		for (int i = 0; i < nwords; i++)
+			d += Long.bitCount(page[offset + i] ^ query[i]);
+		return d;
+	}
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.knn.hamming;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+
+import org.openimaj.io.LargeMappedFile;
+
+/**
+ * {@link PackedSketches} stored in a memory-mapped file. Each sketch is a
+ * fixed-size record of {@link #numWords()} big-endian <code>long</code>s
+ * following a small header, so opening a file only maps it; the operating
+ * system pages the sketches in as they are read. This allows collections of
+ * sketches much larger than the heap to be searched.
+ * <p>
+ * Files are created with one of the <code>write</code> methods and opened
+ * with {@link #open(File)}.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class MappedPackedSketches extends PackedSketches {
+	private static final int MAGIC = 0x4d50534b; // "MPSK"
+	private static final int HEADER_LENGTH = 4 + 4 + 8;
+
+	protected final long size;
+	protected final int recordSize;
+	protected final LargeMappedFile data;
+
+	protected MappedPackedSketches(int nbits, long size, LargeMappedFile data) {
+		super(nbits);
+		this.size = size;
+		this.recordSize = nwords * (Long.SIZE / Byte.SIZE);
+		this.data = data;
+	}
+
+	/**
+	 * Open a file created by one of the <code>write</code> methods.
+	 *
+	 * @param file
+	 *            the file
+	 * @return the mapped sketches
+	 * @throws IOException
+	 *             if an error occurs reading or mapping the file
+	 */
+	public static MappedPackedSketches open(File file) throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+		try {
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not a packed sketch file: " + file);
+
+			final int nbits = in.readInt();
+			final long size = in.readLong();
+			final int recordSize = numWords(nbits) * (Long.SIZE / Byte.SIZE);
+
+			final LargeMappedFile data = new LargeMappedFile(file, HEADER_LENGTH, size * recordSize, recordSize);
+
+			return new MappedPackedSketches(nbits, size, data);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Write the given sketches to a file that can be opened with
+	 * {@link #open(File)}.
+	 *
+	 * @param file
+	 *            the file to write
+	 * @param sketches
+	 *            the sketches
+	 * @throws IOException
+	 *             if an error occurs writing the file
+	 */
+	public static void write(File file, final PackedSketches sketches) throws IOException {
+		write(file, sketches.numBits(), new Iterator<long[]>() {
+			final long[] sketch = new long[sketches.numWords()];
+			long i = 0;
+
+			@Override
+			public boolean hasNext() {
+				return i < sketches.size();
+			}
+
+			@Override
+			public long[] next() {
+				sketches.get(i++, sketch);
+				return sketch;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		});
+	}
+
+	/**
+	 * Write the packed sketches provided by the given iterator to a file that
+	 * can be opened with {@link #open(File)}. The sketches are streamed to
+	 * the file, so need not fit in memory.
+	 *
+	 * @param file
+	 *            the file to write
+	 * @param nbits
+	 *            the number of bits in each sketch
+	 * @param sketches
+	 *            the packed sketches
+	 * @throws IOException
+	 *             if an error occurs writing the file
+	 */
+	public static void write(File file, int nbits, Iterator<long[]> sketches) throws IOException {
+		final int nwords = numWords(nbits);
+
+		long size = 0;
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(nbits);
+			out.writeLong(0); // the size is filled in below
+
+			while (sketches.hasNext()) {
+				final long[] sketch = sketches.next();
+
+				if (sketch.length != nwords)
+					throw new IllegalArgumentException("Expected a sketch of " + nwords + " words, but got "
+							+ sketch.length);
+
+				for (int i = 0; i < nwords; i++)
+					out.writeLong(sketch[i]);
+				size++;
+			}
+		} finally {
+			out.close();
+		}
+
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(4 + 4);
+			raf.writeLong(size);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Get the mapped file holding the sketches
+	 *
+	 * @return the mapped sketches
+	 */
+	public LargeMappedFile getMappedFile() {
+		return data;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public long getWord(long index, int word) {
+		return data.getLong(index * recordSize + word * (Long.SIZE / Byte.SIZE));
+	}
+
+	@Override
+	public int distance(long index, long[] query) {
+		final long base = index * recordSize;
+
+		int d = 0;
+		for (int i = 0; i < nwords; i++)
+			d += Long.bitCount(data.getLong(base + (i << 3)) ^ query[i]);
+		return d;
+	}
+}
@@ -0,0 +1,645 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.knn.hamming;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.openimaj.citation.annotation.Reference;
+import org.openimaj.citation.annotation.ReferenceType;
+import org.openimaj.knn.BatchSearchExecutor;
+import org.openimaj.knn.NearestNeighbours;
+import org.openimaj.util.pair.IntIntPair;
+
+/**
+ * Exact Hamming-space nearest-neighbour and r-neighbour search over packed
+ * binary sketches using Multi-Index Hashing (MIH).
+ * <p>
+ * Each sketch of <code>b</code> bits is split into <code>m</code> disjoint
+ * substrings, and a hash table is built for each substring. If two sketches
+ * are within Hamming distance <code>r</code> then, by the pigeonhole
+ * principle, at least one pair of their substrings is within
+ * <code>floor(r/m)</code>, so candidates can be found by probing each table
+ * with the query substring and the keys close to it, and then verifying with
+ * the full distance. k-nearest-neighbour search grows the substring radius
+ * until the k-th best distance found can no longer be beaten by an unseen
+ * sketch. Both searches are exact: they return the same results as a linear
+ * scan (ties are broken by index), and fall back to a linear scan if probing
+ * would be more expensive. Duplicate candidates are suppressed by checking
+ * the candidate's substring distances, so no per-query set of visited
+ * sketches is needed.
+ * <p>
+ * The hash tables are stored as flat arrays of ints (a sorted array of
+ * sketch indices per table, with an open-addressed map from substring key to
+ * bucket), so the index costs <code>4m</code> bytes per sketch on top of the
+ * sketches themselves. The sketches can be held on the heap (
+ * {@link HeapPackedSketches}) or memory-mapped ({@link MappedPackedSketches}
+ * ). The index is a snapshot of the sketches at construction time.
+ * <p>
+ * Searches for multiple queries are run by the
+ * {@link #getBatchExecutor() batch executor}.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+@Reference(
+		type = ReferenceType.Inproceedings,
+		author = { "Norouzi, Mohammad", "Punjani, Ali", "Fleet, David J." },
+		title = "Fast search in Hamming space with multi-index hashing",
+		year = "2012",
+		booktitle = "2012 IEEE Conference on Computer Vision and Pattern Recognition",
+		pages = { "3108", "3115" },
+		customData = {
+				"doi", "10.1109/CVPR.2012.6248043"
+		})
+public class MultiIndexHashingNearestNeighbours implements NearestNeighbours<long[], int[], IntIntPair> {
+	/**
+	 * The maximum number of bits in each substring
+	 */
+	public static final int MAX_SUBSTRING_BITS = 32;
+
+	private static final int MAX_TABLE_CAPACITY = 1 << 30;
+
+	/**
+	 * The hash table for a single substring. Sketch indices are grouped by
+	 * key in <code>ids</code>; the bucket for a key is found through an
+	 * open-addressed (linear probing) table.
+	 */
+	private static final class Table {
+		final int shift;
+		final int mask;
+		final int[] slotKeys;
+		final int[] slotBuckets;
+		final int[] offsets;
+		final int[] ids;
+
+		Table(long[] sortedPairs) {
+			final int n = sortedPairs.length;
+
+			int nkeys = 0;
+			for (int i = 0; i < n; i++)
+				if (i == 0 || (sortedPairs[i] >>> 32) != (sortedPairs[i - 1] >>> 32))
+					nkeys++;
+
+			if (nkeys > MAX_TABLE_CAPACITY / 2)
+				throw new IllegalArgumentException("Too many distinct substrings; use more substrings");
+
+			int capacity = 2;
+			while (capacity < 2 * nkeys)
+				capacity <<= 1;
+
+			this.shift = Integer.SIZE - Integer.numberOfTrailingZeros(capacity);
+			this.mask = capacity - 1;
+			this.slotKeys = new int[capacity];
+			this.slotBuckets = new int[capacity];
+			Arrays.fill(slotBuckets, -1);
+
+			this.offsets = new int[nkeys + 1];
+			this.ids = new int[n];
+
+			int bucket = -1;
+			for (int i = 0; i < n; i++) {
+				if (i == 0 || (sortedPairs[i] >>> 32) != (sortedPairs[i - 1] >>> 32)) {
+					bucket++;
+					offsets[bucket] = i;
+					insert((int) (sortedPairs[i] >>> 32), bucket);
+				}
+				ids[i] = (int) sortedPairs[i];
+			}
+			offsets[nkeys] = n;
+		}
+
+		private int slot(int key) {
+			return (key * 0x9E3779B9) >>> shift;
+		}
+
+		private void insert(int key, int bucket) {
+			int s = slot(key);
+			while (slotBuckets[s] >= 0)
+				s = (s + 1) & mask;
+
+			slotKeys[s] = key;
+			slotBuckets[s] = bucket;
+		}
+
+		int find(int key) {
+			for (int s = slot(key);; s = (s + 1) & mask) {
+				final int bucket = slotBuckets[s];
+
+				if (bucket < 0 || slotKeys[s] == key)
+					return bucket;
+			}
+		}
+	}
+
+	/**
+	 * Per-thread working memory for searches
+	 */
+	private final class Workspace {
+		final long[] sketch = new long[sketches.numWords()];
+		final int[] qkeys = new int[nsubstrings];
+		int[] topIndices = new int[0];
+		int[] topDistances = new int[0];
+		int count;
+		int capacity;
+
+		void reset(int K) {
+			if (topIndices.length < K) {
+				topIndices = new int[K];
+				topDistances = new int[K];
+			}
+			count = 0;
+			capacity = K;
+		}
+
+		void offer(int index, int distance) {
+			if (count == capacity) {
+				final int last = topDistances[count - 1];
+				if (distance > last || (distance == last && index > topIndices[count - 1]))
+					return;
+				count--;
+			}
+
+			int i = count++;
+			while (i > 0 && (topDistances[i - 1] > distance
+					|| (topDistances[i - 1] == distance && topIndices[i - 1] > index)))
+			{
+				topDistances[i] = topDistances[i - 1];
+				topIndices[i] = topIndices[i - 1];
+				i--;
+			}
+			topDistances[i] = distance;
+			topIndices[i] = index;
+		}
+	}
+
+	protected final PackedSketches sketches;
+	protected final int size;
+	protected final int nsubstrings;
+	protected final int[] substringOffsets;
+	protected final int[] substringWidths;
+	private final int minWidth;
+	private final int maxWidth;
+	private final Table[] tables;
+
+	private transient BatchSearchExecutor batchExecutor;
+
+	// not serialised; created on first use, including after deserialisation
+	private transient ThreadLocal<Workspace> workspaces;
+
+	/**
+	 * Construct the index over the given sketches, using the number of
+	 * substrings recommended by Norouzi et al.; see
+	 * {@link #defaultNumSubstrings(int, long)}.
+	 *
+	 * @param sketches
+	 *            the sketches to index
+	 */
+	public MultiIndexHashingNearestNeighbours(PackedSketches sketches) {
+		this(sketches, defaultNumSubstrings(sketches.numBits(), sketches.size()));
+	}
+
+	/**
+	 * Construct the index over the given sketches, using the given number of
+	 * substrings. Each substring can be at most {@link #MAX_SUBSTRING_BITS}
+	 * long.
+	 *
+	 * @param sketches
+	 *            the sketches to index
+	 * @param nsubstrings
+	 *            the number of substrings (and hash tables)
+	 */
+	public MultiIndexHashingNearestNeighbours(PackedSketches sketches, int nsubstrings) {
+		final int nbits = sketches.numBits();
+
+		if (sketches.size() > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many sketches for a single index: " + sketches.size());
+		if (nsubstrings <= 0 || nsubstrings > nbits)
+			throw new IllegalArgumentException("The number of substrings must be between 1 and the number of bits");
+		if ((nbits + nsubstrings - 1) / nsubstrings > MAX_SUBSTRING_BITS)
+			throw new IllegalArgumentException("At least " + ((nbits + MAX_SUBSTRING_BITS - 1) / MAX_SUBSTRING_BITS)
+					+ " substrings are required for " + nbits + " bit sketches");
+
+		this.sketches = sketches;
+		this.size = (int) sketches.size();
+		this.nsubstrings = nsubstrings;
+
+		// the first (nbits % m) substrings get an extra bit
+		this.substringOffsets = new int[nsubstrings];
+		this.substringWidths = new int[nsubstrings];
+		for (int i = 0, offset = 0; i < nsubstrings; i++) {
+			substringWidths[i] = nbits / nsubstrings + (i < nbits % nsubstrings ? 1 : 0);
+			substringOffsets[i] = offset;
+			offset += substringWidths[i];
+		}
+		this.minWidth = substringWidths[nsubstrings - 1];
+		this.maxWidth = substringWidths[0];
+
+		this.tables = new Table[nsubstrings];
+		final long[] sketch = new long[sketches.numWords()];
+		for (int t = 0; t < nsubstrings; t++) {
+			final long[] pairs = new long[size];
+
+			for (int i = 0; i < size; i++) {
+				sketches.get(i, sketch);
+				pairs[i] = ((long) substring(sketch, t) << 32) | i;
+			}
+			Arrays.sort(pairs);
+
+			tables[t] = new Table(pairs);
+		}
+	}
+
+	/**
+	 * Compute the number of substrings recommended by Norouzi et al. for
+	 * sketches of the given length; this is approximately
+	 * <code>nbits / log2(size)</code>, subject to the constraint that no
+	 * substring is longer than {@link #MAX_SUBSTRING_BITS}.
+	 *
+	 * @param nbits
+	 *            the number of bits in each sketch
+	 * @param size
+	 *            the number of sketches
+	 * @return the number of substrings
+	 */
+	public static int defaultNumSubstrings(int nbits, long size) {
+		final double log2n = Math.log(Math.max(size, 2)) / Math.log(2);
+		final int min = (nbits + MAX_SUBSTRING_BITS - 1) / MAX_SUBSTRING_BITS;
+
+		return Math.min(nbits, Math.max(min, (int) Math.round(nbits / log2n)));
+	}
+
+	private int substring(long[] sketch, int t) {
+		final int offset = substringOffsets[t];
+		final int width = substringWidths[t];
+		final int w = offset >>> 6;
+		final int s = offset & 63;
+
+		long v = sketch[w] >>> s;
+		if (s + width > Long.SIZE)
+			v |= sketch[w + 1] << (Long.SIZE - s);
+
+		return (int) (v & ((1L << width) - 1));
+	}
+
+	private static long binomial(int n, int k) {
+		long c = 1;
+		for (int i = 1; i <= k; i++)
+			c = c * (n - k + i) / i;
+		return c;
+	}
+
+	private static int distance(long[] a, long[] b) {
+		int d = 0;
+		for (int i = 0; i < a.length; i++)
+			d += Long.bitCount(a[i] ^ b[i]);
+		return d;
+	}
+
+	/**
+	 * Get the next larger number with the same number of set bits
+	 */
+	private static long nextCombination(long v) {
+		final long c = v & -v;
+		final long r = v + c;
+		return (((r ^ v) >>> 2) / c) | r;
+	}
+
+	/**
+	 * @return the indexed sketches
+	 */
+	public PackedSketches getSketches() {
+		return sketches;
+	}
+
+	/**
+	 * @return the number of substrings (and hash tables)
+	 */
+	public int numSubstrings() {
+		return nsubstrings;
+	}
+
+	/**
+	 * Get the {@link BatchSearchExecutor} used to run searches over multiple
+	 * queries. If one hasn't been set, the
+	 * {@link BatchSearchExecutor#getDefault() default} is returned.
+	 *
+	 * @return the executor
+	 */
+	public BatchSearchExecutor getBatchExecutor() {
+		if (batchExecutor == null)
+			return BatchSearchExecutor.getDefault();
+		return batchExecutor;
+	}
+
+	/**
+	 * Set the {@link BatchSearchExecutor} used to run searches over multiple
+	 * queries, or <code>null</code> to revert to the default. The executor
+	 * isn't serialised with the index.
+	 *
+	 * @param batchExecutor
+	 *            the executor
+	 */
+	public void setBatchExecutor(BatchSearchExecutor batchExecutor) {
+		this.batchExecutor = batchExecutor;
+	}
+
+	private Workspace workspace() {
+		// racing threads may each create a thread-local, which is harmless as
+		// every workspace is still only used by the thread that created it
+		if (workspaces == null) {
+			workspaces = new ThreadLocal<Workspace>() {
+				@Override
+				protected Workspace initialValue() {
+					return new Workspace();
+				}
+			};
+		}
+
+		return workspaces.get();
+	}
+
+	private void search(long[] query, int K, Workspace ws) {
+		ws.reset(K);
+		if (K == 0)
+			return;
+
+		for (int t = 0; t < nsubstrings; t++)
+			ws.qkeys[t] = substring(query, t);
+
+		long budget = size;
+		for (int r = 0; r <= maxWidth; r++) {
+			for (int t = 0; t < nsubstrings && budget >= 0; t++)
+				if (r <= substringWidths[t])
+					budget -= binomial(substringWidths[t], r);
+
+			if (budget < 0) {
+				linearSearch(query, K, ws);
+				return;
+			}
+
+			for (int t = 0; t < nsubstrings; t++) {
+				if (r > substringWidths[t])
+					continue;
+
+				final Table table = tables[t];
+				final long limit = 1L << substringWidths[t];
+				for (long mask = (1L << r) - 1; mask < limit; mask = nextCombination(mask)) {
+					final int bucket = table.find(ws.qkeys[t] ^ (int) mask);
+
+					if (bucket >= 0) {
+						for (int i = table.offsets[bucket]; i < table.offsets[bucket + 1]; i++) {
+							final int index = table.ids[i];
+							sketches.get(index, ws.sketch);
+
+							if (!seenBefore(ws, t, r))
+								ws.offer(index, distance(ws.sketch, query));
+						}
+						budget -= table.offsets[bucket + 1] - table.offsets[bucket];
+					}
+
+					if (r == 0)
+						break;
+				}
+			}
+
+			// every unseen sketch is at least m * (r + 1) from the query, and
+			// once r reaches the narrowest substring every sketch has been seen
+			if (r >= minWidth || (ws.count == K && ws.topDistances[K - 1] < nsubstrings * (r + 1)))
+				return;
+		}
+	}
+
+	/**
+	 * Test if the sketch in the workspace, found at substring distance r in
+	 * table t, would have been found earlier in the search
+	 */
+	private boolean seenBefore(Workspace ws, int t, int r) {
+		for (int j = 0; j < nsubstrings; j++) {
+			if (j == t)
+				continue;
+
+			final int d = Integer.bitCount(substring(ws.sketch, j) ^ ws.qkeys[j]);
+			if (d < r || (d == r && j < t))
+				return true;
+		}
+		return false;
+	}
+
+	private void linearSearch(long[] query, int K, Workspace ws) {
+		ws.reset(K);
+
+		for (int i = 0; i < size; i++)
+			ws.offer(i, sketches.distance(i, query));
+	}
+
+	/**
+	 * Find all the sketches within the given Hamming distance of the query.
+	 *
+	 * @param query
+	 *            the packed query sketch
+	 * @param radius
+	 *            the maximum Hamming distance
+	 * @return the indices and distances of the matching sketches, sorted by
+	 *         increasing distance
+	 */
+	public List<IntIntPair> searchRadius(long[] query, int radius) {
+		final Workspace ws = workspace();
+		final List<IntIntPair> results = new ArrayList<IntIntPair>();
+		final int rs = radius / nsubstrings;
+
+		long cost = 0;
+		for (int t = 0; t < nsubstrings; t++)
+			for (int r = 0; r <= Math.min(rs, substringWidths[t]); r++)
+				cost += binomial(substringWidths[t], r);
+
+		if (rs >= minWidth || cost > size) {
+			for (int i = 0; i < size; i++) {
+				final int d = sketches.distance(i, query);
+				if (d <= radius)
+					results.add(new IntIntPair(i, d));
+			}
+		} else {
+			for (int t = 0; t < nsubstrings; t++)
+				ws.qkeys[t] = substring(query, t);
+
+			for (int t = 0; t < nsubstrings; t++) {
+				final Table table = tables[t];
+				final long limit = 1L << substringWidths[t];
+
+				for (int r = 0; r <= Math.min(rs, substringWidths[t]); r++) {
+					for (long mask = (1L << r) - 1; mask < limit; mask = nextCombination(mask)) {
+						final int bucket = table.find(ws.qkeys[t] ^ (int) mask);
+
+						if (bucket >= 0) {
+							for (int i = table.offsets[bucket]; i < table.offsets[bucket + 1]; i++) {
+								final int index = table.ids[i];
+								sketches.get(index, ws.sketch);
+
+								if (foundInEarlierTable(ws, t, rs))
+									continue;
+
+								final int d = distance(ws.sketch, query);
+								if (d <= radius)
+									results.add(new IntIntPair(index, d));
+							}
+						}
+
+						if (r == 0)
+							break;
+					}
+				}
+			}
+		}
+
+		sortResults(results);
+		return results;
+	}
+
+	private boolean foundInEarlierTable(Workspace ws, int t, int rs) {
+		for (int j = 0; j < t; j++)
+			if (Integer.bitCount(substring(ws.sketch, j) ^ ws.qkeys[j]) <= rs)
+				return true;
+		return false;
+	}
+
+	private static void sortResults(List<IntIntPair> results) {
+		Collections.sort(results, new Comparator<IntIntPair>() {
+			@Override
+			public int compare(IntIntPair o1, IntIntPair o2) {
+				if (o1.second != o2.second)
+					return o1.second < o2.second ? -1 : 1;
+				return o1.first < o2.first ? -1 : (o1.first == o2.first ? 0 : 1);
+			}
+		});
+	}
+
+	/**
+	 * Find all the sketches within the given Hamming distance of each of the
+	 * queries.
+	 *
+	 * @param qus
+	 *            the packed query sketches
+	 * @param radius
+	 *            the maximum Hamming distance
+	 * @return the results for each query, each sorted by increasing distance
+	 */
+	public List<List<IntIntPair>> searchRadius(final long[][] qus, final int radius) {
+		final List<List<IntIntPair>> results = new ArrayList<List<IntIntPair>>(qus.length);
+		for (int i = 0; i < qus.length; i++)
+			results.add(null);
+
+		getBatchExecutor().execute(qus.length, new BatchSearchExecutor.BlockSearch() {
+			@Override
+			public void searchBlock(int start, int stop) {
+				for (int n = start; n < stop; n++)
+					results.set(n, searchRadius(qus[n], radius));
+			}
+		});
+
+		return results;
+	}
+
+	@Override
+	public void searchNN(final long[][] qus, final int[] indices, final int[] distances) {
+		getBatchExecutor().execute(qus.length, new BatchSearchExecutor.BlockSearch() {
+			@Override
+			public void searchBlock(int start, int stop) {
+				final Workspace ws = workspace();
+
+				for (int n = start; n < stop; n++) {
+					search(qus[n], Math.min(1, size), ws);
+
+					indices[n] = ws.count > 0 ? ws.topIndices[0] : -1;
+					distances[n] = ws.count > 0 ? ws.topDistances[0] : Integer.MAX_VALUE;
+				}
+			}
+		});
+	}
+
+	@Override
+	public void searchKNN(final long[][] qus, int K, final int[][] indices, final int[][] distances) {
+		// Fix for when the user asks for too many points.
+		final int KK = Math.min(K, size);
+
+		getBatchExecutor().execute(qus.length, new BatchSearchExecutor.BlockSearch() {
+			@Override
+			public void searchBlock(int start, int stop) {
+				final Workspace ws = workspace();
+
+				for (int n = start; n < stop; n++) {
+					search(qus[n], KK, ws);
+
+					System.arraycopy(ws.topIndices, 0, indices[n], 0, KK);
+					System.arraycopy(ws.topDistances, 0, distances[n], 0, KK);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void searchNN(final List<long[]> qus, int[] indices, int[] distances) {
+		searchNN(qus.toArray(new long[qus.size()][]), indices, distances);
+	}
+
+	@Override
+	public void searchKNN(final List<long[]> qus, int K, int[][] indices, int[][] distances) {
+		searchKNN(qus.toArray(new long[qus.size()][]), K, indices, distances);
+	}
+
+	@Override
+	public List<IntIntPair> searchKNN(long[] query, int K) {
+		final Workspace ws = workspace();
+		search(query, Math.min(K, size), ws);
+
+		final List<IntIntPair> results = new ArrayList<IntIntPair>(ws.count);
+		for (int i = 0; i < ws.count; i++)
+			results.add(new IntIntPair(ws.topIndices[i], ws.topDistances[i]));
+
+		return results;
+	}
+
+	@Override
+	public IntIntPair searchNN(long[] query) {
+		final Workspace ws = workspace();
+		search(query, Math.min(1, size), ws);
+
+		if (ws.count == 0)
+			return null;
+		return new IntIntPair(ws.topIndices[0], ws.topDistances[0]);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,235 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.knn.hamming;
+
+import java.util.BitSet;
+
+import org.openimaj.lsh.sketch.BitSetLSHSketcher;
+
+/**
+ * A collection of fixed-length bit-string sketches, each packed into a whole
+ * number of <code>long</code> words. Bit <code>i</code> of a sketch is stored
+ * in bit <code>i % 64</code> of word <code>i / 64</code> (the same layout as
+ * {@link BitSet#toLongArray()}); any padding bits in the last word are zero.
+ * <p>
+ * The static <code>pack</code> methods convert the outputs of the
+ * {@link BitSetLSHSketcher} and the primitive array LSH sketchers into this
+ * layout. The Hamming distance between two sketches is the same in either
+ * representation.
+ * <p>
+ * Sketches are addressed with <code>long</code> indices so that collections
+ * of more than {@link Integer#MAX_VALUE} sketches can be represented.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public abstract class PackedSketches {
+	protected final int nbits;
+	protected final int nwords;
+
+	protected PackedSketches(int nbits) {
+		if (nbits <= 0)
+			throw new IllegalArgumentException("The number of bits must be positive");
+
+		this.nbits = nbits;
+		this.nwords = numWords(nbits);
+	}
+
+	/**
+	 * Get the number of <code>long</code> words required to hold a sketch
+	 * with the given number of bits.
+	 *
+	 * @param nbits
+	 *            the number of bits
+	 * @return the number of words
+	 */
+	public static int numWords(int nbits) {
+		return (nbits + Long.SIZE - 1) / Long.SIZE;
+	}
+
+	/**
+	 * @return the number of bits in each sketch
+	 */
+	public int numBits() {
+		return nbits;
+	}
+
+	/**
+	 * @return the number of <code>long</code> words in each sketch
+	 */
+	public int numWords() {
+		return nwords;
+	}
+
+	/**
+	 * @return the number of sketches
+	 */
+	public abstract long size();
+
+	/**
+	 * Get a word of the sketch at the given index
+	 *
+	 * @param index
+	 *            the index of the sketch
+	 * @param word
+	 *            the index of the word within the sketch
+	 * @return the word
+	 */
+	public abstract long getWord(long index, int word);
+
+	/**
+	 * Copy the sketch at the given index into the given array
+	 *
+	 * @param index
+	 *            the index of the sketch
+	 * @param dst
+	 *            the destination array, which must have at least
+	 *            {@link #numWords()} elements
+	 */
+	public void get(long index, long[] dst) {
+		for (int i = 0; i < nwords; i++)
+			dst[i] = getWord(index, i);
+	}
+
+	/**
+	 * Get a copy of the sketch at the given index
+	 *
+	 * @param index
+	 *            the index of the sketch
+	 * @return the packed sketch
+	 */
+	public long[] get(long index) {
+		final long[] sketch = new long[nwords];
+		get(index, sketch);
+		return sketch;
+	}
+
+	/**
+	 * Compute the Hamming distance between the sketch at the given index and
+	 * a packed query sketch.
+	 *
+	 * @param index
+	 *            the index of the sketch
+	 * @param query
+	 *            the packed query
+	 * @return the Hamming distance
+	 */
+	public int distance(long index, long[] query) {
+		int d = 0;
+		for (int i = 0; i < nwords; i++)
+			d += Long.bitCount(getWord(index, i) ^ query[i]);
+		return d;
+	}
+
+	protected void checkLength(long[] sketch) {
+		if (sketch.length != nwords)
+			throw new IllegalArgumentException("Expected a sketch of " + nwords + " words, but got " + sketch.length);
+	}
+
+	/**
+	 * Pack a {@link BitSet} sketch (as produced by a {@link BitSetLSHSketcher})
+	 * of the given length.
+	 *
+	 * @param sketch
+	 *            the sketch
+	 * @param nbits
+	 *            the number of bits in the sketch
+	 * @return the packed sketch
+	 */
+	public static long[] pack(BitSet sketch, int nbits) {
+		final long[] packed = new long[numWords(nbits)];
+		final long[] words = sketch.toLongArray();
+
+		System.arraycopy(words, 0, packed, 0, Math.min(words.length, packed.length));
+		if (nbits % Long.SIZE != 0 && words.length >= packed.length)
+			packed[packed.length - 1] &= (1L << (nbits % Long.SIZE)) - 1;
+
+		return packed;
+	}
+
+	/**
+	 * Pack a sketch stored in an array of bytes.
+	 *
+	 * @param sketch
+	 *            the sketch
+	 * @return the packed sketch
+	 */
+	public static long[] pack(byte[] sketch) {
+		final long[] packed = new long[numWords(sketch.length * Byte.SIZE)];
+		for (int i = 0; i < sketch.length; i++) {
+			final int bit = i * Byte.SIZE;
+			packed[bit / Long.SIZE] |= (sketch[i] & 0xFFL) << (bit % Long.SIZE);
+		}
+		return packed;
+	}
+
+	/**
+	 * Pack a sketch stored in an array of shorts.
+	 *
+	 * @param sketch
+	 *            the sketch
+	 * @return the packed sketch
+	 */
+	public static long[] pack(short[] sketch) {
+		final long[] packed = new long[numWords(sketch.length * Short.SIZE)];
+		for (int i = 0; i < sketch.length; i++) {
+			final int bit = i * Short.SIZE;
+			packed[bit / Long.SIZE] |= (sketch[i] & 0xFFFFL) << (bit % Long.SIZE);
+		}
+		return packed;
+	}
+
+	/**
+	 * Pack a sketch stored in an array of ints.
+	 *
+	 * @param sketch
+	 *            the sketch
+	 * @return the packed sketch
+	 */
+	public static long[] pack(int[] sketch) {
+		final long[] packed = new long[numWords(sketch.length * Integer.SIZE)];
+		for (int i = 0; i < sketch.length; i++) {
+			final int bit = i * Integer.SIZE;
+			packed[bit / Long.SIZE] |= (sketch[i] & 0xFFFFFFFFL) << (bit % Long.SIZE);
+		}
+		return packed;
+	}
+
+	/**
+	 * Pack a sketch stored in an array of longs. This just returns a copy of
+	 * the input.
+	 *
+	 * @param sketch
+	 *            the sketch
+	 * @return the packed sketch
+	 */
+	public static long[] pack(long[] sketch) {
+		return sketch.clone();
+	}
+}
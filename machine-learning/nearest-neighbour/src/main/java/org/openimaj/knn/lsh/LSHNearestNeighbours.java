@@ -35,9 +35,11 @@ import gnu.trove.set.hash.TIntHashSet;
 
 import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
+import org.openimaj.knn.BatchSearchExecutor;
 import org.openimaj.knn.IncrementalNearestNeighbours;
 import org.openimaj.util.comparator.DistanceComparator;
 import org.openimaj.util.hash.HashFunction;
@@ -122,6 +124,7 @@ public class LSHNearestNeighbours<OBJECT>
 	protected DistanceComparator<OBJECT> distanceFcn;
 	protected List<Table<OBJECT>> tables;
 	protected List<OBJECT> data = new ArrayList<OBJECT>();
+	private transient BatchSearchExecutor batchExecutor;
 
 	/**
 	 * Construct with the given hash functions and distance function. One table
@@ -300,53 +303,82 @@ public class LSHNearestNeighbours<OBJECT>
 
 	@Override
 	public void searchNN(OBJECT[] qus, int[] argmins, float[] mins) {
-		final int[][] argminsWrapper = { argmins };
-		final float[][] minsWrapper = { mins };
-
-		searchKNN(qus, 1, argminsWrapper, minsWrapper);
+		searchNN(Arrays.asList(qus), argmins, mins);
 	}
 
 	@Override
 	public void searchKNN(OBJECT[] qus, int K, int[][] argmins, float[][] mins) {
-		// loop on the search data
-		for (int i = 0; i < qus.length; i++) {
-			final TIntHashSet pl = search(qus[i]);
-
-			// now sort the selected points by distance
-			final int[] ids = pl.toArray();
-			final List<OBJECT> vectors = new ArrayList<OBJECT>(ids.length);
-			for (int j = 0; j < ids.length; j++) {
-				vectors.add(data.get(ids[j]));
-			}
-
-			exactNN(vectors, ids, qus[i], K, argmins[i], mins[i]);
-		}
+		searchKNN(Arrays.asList(qus), K, argmins, mins);
 	}
 
 	@Override
-	public void searchNN(List<OBJECT> qus, int[] argmins, float[] mins) {
-		final int[][] argminsWrapper = { argmins };
-		final float[][] minsWrapper = { mins };
+	public void searchNN(final List<OBJECT> qus, final int[] argmins, final float[] mins) {
+		getBatchExecutor().execute(qus.size(), new BatchSearchExecutor.BlockSearch() {
+			@Override
+			public void searchBlock(int start, int stop) {
+				final int[] argmin = new int[1];
+				final float[] min = new float[1];
+
+				for (int i = start; i < stop; i++) {
+					searchOne(qus.get(i), 1, argmin, min);
 
-		searchKNN(qus, 1, argminsWrapper, minsWrapper);
+					argmins[i] = argmin[0];
+					mins[i] = min[0];
+				}
+			}
+		});
 	}
 
 	@Override
-	public void searchKNN(List<OBJECT> qus, int K, int[][] argmins, float[][] mins) {
-		final int size = qus.size();
-		// loop on the search data
-		for (int i = 0; i < size; i++) {
-			final TIntHashSet pl = search(qus.get(i));
-
-			// now sort the selected points by distance
-			final int[] ids = pl.toArray();
-			final List<OBJECT> vectors = new ArrayList<OBJECT>(ids.length);
-			for (int j = 0; j < ids.length; j++) {
-				vectors.add(data.get(ids[j]));
+	public void searchKNN(final List<OBJECT> qus, final int K, final int[][] argmins, final float[][] mins) {
+		getBatchExecutor().execute(qus.size(), new BatchSearchExecutor.BlockSearch() {
+			@Override
+			public void searchBlock(int start, int stop) {
+				for (int i = start; i < stop; i++) {
+					searchOne(qus.get(i), K, argmins[i], mins[i]);
+				}
 			}
+		});
+	}
+
+	private void searchOne(OBJECT query, int K, int[] argmins, float[] mins) {
+		final TIntHashSet pl = search(query);
 
-			exactNN(vectors, ids, qus.get(i), K, argmins[i], mins[i]);
+		// now sort the selected points by distance
+		final int[] ids = pl.toArray();
+		final List<OBJECT> vectors = new ArrayList<OBJECT>(ids.length);
+		for (int j = 0; j < ids.length; j++) {
+			vectors.add(data.get(ids[j]));
 		}
+
+		exactNN(vectors, ids, query, K, argmins, mins);
+	}
+
+	/**
+	 * Get the {@link BatchSearchExecutor} used to run searches over multiple
+	 * queries. If one hasn't been set, the
+	 * {@link BatchSearchExecutor#getDefault() default} is returned.
+	 *
+	 * @return the executor
+	 */
+	public BatchSearchExecutor getBatchExecutor() {
+		if (batchExecutor == null)
+			return BatchSearchExecutor.getDefault();
+		return batchExecutor;
+	}
+
+	/**
+	 * Set the {@link BatchSearchExecutor} used to run searches over multiple
+	 * queries. Use {@link BatchSearchExecutor#SEQUENTIAL} to search on the
+	 * calling thread only (for example if the distance function is not
+	 * thread-safe), or <code>null</code> to revert to the default.
+	 * The executor isn't serialised with the index.
+	 *
+	 * @param batchExecutor
+	 *            the executor
+	 */
+	public void setBatchExecutor(BatchSearchExecutor batchExecutor) {
+		this.batchExecutor = batchExecutor;
 	}
 
 	/*
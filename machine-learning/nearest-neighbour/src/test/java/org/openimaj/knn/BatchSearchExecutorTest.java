@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.knn;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+import org.openimaj.io.IOUtils;
+import org.openimaj.util.parallel.GlobalExecutorPool.DaemonThreadFactory;
+
+/**
+ * Tests for {@link BatchSearchExecutor}
+ * 
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class BatchSearchExecutorTest {
+	/**
+	 * Every query should be searched exactly once
+	 */
+	@Test
+	public void testCoverage() {
+		final ExecutorService pool = Executors.newFixedThreadPool(4, new DaemonThreadFactory());
+		final BatchSearchExecutor executor = new BatchSearchExecutor(pool, 4, 7);
+
+		final AtomicIntegerArray counts = new AtomicIntegerArray(1000);
+		executor.execute(counts.length(), new BatchSearchExecutor.BlockSearch() {
+			@Override
+			public void searchBlock(int start, int stop) {
+				for (int i = start; i < stop; i++)
+					counts.incrementAndGet(i);
+			}
+		});
+
+		for (int i = 0; i < counts.length(); i++)
+			assertEquals(1, counts.get(i));
+
+		pool.shutdown();
+	}
+
+	/**
+	 * Batch searches started from inside tasks that occupy every thread of the
+	 * pool must still complete
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testNested() throws InterruptedException {
+		final ExecutorService pool = Executors.newFixedThreadPool(2, new DaemonThreadFactory());
+		final BatchSearchExecutor executor = new BatchSearchExecutor(pool, 2, 1);
+		final CountDownLatch done = new CountDownLatch(2);
+		final AtomicIntegerArray counts = new AtomicIntegerArray(2 * 100);
+
+		for (int t = 0; t < 2; t++) {
+			final int offset = t * 100;
+
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					executor.execute(100, new BatchSearchExecutor.BlockSearch() {
+						@Override
+						public void searchBlock(int start, int stop) {
+							for (int i = start; i < stop; i++)
+								counts.incrementAndGet(offset + i);
+						}
+					});
+					done.countDown();
+				}
+			});
+		}
+
+		if (!done.await(30, TimeUnit.SECONDS))
+			fail("nested batch search did not complete");
+
+		for (int i = 0; i < counts.length(); i++)
+			assertEquals(1, counts.get(i));
+
+		pool.shutdown();
+	}
+
+	/**
+	 * Exceptions thrown by a search should be rethrown on the calling thread
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testException() {
+		final ExecutorService pool = Executors.newFixedThreadPool(2, new DaemonThreadFactory());
+		final BatchSearchExecutor executor = new BatchSearchExecutor(pool, 2, 1);
+
+		try {
+			executor.execute(10, new BatchSearchExecutor.BlockSearch() {
+				@Override
+				public void searchBlock(int start, int stop) {
+					if (start == 5)
+						throw new IllegalStateException();
+				}
+			});
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * An executor set on an index shouldn't be serialised with it, and the
+	 * deserialised index should still be searchable
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testNotSerialised() throws IOException {
+		final ExecutorService pool = Executors.newFixedThreadPool(2, new DaemonThreadFactory());
+
+		try {
+			final float[][] pnts = new float[100][4];
+			for (int i = 0; i < pnts.length; i++)
+				pnts[i][0] = i;
+
+			final FloatNearestNeighboursExact nn = new FloatNearestNeighboursExact(pnts);
+			nn.setBatchExecutor(new BatchSearchExecutor(pool, 2, 1));
+
+			final int[] indices = new int[pnts.length];
+			final float[] distances = new float[pnts.length];
+			nn.searchNN(pnts, indices, distances);
+
+			final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			IOUtils.write(nn, new DataOutputStream(baos));
+			final FloatNearestNeighboursExact read = IOUtils.read(new DataInputStream(
+					new ByteArrayInputStream(baos.toByteArray())));
+
+			assertSame(BatchSearchExecutor.getDefault(), read.getBatchExecutor());
+
+			final int[] readIndices = new int[pnts.length];
+			read.searchNN(pnts, readIndices, new float[pnts.length]);
+			assertArrayEquals(indices, readIndices);
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
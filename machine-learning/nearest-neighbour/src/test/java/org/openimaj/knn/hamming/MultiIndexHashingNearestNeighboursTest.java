@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.knn.hamming;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openimaj.util.pair.IntIntPair;
+
+/**
+ * Tests for {@link MultiIndexHashingNearestNeighbours} and the
+ * {@link PackedSketches} implementations.
+ *
+ * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
+ */
+public class MultiIndexHashingNearestNeighboursTest {
+	private static final int NBITS = 100;
+
+	/**
+	 * Temporary folder for the mapped files
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HeapPackedSketches sketches;
+	private long[][] queries;
+
+	/**
+	 * Create clustered sketches, so that there are many near neighbours
+	 */
+	@Before
+	public void setup() {
+		final Random rng = new Random(42);
+		final int nwords = PackedSketches.numWords(NBITS);
+
+		final long[][] centres = new long[20][];
+		for (int i = 0; i < centres.length; i++)
+			centres[i] = random(rng, nwords);
+
+		sketches = new HeapPackedSketches(NBITS);
+		for (int i = 0; i < 2000; i++)
+			sketches.add(perturb(rng, centres[rng.nextInt(centres.length)], rng.nextInt(20)));
+
+		queries = new long[50][];
+		for (int i = 0; i < queries.length; i++)
+			queries[i] = perturb(rng, centres[rng.nextInt(centres.length)], rng.nextInt(20));
+	}
+
+	private static long[] random(Random rng, int nwords) {
+		final long[] s = new long[nwords];
+		for (int i = 0; i < nwords; i++)
+			s[i] = rng.nextLong();
+		s[nwords - 1] &= (1L << (NBITS % 64)) - 1;
+		return s;
+	}
+
+	private static long[] perturb(Random rng, long[] s, int nflips) {
+		final long[] p = s.clone();
+		for (int i = 0; i < nflips; i++) {
+			final int bit = rng.nextInt(NBITS);
+			p[bit / 64] ^= 1L << (bit % 64);
+		}
+		return p;
+	}
+
+	private List<IntIntPair> linearKNN(PackedSketches data, long[] query, int K) {
+		final List<IntIntPair> all = new ArrayList<IntIntPair>();
+		for (int i = 0; i < data.size(); i++)
+			all.add(new IntIntPair(i, data.distance(i, query)));
+
+		Collections.sort(all, new Comparator<IntIntPair>() {
+			@Override
+			public int compare(IntIntPair o1, IntIntPair o2) {
+				if (o1.second != o2.second)
+					return o1.second - o2.second;
+				return o1.first - o2.first;
+			}
+		});
+
+		return all.subList(0, Math.min(K, all.size()));
+	}
+
+	private static void assertSameResults(List<IntIntPair> expected, List<IntIntPair> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).first, actual.get(i).first);
+			assertEquals(expected.get(i).second, actual.get(i).second);
+		}
+	}
+
+	/**
+	 * kNN search should give exactly the same results as a linear scan for
+	 * any number of substrings
+	 */
+	@Test
+	public void testKNN() {
+		for (final int m : new int[] { 4, 7, 10, 25 }) {
+			final MultiIndexHashingNearestNeighbours nn = new MultiIndexHashingNearestNeighbours(sketches, m);
+
+			for (final long[] q : queries) {
+				for (final int K : new int[] { 1, 5, 30 }) {
+					assertSameResults(linearKNN(sketches, q, K), nn.searchKNN(q, K));
+				}
+			}
+		}
+	}
+
+	/**
+	 * r-neighbour search should find exactly the sketches within the radius
+	 */
+	@Test
+	public void testRadius() {
+		final MultiIndexHashingNearestNeighbours nn = new MultiIndexHashingNearestNeighbours(sketches, 5);
+
+		for (final int radius : new int[] { 0, 4, 12, 27 }) {
+			final List<List<IntIntPair>> results = nn.searchRadius(queries, radius);
+
+			for (int i = 0; i < queries.length; i++) {
+				final List<IntIntPair> expected = new ArrayList<IntIntPair>();
+				for (final IntIntPair p : linearKNN(sketches, queries[i], (int) sketches.size()))
+					if (p.second <= radius)
+						expected.add(p);
+
+				assertSameResults(expected, results.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Batch searches should match individual searches
+	 */
+	@Test
+	public void testBatch() {
+		final MultiIndexHashingNearestNeighbours nn = new MultiIndexHashingNearestNeighbours(sketches);
+
+		final int[][] indices = new int[queries.length][5];
+		final int[][] distances = new int[queries.length][5];
+		nn.searchKNN(queries, 5, indices, distances);
+
+		final int[] nnIndices = new int[queries.length];
+		final int[] nnDistances = new int[queries.length];
+		nn.searchNN(queries, nnIndices, nnDistances);
+
+		for (int i = 0; i < queries.length; i++) {
+			final List<IntIntPair> expected = nn.searchKNN(queries[i], 5);
+			for (int k = 0; k < 5; k++) {
+				assertEquals(expected.get(k).first, indices[i][k]);
+				assertEquals(expected.get(k).second, distances[i][k]);
+			}
+			assertEquals(indices[i][0], nnIndices[i]);
+			assertEquals(distances[i][0], nnDistances[i]);
+		}
+	}
+
+	/**
+	 * The mapped sketches should hold the same data as the heap ones, and
+	 * searching an index over them should give the same results
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testMapped() throws IOException {
+		final File file = folder.newFile("sketches.bin");
+		MappedPackedSketches.write(file, sketches);
+
+		final MappedPackedSketches mapped = MappedPackedSketches.open(file);
+		assertEquals(sketches.size(), mapped.size());
+		assertEquals(NBITS, mapped.numBits());
+
+		for (int i = 0; i < sketches.size(); i++)
+			assertArrayEquals(sketches.get(i), mapped.get(i));
+
+		final MultiIndexHashingNearestNeighbours heapNN = new MultiIndexHashingNearestNeighbours(sketches, 5);
+		final MultiIndexHashingNearestNeighbours mappedNN = new MultiIndexHashingNearestNeighbours(mapped, 5);
+		for (final long[] q : queries)
+			assertSameResults(heapNN.searchKNN(q, 10), mappedNN.searchKNN(q, 10));
+	}
+
+	/**
+	 * Packing sketches from the different representations should preserve
+	 * Hamming distances
+	 */
+	@Test
+	public void testPacking() {
+		final Random rng = new Random(1);
+
+		for (int trial = 0; trial < 100; trial++) {
+			final int[] a = { rng.nextInt(), rng.nextInt(), rng.nextInt() };
+			final int[] b = { rng.nextInt(), rng.nextInt(), rng.nextInt() };
+
+			int expected = 0;
+			final BitSet ba = new BitSet();
+			final BitSet bb = new BitSet();
+			final byte[] ya = new byte[12];
+			final byte[] yb = new byte[12];
+			for (int i = 0; i < 96; i++) {
+				final boolean abit = ((a[i / 32] >>> (i % 32)) & 1) != 0;
+				final boolean bbit = ((b[i / 32] >>> (i % 32)) & 1) != 0;
+				ba.set(i, abit);
+				bb.set(i, bbit);
+				if (abit)
+					ya[i / 8] |= 1 << (i % 8);
+				if (bbit)
+					yb[i / 8] |= 1 << (i % 8);
+				if (abit != bbit)
+					expected++;
+			}
+
+			final HeapPackedSketches store = new HeapPackedSketches(96);
+			store.add(a);
+			store.add(ba);
+			store.add(ya);
+
+			final long[] pb = PackedSketches.pack(b);
+			assertArrayEquals(pb, PackedSketches.pack(bb, 96));
+			assertArrayEquals(pb, PackedSketches.pack(yb));
+
+			for (int i = 0; i < 3; i++)
+				assertEquals(expected, store.distance(i, pb));
+		}
+	}
+}
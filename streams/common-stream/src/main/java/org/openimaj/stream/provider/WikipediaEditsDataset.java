@@ -38,8 +38,8 @@ import java.util.regex.Pattern;
 
 import org.openimaj.stream.provider.WikipediaEditsDataset.WikipediaEdit;
 import org.openimaj.stream.provider.irc.AbstractIRCStreamDataset;
-import org.openimaj.util.concurrent.ArrayBlockingDroppingQueue;
 import org.openimaj.util.concurrent.BlockingDroppingQueue;
+import org.openimaj.util.concurrent.RingBufferDroppingQueue;
 
 /**
  * Streaming dataset based on the Wikipedia/Wikimedia edits published in
@@ -86,7 +86,7 @@ public class WikipediaEditsDataset extends AbstractIRCStreamDataset<WikipediaEdi
 	}
 
 	/**
-	 * Construct the edit stream with an {@link ArrayBlockingDroppingQueue} of
+	 * Construct the edit stream with an {@link RingBufferDroppingQueue} of
 	 * capacity 1.
 	 * 
 	 * @param lang
@@ -95,7 +95,7 @@ public class WikipediaEditsDataset extends AbstractIRCStreamDataset<WikipediaEdi
 	 *             if there is a problem connecting
 	 */
 	public WikipediaEditsDataset(String lang) throws IOException {
-		this(new ArrayBlockingDroppingQueue<WikipediaEdit>(1), lang);
+		this(new RingBufferDroppingQueue<WikipediaEdit>(1), lang);
 	}
 
 	/**
@@ -31,8 +31,8 @@ package org.openimaj.stream.provider.irc;
 
 import java.io.IOException;
 
-import org.openimaj.util.concurrent.ArrayBlockingDroppingQueue;
 import org.openimaj.util.concurrent.BlockingDroppingQueue;
+import org.openimaj.util.concurrent.RingBufferDroppingQueue;
 import org.openimaj.util.data.Context;
 
 /**
@@ -67,7 +67,7 @@ public class BasicIRCStreamDataset extends AbstractIRCStreamDataset<Context> {
 
 	/**
 	 * Connect to the given host and channel. Internally a
-	 * {@link ArrayBlockingDroppingQueue} with size of 1 is created to
+	 * {@link RingBufferDroppingQueue} with size of 1 is created to
 	 * buffer/drop messages.
 	 * 
 	 * @param hostname
@@ -79,7 +79,7 @@ public class BasicIRCStreamDataset extends AbstractIRCStreamDataset<Context> {
 	public BasicIRCStreamDataset(String hostname, String channel)
 			throws IOException
 	{
-		this(new ArrayBlockingDroppingQueue<Context>(1), hostname, channel);
+		this(new RingBufferDroppingQueue<Context>(1), hostname, channel);
 	}
 
 	/**
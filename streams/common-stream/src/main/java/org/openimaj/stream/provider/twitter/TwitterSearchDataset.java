@@ -30,8 +30,8 @@
 package org.openimaj.stream.provider.twitter;
 
 import org.openimaj.util.api.auth.common.TwitterAPIToken;
-import org.openimaj.util.concurrent.ArrayBlockingDroppingQueue;
 import org.openimaj.util.concurrent.BlockingDroppingQueue;
+import org.openimaj.util.concurrent.RingBufferDroppingQueue;
 
 import twitter4j.Query;
 import twitter4j.Status;
@@ -46,7 +46,7 @@ import twitter4j.Status;
 public class TwitterSearchDataset extends AbstractTwitterSearchDataset<Status> {
 	/**
 	 * Construct the dataset from the given API token and query. The stream is
-	 * backed by an {@link ArrayBlockingDroppingQueue} with a single item
+	 * backed by an {@link RingBufferDroppingQueue} with a single item
 	 * capacity.
 	 * 
 	 * @param query
@@ -55,7 +55,7 @@ public class TwitterSearchDataset extends AbstractTwitterSearchDataset<Status> {
 	 *            the Twitter api authentication credentials
 	 */
 	public TwitterSearchDataset(Query query, final TwitterAPIToken token) {
-		this(query, token, new ArrayBlockingDroppingQueue<Status>(1));
+		this(query, token, new RingBufferDroppingQueue<Status>(1));
 	}
 
 	/**
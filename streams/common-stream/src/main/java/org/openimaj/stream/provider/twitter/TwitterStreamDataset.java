@@ -30,8 +30,8 @@
 package org.openimaj.stream.provider.twitter;
 
 import org.openimaj.util.api.auth.common.TwitterAPIToken;
-import org.openimaj.util.concurrent.ArrayBlockingDroppingQueue;
 import org.openimaj.util.concurrent.BlockingDroppingQueue;
+import org.openimaj.util.concurrent.RingBufferDroppingQueue;
 
 import twitter4j.Status;
 
@@ -44,13 +44,13 @@ import twitter4j.Status;
 public class TwitterStreamDataset extends AbstractTwitterStreamDataset<Status> {
 	/**
 	 * Construct the dataset from the given API token. The stream is backed by
-	 * an {@link ArrayBlockingDroppingQueue} with a single item capacity.
+	 * an {@link RingBufferDroppingQueue} with a single item capacity.
 	 * 
 	 * @param token
 	 *            the Twitter api authentication credentials
 	 */
 	public TwitterStreamDataset(final TwitterAPIToken token) {
-		this(token, new ArrayBlockingDroppingQueue<Status>(1));
+		this(token, new RingBufferDroppingQueue<Status>(1));
 	}
 
 	/**
@@ -30,8 +30,8 @@
 package org.openimaj.stream.provider.twitter;
 
 import org.openimaj.util.api.auth.common.TwitterAPIToken;
-import org.openimaj.util.concurrent.ArrayBlockingDroppingQueue;
 import org.openimaj.util.concurrent.BlockingDroppingQueue;
+import org.openimaj.util.concurrent.RingBufferDroppingQueue;
 
 import twitter4j.FilterQuery;
 import twitter4j.Status;
@@ -45,7 +45,7 @@ import twitter4j.Status;
 public class TwitterStreamFilterDataset extends AbstractTwitterStatusesFilterDataset<Status> {
 	/**
 	 * Construct the dataset from the given API token. The stream is backed by
-	 * an {@link ArrayBlockingDroppingQueue} with a single item capacity.
+	 * an {@link RingBufferDroppingQueue} with a single item capacity.
 	 * 
 	 * @param query
 	 *            the query
@@ -53,12 +53,12 @@ public class TwitterStreamFilterDataset extends AbstractTwitterStatusesFilterDat
 	 *            the Twitter api authentication credentials
 	 */
 	public TwitterStreamFilterDataset(FilterQuery query, final TwitterAPIToken token) {
-		this(query, token, new ArrayBlockingDroppingQueue<Status>(1));
+		this(query, token, new RingBufferDroppingQueue<Status>(1));
 	}
 
 	/**
 	 * Construct the dataset from the given API token. The stream is backed by
-	 * an {@link ArrayBlockingDroppingQueue} with a single item capacity.
+	 * an {@link RingBufferDroppingQueue} with a single item capacity.
 	 * 
 	 * @param words
 	 *            the query terms